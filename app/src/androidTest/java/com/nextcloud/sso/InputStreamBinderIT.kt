@@ -0,0 +1,190 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.sso
+
+import android.accounts.Account
+import android.accounts.AccountManager
+import android.content.Context
+import android.os.ParcelFileDescriptor
+import androidx.test.platform.app.InstrumentationRegistry
+import com.nextcloud.android.sso.Constants
+import com.nextcloud.android.sso.InputStreamBinder
+import com.nextcloud.android.sso.aidl.NextcloudRequest
+import com.nextcloud.android.sso.aidl.ParcelFileDescriptorUtil
+import com.nextcloud.client.account.UserAccountManagerImpl
+import com.nextcloud.client.core.ClockImpl
+import com.owncloud.android.MainApp
+import com.owncloud.android.lib.common.accounts.AccountUtils
+import com.owncloud.android.utils.EncryptionUtils
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Before
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.io.InputStream
+import java.io.ObjectInputStream
+import java.io.ObjectOutputStream
+import java.net.InetAddress
+import java.net.ServerSocket
+import java.net.Socket
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+
+/**
+ * Runs many SSO requests, sequentially and concurrently, against a local server through the binder, checking that
+ * pooled transfers and cached tokens and clients deliver every response intact.
+ */
+class InputStreamBinderIT {
+
+    companion object {
+        private const val TOKEN = "ssotoken"
+        private const val URL = "/ocs/v2.php/apps/news/api/v1-2/items"
+        private const val SEQUENTIAL_CALLS = 500
+        private const val CONCURRENT_CALLERS = 4
+        private const val CONCURRENT_CALLS = 250
+        private const val TIMEOUT_MINUTES = 5L
+        private val BODY = "{\"items\":[" + List(100) { "{\"id\":$it,\"title\":\"Item $it\"}" }.joinToString(",") + "]}"
+    }
+
+    private lateinit var context: Context
+    private lateinit var server: ServerSocket
+    private lateinit var account: Account
+    private lateinit var binder: InputStreamBinder
+
+    @Before
+    fun setUp() {
+        context = InstrumentationRegistry.getInstrumentation().targetContext
+        server = ServerSocket(0, 0, InetAddress.getLoopbackAddress())
+        thread(isDaemon = true) {
+            while (!server.isClosed) {
+                val socket = try {
+                    server.accept()
+                } catch (ex: IOException) {
+                    break
+                }
+                thread(isDaemon = true) { serve(socket) }
+            }
+        }
+
+        val baseUrl = "http://127.0.0.1:${server.localPort}"
+        account = Account("sso@$baseUrl", MainApp.getAccountType(context))
+        val platformAccountManager = AccountManager.get(context)
+        platformAccountManager.addAccountExplicitly(account, "password", null)
+        platformAccountManager.setUserData(account, AccountUtils.Constants.KEY_OC_BASE_URL, baseUrl)
+        platformAccountManager.setUserData(account, AccountUtils.Constants.KEY_USER_ID, "sso")
+
+        context.getSharedPreferences(Constants.SSO_SHARED_PREFERENCE, Context.MODE_PRIVATE)
+            .edit()
+            .putString(context.packageName + Constants.DELIMITER + account.name, EncryptionUtils.generateSHA512(TOKEN))
+            .commit()
+
+        binder = InputStreamBinder(context, UserAccountManagerImpl.fromContext(context), ClockImpl())
+    }
+
+    @After
+    fun tearDown() {
+        server.close()
+        AccountManager.get(context).removeAccountExplicitly(account)
+        context.getSharedPreferences(Constants.SSO_SHARED_PREFERENCE, Context.MODE_PRIVATE)
+            .edit()
+            .remove(context.packageName + Constants.DELIMITER + account.name)
+            .commit()
+    }
+
+    /**
+     * Answers every request on a keep-alive connection with the same body
+     */
+    private fun serve(socket: Socket) {
+        socket.use {
+            val input = it.getInputStream().buffered()
+            val output = it.getOutputStream()
+            val response = (
+                "HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: ${BODY.length}\r\n\r\n" + BODY
+                ).toByteArray()
+            while (readRequestHeaders(input)) {
+                output.write(response)
+                output.flush()
+            }
+        }
+    }
+
+    private fun readRequestHeaders(input: InputStream): Boolean {
+        var line = StringBuilder()
+        var headerLines = 0
+        while (true) {
+            when (val c = input.read()) {
+                -1 -> return false
+                '\r'.code -> continue
+                '\n'.code -> {
+                    if (line.isEmpty()) {
+                        return headerLines > 0
+                    }
+                    headerLines++
+                    line = StringBuilder()
+                }
+                else -> line.append(c.toChar())
+            }
+        }
+    }
+
+    private fun call(): String {
+        val request = NextcloudRequest.Builder()
+            .setMethod("GET")
+            .setUrl(URL)
+            .setToken(TOKEN)
+            .setAccountName(account.name)
+            .build()
+        val serialized = ByteArrayOutputStream().apply {
+            ObjectOutputStream(this).use { it.writeObject(request) }
+        }.toByteArray()
+        val input = ParcelFileDescriptorUtil.pipeFrom(ByteArrayInputStream(serialized), null, null)
+
+        val result = binder.performNextcloudRequestV2(input)
+        return ParcelFileDescriptor.AutoCloseInputStream(result).use {
+            val objects = ObjectInputStream(it)
+            assertNull(objects.readObject())
+            objects.readObject() // headers
+            it.readBytes().toString(Charsets.UTF_8)
+        }
+    }
+
+    @Test
+    fun sequentialCalls() {
+        // first call resolves client and validates token
+        assertEquals(BODY, call())
+
+        repeat(SEQUENTIAL_CALLS) {
+            assertEquals(BODY, call())
+        }
+    }
+
+    @Test
+    fun concurrentCalls() {
+        assertEquals(BODY, call())
+
+        val executor = Executors.newFixedThreadPool(CONCURRENT_CALLERS)
+        val results = List(CONCURRENT_CALLERS * CONCURRENT_CALLS) { executor.submit<String> { call() } }
+        results.forEach { assertEquals(BODY, it.get(TIMEOUT_MINUTES, TimeUnit.MINUTES)) }
+        executor.shutdown()
+    }
+}
@@ -27,6 +27,12 @@ import org.junit.Test
 class FileDataStorageManagerContentResolverIT : FileDataStorageManagerIT() {
     companion object {
         private const val MANY_FILES_AMOUNT = 5000
+        private const val REFRESHED_FOLDER_AMOUNT = 8000
+
+        private const val GALLERY_AMOUNT = 3000
+        private const val GALLERY_PAGE_SIZE = 300
+        private const val GALLERY_FILES_PER_TIMESTAMP = 7
+        private const val GALLERY_REMOVED_AMOUNT = 100
     }
 
     override fun before() {
@@ -67,4 +73,103 @@ class FileDataStorageManagerContentResolverIT : FileDataStorageManagerIT() {
         // check file count is correct
         Assert.assertEquals(MANY_FILES_AMOUNT, sut.getFolderContent(folderA, false).size)
     }
+
+    /**
+     * Refreshing a large folder must update the stored children in place, matching them by id or, if the id is
+     * unknown, by path, instead of adding duplicates.
+     */
+    @Test
+    fun testSaveFolderReconcilesChildren() {
+        val path = "/large/"
+        val folder = OCFile(path)
+        folder.setFolder().parentId = sut.getFileByDecryptedRemotePath("/")!!.fileId
+        sut.saveFile(folder)
+
+        // first refresh inserts all children
+        val newFiles = (1..REFRESHED_FOLDER_AMOUNT).map {
+            val file = OCFile(path + "file$it")
+            file.parentId = folder.fileId
+            file
+        }
+        sut.saveFolder(folder, newFiles, ArrayList())
+        val storedIds = sut.getFolderContent(folder, false).associate { it.remotePath to it.fileId }
+        Assert.assertEquals(REFRESHED_FOLDER_AMOUNT, storedIds.size)
+
+        // second refresh updates them, with half of the ids unknown to force path based reconciliation
+        val updatedFiles = (1..REFRESHED_FOLDER_AMOUNT).map {
+            val file = OCFile(path + "file$it")
+            file.parentId = folder.fileId
+            file.etag = "updated"
+            if (it % 2 == 0) {
+                file.fileId = newFiles[it - 1].fileId
+            }
+            file
+        }
+        sut.saveFolder(folder, updatedFiles, ArrayList())
+
+        val refreshedFiles = sut.getFolderContent(folder, false)
+        Assert.assertEquals(REFRESHED_FOLDER_AMOUNT, refreshedFiles.size)
+        Assert.assertEquals(storedIds, refreshedFiles.associate { it.remotePath to it.fileId })
+        Assert.assertTrue(refreshedFiles.all { it.etag == "updated" })
+    }
+
+    @Test
+    fun testSaveGalleryItems() {
+        val files = galleryFiles("/Photos/")
+        sut.saveGalleryItems(files, emptyList())
+        Assert.assertEquals(GALLERY_AMOUNT, sut.allGalleryItems.size)
+        Assert.assertTrue(files.all { it.fileId > 0 })
+
+        // update all files with the next page, and remove some stored ones
+        val updatedFiles = galleryFiles("/Photos/").onEach { it.etag = "updated" }
+        val removedPaths = updatedFiles.take(GALLERY_REMOVED_AMOUNT).map { it.remotePath }.toSet()
+        val removedFiles = sut.allGalleryItems.filter { it.remotePath in removedPaths }
+        sut.saveGalleryItems(updatedFiles.drop(GALLERY_REMOVED_AMOUNT), removedFiles)
+
+        val storedFiles = sut.allGalleryItems
+        Assert.assertEquals(GALLERY_AMOUNT - GALLERY_REMOVED_AMOUNT, storedFiles.size)
+        Assert.assertTrue(storedFiles.all { it.etag == "updated" })
+    }
+
+    /**
+     * Paging through the timeline must return every file once, newest first, also if files share a timestamp
+     */
+    @Test
+    fun testGalleryItemsPages() {
+        sut.saveGalleryItems(galleryFiles("/Photos/") + galleryFiles("/Other/"), emptyList())
+
+        val pages = mutableListOf<List<OCFile>>()
+        do {
+            val page = sut.getGalleryItemsPage(
+                "/Photos/",
+                true,
+                true,
+                pages.lastOrNull()?.lastOrNull(),
+                GALLERY_PAGE_SIZE
+            )
+            pages.add(page)
+        } while (page.size == GALLERY_PAGE_SIZE)
+
+        val files = pages.flatten()
+        Assert.assertEquals(GALLERY_AMOUNT, files.size)
+        Assert.assertEquals(GALLERY_AMOUNT, files.map { it.fileId }.toSet().size)
+        Assert.assertTrue(files.all { it.remotePath.startsWith("/Photos/") })
+        Assert.assertEquals(
+            files.sortedWith(compareByDescending<OCFile> { it.modificationTimestamp }.thenByDescending { it.fileId }),
+            files
+        )
+
+        // media type filter
+        val videos = sut.getGalleryItemsPage("/Photos/", false, true, null, GALLERY_AMOUNT)
+        Assert.assertTrue(videos.isNotEmpty())
+        Assert.assertTrue(videos.all { it.mimeType.startsWith("video/") })
+    }
+
+    private fun galleryFiles(path: String): List<OCFile> = (1..GALLERY_AMOUNT).map {
+        OCFile(path + "file$it").apply {
+            mimeType = if (it % 2 == 0) "image/jpeg" else "video/mp4"
+            modificationTimestamp = (it / GALLERY_FILES_PER_TIMESTAMP).toLong()
+            etag = "etag"
+        }
+    }
 }
@@ -349,6 +349,31 @@ abstract public class FileDataStorageManagerIT extends AbstractOnServerIT {
         sut.saveNewFile(newFile);
     }
 
+    @Test
+    public void testSearchFiles() {
+        OCFile root = sut.getFileByDecryptedRemotePath("/");
+
+        List<OCFile> files = new ArrayList<>();
+        for (String path : new String[]{"/Report 2022.pdf", "/IMG_20220101.jpg", "/Überblick.txt"}) {
+            OCFile file = new OCFile(path);
+            file.setParentId(root.getFileId());
+            file.setMimeType("text/plain");
+            assertTrue(sut.saveFile(file));
+            files.add(sut.getFileByDecryptedRemotePath(path));
+        }
+
+        assertEquals(1, sut.searchFiles("rep", false).size());
+        assertEquals(2, sut.searchFiles("2022", false).size());
+        assertEquals(1, sut.searchFiles("img 2022", false).size());
+        assertEquals("/Überblick.txt", sut.searchFiles("uberb", false).get(0).getDecryptedRemotePath());
+        assertEquals(0, sut.searchFiles("port", false).size());
+
+        // index follows deletes
+        assertTrue(sut.removeFile(files.get(0), true, false));
+        assertEquals(0, sut.searchFiles("report", false).size());
+        assertEquals(1, sut.searchFiles("2022", false).size());
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testSaveNewFile_NonExistingParent() {
         assertTrue(new CreateFolderRemoteOperation("/1/1/", true).execute(client).isSuccess());
@@ -0,0 +1,92 @@
+/*
+ *
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel
+
+import com.owncloud.android.AbstractIT
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+
+class FilesystemDataProviderIT : AbstractIT() {
+
+    companion object {
+        private const val FILES = 2000
+        private const val SYNCED_FOLDER_ID = 4711L
+        private const val LOCAL_PATH = "/storage/emulated/0/DCIM/Camera"
+    }
+
+    private val filesystemDataProvider = FilesystemDataProvider(targetContext.contentResolver)
+    private lateinit var syncedFolder: SyncedFolder
+
+    @Before
+    fun setUp() {
+        syncedFolder = SyncedFolder(
+            LOCAL_PATH,
+            "/Photos",
+            false,
+            false,
+            true,
+            false,
+            user.accountName,
+            0,
+            0,
+            true,
+            0L,
+            MediaFolderType.CUSTOM,
+            false
+        )
+        syncedFolder.id = SYNCED_FOLDER_ID
+        filesystemDataProvider.deleteAllEntriesForSyncedFolder(SYNCED_FOLDER_ID.toString())
+    }
+
+    @After
+    fun tearDown() {
+        filesystemDataProvider.deleteAllEntriesForSyncedFolder(SYNCED_FOLDER_ID.toString())
+    }
+
+    private fun createFiles(modifiedAt: (Int) -> Long): List<FileSystemDataSet> = (1..FILES).map {
+        FileSystemDataSet().apply {
+            localPath = "$LOCAL_PATH/IMG_$it.jpg"
+            this.modifiedAt = modifiedAt(it)
+        }
+    }
+
+    @Test
+    fun storeOrUpdateFileValuesCountsOnlyChangedFiles() {
+        assertEquals(FILES, filesystemDataProvider.storeOrUpdateFileValues(createFiles { 1000L }, syncedFolder))
+
+        assertEquals(0, filesystemDataProvider.storeOrUpdateFileValues(createFiles { 1000L }, syncedFolder))
+
+        val changed = createFiles { if (it % 100 == 0) 2000L else 1000L }
+        assertEquals(FILES / 100, filesystemDataProvider.storeOrUpdateFileValues(changed, syncedFolder))
+    }
+
+    @Test
+    fun scanMark() {
+        assertEquals(0L, filesystemDataProvider.getScanMark(syncedFolder))
+
+        filesystemDataProvider.storeScanMark(syncedFolder, 1234L)
+        assertEquals(1234L, filesystemDataProvider.getScanMark(syncedFolder))
+
+        filesystemDataProvider.resetScanMark(SYNCED_FOLDER_ID)
+        assertEquals(0L, filesystemDataProvider.getScanMark(syncedFolder))
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel
+
+import android.content.ContentResolver
+import android.database.Cursor
+import android.database.sqlite.SQLiteDatabase
+import android.net.Uri
+import android.os.Build
+import android.os.Bundle
+import android.os.CancellationSignal
+import com.owncloud.android.AbstractIT
+import io.mockk.every
+import io.mockk.mockk
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Aggregates media folders from a synthetic media store, an in-memory database queried through a mocked content
+ * resolver
+ */
+class MediaProviderIT : AbstractIT() {
+
+    private companion object {
+        const val TABLE = "media"
+        const val ROWS = 100000
+        const val BUCKETS = 500
+        const val ITEM_LIMIT = 8
+    }
+
+    private lateinit var db: SQLiteDatabase
+    private lateinit var resolver: ContentResolver
+    private val queries = AtomicInteger()
+
+    @Before
+    fun setUp() {
+        db = SQLiteDatabase.create(null)
+        db.execSQL("CREATE TABLE $TABLE (bucket_id TEXT, bucket_display_name TEXT, _data TEXT, datetaken INTEGER)")
+        db.beginTransaction()
+        try {
+            val insert = db.compileStatement("INSERT INTO $TABLE VALUES (?, ?, ?, ?)")
+            for (i in 0 until ROWS) {
+                val bucket = i % BUCKETS
+                insert.bindString(1, bucket.toString())
+                insert.bindString(2, "Folder $bucket")
+                insert.bindString(3, "/storage/emulated/0/Folder $bucket/IMG_$i.jpg")
+                insert.bindLong(4, i.toLong())
+                insert.executeInsert()
+            }
+            db.setTransactionSuccessful()
+        } finally {
+            db.endTransaction()
+        }
+
+        resolver = mockk()
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            every { resolver.query(any(), any(), any<Bundle>(), any()) } answers {
+                query(secondArg(), thirdArg<Bundle>().getStringArray(ContentResolver.QUERY_ARG_SORT_COLUMNS)?.first())
+            }
+        }
+        every {
+            resolver.query(any<Uri>(), any(), any<String>(), any(), any<String>(), any<CancellationSignal>())
+        } answers {
+            query(secondArg(), arg<String?>(4)?.substringBefore(' '))
+        }
+        MediaProvider.clearCache()
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+        MediaProvider.clearCache()
+    }
+
+    private fun query(projection: Array<String>, sortColumn: String?): Cursor {
+        queries.incrementAndGet()
+        return db.query(TABLE, projection, null, null, null, null, sortColumn?.let { "$it DESC" })
+    }
+
+    @Test
+    fun foldersAreAggregatedInSingleQuery() {
+        val folders = MediaProvider.queryMediaFolders(resolver, MediaFolderType.IMAGE, ITEM_LIMIT)
+
+        assertEquals(1, queries.get())
+        assertEquals(BUCKETS, folders.size)
+        folders.forEach { folder ->
+            assertEquals((ROWS / BUCKETS).toLong(), folder.numberOfFiles)
+            assertEquals(ITEM_LIMIT, folder.filePaths.size)
+            assertEquals("/storage/emulated/0/${folder.folderName}", folder.absolutePath)
+        }
+
+        // newest first
+        val newest = folders.single { it.folderName == "Folder 0" }.filePaths[0]
+        assertEquals("/storage/emulated/0/Folder 0/IMG_${ROWS - BUCKETS}.jpg", newest)
+    }
+
+    @Test
+    fun foldersAreCachedWhileMediaStoreIsUnchanged() {
+        val first = MediaProvider.getImageFolders(resolver, ITEM_LIMIT, null, true, null)
+        val second = MediaProvider.getImageFolders(resolver, ITEM_LIMIT, null, true, null)
+
+        assertEquals(first, second)
+        val expectedQueries = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) 1 else 2
+        assertEquals(expectedQueries, queries.get())
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel
+
+import android.database.MatrixCursor
+import com.owncloud.android.db.ProviderMeta.ProviderTableMeta
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class OCFileCursorMapperIT {
+
+    companion object {
+        private const val ROWS = 50000
+        private const val ACCOUNT = "test@https://nextcloud.localhost"
+        private const val SHAREES = "[{\"userId\":\"admin\",\"displayName\":\"Admin\",\"shareType\":\"USER\"}]"
+    }
+
+    private val columns = listOf(ProviderTableMeta._ID) + ProviderTableMeta.FILE_ALL_COLUMNS
+        .filter { it != ProviderTableMeta._ID }
+
+    private fun createCursor(): MatrixCursor {
+        val cursor = MatrixCursor(columns.toTypedArray(), ROWS)
+        for (i in 1..ROWS) {
+            val row = columns.map {
+                when (it) {
+                    ProviderTableMeta._ID -> i.toLong()
+                    ProviderTableMeta.FILE_PATH -> "/folder/file$i.jpg"
+                    ProviderTableMeta.FILE_PATH_DECRYPTED -> "/folder/file$i.jpg"
+                    ProviderTableMeta.FILE_CONTENT_TYPE -> "image/jpeg"
+                    ProviderTableMeta.FILE_SHAREES -> if (i % 10 == 0) SHAREES else "[]"
+                    ProviderTableMeta.FILE_LOCK_TYPE -> -1
+                    ProviderTableMeta.FILE_STORAGE_PATH -> null
+                    ProviderTableMeta.FILE_ETAG, ProviderTableMeta.FILE_REMOTE_ID -> "etag$i"
+                    else -> 0
+                }
+            }
+            cursor.addRow(row)
+        }
+        return cursor
+    }
+
+    @Test
+    fun mapsAllRows() {
+        val cursor = createCursor()
+        val mapper = OCFileCursorMapper(cursor, ACCOUNT, false)
+        var count = 0
+        while (cursor.moveToNext()) {
+            val file = mapper.map()
+            count++
+            assertEquals(count.toLong(), file.fileId)
+            assertEquals("/folder/file$count.jpg", file.remotePath)
+            assertEquals(if (count % 10 == 0) 1 else 0, file.sharees.size)
+        }
+        assertEquals(ROWS, count)
+    }
+}
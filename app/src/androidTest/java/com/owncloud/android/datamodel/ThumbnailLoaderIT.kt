@@ -0,0 +1,134 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel
+
+import android.graphics.Bitmap
+import android.widget.ImageView
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Flings through a long list of thumbnails with a small pool of recycled views and measures the time until the
+ * thumbnails of the views visible at the end are shown.
+ */
+class ThumbnailLoaderIT {
+
+    companion object {
+        private const val THREADS = 4
+        private const val FILES = 2000
+        private const val VISIBLE_VIEWS = 30
+        private const val LATENCY_MS = 5L
+        private const val TIMEOUT_SECONDS = 60L
+        private const val THUMBNAIL_SIZE = 8
+    }
+
+    private lateinit var views: List<ImageView>
+    private val generated = AtomicInteger()
+
+    private fun generate(): Bitmap {
+        Thread.sleep(LATENCY_MS)
+        generated.incrementAndGet()
+        return Bitmap.createBitmap(THUMBNAIL_SIZE, THUMBNAIL_SIZE, Bitmap.Config.ARGB_8888)
+    }
+
+    private fun onMainThread(action: () -> Unit) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(action)
+    }
+
+    @Before
+    fun setUp() {
+        onMainThread {
+            val context = InstrumentationRegistry.getInstrumentation().targetContext
+            views = List(VISIBLE_VIEWS) { ImageView(context) }
+        }
+    }
+
+    @Test
+    fun sameThumbnailIsLoadedOnce() {
+        val sut = ThumbnailLoader(THREADS)
+        val delivered = CountDownLatch(2)
+
+        onMainThread {
+            views.take(2).forEach { view ->
+                sut.load("key", view, this, { generate() }) { bitmap ->
+                    assertNotNull(bitmap)
+                    delivered.countDown()
+                }
+            }
+        }
+
+        assertTrue(delivered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+        assertEquals(1, generated.get())
+        assertEquals(1, sut.joinedCount)
+    }
+
+    @Test
+    fun cancelledViewGetsNoThumbnail() {
+        val sut = ThumbnailLoader(1)
+        val blocker = CountDownLatch(1)
+        val delivered = Collections.synchronizedList(mutableListOf<String>())
+        val done = CountDownLatch(1)
+
+        onMainThread {
+            // keeps the only worker busy, so that the next request waits in the queue
+            sut.load("blocker", views[0], this, {
+                blocker.await()
+                generate()
+            }) { done.countDown() }
+            sut.load("key", views[1], this, { generate() }) { delivered.add("key") }
+            sut.cancel(views[1])
+        }
+        blocker.countDown()
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+        onMainThread { assertTrue(delivered.isEmpty()) }
+        assertEquals(1, generated.get())
+        assertEquals(1, sut.droppedCount)
+    }
+
+    @Test
+    fun flingLoadsVisibleThumbnailsAndSkipsRecycledViews() {
+        // views are recycled while flinging, like RecyclerView does
+        val sut = ThumbnailLoader(THREADS)
+        val visible = CountDownLatch(VISIBLE_VIEWS)
+        onMainThread {
+            for (i in 0 until FILES) {
+                val view = views[i % VISIBLE_VIEWS]
+                sut.cancel(view)
+                sut.load("file$i", view, this, { generate() }) {
+                    if (i >= FILES - VISIBLE_VIEWS) {
+                        visible.countDown()
+                    }
+                }
+            }
+        }
+
+        // the thumbnails finally bound are delivered, most of the others are never generated
+        assertTrue(visible.await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+        assertTrue(generated.get() < FILES / 2)
+    }
+}
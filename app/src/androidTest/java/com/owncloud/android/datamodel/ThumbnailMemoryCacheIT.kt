@@ -0,0 +1,107 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel
+
+import android.content.ComponentCallbacks2
+import android.graphics.Bitmap
+import com.owncloud.android.AbstractIT
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ThumbnailMemoryCacheIT : AbstractIT() {
+
+    private companion object {
+        const val SIZE = 64
+
+        // 64 x 64 ARGB_8888 bitmaps take 16 KB each
+        const val BITMAP_KB = 16
+        const val CAPACITY = 10
+    }
+
+    private fun bitmap(): Bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888)
+
+    private fun cache() = ThumbnailMemoryCache(CAPACITY * BITMAP_KB)
+
+    @Test
+    fun hitsAndMisses() {
+        val sut = cache()
+        val bitmap = bitmap()
+
+        assertNull(sut.get("t1"))
+        sut.put("t1", bitmap)
+        assertSame(bitmap, sut.get("t1"))
+
+        assertEquals(1, sut.hitCount)
+        assertEquals(1, sut.missCount)
+    }
+
+    @Test
+    fun leastRecentlyUsedIsEvicted() {
+        val sut = cache()
+        repeat(CAPACITY) { sut.put("t$it", bitmap()) }
+        sut.get("t0")
+
+        sut.put("new", bitmap())
+
+        assertTrue(sut.get("t0") != null)
+        assertNull(sut.get("t1"))
+        assertEquals(1, sut.evictionCount)
+        assertTrue(sut.sizeKb <= sut.maxSizeKb)
+    }
+
+    @Test
+    fun evictedBitmapIsLeftIntact() {
+        val sut = cache()
+        val evicted = bitmap()
+        sut.put("t0", evicted)
+        repeat(CAPACITY) { sut.put("t${it + 1}", bitmap()) }
+
+        assertNull(sut.get("t0"))
+        // may still be shown, so it is neither recycled nor reused
+        assertFalse(evicted.isRecycled)
+    }
+
+    @Test
+    fun trimMemory() {
+        val sut = cache()
+        repeat(CAPACITY) { sut.put("t$it", bitmap()) }
+
+        sut.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW)
+        assertEquals(CAPACITY / 2 * BITMAP_KB, sut.sizeKb)
+
+        sut.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_MODERATE)
+        assertEquals(0, sut.sizeKb)
+    }
+
+    @Test
+    fun recycledAndOversizedBitmapsAreNotReturned() {
+        val sut = cache()
+        val recycled = bitmap()
+        sut.put("t0", recycled)
+        recycled.recycle()
+        assertNull(sut.get("t0"))
+
+        sut.put("large", Bitmap.createBitmap(SIZE * 4, SIZE * 4, Bitmap.Config.ARGB_8888))
+        assertNull(sut.get("large"))
+    }
+}
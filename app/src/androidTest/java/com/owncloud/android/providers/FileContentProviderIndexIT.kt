@@ -0,0 +1,127 @@
+/*
+ *
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.providers
+
+import android.database.sqlite.SQLiteDatabase
+import com.owncloud.android.AbstractIT
+import com.owncloud.android.db.ProviderMeta
+import com.owncloud.android.db.ProviderMeta.ProviderTableMeta
+import org.junit.After
+import org.junit.Assert.assertFalse
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Runs EXPLAIN QUERY PLAN on the hot queries and makes sure none of them falls back to a full table scan
+ */
+class FileContentProviderIndexIT : AbstractIT() {
+
+    private lateinit var db: SQLiteDatabase
+
+    @Before
+    fun openDatabase() {
+        // make sure provider is created and database is upgraded
+        targetContext.contentResolver.query(ProviderTableMeta.CONTENT_URI, null, null, null, null)?.close()
+
+        db = SQLiteDatabase.openDatabase(
+            targetContext.getDatabasePath(ProviderMeta.DB_NAME).absolutePath,
+            null,
+            SQLiteDatabase.OPEN_READONLY
+        )
+    }
+
+    @After
+    fun closeDatabase() {
+        db.close()
+    }
+
+    @Test
+    fun folderContent() {
+        assertNoTableScan(ProviderTableMeta.FILE_TABLE_NAME, "${ProviderTableMeta.FILE_PARENT} = ?")
+    }
+
+    @Test
+    fun fileByPath() {
+        assertNoTableScan(
+            ProviderTableMeta.FILE_TABLE_NAME,
+            "${ProviderTableMeta.FILE_PATH} = ? AND ${ProviderTableMeta.FILE_ACCOUNT_OWNER} = ?"
+        )
+        assertNoTableScan(
+            ProviderTableMeta.FILE_TABLE_NAME,
+            "${ProviderTableMeta.FILE_PATH_DECRYPTED} = ? AND ${ProviderTableMeta.FILE_ACCOUNT_OWNER} = ?"
+        )
+    }
+
+    @Test
+    fun fileByRemoteId() {
+        assertNoTableScan(
+            ProviderTableMeta.FILE_TABLE_NAME,
+            "${ProviderTableMeta.FILE_REMOTE_ID} = ? AND ${ProviderTableMeta.FILE_ACCOUNT_OWNER} = ?"
+        )
+    }
+
+    @Test
+    fun fileByLocalPath() {
+        assertNoTableScan(
+            ProviderTableMeta.FILE_TABLE_NAME,
+            "${ProviderTableMeta.FILE_STORAGE_PATH} = ? AND ${ProviderTableMeta.FILE_ACCOUNT_OWNER} = ?"
+        )
+    }
+
+    @Test
+    fun galleryItems() {
+        assertNoTableScan(
+            ProviderTableMeta.FILE_TABLE_NAME,
+            "${ProviderTableMeta.FILE_ACCOUNT_OWNER} = ? AND " +
+                "${ProviderTableMeta.FILE_MODIFIED} >= ? AND " +
+                "${ProviderTableMeta.FILE_MODIFIED} < ? AND (" +
+                "${ProviderTableMeta.FILE_CONTENT_TYPE} LIKE ? OR " +
+                "${ProviderTableMeta.FILE_CONTENT_TYPE} LIKE ?)"
+        )
+    }
+
+    @Test
+    fun filesystemEntry() {
+        assertNoTableScan(
+            ProviderTableMeta.FILESYSTEM_TABLE_NAME,
+            "${ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH} = ? and " +
+                "${ProviderTableMeta.FILESYSTEM_SYNCED_FOLDER_ID} = ?"
+        )
+    }
+
+    @Test
+    fun uploadsByStatus() {
+        assertNoTableScan(
+            ProviderTableMeta.UPLOADS_TABLE_NAME,
+            "${ProviderTableMeta.UPLOADS_STATUS} == ? AND ${ProviderTableMeta.UPLOADS_ACCOUNT_NAME} == ?"
+        )
+    }
+
+    private fun assertNoTableScan(table: String, where: String) {
+        val args = Array(where.count { it == '?' }) { "0" }
+        db.rawQuery("EXPLAIN QUERY PLAN SELECT * FROM $table WHERE $where", args).use { cursor ->
+            val detailIndex = cursor.getColumnIndexOrThrow("detail")
+            while (cursor.moveToNext()) {
+                val detail = cursor.getString(detailIndex)
+                assertFalse("Full table scan for '$where': $detail", detail.startsWith("SCAN"))
+            }
+        }
+    }
+}
@@ -90,6 +90,23 @@ class FileContentProviderVerificationIT {
         FileContentProvider.VerificationUtils.verifySortOrder("${ProviderMeta.ProviderTableMeta._ID} ;--foo")
     }
 
+    @Test
+    fun verifyLimit_OK() {
+        FileContentProvider.VerificationUtils.verifyLimit(null)
+        FileContentProvider.VerificationUtils.verifyLimit("0")
+        FileContentProvider.VerificationUtils.verifyLimit("500")
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun verifyLimit_InvalidGrammar() {
+        FileContentProvider.VerificationUtils.verifyLimit("1; DROP TABLE filelist")
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun verifyLimit_Negative() {
+        FileContentProvider.VerificationUtils.verifyLimit("-1")
+    }
+
     @Test
     fun verifyWhere_OK() {
         FileContentProvider.VerificationUtils.verifyWhere(null)
@@ -0,0 +1,128 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.ui.adapter
+
+import android.graphics.Bitmap
+import com.owncloud.android.AbstractIT
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.util.concurrent.Executor
+
+class DiskLruImageCacheIT : AbstractIT() {
+
+    private companion object {
+        const val SIZE = 64
+        const val CACHE_SIZE = 10 * 1024 * 1024
+        const val QUALITY = 70
+        const val INSERTS = 1000
+        const val KEYS = 250
+        const val MAX_WRITES_PER_FLUSH = 32
+    }
+
+    private val tasks = ArrayDeque<Runnable>()
+    private lateinit var dir: File
+    private lateinit var sut: DiskLruImageCache
+
+    @Before
+    fun setUp() {
+        dir = File(targetContext.cacheDir, "DiskLruImageCacheIT")
+        dir.deleteRecursively()
+        sut = DiskLruImageCache(dir, CACHE_SIZE, Bitmap.CompressFormat.JPEG, QUALITY, Executor { tasks.add(it) })
+    }
+
+    @After
+    fun tearDown() {
+        sut.clearCache()
+        dir.deleteRecursively()
+    }
+
+    private fun bitmap(): Bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888)
+
+    private fun runTasks() {
+        while (tasks.isNotEmpty()) {
+            tasks.removeFirst().run()
+        }
+    }
+
+    @Test
+    fun writesAreCoalesced() {
+        // GIVEN
+        //      every key is put several times while a gallery loads
+        repeat(INSERTS) { sut.put("thumbnail${it % KEYS}", bitmap()) }
+
+        // WHEN
+        //      writer runs
+        assertEquals(1, tasks.size)
+        runTasks()
+
+        // THEN
+        //      every key is written once
+        //      journal is flushed once per batch instead of once per put
+        assertEquals(INSERTS.toLong(), sut.putCount)
+        assertEquals(KEYS.toLong(), sut.writeCount)
+        val expectedFlushes = (KEYS + MAX_WRITES_PER_FLUSH - 1) / MAX_WRITES_PER_FLUSH
+        assertEquals(expectedFlushes.toLong(), sut.journalFlushCount)
+        assertEquals(0, sut.pendingCount)
+    }
+
+    @Test
+    fun pendingBitmapIsServedUntilWritten() {
+        val bitmap = bitmap()
+        sut.put("key", bitmap)
+
+        assertTrue(sut.containsKey("key"))
+        assertSame(bitmap, sut.getBitmap("key"))
+        assertSame(bitmap, sut.getScaledBitmap("key", SIZE, SIZE))
+
+        runTasks()
+
+        assertTrue(sut.containsKey("key"))
+        val read = sut.getBitmap("key")
+        assertNotNull(read)
+        assertNotSame(bitmap, read)
+    }
+
+    @Test
+    fun removedKeyIsNotWritten() {
+        sut.put("key", bitmap())
+        sut.removeKey("key")
+        runTasks()
+
+        assertFalse(sut.containsKey("key"))
+        assertEquals(0, sut.writeCount)
+    }
+
+    @Test
+    fun flushRunsAfterQueuedWrites() {
+        sut.put("key", bitmap())
+        sut.flush()
+        runTasks()
+
+        assertEquals(1, sut.writeCount)
+        assertEquals(2, sut.journalFlushCount)
+    }
+}
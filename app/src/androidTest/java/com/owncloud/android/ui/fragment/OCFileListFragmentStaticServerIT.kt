@@ -23,6 +23,7 @@
 package com.owncloud.android.ui.fragment
 
 import androidx.test.espresso.intent.rule.IntentsTestRule
+import androidx.test.platform.app.InstrumentationRegistry
 import com.nextcloud.client.GrantStoragePermissionRule
 import com.nextcloud.client.TestActivity
 import com.owncloud.android.AbstractIT
@@ -35,6 +36,8 @@ import org.junit.After
 import org.junit.Assert
 import org.junit.Rule
 import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
 
 class OCFileListFragmentStaticServerIT : AbstractIT() {
     @get:Rule
@@ -313,24 +316,43 @@ class OCFileListFragmentStaticServerIT : AbstractIT() {
         activity.addFragment(sut)
         val testFolder: OCFile = activity.storageManager.getFileByEncryptedRemotePath("/test/")
 
-        activity.runOnUiThread {
-            // richWorkspace is not set
-            Assert.assertFalse(sut.adapter.shouldShowHeader())
+        // richWorkspace is not set
+        assertShowsHeader(false, sut)
 
-            testFolder.richWorkspace = " "
-            activity.storageManager.saveFile(testFolder)
-            sut.adapter.swapDirectory(user, testFolder, activity.storageManager, false, "")
-            Assert.assertFalse(sut.adapter.shouldShowHeader())
+        testFolder.richWorkspace = " "
+        activity.storageManager.saveFile(testFolder)
+        swapDirectoryAndWait(activity, sut, testFolder)
+        assertShowsHeader(false, sut)
 
-            testFolder.richWorkspace = null
-            activity.storageManager.saveFile(testFolder)
-            sut.adapter.swapDirectory(user, testFolder, activity.storageManager, false, "")
-            Assert.assertFalse(sut.adapter.shouldShowHeader())
+        testFolder.richWorkspace = null
+        activity.storageManager.saveFile(testFolder)
+        swapDirectoryAndWait(activity, sut, testFolder)
+        assertShowsHeader(false, sut)
 
-            testFolder.richWorkspace = "1"
-            activity.storageManager.saveFile(testFolder)
-            sut.adapter.setCurrentDirectory(testFolder)
-            Assert.assertTrue(sut.adapter.shouldShowHeader())
+        testFolder.richWorkspace = "1"
+        activity.storageManager.saveFile(testFolder)
+        swapDirectoryAndWait(activity, sut, testFolder)
+        assertShowsHeader(true, sut)
+    }
+
+    /**
+     * Swaps the directory of the adapter, which loads its content in background, and waits until it is shown
+     */
+    private fun swapDirectoryAndWait(activity: TestActivity, sut: OCFileListFragment, directory: OCFile) {
+        val swapped = CountDownLatch(1)
+        InstrumentationRegistry.getInstrumentation().runOnMainSync {
+            sut.adapter.swapDirectory(user, directory, activity.storageManager, false, "") { swapped.countDown() }
         }
+        Assert.assertTrue(swapped.await(SWAP_TIMEOUT_S, TimeUnit.SECONDS))
+    }
+
+    private fun assertShowsHeader(expected: Boolean, sut: OCFileListFragment) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync {
+            Assert.assertEquals(expected, sut.adapter.shouldShowHeader())
+        }
+    }
+
+    companion object {
+        private const val SWAP_TIMEOUT_S = 10L
     }
 }
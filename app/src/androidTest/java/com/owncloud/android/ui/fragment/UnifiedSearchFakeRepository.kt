@@ -22,6 +22,7 @@
 
 package com.owncloud.android.ui.fragment
 
+import com.nextcloud.client.core.Cancellable
 import com.owncloud.android.lib.common.SearchResult
 import com.owncloud.android.lib.common.SearchResultEntry
 import com.owncloud.android.ui.unifiedsearch.IUnifiedSearchRepository
@@ -30,12 +31,18 @@ import com.owncloud.android.ui.unifiedsearch.UnifiedSearchResult
 
 class UnifiedSearchFakeRepository : IUnifiedSearchRepository {
 
+    private object NoCancellable : Cancellable {
+        override fun cancel() {
+            // results are delivered immediately
+        }
+    }
+
     override fun queryAll(
         query: String,
         onResult: (UnifiedSearchResult) -> Unit,
         onError: (Throwable) -> Unit,
         onFinished: (Boolean) -> Unit
-    ) {
+    ): Cancellable {
         val result = UnifiedSearchResult(
             provider = "files",
             success = true,
@@ -65,6 +72,7 @@ class UnifiedSearchFakeRepository : IUnifiedSearchRepository {
         )
         onResult(result)
         onFinished(true)
+        return NoCancellable
     }
 
     override fun queryProvider(
@@ -74,7 +82,7 @@ class UnifiedSearchFakeRepository : IUnifiedSearchRepository {
         onResult: (UnifiedSearchResult) -> Unit,
         onError: (Throwable) -> Unit,
         onFinished: (Boolean) -> Unit
-    ) {
+    ): Cancellable {
         val result = UnifiedSearchResult(
             provider = provider,
             success = true,
@@ -102,5 +110,6 @@ class UnifiedSearchFakeRepository : IUnifiedSearchRepository {
             )
 
         )
+        return NoCancellable
     }
 }
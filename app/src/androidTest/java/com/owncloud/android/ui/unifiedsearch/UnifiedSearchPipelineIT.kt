@@ -0,0 +1,243 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.ui.unifiedsearch
+
+import android.accounts.Account
+import android.accounts.AccountManager
+import android.app.Application
+import android.content.Context
+import android.net.Uri
+import android.os.Handler
+import android.os.Looper
+import androidx.test.platform.app.InstrumentationRegistry
+import com.nextcloud.client.account.CurrentAccountProvider
+import com.nextcloud.client.account.User
+import com.nextcloud.client.account.UserAccountManagerImpl
+import com.nextcloud.client.core.ThreadPoolAsyncRunner
+import com.nextcloud.client.network.ClientFactory
+import com.nextcloud.client.network.Connectivity
+import com.nextcloud.client.network.ConnectivityService
+import com.owncloud.android.MainApp
+import com.owncloud.android.lib.common.OwnCloudClientFactory
+import com.owncloud.android.lib.common.accounts.AccountUtils
+import io.mockk.every
+import io.mockk.mockk
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.IOException
+import java.io.InputStream
+import java.net.InetAddress
+import java.net.ServerSocket
+import java.net.Socket
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.concurrent.thread
+
+/**
+ * Types queries into the unified search against a local server with many slow search providers, counting the
+ * requests per typed query.
+ */
+class UnifiedSearchPipelineIT {
+
+    companion object {
+        private const val PROVIDERS = 16
+        private const val THREADS = 4
+        private const val LATENCY_MS = 200L
+        private const val KEY_DELAY_MS = 50L
+        private const val TIMEOUT_MS = 10000L
+        private const val PROVIDERS_PATH = "/ocs/v2.php/search/providers"
+        private const val META = "\"meta\":{\"status\":\"ok\",\"statuscode\":200,\"message\":\"OK\"}"
+    }
+
+    private lateinit var context: Context
+    private lateinit var server: ServerSocket
+    private lateinit var account: Account
+    private lateinit var sut: UnifiedSearchViewModel
+    private val requests = ConcurrentHashMap<String, AtomicInteger>()
+
+    @Before
+    fun setUp() {
+        context = InstrumentationRegistry.getInstrumentation().targetContext
+        server = ServerSocket(0, 0, InetAddress.getLoopbackAddress())
+        thread(isDaemon = true) {
+            while (!server.isClosed) {
+                val socket = try {
+                    server.accept()
+                } catch (ex: IOException) {
+                    break
+                }
+                thread(isDaemon = true) { serve(socket) }
+            }
+        }
+
+        val baseUrl = "http://127.0.0.1:${server.localPort}"
+        account = Account("search@$baseUrl", MainApp.getAccountType(context))
+        val platformAccountManager = AccountManager.get(context)
+        platformAccountManager.addAccountExplicitly(account, "password", null)
+        platformAccountManager.setUserData(account, AccountUtils.Constants.KEY_OC_BASE_URL, baseUrl)
+        platformAccountManager.setUserData(account, AccountUtils.Constants.KEY_USER_ID, "search")
+        val user = UserAccountManagerImpl.fromContext(context).getUser(account.name).get()
+
+        val clientFactory = mockk<ClientFactory>()
+        every { clientFactory.createNextcloudClient(any()) } answers {
+            OwnCloudClientFactory.createNextcloudClient(firstArg<User>(), context)
+        }
+        val currentAccountProvider = mockk<CurrentAccountProvider>()
+        every { currentAccountProvider.user } returns user
+        val connectivityService = mockk<ConnectivityService>()
+        every { connectivityService.connectivity } returns Connectivity.CONNECTED_WIFI
+
+        val asyncRunner = ThreadPoolAsyncRunner(Handler(Looper.getMainLooper()), THREADS)
+        InstrumentationRegistry.getInstrumentation().runOnMainSync {
+            sut = UnifiedSearchViewModel(context.applicationContext as Application)
+            sut.setConnectivityService(connectivityService)
+            sut.setRepository(UnifiedSearchRemoteRepository(clientFactory, currentAccountProvider, asyncRunner))
+        }
+    }
+
+    @After
+    fun tearDown() {
+        server.close()
+        AccountManager.get(context).removeAccountExplicitly(account)
+    }
+
+    private fun serve(socket: Socket) {
+        socket.use {
+            val input = it.getInputStream().buffered()
+            val output = it.getOutputStream()
+            while (true) {
+                val path = readRequestPath(input) ?: break
+                val body = if (path.startsWith("$PROVIDERS_PATH/")) {
+                    val uri = Uri.parse(path)
+                    val term = uri.getQueryParameter("term").orEmpty()
+                    requests.getOrPut(term) { AtomicInteger() }.incrementAndGet()
+                    Thread.sleep(LATENCY_MS)
+                    searchResult(uri.pathSegments[uri.pathSegments.size - 2], term)
+                } else {
+                    requests.getOrPut(PROVIDERS_PATH) { AtomicInteger() }.incrementAndGet()
+                    providers()
+                }
+                val bytes = body.toByteArray()
+                output.write(
+                    "HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: ${bytes.size}\r\n\r\n"
+                        .toByteArray()
+                )
+                output.write(bytes)
+                output.flush()
+            }
+        }
+    }
+
+    /**
+     * @return path of the request line, null if the connection is closed
+     */
+    private fun readRequestPath(input: InputStream): String? {
+        var line = StringBuilder()
+        var requestLine: String? = null
+        while (true) {
+            when (val c = input.read()) {
+                -1 -> return null
+                '\r'.code -> continue
+                '\n'.code -> {
+                    if (line.isEmpty()) {
+                        return requestLine?.split(' ')?.getOrNull(1)
+                    }
+                    if (requestLine == null) {
+                        requestLine = line.toString()
+                    }
+                    line = StringBuilder()
+                }
+                else -> line.append(c.toChar())
+            }
+        }
+    }
+
+    private fun providers(): String {
+        val providers = List(PROVIDERS) { "{\"id\":\"provider$it\",\"name\":\"Provider $it\",\"order\":$it}" }
+        return "{\"ocs\":{$META,\"data\":[${providers.joinToString(",")}]}}"
+    }
+
+    private fun searchResult(provider: String, term: String): String {
+        val entry = "{\"thumbnailUrl\":\"\",\"title\":\"$term in $provider\",\"subline\":\"\"," +
+            "\"resourceUrl\":\"/apps/$provider\",\"icon\":\"\",\"rounded\":false,\"attributes\":{}}"
+        return "{\"ocs\":{$META,\"data\":{\"name\":\"$provider\",\"isPaginated\":false,\"entries\":[$entry]}}}"
+    }
+
+    private fun type(text: String) {
+        val typed = sut.query.value.orEmpty()
+        for (end in 1..text.length) {
+            val query = typed + text.substring(0, end)
+            InstrumentationRegistry.getInstrumentation().runOnMainSync { sut.onQueryTextChanged(query) }
+            Thread.sleep(KEY_DELAY_MS)
+        }
+    }
+
+    private fun requestCount(term: String): Int = requests[term]?.get() ?: 0
+
+    private fun awaitResults() {
+        val start = System.currentTimeMillis()
+        while (sut.isLoading.value == true || sut.searchResults.value.isNullOrEmpty()) {
+            assertTrue("timeout", System.currentTimeMillis() - start < TIMEOUT_MS)
+            Thread.sleep(1)
+        }
+    }
+
+    @Test
+    fun typingSendsOnlyLastQuery() {
+        type("budget")
+        awaitResults()
+
+        assertEquals(1, requestCount(PROVIDERS_PATH))
+        assertEquals(PROVIDERS, requestCount("budget"))
+        listOf("b", "bu", "bud", "budg", "budge").forEach { assertEquals(it, 0, requestCount(it)) }
+        assertEquals(PROVIDERS, sut.searchResults.value?.size)
+    }
+
+    @Test
+    fun typingCancelsSupersededQuery() {
+        type("budget")
+        // query started, but most providers are still queued
+        val start = System.currentTimeMillis()
+        while (requestCount("budget") == 0) {
+            assertTrue("timeout", System.currentTimeMillis() - start < TIMEOUT_MS)
+            Thread.sleep(1)
+        }
+        type(" plan")
+        awaitResults()
+
+        assertTrue("${requestCount("budget")} requests", requestCount("budget") < PROVIDERS)
+        assertEquals(PROVIDERS, requestCount("budget plan"))
+        assertTrue(sut.searchResults.value.orEmpty().all { it.entries.single().title.startsWith("budget plan") })
+    }
+
+    @Test
+    fun repeatedQueryIsAnsweredFromCache() {
+        type("budget")
+        awaitResults()
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync { sut.initialQuery() }
+        awaitResults()
+
+        assertEquals(PROVIDERS, requestCount("budget"))
+        assertEquals(PROVIDERS, sut.searchResults.value?.size)
+    }
+}
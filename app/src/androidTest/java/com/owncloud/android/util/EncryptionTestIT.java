@@ -21,6 +21,7 @@
 
 package com.owncloud.android.util;
 
+import android.os.SystemClock;
 import android.text.TextUtils;
 
 import com.google.gson.JsonElement;
@@ -45,6 +46,7 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.MessageDigest;
@@ -55,6 +57,8 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.crypto.BadPaddingException;
 
@@ -308,6 +312,95 @@ public class EncryptionTestIT {
         assertTrue(cryptFile("ia7OEEEyXMoRa1QWQk8r", "78f42172166f9dc8fd1a7156b1753353", key, iv, authTag));
     }
 
+    @Test
+    public void testStreamingCryptFileMatchesInMemory() throws Exception {
+        byte[] key = decodeStringToBase64Bytes("WANM0gRv+DhaexIsI0T3Lg==");
+        byte[] iv = decodeStringToBase64Bytes("gKm3n+mJzeY26q4OfuZEqg==");
+        String md5 = "78f42172166f9dc8fd1a7156b1753353";
+        File file = getFile("ia7OEEEyXMoRa1QWQk8r");
+
+        EncryptedFile inMemory = encryptFile(file, key, iv);
+
+        File encryptedTempFile = File.createTempFile("file", "enc");
+        String authenticationTag = encryptFile(file, encryptedTempFile, key, iv);
+
+        assertEquals(inMemory.authenticationTag, authenticationTag);
+        assertTrue(Arrays.equals(inMemory.encryptedBytes, FileUtils.readFileToByteArray(encryptedTempFile)));
+
+        File decryptedFile = File.createTempFile("file", "dec");
+        decryptFile(encryptedTempFile, decryptedFile, key, iv, decodeStringToBase64Bytes(authenticationTag));
+
+        assertEquals(md5, getMD5Sum(decryptedFile));
+    }
+
+    /**
+     * Encrypts and decrypts a file larger than the heap while sampling the used heap, which must stay far below the
+     * file size.
+     */
+    @Test
+    public void testStreamingCryptFileLargerThanHeap() throws Exception {
+        byte[] key = generateKey();
+        byte[] iv = randomBytes(ivLength);
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        long size = maxHeap + 16 * 1024 * 1024;
+
+        File file = File.createTempFile("large", "file");
+        File encryptedFile = File.createTempFile("large", "enc");
+        File decryptedFile = File.createTempFile("large", "dec");
+        try {
+            // sparse file, reads zeros without taking disk space
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                randomAccessFile.setLength(size);
+            }
+
+            Runtime runtime = Runtime.getRuntime();
+            runtime.gc();
+            long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+            AtomicLong maxUsed = new AtomicLong(usedBefore);
+            AtomicBoolean running = new AtomicBoolean(true);
+            Thread sampler = new Thread(() -> {
+                while (running.get()) {
+                    long used = runtime.totalMemory() - runtime.freeMemory();
+                    if (used > maxUsed.get()) {
+                        maxUsed.set(used);
+                    }
+                    SystemClock.sleep(10);
+                }
+            });
+            sampler.start();
+
+            String authenticationTag;
+            try {
+                authenticationTag = encryptFile(file, encryptedFile, key, iv);
+                decryptFile(encryptedFile, decryptedFile, key, iv, decodeStringToBase64Bytes(authenticationTag));
+            } finally {
+                running.set(false);
+                sampler.join();
+            }
+
+            assertEquals(size + 16, encryptedFile.length());
+            assertEquals(size, decryptedFile.length());
+            assertTrue("heap grew by " + (maxUsed.get() - usedBefore) + " bytes",
+                       maxUsed.get() - usedBefore < maxHeap / 4);
+        } finally {
+            file.delete();
+            encryptedFile.delete();
+            decryptedFile.delete();
+        }
+    }
+
+    @Test(expected = SecurityException.class)
+    public void testStreamingDecryptFileWrongTag() throws Exception {
+        byte[] key = decodeStringToBase64Bytes("WANM0gRv+DhaexIsI0T3Lg==");
+        byte[] iv = decodeStringToBase64Bytes("gKm3n+mJzeY26q4OfuZEqg==");
+        File file = getFile("ia7OEEEyXMoRa1QWQk8r");
+
+        File encryptedTempFile = File.createTempFile("file", "enc");
+        encryptFile(file, encryptedTempFile, key, iv);
+
+        decryptFile(encryptedTempFile, File.createTempFile("file", "dec"), key, iv, randomBytes(16));
+    }
+
     @Test
     public void cryptFileWithMetadata() throws Exception {
         DecryptedFolderMetadata metadata = generateFolderMetadata();
@@ -37,6 +37,7 @@ import com.nextcloud.android.sso.aidl.IInputStreamService;
 import com.nextcloud.android.sso.aidl.NextcloudRequest;
 import com.nextcloud.android.sso.aidl.ParcelFileDescriptorUtil;
 import com.nextcloud.client.account.UserAccountManager;
+import com.nextcloud.client.core.Clock;
 import com.owncloud.android.lib.common.OwnCloudAccount;
 import com.owncloud.android.lib.common.OwnCloudClient;
 import com.owncloud.android.lib.common.OwnCloudClientManager;
@@ -96,15 +97,44 @@ public class InputStreamBinder extends IInputStreamService.Stub {
 
     private static final int HTTP_STATUS_CODE_OK = 200;
     private static final int HTTP_STATUS_CODE_MULTIPLE_CHOICES = 300;
+    private static final int HTTP_STATUS_CODE_UNAUTHORIZED = 401;
 
     private static final char PATH_SEPARATOR = '/';
     private static final int ZERO_LENGTH = 0;
+
+    /**
+     * Apps using SSO send bursts of requests, verified tokens and clients are kept for a short time only, so that
+     * changes to granted tokens and accounts are picked up soon
+     */
+    private static final long CACHE_TIME_TO_LIVE_MILLIS = 60_000;
+    private static final int MAX_CACHED_TOKENS = 32;
+    private static final int MAX_CACHED_CLIENTS = 8;
+
     private Context context;
     private UserAccountManager accountManager;
+    private final ExpiringCache<String, VerifiedToken> verifiedTokens;
+    private final ExpiringCache<String, OwnCloudClient> clients;
+
+    /**
+     * Token verified for a calling app and account
+     */
+    private static final class VerifiedToken {
+        final String packageName;
+        final String hash;
+        final String token;
+
+        VerifiedToken(String packageName, String hash, String token) {
+            this.packageName = packageName;
+            this.hash = hash;
+            this.token = token;
+        }
+    }
 
-    public InputStreamBinder(Context context, UserAccountManager accountManager) {
+    public InputStreamBinder(Context context, UserAccountManager accountManager, Clock clock) {
         this.context = context;
         this.accountManager = accountManager;
+        this.verifiedTokens = new ExpiringCache<>(clock, CACHE_TIME_TO_LIVE_MILLIS, MAX_CACHED_TOKENS);
+        this.clients = new ExpiringCache<>(clock, CACHE_TIME_TO_LIVE_MILLIS, MAX_CACHED_CLIENTS);
     }
 
     public ParcelFileDescriptor performNextcloudRequestV2(ParcelFileDescriptor input) {
@@ -342,9 +372,7 @@ public class InputStreamBinder extends IInputStreamService.Stub {
                                             new IllegalStateException("URL need to start with a /"));
         }
 
-        OwnCloudClientManager ownCloudClientManager = OwnCloudClientManagerFactory.getDefaultSingleton();
-        OwnCloudAccount ocAccount = new OwnCloudAccount(account, context);
-        OwnCloudClient client = ownCloudClientManager.getClientFor(ocAccount, context);
+        OwnCloudClient client = getClient(account);
 
         HttpMethodBase method = buildMethod(request, client.getBaseUri(), requestBodyInputStream);
 
@@ -368,6 +396,10 @@ public class InputStreamBinder extends IInputStreamService.Stub {
 
         client.setFollowRedirects(request.isFollowRedirects());
         int status = client.executeMethod(method);
+        if (status == HTTP_STATUS_CODE_UNAUTHORIZED) {
+            // credentials may have changed
+            clients.remove(account.name);
+        }
 
         // Check if status code is 2xx --> https://en.wikipedia.org/wiki/List_of_HTTP_status_codes#2xx_Success
         if (status >= HTTP_STATUS_CODE_OK && status < HTTP_STATUS_CODE_MULTIPLE_CHOICES) {
@@ -409,9 +441,7 @@ public class InputStreamBinder extends IInputStreamService.Stub {
                                             new IllegalStateException("URL need to start with a /"));
         }
 
-        OwnCloudClientManager ownCloudClientManager = OwnCloudClientManagerFactory.getDefaultSingleton();
-        OwnCloudAccount ocAccount = new OwnCloudAccount(account, context);
-        OwnCloudClient client = ownCloudClientManager.getClientFor(ocAccount, context);
+        OwnCloudClient client = getClient(account);
 
         HttpMethodBase method = buildMethod(request, client.getBaseUri(), requestBodyInputStream);
 
@@ -436,6 +466,10 @@ public class InputStreamBinder extends IInputStreamService.Stub {
 
         client.setFollowRedirects(request.isFollowRedirects());
         int status = client.executeMethod(method);
+        if (status == HTTP_STATUS_CODE_UNAUTHORIZED) {
+            // credentials may have changed
+            clients.remove(account.name);
+        }
 
         // Check if status code is 2xx --> https://en.wikipedia.org/wiki/List_of_HTTP_status_codes#2xx_Success
         if (status >= HTTP_STATUS_CODE_OK && status < HTTP_STATUS_CODE_MULTIPLE_CHOICES) {
@@ -457,13 +491,41 @@ public class InputStreamBinder extends IInputStreamService.Stub {
         }
     }
 
+    private OwnCloudClient getClient(Account account) throws
+        com.owncloud.android.lib.common.accounts.AccountUtils.AccountNotFoundException,
+        OperationCanceledException, AuthenticatorException, IOException {
+        OwnCloudClient client = clients.get(account.name);
+        if (client == null) {
+            OwnCloudClientManager ownCloudClientManager = OwnCloudClientManagerFactory.getDefaultSingleton();
+            OwnCloudAccount ocAccount = new OwnCloudAccount(account, context);
+            client = ownCloudClientManager.getClientFor(ocAccount, context);
+            clients.put(account.name, client);
+        }
+        return client;
+    }
+
     private boolean isValid(NextcloudRequest request) {
-        String callingPackageName = context.getPackageManager().getNameForUid(Binder.getCallingUid());
+        int callingUid = Binder.getCallingUid();
+        String key = callingUid + DELIMITER + request.getAccountName();
+        VerifiedToken verifiedToken = verifiedTokens.get(key);
+
+        String callingPackageName = verifiedToken != null ? verifiedToken.packageName :
+            context.getPackageManager().getNameForUid(callingUid);
 
         SharedPreferences sharedPreferences = context.getSharedPreferences(SSO_SHARED_PREFERENCE,
                                                                            Context.MODE_PRIVATE);
         String hash = sharedPreferences.getString(callingPackageName + DELIMITER + request.getAccountName(), "");
-        return validateToken(hash, request.getToken());
+
+        // hash changes if the token is granted again or revoked
+        if (verifiedToken != null && verifiedToken.hash.equals(hash)) {
+            return isEqual(verifiedToken.token.getBytes(), request.getToken().getBytes());
+        }
+
+        boolean valid = validateToken(hash, request.getToken());
+        if (valid) {
+            verifiedTokens.put(key, new VerifiedToken(callingPackageName, hash, request.getToken()));
+        }
+        return valid;
     }
 
     private boolean validateToken(String hash, String token) {
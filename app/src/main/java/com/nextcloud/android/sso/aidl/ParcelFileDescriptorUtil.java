@@ -28,9 +28,41 @@ import org.apache.commons.httpclient.HttpMethodBase;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public final class ParcelFileDescriptorUtil {
 
+    private static final String THREAD_NAME = "ParcelFileDescriptor Transfer Thread";
+
+    /**
+     * Pipe capacity on Linux, a transfer can fill the pipe with a single write
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 8;
+    private static final int CORE_TRANSFER_THREADS = 2;
+    private static final int MAX_TRANSFER_THREADS = 16;
+    private static final long IDLE_TRANSFER_THREAD_TIMEOUT_SECONDS = 30;
+
+    private static final BlockingQueue<byte[]> BUFFERS = new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS);
+
+    /**
+     * Transfers block until the client app reads the pipe, which it does only after the request returned.
+     * Transfers must therefore never wait for each other: if all pooled threads are busy, the transfer gets
+     * its own thread.
+     */
+    private static final ThreadPoolExecutor TRANSFER_EXECUTOR = new ThreadPoolExecutor(
+        CORE_TRANSFER_THREADS,
+        MAX_TRANSFER_THREADS,
+        IDLE_TRANSFER_THREAD_TIMEOUT_SECONDS,
+        TimeUnit.SECONDS,
+        new SynchronousQueue<>(),
+        ParcelFileDescriptorUtil::newTransferThread,
+        (transfer, executor) -> newTransferThread(transfer).start());
+
     private ParcelFileDescriptorUtil() { }
 
     public static ParcelFileDescriptor pipeFrom(InputStream inputStream,
@@ -41,35 +73,47 @@ public final class ParcelFileDescriptorUtil {
         ParcelFileDescriptor readSide = pipe[0];
         ParcelFileDescriptor writeSide = pipe[1];
 
-        // start the transfer thread
-        new TransferThread(inputStream,
-                           new ParcelFileDescriptor.AutoCloseOutputStream(writeSide),
-                           listener,
-                           method)
-                .start();
+        // start the transfer
+        TRANSFER_EXECUTOR.execute(new Transfer(inputStream,
+                                               new ParcelFileDescriptor.AutoCloseOutputStream(writeSide),
+                                               listener,
+                                               method));
 
         return readSide;
     }
 
-    public static class TransferThread extends Thread {
-        private static final String TAG = TransferThread.class.getCanonicalName();
+    private static Thread newTransferThread(Runnable transfer) {
+        Thread thread = new Thread(transfer, THREAD_NAME);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static byte[] obtainBuffer() {
+        byte[] buffer = BUFFERS.poll();
+        return buffer != null ? buffer : new byte[BUFFER_SIZE];
+    }
+
+    private static void recycleBuffer(byte[] buffer) {
+        BUFFERS.offer(buffer);
+    }
+
+    static final class Transfer implements Runnable {
+        private static final String TAG = Transfer.class.getCanonicalName();
         private final InputStream inputStream;
         private final OutputStream outputStream;
         private final IThreadListener threadListener;
         private final HttpMethodBase httpMethod;
 
-        TransferThread(InputStream in, OutputStream out, IThreadListener listener, HttpMethodBase method) {
-            super("ParcelFileDescriptor Transfer Thread");
+        Transfer(InputStream in, OutputStream out, IThreadListener listener, HttpMethodBase method) {
             inputStream = in;
             outputStream = out;
             threadListener = listener;
             httpMethod = method;
-            setDaemon(true);
         }
 
         @Override
         public void run() {
-            byte[] buf = new byte[1024];
+            byte[] buf = obtainBuffer();
             int len;
 
             try {
@@ -80,6 +124,7 @@ public final class ParcelFileDescriptorUtil {
             } catch (IOException e) {
                 Log_OC.e(TAG, "writing failed: " + e.getMessage());
             } finally {
+                recycleBuffer(buf);
                 try {
                     inputStream.close();
                 } catch (IOException e) {
@@ -92,7 +137,7 @@ public final class ParcelFileDescriptorUtil {
                 }
             }
             if (threadListener != null) {
-                threadListener.onThreadFinished(this);
+                threadListener.onThreadFinished(Thread.currentThread());
             }
 
             if (httpMethod != null) {
@@ -32,6 +32,7 @@ import com.nextcloud.client.account.User
 import com.nextcloud.client.account.UserAccountManager
 import com.nextcloud.client.etm.pages.EtmAccountsFragment
 import com.nextcloud.client.etm.pages.EtmBackgroundJobsFragment
+import com.nextcloud.client.etm.pages.EtmCachesFragment
 import com.nextcloud.client.etm.pages.EtmFileTransferFragment
 import com.nextcloud.client.etm.pages.EtmMigrations
 import com.nextcloud.client.etm.pages.EtmPreferencesFragment
@@ -42,7 +43,9 @@ import com.nextcloud.client.migrations.MigrationInfo
 import com.nextcloud.client.migrations.MigrationsDb
 import com.nextcloud.client.migrations.MigrationsManager
 import com.owncloud.android.R
+import com.owncloud.android.datamodel.ThumbnailsCacheManager
 import com.owncloud.android.lib.common.accounts.AccountUtils
+import com.owncloud.android.utils.EncryptionUtils
 import javax.inject.Inject
 
 @Suppress("LongParameterList") // Dependencies Injection
@@ -107,6 +110,11 @@ class EtmViewModel @Inject constructor(
             iconRes = R.drawable.ic_cloud_download,
             titleRes = R.string.etm_transfer,
             pageClass = EtmFileTransferFragment::class
+        ),
+        EtmMenuEntry(
+            iconRes = R.drawable.ic_image_outline,
+            titleRes = R.string.etm_caches,
+            pageClass = EtmCachesFragment::class
         )
     )
     val transferManagerConnection = TransferManagerConnection(context, accountManager.user)
@@ -144,6 +152,15 @@ class EtmViewModel @Inject constructor(
         return migrationsDb.lastMigratedVersion
     }
 
+    val cacheStatistics: Map<String, String> get() {
+        return mapOf(
+            "Thumbnail memory cache" to ThumbnailsCacheManager.getMemoryCache().toString(),
+            "Thumbnail disk cache" to (ThumbnailsCacheManager.getDiskCache()?.toString() ?: "not opened"),
+            "Thumbnail loader" to ThumbnailsCacheManager.getThumbnailLoader().toString(),
+            "Encrypted folder metadata cache" to EncryptionUtils.getFolderMetadataCache(context).toString()
+        )
+    }
+
     init {
         (currentPage as MutableLiveData).apply {
             value = null
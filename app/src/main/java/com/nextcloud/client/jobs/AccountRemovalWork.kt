@@ -118,6 +118,7 @@ class AccountRemovalWork(
         arbitraryDataProvider.deleteKeyForAccount(user.accountName, EncryptionUtils.PRIVATE_KEY)
         arbitraryDataProvider.deleteKeyForAccount(user.accountName, EncryptionUtils.PUBLIC_KEY)
         arbitraryDataProvider.deleteKeyForAccount(user.accountName, EncryptionUtils.MNEMONIC)
+        EncryptionUtils.clearCachedKeysAndMetadata(context)
 
         // unset default account, if needed
         if (preferences.currentAccountName.equals(user.accountName)) {
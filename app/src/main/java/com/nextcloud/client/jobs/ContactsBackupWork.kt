@@ -25,7 +25,6 @@ import android.content.Context
 import android.content.Intent
 import android.content.ServiceConnection
 import android.content.res.Resources
-import android.database.Cursor
 import android.net.Uri
 import android.os.IBinder
 import android.provider.ContactsContract
@@ -55,7 +54,6 @@ import java.io.FileWriter
 import java.io.IOException
 import java.io.InputStream
 import java.io.InputStreamReader
-import java.util.ArrayList
 import java.util.Calendar
 
 @Suppress("LongParameterList") // legacy code
@@ -74,6 +72,9 @@ class ContactsBackupWork(
         const val KEY_FORCE = "force"
         const val JOB_INTERVAL_MS: Long = 24L * 60L * 60L * 1000L
         const val BUFFER_SIZE = 1024
+        const val PREFERENCE_CONTACTS_BACKUP_HASH = "PREFERENCE_CONTACTS_BACKUP_HASH"
+        const val PREFERENCE_CONTACTS_BACKUP_PATH = "PREFERENCE_CONTACTS_BACKUP_PATH"
+        private const val VCARD_CACHE_FOLDER = "contacts_backup"
     }
 
     private var operationsServiceConnection: OperationsServiceConnection? = null
@@ -99,19 +100,21 @@ class ContactsBackupWork(
             Log_OC.d(TAG, "start contacts backup job")
             val backupFolder: String = resources.getString(R.string.contacts_backup_folder) + OCFile.PATH_SEPARATOR
             val daysToExpire: Int = applicationContext.getResources().getInteger(R.integer.contacts_backup_expire)
-            backupContact(user, backupFolder)
-            // bind to Operations Service
-            operationsServiceConnection = OperationsServiceConnection(
-                this,
-                daysToExpire,
-                backupFolder,
-                user
-            )
-            applicationContext.bindService(
-                Intent(applicationContext, OperationsService::class.java),
-                operationsServiceConnection as OperationsServiceConnection,
-                OperationsService.BIND_AUTO_CREATE
-            )
+            // without a new backup, expiring would eventually remove the last one
+            if (backupContact(user, backupFolder, force)) {
+                // bind to Operations Service
+                operationsServiceConnection = OperationsServiceConnection(
+                    this,
+                    daysToExpire,
+                    backupFolder,
+                    user
+                )
+                applicationContext.bindService(
+                    Intent(applicationContext, OperationsService::class.java),
+                    operationsServiceConnection as OperationsServiceConnection,
+                    OperationsService.BIND_AUTO_CREATE
+                )
+            }
             // store execution date
             arbitraryDataProvider.storeOrUpdateKeyValue(
                 user.accountName,
@@ -124,35 +127,44 @@ class ContactsBackupWork(
         return Result.success()
     }
 
-    private fun backupContact(user: User, backupFolder: String) {
-        val vCard = ArrayList<String>()
-        val cursor = contentResolver.query(
-            ContactsContract.Contacts.CONTENT_URI,
-            null,
-            null,
-            null,
-            null
+    /**
+     * @return false if the contacts did not change since the last backup, which is still stored, so that no backup
+     * was uploaded
+     */
+    private fun backupContact(user: User, backupFolder: String, force: Boolean): Boolean {
+        val start = System.currentTimeMillis()
+        val cacheFile = File(
+            File(applicationContext.noBackupFilesDir, VCARD_CACHE_FOLDER),
+            Uri.encode(user.accountName) + ".json"
         )
-        if (cursor != null && cursor.count > 0) {
-            cursor.moveToFirst()
-            for (i in 0 until cursor.count) {
-                vCard.add(getContactFromCursor(cursor))
-                cursor.moveToNext()
-            }
+        val export = ContactsExport(ContactsProviderSource(), cacheFile).export()
+        Log_OC.d(
+            TAG,
+            "Exported ${export.exportedContacts} contacts, reused ${export.reusedContacts} unchanged ones in " +
+                "${System.currentTimeMillis() - start} ms"
+        )
+
+        val lastBackupPath = arbitraryDataProvider.getValue(user, PREFERENCE_CONTACTS_BACKUP_PATH)
+        if (!force &&
+            export.hash == arbitraryDataProvider.getValue(user, PREFERENCE_CONTACTS_BACKUP_HASH) &&
+            FileDataStorageManager(user, contentResolver).getFileByPath(lastBackupPath) != null
+        ) {
+            Log_OC.d(TAG, "Contacts unchanged since backup $lastBackupPath")
+            return false
         }
+
         val filename = DateFormat.format("yyyy-MM-dd_HH-mm-ss", Calendar.getInstance()).toString() + ".vcf"
         Log_OC.d(TAG, "Storing: $filename")
         val file = File(applicationContext.getCacheDir(), filename)
         var fw: FileWriter? = null
         try {
             fw = FileWriter(file)
-            for (card in vCard) {
+            for (card in export.vCards) {
                 fw.write(card)
             }
         } catch (e: IOException) {
             Log_OC.d(TAG, "Error ", e)
         } finally {
-            cursor?.close()
             if (fw != null) {
                 try {
                     fw.close()
@@ -174,6 +186,14 @@ class ContactsBackupWork(
 
         val connection = TransferManagerConnection(applicationContext, user)
         connection.enqueue(request)
+
+        arbitraryDataProvider.storeOrUpdateKeyValue(user.accountName, PREFERENCE_CONTACTS_BACKUP_HASH, export.hash)
+        arbitraryDataProvider.storeOrUpdateKeyValue(
+            user.accountName,
+            PREFERENCE_CONTACTS_BACKUP_PATH,
+            backupFolder + file.name
+        )
+        return true
     }
 
     private fun expireFiles(daysToExpire: Int, backupFolderString: String, user: User) { // -1 disables expiration
@@ -208,11 +228,56 @@ class ContactsBackupWork(
         }
     }
 
+    /**
+     * Reads contacts from the contacts provider
+     */
+    private inner class ContactsProviderSource : ContactsExport.Source {
+        override fun getContacts(): List<ContactsExport.Contact> {
+            val versions = HashMap<Long, StringBuilder>()
+            contentResolver.query(
+                ContactsContract.RawContacts.CONTENT_URI,
+                arrayOf(
+                    ContactsContract.RawContacts._ID,
+                    ContactsContract.RawContacts.CONTACT_ID,
+                    ContactsContract.RawContacts.VERSION
+                ),
+                ContactsContract.RawContacts.DELETED + " = 0",
+                null,
+                ContactsContract.RawContacts._ID
+            )?.use { cursor ->
+                val idIndex = cursor.getColumnIndexOrThrow(ContactsContract.RawContacts._ID)
+                val contactIdIndex = cursor.getColumnIndexOrThrow(ContactsContract.RawContacts.CONTACT_ID)
+                val versionIndex = cursor.getColumnIndexOrThrow(ContactsContract.RawContacts.VERSION)
+                while (cursor.moveToNext()) {
+                    versions.getOrPut(cursor.getLong(contactIdIndex)) { StringBuilder() }
+                        .append(cursor.getLong(idIndex)).append(':').append(cursor.getLong(versionIndex)).append(';')
+                }
+            }
+
+            val contacts = ArrayList<ContactsExport.Contact>()
+            contentResolver.query(
+                ContactsContract.Contacts.CONTENT_URI,
+                arrayOf(ContactsContract.Contacts._ID, ContactsContract.Contacts.LOOKUP_KEY),
+                null,
+                null,
+                null
+            )?.use { cursor ->
+                val idIndex = cursor.getColumnIndexOrThrow(ContactsContract.Contacts._ID)
+                val lookupKeyIndex = cursor.getColumnIndexOrThrow(ContactsContract.Contacts.LOOKUP_KEY)
+                while (cursor.moveToNext()) {
+                    val version = versions[cursor.getLong(idIndex)]?.toString() ?: ""
+                    contacts.add(ContactsExport.Contact(cursor.getString(lookupKeyIndex), version))
+                }
+            }
+            return contacts
+        }
+
+        override fun getVCard(lookupKey: String): String? = getContact(lookupKey)
+    }
+
     @Suppress("NestedBlockDepth")
-    private fun getContactFromCursor(cursor: Cursor): String {
-        val lookupKey = cursor.getString(cursor.getColumnIndexOrThrow(ContactsContract.Contacts.LOOKUP_KEY))
+    private fun getContact(lookupKey: String): String? {
         val uri = Uri.withAppendedPath(ContactsContract.Contacts.CONTENT_VCARD_URI, lookupKey)
-        var vCard = ""
         var inputStream: InputStream? = null
         var inputStreamReader: InputStreamReader? = null
         try {
@@ -230,7 +295,7 @@ class ContactsBackupWork(
                     }
                 }
             }
-            vCard = stringBuilder.toString()
+            val vCard = stringBuilder.toString()
             // bump to vCard 3.0 format (min version supported by server) since Android OS exports to 2.1
             return Ezvcard.write(Ezvcard.parse(vCard).all()).version(VCardVersion.V3_0).go()
         } catch (e: IOException) {
@@ -243,7 +308,7 @@ class ContactsBackupWork(
                 Log_OC.e(TAG, "failed to close stream")
             }
         }
-        return vCard
+        return null
     }
 
     /**
@@ -0,0 +1,131 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.client.jobs
+
+import com.google.gson.Gson
+import com.google.gson.JsonIOException
+import com.google.gson.JsonParseException
+import com.google.gson.reflect.TypeToken
+import com.owncloud.android.lib.common.utils.Log_OC
+import java.io.File
+import java.io.IOException
+import java.security.MessageDigest
+
+/**
+ * Exports all contacts as vCards, reusing the vCards of the last export for unchanged contacts.
+ *
+ * A contact is unchanged if it consists of the same raw contacts with the same
+ * [android.provider.ContactsContract.RawContacts.VERSION], which the contacts provider increments on every change
+ * of a raw contact or its data. vCards are cached by lookup key in [cacheFile] together with that version.
+ */
+class ContactsExport(private val source: Source, private val cacheFile: File) {
+
+    companion object {
+        private val TAG = ContactsExport::class.java.simpleName
+        private const val HASH_ALGORITHM = "SHA-256"
+        private val CACHE_TYPE = object : TypeToken<Map<String, CachedVCard>>() {}.type
+    }
+
+    /**
+     * @param version versions of all raw contacts of the contact, changes with any of them
+     */
+    data class Contact(val lookupKey: String, val version: String)
+
+    interface Source {
+        fun getContacts(): List<Contact>
+
+        /**
+         * @return vCard 3.0 of the contact, null if it could not be read
+         */
+        fun getVCard(lookupKey: String): String?
+    }
+
+    /**
+     * @param hash hash of all vCards, changes with any exported contact
+     */
+    class Result(val vCards: List<String>, val hash: String, val exportedContacts: Int, val reusedContacts: Int)
+
+    private class CachedVCard(val version: String, val vCard: String)
+
+    fun export(): Result {
+        val cache = readCache()
+        val updatedCache = LinkedHashMap<String, CachedVCard>()
+        val vCards = ArrayList<String>()
+        val digest = MessageDigest.getInstance(HASH_ALGORITHM)
+        var exportedContacts = 0
+        var reusedContacts = 0
+
+        for (contact in source.getContacts()) {
+            val cached = cache[contact.lookupKey]
+            val vCard = if (cached != null && cached.version == contact.version) {
+                reusedContacts++
+                cached.vCard
+            } else {
+                exportedContacts++
+                // not cached, so that it is read again by the next export
+                source.getVCard(contact.lookupKey) ?: continue
+            }
+            updatedCache[contact.lookupKey] = CachedVCard(contact.version, vCard)
+            vCards.add(vCard)
+            digest.update(vCard.toByteArray(Charsets.UTF_8))
+        }
+
+        if (exportedContacts > 0 || updatedCache.size != cache.size) {
+            writeCache(updatedCache)
+        }
+        val hash = digest.digest().joinToString("") { String.format("%02x", it) }
+        return Result(vCards, hash, exportedContacts, reusedContacts)
+    }
+
+    private fun readCache(): Map<String, CachedVCard> {
+        if (!cacheFile.exists()) {
+            return emptyMap()
+        }
+        return try {
+            cacheFile.reader(Charsets.UTF_8).use { reader ->
+                Gson().fromJson<Map<String, CachedVCard>>(reader, CACHE_TYPE)
+            } ?: emptyMap()
+        } catch (e: IOException) {
+            Log_OC.w(TAG, "Could not read cached vCards: " + e.message)
+            emptyMap()
+        } catch (e: JsonParseException) {
+            Log_OC.w(TAG, "Could not parse cached vCards: " + e.message)
+            emptyMap()
+        }
+    }
+
+    private fun writeCache(cache: Map<String, CachedVCard>) {
+        val tmpFile = File(cacheFile.parentFile, cacheFile.name + ".tmp")
+        try {
+            cacheFile.parentFile?.mkdirs()
+            tmpFile.writer(Charsets.UTF_8).use { writer -> Gson().toJson(cache, writer) }
+        } catch (e: IOException) {
+            Log_OC.w(TAG, "Could not write cached vCards: " + e.message)
+            tmpFile.delete()
+            return
+        } catch (e: JsonIOException) {
+            Log_OC.w(TAG, "Could not write cached vCards: " + e.message)
+            tmpFile.delete()
+            return
+        }
+        if (!tmpFile.renameTo(cacheFile)) {
+            tmpFile.delete()
+        }
+    }
+}
@@ -95,7 +95,8 @@ class FilesSyncWork(
             connectivityService,
             powerManagementService
         )
-        FilesSyncHelper.insertAllDBEntries(preferences, clock, skipCustom)
+        val indexingResult = FilesSyncHelper.insertAllDBEntries(preferences, clock, skipCustom)
+        Log_OC.d(TAG, "Indexed ${indexingResult.scannedFiles} files, ${indexingResult.changedFiles} changed")
         // Create all the providers we'll needq
         val filesystemDataProvider = FilesystemDataProvider(contentResolver)
         val syncedFolderProvider = SyncedFolderProvider(contentResolver, preferences, clock)
@@ -0,0 +1,180 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.client.jobs
+
+import com.owncloud.android.datamodel.OCFile
+import com.owncloud.android.lib.common.utils.Log_OC
+import com.owncloud.android.syncadapter.FolderCrawler
+import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Synchronizes the downloaded files of an account with the server.
+ *
+ * Folders are compared by etag: if the etag of a folder on the server equals the one seen by the last complete run,
+ * nothing changed in its whole tree and it is skipped. Changed folders are listed with depth 1, up to [concurrency]
+ * at a time, and the etags of their files and sub folders are compared in memory against the stored ones. Only
+ * changed files are synchronized and only changed sub folders are listed next.
+ *
+ * Etags seen on the server are stored once the whole tree is synchronized, so that a failed or cancelled run is
+ * repeated by the next one.
+ */
+class OfflineSyncEngine(
+    private val concurrency: Int,
+    private val server: Server,
+    private val storage: Storage,
+    private val cancellation: FolderCrawler.Cancellation
+) {
+
+    companion object {
+        private val TAG = OfflineSyncEngine::class.java.simpleName
+    }
+
+    interface Server {
+        /**
+         * Lists a folder with depth 1. Called concurrently.
+         *
+         * @return the folder followed by its children, null if the folder does not exist anymore
+         */
+        @Throws(IOException::class)
+        fun list(remotePath: String): List<OCFile>?
+
+        /**
+         * Synchronizes a changed file. Called concurrently.
+         *
+         * @param serverFile file as listed on the server, null if it does not exist anymore
+         */
+        fun synchronize(localFile: OCFile, serverFile: OCFile?)
+    }
+
+    interface Storage {
+        fun getFolder(remotePath: String): OCFile?
+
+        fun getFolderContent(folder: OCFile): List<OCFile>
+
+        /**
+         * @return true if the folder or one of its sub folders contains downloaded files
+         */
+        fun hasLocalContent(folder: OCFile): Boolean
+
+        fun isDownloaded(file: OCFile): Boolean
+
+        fun isChangedLocally(file: OCFile): Boolean
+
+        fun removeFolder(folder: OCFile)
+
+        /**
+         * @param etagsOnServer etags seen on the server by file id
+         */
+        fun saveEtagsOnServer(etagsOnServer: Map<Long, String>)
+    }
+
+    data class Result(
+        val complete: Boolean,
+        val listings: Int,
+        val synchronizedFiles: Int,
+        val unchangedFiles: Int
+    )
+
+    private inner class Run : FolderCrawler.Visitor<OCFile> {
+        val etagsOnServer = ConcurrentHashMap<Long, String>()
+        val failed = AtomicBoolean()
+        val listings = AtomicInteger()
+        val synchronizedFiles = AtomicInteger()
+        val unchangedFiles = AtomicInteger()
+
+        override fun visit(folder: OCFile): List<OCFile>? {
+            val listing = try {
+                listings.incrementAndGet()
+                server.list(folder.remotePath)
+            } catch (e: IOException) {
+                Log_OC.e(TAG, "Listing ${folder.remotePath} failed", e)
+                failed.set(true)
+                return null
+            }
+
+            if (listing == null) {
+                storage.removeFolder(folder)
+                return null
+            }
+
+            val serverFolder = listing.firstOrNull() ?: return null
+            if (serverFolder.etag == folder.etagOnServer) {
+                return null
+            }
+
+            val serverFiles = listing.drop(1).associateBy { it.remotePath }
+            val changedFolders = ArrayList<OCFile>()
+            for (file in storage.getFolderContent(folder)) {
+                val serverFile = serverFiles[file.remotePath]
+                if (file.isFolder) {
+                    when {
+                        !storage.hasLocalContent(file) -> Unit
+                        serverFile == null -> storage.removeFolder(file)
+                        serverFile.etag != file.etagOnServer -> changedFolders.add(file)
+                    }
+                } else if (storage.isDownloaded(file)) {
+                    if (isChanged(file, serverFile)) {
+                        server.synchronize(file, serverFile)
+                        synchronizedFiles.incrementAndGet()
+                    } else {
+                        unchangedFiles.incrementAndGet()
+                    }
+                }
+            }
+
+            etagsOnServer[folder.fileId] = serverFolder.etag
+            return changedFolders
+        }
+
+        private fun isChanged(file: OCFile, serverFile: OCFile?): Boolean {
+            // files without etag are downloaded by old versions, leave the decision to the synchronization
+            return serverFile == null ||
+                file.etag.isNullOrEmpty() ||
+                serverFile.etag != file.etag ||
+                storage.isChangedLocally(file)
+        }
+
+        override fun hasPriority(folder: OCFile): Boolean = false
+    }
+
+    /**
+     * Synchronizes the tree below the given folder. Blocks until done or cancelled.
+     */
+    fun synchronize(remotePath: String = OCFile.ROOT_PATH): Result {
+        val root = storage.getFolder(remotePath) ?: return Result(false, 0, 0, 0)
+        val run = Run()
+
+        var interrupted = false
+        try {
+            FolderCrawler<OCFile>(concurrency, cancellation).crawl(root, run)
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            interrupted = true
+        }
+
+        val complete = !interrupted && !run.failed.get() && !cancellation.isCancelled
+        if (complete && run.etagsOnServer.isNotEmpty()) {
+            storage.saveEtagsOnServer(run.etagsOnServer)
+        }
+        return Result(complete, run.listings.get(), run.synchronizedFiles.get(), run.unchangedFiles.get())
+    }
+}
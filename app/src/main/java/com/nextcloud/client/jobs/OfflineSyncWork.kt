@@ -33,10 +33,12 @@ import com.owncloud.android.datamodel.FileDataStorageManager
 import com.owncloud.android.datamodel.OCFile
 import com.owncloud.android.lib.common.operations.RemoteOperationResult.ResultCode
 import com.owncloud.android.lib.common.utils.Log_OC
-import com.owncloud.android.lib.resources.files.CheckEtagRemoteOperation
+import com.owncloud.android.lib.resources.files.ReadFolderRemoteOperation
+import com.owncloud.android.lib.resources.files.model.RemoteFile
 import com.owncloud.android.operations.SynchronizeFileOperation
 import com.owncloud.android.utils.FileStorageUtils
 import java.io.File
+import java.io.IOException
 
 @Suppress("LongParameterList") // Legacy code
 class OfflineSyncWork constructor(
@@ -50,10 +52,16 @@ class OfflineSyncWork constructor(
 
     companion object {
         const val TAG = "OfflineSyncJob"
+        private const val MAX_PARALLEL_LISTINGS = 4
     }
 
     override fun doWork(): Result {
         if (!powerManagementService.isPowerSavingEnabled) {
+            if (connectivityService.isInternetWalled) {
+                Log_OC.d(TAG, "No connectivity, skipping sync")
+                return Result.success()
+            }
+
             val users = userAccountManager.allUsers
             for (user in users) {
                 val storageManager = FileDataStorageManager(user, contentResolver)
@@ -61,91 +69,64 @@ class OfflineSyncWork constructor(
                 if (ocRoot.storagePath == null) {
                     break
                 }
-                recursive(File(ocRoot.storagePath), storageManager, user)
+
+                val engine = OfflineSyncEngine(
+                    MAX_PARALLEL_LISTINGS,
+                    RemoteServer(user, storageManager),
+                    LocalStorage(user, storageManager)
+                ) { isStopped }
+                val start = System.currentTimeMillis()
+                val result = engine.synchronize()
+                Log_OC.d(TAG, "${user.accountName}: $result in ${System.currentTimeMillis() - start} ms")
             }
         }
         return Result.success()
     }
 
-    private fun recursive(folder: File, storageManager: FileDataStorageManager, user: User) {
-        val downloadFolder = FileStorageUtils.getSavePath(user.accountName)
-        val folderName = folder.absolutePath.replaceFirst(downloadFolder.toRegex(), "") + OCFile.PATH_SEPARATOR
-        Log_OC.d(TAG, "$folderName: enter")
-        // exit
-        if (folder.listFiles() == null) {
-            return
-        }
+    private inner class RemoteServer(
+        private val user: User,
+        private val storageManager: FileDataStorageManager
+    ) : OfflineSyncEngine.Server {
 
-        val updatedEtag = checkEtagChanged(folderName, storageManager, user) ?: return
-
-        // iterate over downloaded files
-        val files = folder.listFiles { obj: File -> obj.isFile }
-        if (files != null) {
-            for (file in files) {
-                val ocFile = storageManager.getFileByLocalPath(file.path)
-                val synchronizeFileOperation = SynchronizeFileOperation(
-                    ocFile?.remotePath,
-                    user,
-                    true,
-                    context,
-                    storageManager
-                )
-                synchronizeFileOperation.execute(context)
+        override fun list(remotePath: String): List<OCFile>? {
+            val result = ReadFolderRemoteOperation(remotePath).execute(user, context)
+            return when {
+                result.isSuccess -> result.data.map { FileStorageUtils.fillOCFile(it as RemoteFile) }
+                result.code == ResultCode.FILE_NOT_FOUND -> null
+                else -> throw IOException("$remotePath: ${result.logMessage}", result.exception)
             }
         }
-        // recursive into folder
-        val subfolders = folder.listFiles { obj: File -> obj.isDirectory }
-        if (subfolders != null) {
-            for (subfolder in subfolders) {
-                recursive(subfolder, storageManager, user)
-            }
-        }
-        // update eTag
-        @Suppress("TooGenericExceptionCaught") // legacy code
-        try {
-            val ocFolder = storageManager.getFileByPath(folderName)
-            ocFolder.etagOnServer = updatedEtag
-            storageManager.saveFile(ocFolder)
-        } catch (e: Exception) {
-            Log_OC.e(TAG, "Failed to update etag on " + folder.absolutePath, e)
+
+        override fun synchronize(localFile: OCFile, serverFile: OCFile?) {
+            SynchronizeFileOperation(localFile, serverFile, user, true, context, storageManager).execute(context)
         }
     }
 
-    /**
-     * @return new etag if changed, `null` otherwise
-     */
-    private fun checkEtagChanged(folderName: String, storageManager: FileDataStorageManager, user: User): String? {
-        val ocFolder = storageManager.getFileByPath(folderName)
-        Log_OC.d(TAG, folderName + ": currentEtag: " + ocFolder.etag)
-        // check for etag change, if false, skip
-        val checkEtagOperation = CheckEtagRemoteOperation(
-            ocFolder.remotePath,
-            ocFolder.etagOnServer
-        )
-        val result = checkEtagOperation.execute(user, context)
-        return when (result.code) {
-            ResultCode.ETAG_UNCHANGED -> {
-                Log_OC.d(TAG, "$folderName: eTag unchanged")
-                null
-            }
-            ResultCode.FILE_NOT_FOUND -> {
-                val removalResult = storageManager.removeFolder(ocFolder, true, true)
-                if (!removalResult) {
-                    Log_OC.e(TAG, "removal of " + ocFolder.storagePath + " failed: file not found")
-                }
-                null
-            }
-            ResultCode.ETAG_CHANGED -> {
-                Log_OC.d(TAG, "$folderName: eTag changed")
-                result.data[0] as String
-            }
-            else -> if (connectivityService.isInternetWalled) {
-                Log_OC.d(TAG, "No connectivity, skipping sync")
-                null
-            } else {
-                Log_OC.d(TAG, "$folderName: eTag changed")
-                result.data[0] as String
+    private class LocalStorage(
+        private val user: User,
+        private val storageManager: FileDataStorageManager
+    ) : OfflineSyncEngine.Storage {
+
+        override fun getFolder(remotePath: String): OCFile? = storageManager.getFileByPath(remotePath)
+
+        override fun getFolderContent(folder: OCFile): List<OCFile> = storageManager.getFolderContent(folder, false)
+
+        override fun hasLocalContent(folder: OCFile): Boolean =
+            File(FileStorageUtils.getDefaultSavePathFor(user.accountName, folder)).isDirectory
+
+        override fun isDownloaded(file: OCFile): Boolean = file.isDown
+
+        override fun isChangedLocally(file: OCFile): Boolean =
+            file.localModificationTimestamp > file.lastSyncDateForData
+
+        override fun removeFolder(folder: OCFile) {
+            if (!storageManager.removeFolder(folder, true, true)) {
+                Log_OC.e(TAG, "removal of " + folder.storagePath + " failed: file not found")
             }
         }
+
+        override fun saveEtagsOnServer(etagsOnServer: Map<Long, String>) {
+            storageManager.saveEtagsOnServer(etagsOnServer)
+        }
     }
 }
@@ -0,0 +1,89 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.client.logger
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * Bounded, lock-free ring buffer for many producer threads and a single consumer thread.
+ *
+ * Producers never block: if the buffer is full, [offer] fails immediately. Every slot has a sequence number
+ * telling whether it can be written by the producer claiming the given position or read by the consumer,
+ * so producers only compete for the next position.
+ *
+ * [poll] and [isEmpty] must be called from the consumer thread only.
+ */
+internal class BoundedMpscQueue<T : Any>(val capacity: Int) {
+
+    private val items = AtomicReferenceArray<T?>(capacity)
+    private val sequences = AtomicLongArray(capacity)
+    private val tail = AtomicLong()
+    private var head = 0L
+
+    init {
+        require(capacity > 0) { "Capacity must be positive" }
+        for (i in 0 until capacity) {
+            sequences.set(i, i.toLong())
+        }
+    }
+
+    /**
+     * @return false if the queue is full
+     */
+    fun offer(item: T): Boolean {
+        while (true) {
+            val position = tail.get()
+            val index = (position % capacity).toInt()
+            val available = sequences.get(index) - position
+            when {
+                available == 0L && tail.compareAndSet(position, position + 1) -> {
+                    items.lazySet(index, item)
+                    // publishes the item to the consumer
+                    sequences.set(index, position + 1)
+                    return true
+                }
+                // slot is not consumed yet since the last round
+                available < 0L -> return false
+                // another producer claimed the position, try the next one
+                else -> continue
+            }
+        }
+    }
+
+    /**
+     * @return next item or null, if no item is published yet
+     */
+    fun poll(): T? {
+        val index = (head % capacity).toInt()
+        if (sequences.get(index) != head + 1) {
+            return null
+        }
+        val item = items.get(index)
+        items.lazySet(index, null)
+        // frees the slot for the producer of the next round
+        sequences.set(index, head + capacity)
+        head++
+        return item
+    }
+
+    val isEmpty: Boolean
+        get() = sequences.get((head % capacity).toInt()) != head + 1
+}
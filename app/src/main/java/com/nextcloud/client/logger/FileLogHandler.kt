@@ -23,7 +23,10 @@ import java.io.File
 import java.io.FileNotFoundException
 import java.io.FileOutputStream
 import java.io.IOException
-import java.nio.charset.Charset
+import java.nio.ByteBuffer
+import java.nio.CharBuffer
+import java.nio.charset.CharsetEncoder
+import java.nio.charset.CodingErrorAction
 
 /**
  * Very simple log writer with file rotations.
@@ -31,6 +34,9 @@ import java.nio.charset.Charset
  * Files are rotated when writing entry causes log file to exceed it's maximum size.
  * Last entry is not truncated and final log file can exceed max file size, but
  * no further entries will be written to it.
+ *
+ * Entries are encoded into a buffer, which is written to the file when it is full, on [flush] and on [close],
+ * so the log can be kept open between writes.
  */
 internal class FileLogHandler(private val logDir: File, private val logFilename: String, private val maxSize: Long) {
 
@@ -38,9 +44,14 @@ internal class FileLogHandler(private val logDir: File, private val logFilename:
 
     companion object {
         const val ROTATED_LOGS_COUNT = 3
+        private const val BUFFER_SIZE = 16 * 1024
     }
 
     private var writer: FileOutputStream? = null
+    private val buffer: ByteBuffer = ByteBuffer.allocate(BUFFER_SIZE)
+    private val encoder: CharsetEncoder = Charsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE)
     private var size: Long = 0
     private val rotationList = listOf(
         "$logFilename.2",
@@ -61,7 +72,13 @@ internal class FileLogHandler(private val logDir: File, private val logFilename:
 
     val maxLogFilesCount get() = rotationList.size
 
+    /**
+     * Opens the log file, if not opened yet
+     */
     fun open() {
+        if (isOpened) {
+            return
+        }
         try {
             writer = FileOutputStream(logFile, true)
             size = logFile.length()
@@ -72,25 +89,63 @@ internal class FileLogHandler(private val logDir: File, private val logFilename:
         }
     }
 
-    fun write(logEntry: String) {
-        val rawLogEntry = logEntry.toByteArray(Charset.forName("UTF-8"))
-        writer?.write(rawLogEntry)
-        size += rawLogEntry.size
+    fun write(logEntry: CharSequence) {
+        if (writer == null) {
+            return
+        }
+        val chars = CharBuffer.wrap(logEntry)
+        encoder.reset()
+        while (true) {
+            val start = buffer.position()
+            val result = encoder.encode(chars, buffer, true)
+            size += buffer.position() - start
+            if (result.isOverflow) {
+                flush()
+            } else {
+                break
+            }
+        }
         if (size > maxSize) {
             rotateLogs()
         }
     }
 
+    /**
+     * Writes buffered entries to the log file
+     */
+    fun flush() {
+        val stream = writer ?: return
+        if (buffer.position() > 0) {
+            stream.write(buffer.array(), 0, buffer.position())
+            buffer.clear()
+        }
+    }
+
     fun close() {
-        writer?.close()
-        writer = null
-        size = 0L
+        try {
+            flush()
+        } finally {
+            buffer.clear()
+            writer?.close()
+            writer = null
+            size = 0L
+        }
     }
 
     fun deleteAll() {
+        // writes to an opened, deleted file would be lost
+        val reopen = isOpened
+        if (reopen) {
+            close()
+        }
+
         rotationList
             .map { File(logDir, it) }
             .forEach { it.delete() }
+
+        if (reopen) {
+            open()
+        }
     }
 
     fun rotateLogs() {
@@ -117,6 +172,7 @@ internal class FileLogHandler(private val logDir: File, private val logFilename:
         if (rotated < 0) {
             throw IllegalArgumentException("Negative index")
         }
+        flush()
         val allLines = mutableListOf<String>()
         var size = 0L
         for (i in 0..Math.min(rotated, rotationList.size - 1)) {
@@ -132,4 +188,18 @@ internal class FileLogHandler(private val logDir: File, private val logFilename:
         }
         return RawLogs(lines = allLines, logSize = size)
     }
+
+    /**
+     * Opens a snapshot of the log files, reading entries on demand.
+     */
+    fun openSnapshot(rotated: Int = ROTATED_LOGS_COUNT): LogsSnapshot {
+        if (rotated < 0) {
+            throw IllegalArgumentException("Negative index")
+        }
+        flush()
+        val files = (0..Math.min(rotated, rotationList.size - 1))
+            .map { File(logDir, rotationList[it]) }
+            .filter { it.exists() }
+        return LogFilesSnapshot(files)
+    }
 }
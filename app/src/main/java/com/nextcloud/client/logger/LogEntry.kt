@@ -96,7 +96,7 @@ data class LogEntry(val timestamp: Date, val level: Level, val tag: String, val
         return sb.toString()
     }
 
-    private fun format(sb: StringBuilder, dateFormat: SimpleDateFormat) {
+    internal fun format(sb: StringBuilder, dateFormat: SimpleDateFormat) {
         sb.append(dateFormat.format(timestamp))
         sb.append(';')
         sb.append(level.tag)
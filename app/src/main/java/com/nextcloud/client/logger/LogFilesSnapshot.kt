@@ -0,0 +1,142 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.client.logger
+
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.Date
+
+/**
+ * Snapshot of log files, memory-mapped up to their size when the snapshot is created.
+ *
+ * Creating the snapshot only indexes lines looking like log entries, entries are decoded
+ * when accessed. Log files are appended only and mappings outlive renaming or deleting
+ * the file, so the snapshot stays valid when the logger keeps writing.
+ *
+ * @param files log files, oldest first
+ */
+internal class LogFilesSnapshot(files: List<File>) : LogsSnapshot {
+
+    private companion object {
+        const val INITIAL_CAPACITY = 1024
+        const val NEWLINE = '\n'.code.toByte()
+
+        /**
+         * Entry prefix, see [LogEntry.format]; lines are indexed if they have the same separators
+         */
+        const val PREFIX = "1970-01-01T00:00:00.000Z;D;"
+        val PREFIX_SEPARATORS = intArrayOf(4, 7, 10, 13, 16, 19, 23, 24, 26)
+        const val TAG_INDEX = 27
+    }
+
+    private val contents = mutableListOf<ByteBuffer>()
+
+    // line of entry i is in contents[entryFiles[i]], oldest entry first
+    private var entryFiles = ByteArray(INITIAL_CAPACITY)
+    private var entryStarts = IntArray(INITIAL_CAPACITY)
+    private var entryLengths = IntArray(INITIAL_CAPACITY)
+    private var count = 0
+
+    override val logSize: Long
+
+    override val size: Int
+        get() = count
+
+    init {
+        var totalSize = 0L
+        for (file in files) {
+            try {
+                val content = RandomAccessFile(file, "r").use {
+                    it.channel.map(FileChannel.MapMode.READ_ONLY, 0, it.length())
+                }
+                index(content, contents.size)
+                contents.add(content)
+                totalSize += content.limit()
+            } catch (ex: IOException) {
+                // ignore failing file
+            }
+        }
+        logSize = totalSize
+    }
+
+    override fun get(index: Int): LogEntry {
+        val line = readLine(index)
+        return LogEntry.parse(line) ?: LogEntry(Date(0), Level.UNKNOWN, "", line)
+    }
+
+    override fun matches(index: Int, pattern: String): Boolean {
+        val line = readLine(index)
+        val tagEnd = line.indexOf(';', TAG_INDEX)
+        if (tagEnd < 0) {
+            return line.contains(pattern, true)
+        }
+        val tag = line.substring(TAG_INDEX, tagEnd)
+        val message = line.substring(tagEnd + 1).replace("\\n", "\n")
+        return tag.contains(pattern, true) || message.contains(pattern, true)
+    }
+
+    private fun readLine(index: Int): String {
+        if (index < 0 || index >= count) {
+            throw IndexOutOfBoundsException("Index $index, size $count")
+        }
+        val entry = count - 1 - index
+        // duplicate keeps position of the shared buffer untouched, so that entries can be read concurrently
+        val content = contents[entryFiles[entry].toInt()].duplicate()
+        val bytes = ByteArray(entryLengths[entry])
+        content.position(entryStarts[entry])
+        content.get(bytes)
+        return String(bytes, Charsets.UTF_8)
+    }
+
+    private fun index(content: ByteBuffer, file: Int) {
+        val end = content.limit()
+        var lineStart = 0
+        for (i in 0..end) {
+            if (i == end || content.get(i) == NEWLINE) {
+                if (isEntry(content, lineStart, i)) {
+                    add(file, lineStart, i - lineStart)
+                }
+                lineStart = i + 1
+            }
+        }
+    }
+
+    private fun isEntry(content: ByteBuffer, start: Int, end: Int): Boolean {
+        if (end - start <= TAG_INDEX) {
+            return false
+        }
+        return PREFIX_SEPARATORS.all { content.get(start + it) == PREFIX[it].code.toByte() }
+    }
+
+    private fun add(file: Int, start: Int, length: Int) {
+        if (count == entryStarts.size) {
+            val capacity = count * 2
+            entryFiles = entryFiles.copyOf(capacity)
+            entryStarts = entryStarts.copyOf(capacity)
+            entryLengths = entryLengths.copyOf(capacity)
+        }
+        entryFiles[count] = file.toByte()
+        entryStarts[count] = start
+        entryLengths[count] = length
+        count++
+    }
+}
@@ -25,10 +25,16 @@ import com.nextcloud.client.core.Clock
 import java.util.Date
 import java.util.concurrent.BlockingQueue
 import java.util.concurrent.LinkedBlockingQueue
-import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.LockSupport
 
+/**
+ * Log entries are passed to the writer thread through a lock-free ring buffer, so logging never blocks
+ * the calling thread. If the writer cannot keep up and the buffer is full, entries are dropped and counted.
+ *
+ * The log file is kept open by the writer thread and flushed after each batch of entries.
+ */
 @Suppress("TooManyFunctions")
 internal class LoggerImpl(
     private val clock: Clock,
@@ -38,16 +44,25 @@ internal class LoggerImpl(
 ) : Logger, LogsRepository {
 
     data class Load(val onResult: (List<LogEntry>, Long) -> Unit)
+    data class Open(val onResult: (LogsSnapshot) -> Unit)
     class Delete
 
     private val looper = ThreadLoop()
-    private val eventQueue: BlockingQueue<Any> = LinkedBlockingQueue(queueCapacity)
+    private val entryQueue = BoundedMpscQueue<LogEntry>(queueCapacity)
+    private val eventQueue: BlockingQueue<Any> = LinkedBlockingQueue()
 
-    private val processedEvents = mutableListOf<Any>()
     private val otherEvents = mutableListOf<Any>()
     private val missedLogs = AtomicBoolean()
     private val missedLogsCount = AtomicLong()
 
+    @Volatile
+    private var writerThread: Thread? = null
+    private val writerParked = AtomicBoolean()
+
+    // used by writer thread only
+    private val line = StringBuilder()
+    private val dateFormat = LogEntry.buildDateFormat()
+
     override val lostEntries: Boolean
         get() {
             return missedLogs.get()
@@ -94,47 +109,75 @@ internal class LoggerImpl(
 
     override fun load(onLoaded: (entries: List<LogEntry>, totalLogSize: Long) -> Unit) {
         eventQueue.put(Load(onLoaded))
+        wakeUpWriter()
+    }
+
+    override fun open(onOpened: (logs: LogsSnapshot) -> Unit) {
+        eventQueue.put(Open(onOpened))
+        wakeUpWriter()
     }
 
     override fun deleteAll() {
         eventQueue.put(Delete())
+        wakeUpWriter()
     }
 
     private fun enqueue(level: Level, tag: String, message: String) {
-        try {
-            val entry = LogEntry(timestamp = clock.currentDate, level = level, tag = tag, message = message)
-            val enqueued = eventQueue.offer(entry, 1, TimeUnit.SECONDS)
-            if (!enqueued) {
-                missedLogs.set(true)
-                missedLogsCount.incrementAndGet()
+        val entry = LogEntry(timestamp = clock.currentDate, level = level, tag = tag, message = message)
+        if (entryQueue.offer(entry)) {
+            wakeUpWriter()
+        } else {
+            missedLogs.set(true)
+            missedLogsCount.incrementAndGet()
+        }
+    }
+
+    private fun wakeUpWriter() {
+        if (writerParked.get()) {
+            LockSupport.unpark(writerThread)
+        }
+    }
+
+    /**
+     * Parks the writer thread until entries or events are queued.
+     *
+     * Producers check [writerParked] after queueing, so an entry queued after the last check
+     * before parking leaves an unpark permit and the writer does not miss it.
+     */
+    private fun awaitEvents() {
+        if (Thread.interrupted()) {
+            throw InterruptedException()
+        }
+        while (entryQueue.isEmpty && eventQueue.isEmpty()) {
+            writerParked.set(true)
+            if (entryQueue.isEmpty && eventQueue.isEmpty()) {
+                LockSupport.park(this)
+            }
+            writerParked.set(false)
+            if (Thread.interrupted()) {
+                throw InterruptedException()
             }
-        } catch (ex: InterruptedException) {
-            // since interrupted flag is consumed now, we need to re-set the flag so
-            // the caller can continue handling the thread interruption in it's own way
-            Thread.currentThread().interrupt()
         }
     }
 
     private fun eventLoop() {
+        writerThread = Thread.currentThread()
         try {
-            processedEvents.clear()
             otherEvents.clear()
+            awaitEvents()
+            eventQueue.drainTo(otherEvents)
 
-            processedEvents.add(eventQueue.take())
-            eventQueue.drainTo(processedEvents)
-
-            // process all writes in bulk - this is most frequest use case and we can
-            // assume handler must be opened 99.999% of time; anything that is not a log
-            // write should be deferred
+            // process all writes in bulk - this is most frequent use case, so the handler
+            // stays opened; a single batch is limited to the queue capacity, so that
+            // other events are not starved by continuous logging
             handler.open()
-            for (event in processedEvents) {
-                if (event is LogEntry) {
-                    handler.write(event.toString() + "\n")
-                } else {
-                    otherEvents.add(event)
-                }
+            for (i in 0 until entryQueue.capacity) {
+                val entry = entryQueue.poll() ?: break
+                line.setLength(0)
+                entry.format(line, dateFormat)
+                line.append('\n')
+                handler.write(line)
             }
-            handler.close()
 
             // Those events are very sporadic and we don't have to be clever here
             for (event in otherEvents) {
@@ -146,11 +189,18 @@ internal class LoggerImpl(
                             event.onResult(entries, loaded.logSize)
                         }
                     }
+                    is Open -> {
+                        val snapshot = handler.openSnapshot()
+                        mainThreadHandler.post {
+                            event.onResult(snapshot)
+                        }
+                    }
                     is Delete -> handler.deleteAll()
                 }
             }
 
             checkAndLogLostMessages()
+            handler.flush()
         } catch (ex: InterruptedException) {
             handler.close()
             throw ex
@@ -167,8 +217,7 @@ internal class LoggerImpl(
                 tag = "Logger",
                 message = "Logger queue overflow. Approx $lastMissedLogsCount entries lost. You write too much."
             ).toString()
-            handler.write(warning)
-            handler.close()
+            handler.write(warning + "\n")
         }
     }
 }
@@ -20,6 +20,7 @@
 package com.nextcloud.client.logger
 
 typealias OnLogsLoaded = (entries: List<LogEntry>, totalLogSize: Long) -> Unit
+typealias OnLogsOpened = (logs: LogsSnapshot) -> Unit
 
 /**
  * This interface provides safe, read only access to application
@@ -43,6 +44,14 @@ interface LogsRepository {
      */
     fun load(onLoaded: OnLogsLoaded)
 
+    /**
+     * Asynchronously open a snapshot of available logs. Unlike [load], entries are not
+     * loaded into memory, but read on demand, so this should be used to display logs.
+     *
+     * @param onOpened: Callback with logs snapshot; called on main thread
+     */
+    fun open(onOpened: OnLogsOpened)
+
     /**
      * Asynchronously delete logs.
      */
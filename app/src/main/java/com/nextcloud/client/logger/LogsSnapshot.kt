@@ -0,0 +1,52 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.client.logger
+
+/**
+ * Read only view of the logs as they were when the snapshot was taken, newest entry first.
+ *
+ * Entries are parsed only when read, so that large logs can be displayed without loading all of them
+ * into memory. Later writes, rotations or deletions of the log files do not change the snapshot.
+ *
+ * Methods are thread-safe.
+ */
+interface LogsSnapshot {
+
+    /**
+     * Number of entries
+     */
+    val size: Int
+
+    /**
+     * Total size of the log files in bytes
+     */
+    val logSize: Long
+
+    /**
+     * @param index entry index, 0 is the newest entry
+     */
+    operator fun get(index: Int): LogEntry
+
+    /**
+     * Checks whether entry tag or message contains the pattern, ignoring case, without parsing the whole entry.
+     *
+     * @param index entry index, 0 is the newest entry
+     */
+    fun matches(index: Int, pattern: String): Boolean
+}
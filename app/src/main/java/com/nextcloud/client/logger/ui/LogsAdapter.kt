@@ -40,6 +40,9 @@ class LogsAdapter(context: Context) : RecyclerView.Adapter<LogsAdapter.ViewHolde
     private val timestampFormat = SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US)
     private val inflater = LayoutInflater.from(context)
 
+    /**
+     * Entries to display, newest first
+     */
     var entries: List<LogEntry> = listOf()
         set(value) {
             field = value
@@ -52,8 +55,7 @@ class LogsAdapter(context: Context) : RecyclerView.Adapter<LogsAdapter.ViewHolde
     override fun getItemCount() = entries.size
 
     override fun onBindViewHolder(holder: ViewHolder, position: Int) {
-        val reversedPosition = entries.size - position - 1
-        val entry = entries[reversedPosition]
+        val entry = entries[position]
         val header = "${timestampFormat.format(entry.timestamp)} ${entry.level.tag} ${entry.tag}"
         holder.header.text = header
         holder.message.text = entry.message
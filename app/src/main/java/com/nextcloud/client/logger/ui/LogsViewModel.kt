@@ -27,6 +27,7 @@ import com.nextcloud.client.core.AsyncRunner
 import com.nextcloud.client.core.Clock
 import com.nextcloud.client.logger.LogEntry
 import com.nextcloud.client.logger.LogsRepository
+import com.nextcloud.client.logger.LogsSnapshot
 import com.owncloud.android.R
 import javax.inject.Inject
 
@@ -43,57 +44,70 @@ class LogsViewModel @Inject constructor(
 
     private val asyncFilter = AsyncFilter(asyncRunner)
     private val sender = LogsEmailSender(context, clock, asyncRunner)
-    private var allEntries = emptyList<LogEntry>()
+    private var logs: LogsSnapshot? = null
     private var logsSize = -1L
     private var filterDurationMs = 0L
     private var isFiltered = false
 
+    // last filter result, used to narrow down search while the pattern is being typed
+    private var filteredPattern = ""
+    private var filteredIndices: List<Int>? = null
+
     val isLoading: LiveData<Boolean> = MutableLiveData<Boolean>().apply { value = false }
     val size: LiveData<Long> = MutableLiveData<Long>().apply { value = 0 }
     val entries: LiveData<List<LogEntry>> = MutableLiveData<List<LogEntry>>().apply { value = emptyList() }
     val status: LiveData<String> = MutableLiveData<String>().apply { value = "" }
 
     fun send() {
-        entries.value?.let {
-            sender.send(it)
+        (entries.value as? PagedLogEntries)?.let {
+            sender.send(it.chronological())
         }
     }
 
     fun load() {
         if (isLoading.value != true) {
-            logsRepository.load(this::onLoaded)
+            logsRepository.open(this::onOpened)
             (isLoading as MutableLiveData).value = true
         }
     }
 
-    private fun onLoaded(entries: List<LogEntry>, logsSize: Long) {
+    private fun onOpened(logs: LogsSnapshot) {
         this.entries as MutableLiveData
         this.isLoading as MutableLiveData
         this.status as MutableLiveData
 
-        this.entries.value = entries
-        this.allEntries = entries
-        this.logsSize = logsSize
+        this.logs = logs
+        this.logsSize = logs.logSize
+        this.filteredPattern = ""
+        this.filteredIndices = null
+        this.entries.value = PagedLogEntries(logs)
         isLoading.value = false
         this.status.value = formatStatus()
     }
 
     fun deleteAll() {
         logsRepository.deleteAll()
+        logs = null
+        filteredIndices = null
         (entries as MutableLiveData).value = emptyList()
     }
 
     fun filter(pattern: String) {
+        val logs = this.logs ?: return
         if (isLoading.value == false) {
             isFiltered = pattern.isNotEmpty()
             val predicate = when (isFiltered) {
-                true -> { it: LogEntry -> it.tag.contains(pattern, true) || it.message.contains(pattern, true) }
+                true -> { index: Int -> logs.matches(index, pattern) }
                 false -> { _ -> true }
             }
+            // entries not matching the previous pattern cannot match a longer one
+            val candidates = filteredIndices
+                ?.takeIf { isFiltered && pattern.contains(filteredPattern, true) }
+                ?: 0 until logs.size
             asyncFilter.filter(
-                collection = allEntries,
+                collection = candidates,
                 predicate = predicate,
-                onResult = this::onFiltered
+                onResult = { filtered, durationMs -> onFiltered(logs, pattern, filtered, durationMs) }
             )
         }
     }
@@ -103,14 +117,21 @@ class LogsViewModel @Inject constructor(
         sender.stop()
     }
 
-    private fun onFiltered(filtered: List<LogEntry>, filterDurationMs: Long) {
-        (entries as MutableLiveData).value = filtered
+    private fun onFiltered(logs: LogsSnapshot, pattern: String, filtered: List<Int>, filterDurationMs: Long) {
+        if (logs !== this.logs) {
+            // logs were reloaded meanwhile
+            return
+        }
+        filteredPattern = pattern
+        filteredIndices = filtered
+        (entries as MutableLiveData).value = PagedLogEntries(logs, filtered)
         this.filterDurationMs = filterDurationMs
         (status as MutableLiveData).value = formatStatus()
     }
 
     private fun formatStatus(): String {
-        val displayedEntries = entries.value?.size ?: allEntries.size
+        val totalEntries = logs?.size ?: 0
+        val displayedEntries = entries.value?.size ?: totalEntries
         val sizeKb = logsSize / KILOBYTE
         return when {
             isLoading.value == true -> context.getString(R.string.logs_status_loading)
@@ -118,7 +139,7 @@ class LogsViewModel @Inject constructor(
                 R.string.logs_status_filtered,
                 sizeKb,
                 displayedEntries,
-                allEntries.size,
+                totalEntries,
                 filterDurationMs
             )
             !isFiltered -> context.getString(R.string.logs_status_not_filtered, sizeKb)
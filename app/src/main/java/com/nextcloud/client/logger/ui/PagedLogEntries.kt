@@ -0,0 +1,71 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.client.logger.ui
+
+import com.nextcloud.client.logger.LogEntry
+import com.nextcloud.client.logger.LogsSnapshot
+
+/**
+ * List of log entries reading the [LogsSnapshot] page by page when accessed. Only the most recently
+ * accessed pages are kept, so a list can be bound to a view without parsing all entries.
+ *
+ * @param indices snapshot indices of listed entries; all entries are listed if null
+ */
+class PagedLogEntries(
+    private val snapshot: LogsSnapshot,
+    private val indices: List<Int>? = null
+) : AbstractList<LogEntry>() {
+
+    private companion object {
+        const val PAGE_SIZE = 50
+        const val MAX_PAGES = 8
+        const val LOAD_FACTOR = 0.75f
+    }
+
+    private val pages = object : LinkedHashMap<Int, List<LogEntry>>(MAX_PAGES, LOAD_FACTOR, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Int, List<LogEntry>>?): Boolean {
+            return this.size > MAX_PAGES
+        }
+    }
+
+    override val size: Int
+        get() = indices?.size ?: snapshot.size
+
+    override fun get(index: Int): LogEntry {
+        if (index < 0 || index >= size) {
+            throw IndexOutOfBoundsException("Index $index, size $size")
+        }
+        val page = index / PAGE_SIZE
+        val entries = synchronized(pages) {
+            pages.getOrPut(page) { readPage(page) }
+        }
+        return entries[index % PAGE_SIZE]
+    }
+
+    /**
+     * @return entries in order of writes, not sharing pages with this list
+     */
+    fun chronological(): List<LogEntry> = PagedLogEntries(snapshot, indices).asReversed()
+
+    private fun readPage(page: Int): List<LogEntry> {
+        val from = page * PAGE_SIZE
+        val to = Math.min(from + PAGE_SIZE, size)
+        return (from until to).map { snapshot[indices?.get(it) ?: it] }
+    }
+}
@@ -377,4 +377,14 @@ public interface AppPreferences {
     boolean isStoragePermissionRequested();
 
     void setStoragePermissionRequested(boolean value);
+
+    /**
+     * Large files can be fingerprinted by their size, head and tail only, to detect changes for auto upload without
+     * reading them completely. Changes in the middle of such a file are missed then, so this is off by default.
+     *
+     * @return true if large auto upload candidates are fingerprinted with a sampled checksum
+     */
+    boolean isAutoUploadSampledChecksumEnabled();
+
+    void setAutoUploadSampledChecksumEnabled(boolean enabled);
 }
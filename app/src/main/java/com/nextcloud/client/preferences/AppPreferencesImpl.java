@@ -98,6 +98,7 @@ public final class AppPreferencesImpl implements AppPreferences {
     private static final String PREF__PDF_ZOOM_TIP_SHOWN = "pdf_zoom_tip_shown";
 
     private static final String PREF__STORAGE_PERMISSION_REQUESTED = "storage_permission_requested";
+    private static final String PREF__AUTO_UPLOAD_SAMPLED_CHECKSUM = "auto_upload_sampled_checksum";
 
     private final Context context;
     private final SharedPreferences preferences;
@@ -708,6 +709,16 @@ public final class AppPreferencesImpl implements AppPreferences {
         preferences.edit().putBoolean(PREF__STORAGE_PERMISSION_REQUESTED, value).apply();
     }
 
+    @Override
+    public boolean isAutoUploadSampledChecksumEnabled() {
+        return preferences.getBoolean(PREF__AUTO_UPLOAD_SAMPLED_CHECKSUM, false);
+    }
+
+    @Override
+    public void setAutoUploadSampledChecksumEnabled(boolean enabled) {
+        preferences.edit().putBoolean(PREF__AUTO_UPLOAD_SAMPLED_CHECKSUM, enabled).apply();
+    }
+
     @VisibleForTesting
     public int computeBruteForceDelay(int count) {
         return (int) Math.min(count / 3d, 10);
@@ -0,0 +1,211 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.datamodel;
+
+import com.owncloud.android.lib.common.utils.Log_OC;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Cache of the metadata of end-to-end encrypted folders, keyed by local id and etag of the folder, so that browsing
+ * unchanged folders needs neither a request nor a decryption.
+ *
+ * Decrypted metadata is only kept in memory. On disk, the metadata is stored as received from the server, still
+ * encrypted with the public key of the user, so that no file keys are persisted in plain text.
+ *
+ * Cached metadata is shared and must not be modified.
+ */
+public class DecryptedFolderMetadataCache {
+
+    private static final String TAG = DecryptedFolderMetadataCache.class.getSimpleName();
+    private static final int MAX_MEMORY_ENTRIES = 64;
+    private static final char ETAG_SEPARATOR = '\n';
+
+    private static class Entry {
+        private final String etag;
+        private final DecryptedFolderMetadata metadata;
+
+        private Entry(String etag, DecryptedFolderMetadata metadata) {
+            this.etag = etag;
+            this.metadata = metadata;
+        }
+    }
+
+    private final File diskCacheDir;
+    private final Map<String, Entry> memoryCache = new LinkedHashMap<String, Entry>(MAX_MEMORY_ENTRIES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_MEMORY_ENTRIES;
+        }
+    };
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param diskCacheDir directory of the encrypted metadata, created if needed
+     */
+    public DecryptedFolderMetadataCache(File diskCacheDir) {
+        this.diskCacheDir = diskCacheDir;
+    }
+
+    /**
+     * @return decrypted metadata of the folder with the given etag, null if not in memory
+     */
+    @Nullable
+    public DecryptedFolderMetadata get(@NonNull String folderId, @NonNull String etag) {
+        synchronized (memoryCache) {
+            Entry entry = memoryCache.get(folderId);
+            if (entry != null && entry.etag.equals(etag)) {
+                memoryHits.incrementAndGet();
+                return entry.metadata;
+            }
+        }
+        return null;
+    }
+
+    public void put(@NonNull String folderId, @NonNull String etag, @NonNull DecryptedFolderMetadata metadata) {
+        synchronized (memoryCache) {
+            memoryCache.put(folderId, new Entry(etag, metadata));
+        }
+    }
+
+    /**
+     * @return metadata of the folder with the given etag as received from the server, null if not on disk
+     */
+    @Nullable
+    public String getEncrypted(@NonNull String folderId, @NonNull String etag) {
+        File file = getFile(folderId);
+        if (file.exists()) {
+            try (InputStream inputStream = new FileInputStream(file)) {
+                byte[] data = new byte[(int) file.length()];
+                int read = 0;
+                while (read < data.length) {
+                    int count = inputStream.read(data, read, data.length - read);
+                    if (count < 0) {
+                        break;
+                    }
+                    read += count;
+                }
+                String content = new String(data, 0, read, StandardCharsets.UTF_8);
+                int separator = content.indexOf(ETAG_SEPARATOR);
+                if (separator >= 0 && content.substring(0, separator).equals(etag)) {
+                    diskHits.incrementAndGet();
+                    return content.substring(separator + 1);
+                }
+            } catch (IOException e) {
+                Log_OC.w(TAG, "Could not read metadata of folder " + folderId + ": " + e.getMessage());
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Replaces metadata of any other etag of the folder.
+     */
+    public void putEncrypted(@NonNull String folderId, @NonNull String etag, @NonNull String encryptedMetadata) {
+        if (!diskCacheDir.isDirectory() && !diskCacheDir.mkdirs()) {
+            Log_OC.w(TAG, "Could not create " + diskCacheDir);
+            return;
+        }
+
+        // written completely before replacing the old file, so that a concurrent reader never gets a partial file
+        File file = getFile(folderId);
+        File tmpFile = new File(diskCacheDir, file.getName() + ".tmp" + Thread.currentThread().getId());
+        try (OutputStream outputStream = new FileOutputStream(tmpFile)) {
+            outputStream.write((etag + ETAG_SEPARATOR + encryptedMetadata).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log_OC.w(TAG, "Could not write metadata of folder " + folderId + ": " + e.getMessage());
+            tmpFile.delete();
+            return;
+        }
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Removes the metadata of the folder, e.g. when it is changed by the app itself
+     */
+    public void remove(@NonNull String folderId) {
+        synchronized (memoryCache) {
+            memoryCache.remove(folderId);
+        }
+        getFile(folderId).delete();
+    }
+
+    public void clear() {
+        synchronized (memoryCache) {
+            memoryCache.clear();
+        }
+        File[] files = diskCacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private File getFile(@NonNull String folderId) {
+        return new File(diskCacheDir, folderId.replaceAll("[^a-zA-Z0-9]", "_"));
+    }
+
+    public long getMemoryHitCount() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHitCount() {
+        return diskHits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        int size;
+        synchronized (memoryCache) {
+            size = memoryCache.size();
+        }
+        return String.format(Locale.US,
+                             "in memory: %d / %d, memory hits: %d, disk hits: %d, misses: %d",
+                             size,
+                             MAX_MEMORY_ENTRIES,
+                             getMemoryHitCount(),
+                             getDiskHitCount(),
+                             getMissCount());
+    }
+}
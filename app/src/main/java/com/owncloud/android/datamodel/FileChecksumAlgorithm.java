@@ -0,0 +1,146 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Checksums used to detect content changes of auto upload candidates, stored in the filesystem table together
+ * with the id of the algorithm that produced them.
+ */
+public enum FileChecksumAlgorithm {
+    /**
+     * CRC32 over the whole file content. Rows written without an algorithm id use this.
+     */
+    CRC32("crc32") {
+        @Override
+        long compute(File file) throws IOException {
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[BUFFER_SIZE];
+
+            try (FileInputStream inputStream = new FileInputStream(file)) {
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    crc.update(buffer, 0, read);
+                }
+            }
+
+            return crc.getValue();
+        }
+    },
+
+    /**
+     * CRC32 over the file size, the first and the last {@link #SAMPLE_SIZE} bytes. Reads at most 2 MB regardless of
+     * the file size, at the price of missing changes in the middle of a file which keep its size.
+     */
+    SAMPLED_CRC32("crc32-sampled") {
+        @Override
+        long compute(File file) throws IOException {
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[BUFFER_SIZE];
+
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+                long length = randomAccessFile.length();
+                for (int shift = 0; shift < Long.SIZE; shift += Byte.SIZE) {
+                    crc.update((int) (length >>> shift));
+                }
+
+                long tailStart = Math.max(SAMPLE_SIZE, length - SAMPLE_SIZE);
+                update(crc, randomAccessFile, 0, Math.min(SAMPLE_SIZE, length), buffer);
+                update(crc, randomAccessFile, tailStart, length - tailStart, buffer);
+            }
+
+            return crc.getValue();
+        }
+
+        private void update(CRC32 crc, RandomAccessFile file, long offset, long length, byte[] buffer)
+            throws IOException {
+            file.seek(offset);
+            long remaining = length;
+            while (remaining > 0) {
+                int read = file.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1) {
+                    break;
+                }
+                crc.update(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    };
+
+    static final int BUFFER_SIZE = 64 * 1024;
+    static final long SAMPLE_SIZE = 1024 * 1024;
+
+    /**
+     * Files of at least this size are fingerprinted with {@link #SAMPLED_CRC32}, if sampling is enabled
+     */
+    static final long SAMPLING_THRESHOLD = 512L * 1024 * 1024;
+
+    private final String id;
+
+    FileChecksumAlgorithm(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    abstract long compute(File file) throws IOException;
+
+    /**
+     * @return checksum of the file, -1 if it could not be read
+     */
+    public long checksum(String path) {
+        try {
+            return compute(new File(path));
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param sampleLargeFiles true to fingerprint large files with {@link #SAMPLED_CRC32}
+     * @return algorithm to use for a file of the given size
+     */
+    @NonNull
+    public static FileChecksumAlgorithm forSize(long size, boolean sampleLargeFiles) {
+        return sampleLargeFiles && size >= SAMPLING_THRESHOLD ? SAMPLED_CRC32 : CRC32;
+    }
+
+    /**
+     * @return algorithm with the given id, {@link #CRC32} for rows stored before the algorithm was recorded
+     */
+    @NonNull
+    public static FileChecksumAlgorithm fromId(@Nullable String id) {
+        for (FileChecksumAlgorithm algorithm : values()) {
+            if (algorithm.id.equals(id)) {
+                return algorithm;
+            }
+        }
+        return CRC32;
+    }
+}
@@ -38,12 +38,9 @@ import android.os.RemoteException;
 import android.provider.MediaStore;
 import android.text.TextUtils;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
 import com.nextcloud.client.account.User;
 import com.owncloud.android.MainApp;
 import com.owncloud.android.db.ProviderMeta.ProviderTableMeta;
-import com.owncloud.android.lib.common.network.WebdavEntry;
 import com.owncloud.android.lib.common.operations.RemoteOperationResult;
 import com.owncloud.android.lib.common.utils.Log_OC;
 import com.owncloud.android.lib.resources.files.ReadFileRemoteOperation;
@@ -51,7 +48,6 @@ import com.owncloud.android.lib.resources.files.model.FileLockType;
 import com.owncloud.android.lib.resources.files.model.RemoteFile;
 import com.owncloud.android.lib.resources.shares.OCShare;
 import com.owncloud.android.lib.resources.shares.ShareType;
-import com.owncloud.android.lib.resources.shares.ShareeUser;
 import com.owncloud.android.lib.resources.status.CapabilityBooleanType;
 import com.owncloud.android.lib.resources.status.OCCapability;
 import com.owncloud.android.operations.RemoteOperationFailedException;
@@ -64,10 +60,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
 import androidx.annotation.NonNull;
@@ -87,6 +85,14 @@ public class FileDataStorageManager {
     public static final int ROOT_PARENT_ID = 0;
     public static final String NULL_STRING = "null";
 
+    /**
+     * SQLite refuses statements with more than 999 bound arguments on older platform versions
+     */
+    private static final int MAX_SELECTION_ARGS = 900;
+
+    // highest code point, any path starting with a prefix sorts below prefix + this
+    private static final String GALLERY_PATH_RANGE_END = new String(Character.toChars(Character.MAX_CODE_POINT));
+
     private final ContentResolver contentResolver;
     private final ContentProviderClient contentProviderClient;
     private final User user;
@@ -337,17 +343,23 @@ public class FileDataStorageManager {
 
         ArrayList<ContentProviderOperation> operations = new ArrayList<>(updatedFiles.size());
 
+        // reconcile children in memory against the (id, path) pairs already stored, instead of querying per child
+        Set<Long> existingIds = new HashSet<>();
+        Map<String, Long> existingIdsByPath = new HashMap<>();
+        loadExistingFileIds(folder, updatedFiles, existingIds, existingIdsByPath);
+
         // prepare operations to insert or update files to save in the given folder
         for (OCFile ocFile : updatedFiles) {
             ContentValues contentValues = createContentValuesForFile(ocFile);
             contentValues.put(ProviderTableMeta.FILE_PARENT, folder.getFileId());
 
-            if (fileExists(ocFile.getFileId()) || fileExists(ocFile.getRemotePath())) {
+            Long existingIdForPath = existingIdsByPath.get(ocFile.getRemotePath());
+            if (existingIds.contains(ocFile.getFileId()) || existingIdForPath != null) {
                 long fileId;
                 if (ocFile.getFileId() != -1) {
                     fileId = ocFile.getFileId();
                 } else {
-                    fileId = getFileByPath(ocFile.getRemotePath()).getFileId();
+                    fileId = existingIdForPath;
                 }
                 // updating an existing file
                 operations.add(ContentProviderOperation.newUpdate(ProviderTableMeta.CONTENT_URI)
@@ -438,6 +450,136 @@ public class FileDataStorageManager {
         }
     }
 
+    /**
+     * Stores the etags seen on the server for the given files with a single batch of operations.
+     *
+     * @param etagsOnServer etag on server by file id
+     */
+    public void saveEtagsOnServer(Map<Long, String> etagsOnServer) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(etagsOnServer.size());
+        for (Map.Entry<Long, String> entry : etagsOnServer.entrySet()) {
+            operations.add(ContentProviderOperation.newUpdate(ProviderTableMeta.CONTENT_URI)
+                               .withValue(ProviderTableMeta.FILE_ETAG_ON_SERVER, entry.getValue())
+                               .withSelection(ProviderTableMeta._ID + " = ?",
+                                              new String[]{String.valueOf(entry.getKey())})
+                               .build());
+        }
+
+        Log_OC.d(TAG, String.format(Locale.ENGLISH, SENDING_TO_FILECONTENTPROVIDER_MSG, operations.size()));
+        try {
+            if (getContentResolver() != null) {
+                getContentResolver().applyBatch(MainApp.getAuthority(), operations);
+            } else {
+                getContentProviderClient().applyBatch(operations);
+            }
+        } catch (OperationApplicationException | RemoteException e) {
+            Log_OC.e(TAG, EXCEPTION_MSG + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Collects ids and remote paths of the given files which are already stored in the database.
+     *
+     * Children of the folder are loaded with a single query; only files that are not found there (e.g. moved in
+     * from another folder) are resolved with additional bulk queries, chunked to stay below the SQLite limit of
+     * bound arguments.
+     *
+     * @param folder            parent folder of the files
+     * @param files             files to reconcile
+     * @param existingIds       filled with the ids of all files that exist in the database
+     * @param existingIdsByPath filled with remote path to id of all files that exist in the database
+     */
+    private void loadExistingFileIds(OCFile folder,
+                                     List<OCFile> files,
+                                     Set<Long> existingIds,
+                                     Map<String, Long> existingIdsByPath) {
+        readFileIds(ProviderTableMeta.FILE_PARENT + AND + ProviderTableMeta.FILE_ACCOUNT_OWNER + "=?",
+                    new String[]{String.valueOf(folder.getFileId()), user.getAccountName()},
+                    existingIds,
+                    existingIdsByPath);
+
+        List<String> unknownIds = new ArrayList<>();
+        List<String> unknownPaths = new ArrayList<>();
+        for (OCFile ocFile : files) {
+            if (ocFile.getFileId() != -1 && !existingIds.contains(ocFile.getFileId())) {
+                unknownIds.add(String.valueOf(ocFile.getFileId()));
+            }
+            if (!existingIdsByPath.containsKey(ocFile.getRemotePath())) {
+                unknownPaths.add(ocFile.getRemotePath());
+            }
+        }
+
+        readFileIdsIn(ProviderTableMeta._ID, unknownIds, existingIds, existingIdsByPath);
+        readFileIdsIn(ProviderTableMeta.FILE_PATH, unknownPaths, existingIds, existingIdsByPath);
+    }
+
+    private void readFileIdsIn(String column,
+                               List<String> values,
+                               Set<Long> existingIds,
+                               Map<String, Long> existingIdsByPath) {
+        for (int start = 0; start < values.size(); start += MAX_SELECTION_ARGS) {
+            List<String> chunk = values.subList(start, Math.min(values.size(), start + MAX_SELECTION_ARGS));
+
+            StringBuilder selection = new StringBuilder(ProviderTableMeta.FILE_ACCOUNT_OWNER)
+                .append("=? AND ")
+                .append(column)
+                .append(" IN (");
+            for (int i = 0; i < chunk.size(); i++) {
+                selection.append(i == 0 ? "?" : ", ?");
+            }
+            selection.append(')');
+
+            String[] selectionArgs = new String[chunk.size() + 1];
+            selectionArgs[0] = user.getAccountName();
+            for (int i = 0; i < chunk.size(); i++) {
+                selectionArgs[i + 1] = chunk.get(i);
+            }
+
+            readFileIds(selection.toString(), selectionArgs, existingIds, existingIdsByPath);
+        }
+    }
+
+    private void readFileIds(String selection,
+                             String[] selectionArgs,
+                             Set<Long> existingIds,
+                             Map<String, Long> existingIdsByPath) {
+        String[] projection = new String[]{ProviderTableMeta._ID, ProviderTableMeta.FILE_PATH};
+        Cursor cursor;
+
+        if (getContentResolver() != null) {
+            cursor = getContentResolver().query(ProviderTableMeta.CONTENT_URI,
+                                                projection,
+                                                selection,
+                                                selectionArgs,
+                                                null);
+        } else {
+            try {
+                cursor = getContentProviderClient().query(ProviderTableMeta.CONTENT_URI,
+                                                          projection,
+                                                          selection,
+                                                          selectionArgs,
+                                                          null);
+            } catch (RemoteException e) {
+                Log_OC.e(TAG, "Could not get file ids: " + e.getMessage(), e);
+                cursor = null;
+            }
+        }
+
+        if (cursor == null) {
+            Log_OC.e(TAG, "Couldn't determine file existance, assuming non existance");
+            return;
+        }
+
+        int idIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta._ID);
+        int pathIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_PATH);
+        while (cursor.moveToNext()) {
+            long id = cursor.getLong(idIndex);
+            existingIds.add(id);
+            existingIdsByPath.put(cursor.getString(pathIndex), id);
+        }
+        cursor.close();
+    }
+
     /**
      * Returns a {@link ContentValues} filled with values that are common to both files and folders
      * @see #createContentValuesForFile(OCFile)
@@ -468,7 +610,7 @@ public class FileDataStorageManager {
         cv.put(ProviderTableMeta.FILE_OWNER_ID, fileOrFolder.getOwnerId());
         cv.put(ProviderTableMeta.FILE_OWNER_DISPLAY_NAME, fileOrFolder.getOwnerDisplayName());
         cv.put(ProviderTableMeta.FILE_NOTE, fileOrFolder.getNote());
-        cv.put(ProviderTableMeta.FILE_SHAREES, new Gson().toJson(fileOrFolder.getSharees()));
+        cv.put(ProviderTableMeta.FILE_SHAREES, OCFileCursorMapper.GSON.toJson(fileOrFolder.getSharees()));
         cv.put(ProviderTableMeta.FILE_RICH_WORKSPACE, fileOrFolder.getRichWorkspace());
         return cv;
     }
@@ -883,8 +1025,10 @@ public class FileDataStorageManager {
 
         if (cursor != null) {
             if (cursor.moveToFirst()) {
+                // local copies without storage path only matter when filtering for them
+                OCFileCursorMapper mapper = new OCFileCursorMapper(cursor, user.getAccountName(), onlyOnDevice);
                 do {
-                    OCFile child = createFileInstance(cursor);
+                    OCFile child = mapper.map();
                     if (!onlyOnDevice || child.existsOnDevice()) {
                         folderContent.add(child);
                     }
@@ -957,76 +1101,7 @@ public class FileDataStorageManager {
     private OCFile createFileInstance(Cursor cursor) {
         OCFile ocFile = null;
         if (cursor != null) {
-            ocFile = new OCFile(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_PATH)));
-            ocFile.setDecryptedRemotePath(getString(cursor, ProviderTableMeta.FILE_PATH_DECRYPTED));
-            ocFile.setFileId(cursor.getLong(cursor.getColumnIndexOrThrow(ProviderTableMeta._ID)));
-            ocFile.setParentId(cursor.getLong(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_PARENT)));
-            ocFile.setMimeType(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_CONTENT_TYPE)));
-            ocFile.setStoragePath(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_STORAGE_PATH)));
-            if (ocFile.getStoragePath() == null) {
-                // try to find existing file and bind it with current account;
-                // with the current update of SynchronizeFolderOperation, this won't be
-                // necessary anymore after a full synchronization of the account
-                File file = new File(FileStorageUtils.getDefaultSavePathFor(user.getAccountName(), ocFile));
-                if (file.exists()) {
-                    ocFile.setStoragePath(file.getAbsolutePath());
-                    ocFile.setLastSyncDateForData(file.lastModified());
-                }
-            }
-            ocFile.setFileLength(cursor.getLong(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_CONTENT_LENGTH)));
-            ocFile.setCreationTimestamp(cursor.getLong(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_CREATION)));
-            ocFile.setModificationTimestamp(cursor.getLong(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_MODIFIED)));
-            ocFile.setModificationTimestampAtLastSyncForData(cursor.getLong(
-                cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_MODIFIED_AT_LAST_SYNC_FOR_DATA)));
-            ocFile.setLastSyncDateForProperties(cursor.getLong(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LAST_SYNC_DATE)));
-            ocFile.setLastSyncDateForData(cursor.getLong(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LAST_SYNC_DATE_FOR_DATA)));
-            ocFile.setEtag(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_ETAG)));
-            ocFile.setEtagOnServer(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_ETAG_ON_SERVER)));
-            ocFile.setSharedViaLink(cursor.getInt(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_SHARED_VIA_LINK)) == 1);
-            ocFile.setSharedWithSharee(cursor.getInt(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_SHARED_WITH_SHAREE)) == 1);
-            ocFile.setPermissions(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_PERMISSIONS)));
-            ocFile.setRemoteId(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_REMOTE_ID)));
-            ocFile.setUpdateThumbnailNeeded(cursor.getInt(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_UPDATE_THUMBNAIL)) == 1);
-            ocFile.setDownloading(cursor.getInt(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_IS_DOWNLOADING)) == 1);
-            ocFile.setEtagInConflict(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_ETAG_IN_CONFLICT)));
-            ocFile.setFavorite(cursor.getInt(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_FAVORITE)) == 1);
-            ocFile.setEncrypted(cursor.getInt(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_IS_ENCRYPTED)) == 1);
-//            if (ocFile.isEncrypted()) {
-//                ocFile.setFileName(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_NAME)));
-//            }
-            ocFile.setMountType(WebdavEntry.MountType.values()[cursor.getInt(
-                cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_MOUNT_TYPE))]);
-            ocFile.setPreviewAvailable(cursor.getInt(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_HAS_PREVIEW)) == 1);
-            ocFile.setUnreadCommentsCount(cursor.getInt(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_UNREAD_COMMENTS_COUNT)));
-            ocFile.setOwnerId(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_OWNER_ID)));
-            ocFile.setOwnerDisplayName(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_OWNER_DISPLAY_NAME)));
-            ocFile.setNote(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_NOTE)));
-            ocFile.setRichWorkspace(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_RICH_WORKSPACE)));
-            ocFile.setLocked(cursor.getInt(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCKED)) == 1);
-            final int lockTypeInt = cursor.getInt(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_TYPE));
-            ocFile.setLockType(lockTypeInt != -1 ? FileLockType.fromValue(lockTypeInt) : null);
-            ocFile.setLockOwnerId(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_OWNER)));
-            ocFile.setLockOwnerDisplayName(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_OWNER_DISPLAY_NAME)));
-            ocFile.setLockOwnerEditor(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_OWNER_EDITOR)));
-            ocFile.setLockTimestamp(cursor.getInt(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_TIMESTAMP)));
-            ocFile.setLockTimeout(cursor.getInt(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_TIMEOUT)));
-            ocFile.setLockToken(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_TOKEN)));
-
-
-            String sharees = cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_SHAREES));
-
-            if (sharees == null || NULL_STRING.equals(sharees) || sharees.isEmpty()) {
-                ocFile.setSharees(new ArrayList<>());
-            } else {
-                try {
-                    ShareeUser[] shareesArray = new Gson().fromJson(sharees, ShareeUser[].class);
-
-                    ocFile.setSharees(new ArrayList<>(Arrays.asList(shareesArray)));
-                } catch (JsonSyntaxException e) {
-                    // ignore saved value due to api change
-                    ocFile.setSharees(new ArrayList<>());
-                }
-            }
+            ocFile = new OCFileCursorMapper(cursor, user.getAccountName(), true).map();
         }
 
         return ocFile;
@@ -2223,8 +2298,9 @@ public class FileDataStorageManager {
 
         if (cursor != null) {
             if (cursor.moveToFirst()) {
+                OCFileCursorMapper mapper = new OCFileCursorMapper(cursor, user.getAccountName(), false);
                 do {
-                    OCFile child = createFileInstance(cursor);
+                    OCFile child = mapper.map();
                     files.add(child);
                 } while (cursor.moveToNext());
             }
@@ -2234,6 +2310,165 @@ public class FileDataStorageManager {
         return files;
     }
 
+    /**
+     * Returns a page of the gallery timeline, newest first.
+     *
+     * Pages are seeked by modification timestamp and id of the last file of the previous page instead of an offset,
+     * so loading a page costs the same at any position of the timeline and files stored meanwhile do not shift pages.
+     *
+     * @param remotePath folder whose media files, including those of sub folders, are returned
+     * @param images     true to return images
+     * @param videos     true to return videos
+     * @param after      last file of the previous page, null for the first page
+     * @param limit      maximum count of returned files
+     */
+    public List<OCFile> getGalleryItemsPage(String remotePath,
+                                            boolean images,
+                                            boolean videos,
+                                            @Nullable OCFile after,
+                                            int limit) {
+        List<OCFile> files = new ArrayList<>();
+        if (!images && !videos) {
+            return files;
+        }
+
+        List<String> selectionArgs = new ArrayList<>();
+        StringBuilder selection = new StringBuilder(ProviderTableMeta.FILE_ACCOUNT_OWNER).append(AND);
+        selectionArgs.add(user.getAccountName());
+
+        // prefix match as range, so that names containing wildcards of LIKE need no escaping
+        selection.append(ProviderTableMeta.FILE_PATH).append(" >= ? AND ")
+            .append(ProviderTableMeta.FILE_PATH).append(" < ? AND (");
+        selectionArgs.add(remotePath);
+        selectionArgs.add(remotePath + GALLERY_PATH_RANGE_END);
+
+        if (images) {
+            selection.append(ProviderTableMeta.FILE_CONTENT_TYPE).append(" LIKE ?");
+            selectionArgs.add("image/%");
+        }
+        if (videos) {
+            selection.append(images ? " OR " : "").append(ProviderTableMeta.FILE_CONTENT_TYPE).append(" LIKE ?");
+            selectionArgs.add("video/%");
+        }
+        selection.append(')');
+
+        if (after != null) {
+            // (modified, id) < (after.modified, after.id), written so that the range on modified can use an index
+            selection.append(" AND ").append(ProviderTableMeta.FILE_MODIFIED).append(" <= ? AND (")
+                .append(ProviderTableMeta.FILE_MODIFIED).append(" < ? OR ")
+                .append(ProviderTableMeta._ID).append(" < ?)");
+            selectionArgs.add(String.valueOf(after.getModificationTimestamp()));
+            selectionArgs.add(String.valueOf(after.getModificationTimestamp()));
+            selectionArgs.add(String.valueOf(after.getFileId()));
+        }
+
+        Uri requestURI = ProviderTableMeta.CONTENT_URI.buildUpon()
+            .appendQueryParameter(ProviderTableMeta.QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+            .build();
+        String sortOrder = ProviderTableMeta.FILE_MODIFIED + " DESC, " + ProviderTableMeta._ID + " DESC";
+        String[] args = selectionArgs.toArray(new String[0]);
+        Cursor cursor;
+
+        if (getContentProviderClient() != null) {
+            try {
+                cursor = getContentProviderClient().query(requestURI, null, selection.toString(), args, sortOrder);
+            } catch (RemoteException e) {
+                Log_OC.e(TAG, e.getMessage(), e);
+                return files;
+            }
+        } else {
+            cursor = getContentResolver().query(requestURI, null, selection.toString(), args, sortOrder);
+        }
+
+        if (cursor != null) {
+            OCFileCursorMapper mapper = new OCFileCursorMapper(cursor, user.getAccountName(), false);
+            while (cursor.moveToNext()) {
+                files.add(mapper.map());
+            }
+            cursor.close();
+        }
+
+        return files;
+    }
+
+    /**
+     * Stores a page of gallery search results with a single batch of operations, which the provider applies in one
+     * transaction, instead of a provider round trip per file.
+     *
+     * @param files         files to insert, or to update if a file with the same remote path is already stored
+     * @param filesToRemove stored files which do not exist on the server anymore, local copies are deleted as well
+     */
+    public void saveGalleryItems(List<OCFile> files, Collection<OCFile> filesToRemove) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(files.size() + filesToRemove.size());
+
+        // files can be stored already, e.g. by a folder listing, even if not yet seen by the gallery
+        List<String> paths = new ArrayList<>(files.size());
+        for (OCFile ocFile : files) {
+            paths.add(ocFile.getRemotePath());
+        }
+        Set<Long> existingIds = new HashSet<>();
+        Map<String, Long> existingIdsByPath = new HashMap<>();
+        readFileIdsIn(ProviderTableMeta.FILE_PATH, paths, existingIds, existingIdsByPath);
+
+        for (OCFile ocFile : files) {
+            ContentValues contentValues = createContentValuesForFile(ocFile);
+            Long existingId = existingIdsByPath.get(ocFile.getRemotePath());
+            if (existingId != null) {
+                ocFile.setFileId(existingId);
+                operations.add(ContentProviderOperation.newUpdate(ProviderTableMeta.CONTENT_URI)
+                                   .withValues(contentValues)
+                                   .withSelection(ProviderTableMeta._ID + " = ?",
+                                                  new String[]{String.valueOf(existingId)})
+                                   .build());
+            } else {
+                operations.add(ContentProviderOperation.newInsert(ProviderTableMeta.CONTENT_URI_FILE)
+                                   .withValues(contentValues)
+                                   .build());
+            }
+        }
+
+        String where = ProviderTableMeta.FILE_ACCOUNT_OWNER + AND + ProviderTableMeta.FILE_PATH + " = ?";
+        for (OCFile ocFile : filesToRemove) {
+            operations.add(ContentProviderOperation
+                               .newDelete(ContentUris.withAppendedId(ProviderTableMeta.CONTENT_URI_FILE,
+                                                                     ocFile.getFileId()))
+                               .withSelection(where, new String[]{user.getAccountName(), ocFile.getRemotePath()})
+                               .build());
+        }
+
+        if (operations.isEmpty()) {
+            return;
+        }
+
+        ContentProviderResult[] results;
+        Log_OC.d(TAG, String.format(Locale.ENGLISH, SENDING_TO_FILECONTENTPROVIDER_MSG, operations.size()));
+        try {
+            if (getContentResolver() != null) {
+                results = getContentResolver().applyBatch(MainApp.getAuthority(), operations);
+            } else {
+                results = getContentProviderClient().applyBatch(operations);
+            }
+        } catch (OperationApplicationException | RemoteException e) {
+            Log_OC.e(TAG, EXCEPTION_MSG + e.getMessage(), e);
+            return;
+        }
+
+        // results of the file operations come first, in order of the files
+        for (int i = 0; i < files.size(); i++) {
+            Uri uri = results[i].uri;
+            if (uri != null) {
+                files.get(i).setFileId(Long.parseLong(uri.getPathSegments().get(1)));
+            }
+        }
+
+        for (OCFile ocFile : filesToRemove) {
+            String localPath = ocFile.getStoragePath();
+            if (ocFile.isDown() && localPath != null && new File(localPath).delete()) {
+                deleteFileInMediaScan(localPath);
+            }
+        }
+    }
+
     public List<OCFile> getVirtualFolderContent(VirtualFolderType type, boolean onlyImages) {
         List<OCFile> ocFiles = new ArrayList<>();
         Uri req_uri = ProviderTableMeta.CONTENT_URI_VIRTUAL;
@@ -2332,8 +2567,9 @@ public class FileDataStorageManager {
 
         if (cursor != null) {
             if (cursor.moveToFirst()) {
+                OCFileCursorMapper mapper = new OCFileCursorMapper(cursor, user.getAccountName(), false);
                 do {
-                    folderContent.add(createFileInstance(cursor));
+                    folderContent.add(mapper.map());
                 } while (cursor.moveToNext());
             }
             cursor.close();
@@ -2342,6 +2578,88 @@ public class FileDataStorageManager {
         return folderContent;
     }
 
+    /**
+     * Searches files and folders of the account by the full text index of their names, so that no folders have to
+     * be walked. Every word of the query has to be the beginning of a word of the name, ignoring case and diacritics.
+     *
+     * @param query     words to search for
+     * @param matchPath if true, words may be found in the decrypted path of the file as well
+     * @return matching files, sorted by name
+     */
+    public List<OCFile> searchFiles(String query, boolean matchPath) {
+        List<OCFile> files = new ArrayList<>();
+        String match = buildFileSearchQuery(query, matchPath);
+        if (match == null) {
+            return files;
+        }
+
+        String selection = ProviderTableMeta.FILE_SEARCH_TABLE_NAME + " MATCH ? AND "
+            + ProviderTableMeta.FILE_ACCOUNT_OWNER + "=?";
+        String[] selectionArgs = new String[]{match, user.getAccountName()};
+
+        Uri requestURI = ProviderTableMeta.CONTENT_URI_FILE_SEARCH;
+        Cursor cursor;
+
+        if (getContentProviderClient() != null) {
+            try {
+                cursor = getContentProviderClient().query(requestURI, null, selection, selectionArgs, null);
+            } catch (RemoteException e) {
+                Log_OC.e(TAG, e.getMessage(), e);
+                return files;
+            }
+        } else {
+            cursor = getContentResolver().query(requestURI, null, selection, selectionArgs, null);
+        }
+
+        if (cursor != null) {
+            if (cursor.moveToFirst()) {
+                OCFileCursorMapper mapper = new OCFileCursorMapper(cursor, user.getAccountName(), false);
+                do {
+                    files.add(mapper.map());
+                } while (cursor.moveToNext());
+            }
+            cursor.close();
+        }
+
+        return files;
+    }
+
+    /**
+     * Builds the MATCH expression for the full text search table of files: the query is split into words like the
+     * unicode61 tokenizer does and every word is searched as prefix. Words are lower cased, so that they are never
+     * taken as operators.
+     *
+     * @return expression or null, if the query contains no word
+     */
+    @VisibleForTesting
+    @Nullable
+    static String buildFileSearchQuery(@Nullable String query, boolean matchPath) {
+        if (query == null) {
+            return null;
+        }
+
+        StringBuilder match = new StringBuilder();
+        StringBuilder word = new StringBuilder();
+        String lowerCaseQuery = query.toLowerCase(Locale.ROOT);
+        for (int i = 0; i <= lowerCaseQuery.length(); i++) {
+            char c = i < lowerCaseQuery.length() ? lowerCaseQuery.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if (word.length() > 0) {
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                if (!matchPath) {
+                    match.append(ProviderTableMeta.FILE_SEARCH_NAME).append(':');
+                }
+                match.append(word).append('*');
+                word.setLength(0);
+            }
+        }
+
+        return match.length() > 0 ? match.toString() : null;
+    }
+
     private String getString(Cursor cursor, String columnName) {
         return cursor.getString(cursor.getColumnIndexOrThrow(columnName));
     }
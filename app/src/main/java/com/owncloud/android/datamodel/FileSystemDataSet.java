@@ -36,8 +36,9 @@ public class FileSystemDataSet {
     private long foundAt;
     private long syncedFolderId;
     @Nullable private String crc32;
+    @Nullable private String crc32Algorithm;
 
-    public FileSystemDataSet(int id, String localPath, long modifiedAt, boolean folder, boolean sentForUpload, long foundAt, long syncedFolderId, String crc32) {
+    public FileSystemDataSet(int id, String localPath, long modifiedAt, boolean folder, boolean sentForUpload, long foundAt, long syncedFolderId, String crc32, String crc32Algorithm) {
         this.id = id;
         this.localPath = localPath;
         this.modifiedAt = modifiedAt;
@@ -46,6 +47,7 @@ public class FileSystemDataSet {
         this.foundAt = foundAt;
         this.syncedFolderId = syncedFolderId;
         this.crc32 = crc32;
+        this.crc32Algorithm = crc32Algorithm;
     }
 
     public FileSystemDataSet() {
@@ -85,6 +87,11 @@ public class FileSystemDataSet {
         return this.crc32;
     }
 
+    @Nullable
+    public String getCrc32Algorithm() {
+        return this.crc32Algorithm;
+    }
+
     public void setId(int id) {
         this.id = id;
     }
@@ -116,4 +123,8 @@ public class FileSystemDataSet {
     public void setCrc32(@Nullable String crc32) {
         this.crc32 = crc32;
     }
+
+    public void setCrc32Algorithm(@Nullable String crc32Algorithm) {
+        this.crc32Algorithm = crc32Algorithm;
+    }
 }
@@ -19,23 +19,28 @@
  */
 package com.owncloud.android.datamodel;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
-import android.net.Uri;
+import android.os.RemoteException;
+import android.text.TextUtils;
 
+import com.owncloud.android.MainApp;
 import com.owncloud.android.db.ProviderMeta;
 import com.owncloud.android.lib.common.utils.Log_OC;
+import com.owncloud.android.utils.FilesSyncHelper;
 import com.owncloud.android.utils.SyncedFolderUtils;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.zip.CRC32;
 
 /**
  * Provider for stored filesystem data.
@@ -43,17 +48,30 @@ import java.util.zip.CRC32;
 public class FilesystemDataProvider {
 
     static private final String TAG = FilesystemDataProvider.class.getSimpleName();
+    private static final String SCAN_MARK_KEY_PREFIX = "filesystem_scan_mark_";
+    private static final int MAX_SELECTION_ARGS = 900;
 
     private ContentResolver contentResolver;
+    private final boolean sampleLargeFiles;
 
     public FilesystemDataProvider(ContentResolver contentResolver) {
+        this(contentResolver, false);
+    }
+
+    /**
+     * @param sampleLargeFiles true to fingerprint large files with {@link FileChecksumAlgorithm#SAMPLED_CRC32}
+     *                         instead of reading them completely
+     */
+    public FilesystemDataProvider(ContentResolver contentResolver, boolean sampleLargeFiles) {
         if (contentResolver == null) {
             throw new IllegalArgumentException("Cannot create an instance with a NULL contentResolver");
         }
         this.contentResolver = contentResolver;
+        this.sampleLargeFiles = sampleLargeFiles;
     }
 
     public int deleteAllEntriesForSyncedFolder(String syncedFolderId) {
+        resetScanMark(Long.parseLong(syncedFolderId));
         return contentResolver.delete(
                 ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM,
                 ProviderMeta.ProviderTableMeta.FILESYSTEM_SYNCED_FOLDER_ID + " = ?",
@@ -117,123 +135,192 @@ public class FilesystemDataProvider {
         return localPathsToUpload;
     }
 
-    public void storeOrUpdateFileValue(String localPath, long modifiedAt, boolean isFolder, SyncedFolder syncedFolder) {
-
-        FileSystemDataSet data = getFilesystemDataSet(localPath, syncedFolder);
-
-        int isFolderValue = 0;
-        if (isFolder) {
-            isFolderValue = 1;
+    /**
+     * Stores or updates the given files of a synced folder. Existing entries are looked up with one query per chunk
+     * of paths and all writes are applied in a single transaction.
+     *
+     * @param files        files found on the device, only local path, modification time and folder flag are used
+     * @param syncedFolder synced folder the files belong to
+     * @return number of files which were added or whose modification time changed
+     */
+    public int storeOrUpdateFileValues(List<FileSystemDataSet> files, SyncedFolder syncedFolder) {
+        if (files.isEmpty()) {
+            return 0;
         }
 
-        ContentValues cv = new ContentValues();
-        cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_FOUND_RECENTLY, System.currentTimeMillis());
-        cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_MODIFIED, modifiedAt);
-
-        if (data == null) {
-
-            cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH, localPath);
-            cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_IS_FOLDER, isFolderValue);
-            cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_SENT_FOR_UPLOAD, Boolean.FALSE);
-            cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_SYNCED_FOLDER_ID, syncedFolder.getId());
-
-            long newCrc32 = getFileChecksum(localPath);
-            if (newCrc32 != -1) {
-                cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_CRC32, Long.toString(newCrc32));
-            }
+        Map<String, FileSystemDataSet> existingData = getFilesystemDataSets(files, syncedFolder);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(files.size());
+        long foundAt = System.currentTimeMillis();
+        int changed = 0;
+
+        for (FileSystemDataSet file : files) {
+            String localPath = file.getLocalPath();
+            long modifiedAt = file.getModifiedAt();
+            FileSystemDataSet data = existingData.get(localPath);
+
+            ContentValues cv = new ContentValues();
+            cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_FOUND_RECENTLY, foundAt);
+            cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_MODIFIED, modifiedAt);
+
+            if (data == null) {
+                cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH, localPath);
+                cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_IS_FOLDER, file.isFolder() ? 1 : 0);
+                cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_SENT_FOR_UPLOAD, Boolean.FALSE);
+                cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_SYNCED_FOLDER_ID, syncedFolder.getId());
+
+                FileChecksumAlgorithm algorithm = FileChecksumAlgorithm.forSize(new File(localPath).length(),
+                                                                                sampleLargeFiles);
+                long newCrc32 = algorithm.checksum(localPath);
+                if (newCrc32 != -1) {
+                    cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_CRC32, Long.toString(newCrc32));
+                    cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_CRC32_ALGORITHM, algorithm.getId());
+                }
 
-            Uri result = contentResolver.insert(ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM, cv);
+                operations.add(ContentProviderOperation
+                                   .newInsert(ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM)
+                                   .withValues(cv)
+                                   .build());
+                changed++;
+            } else {
+                if (data.getModifiedAt() != modifiedAt) {
+                    putChecksumIfContentChanged(cv, localPath, data);
+                    changed++;
+                }
 
-            if (result == null) {
-                Log_OC.v(TAG, "Failed to insert filesystem data with local path: " + localPath);
+                operations.add(ContentProviderOperation
+                                   .newUpdate(ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM)
+                                   .withValues(cv)
+                                   .withSelection(ProviderMeta.ProviderTableMeta._ID + "=?",
+                                                  new String[]{String.valueOf(data.getId())})
+                                   .build());
             }
-        } else {
+        }
 
-            if (data.getModifiedAt() != modifiedAt) {
-                long newCrc32 = getFileChecksum(localPath);
-                if (data.getCrc32() == null || (newCrc32 != -1 && !data.getCrc32().equals(Long.toString(newCrc32)))) {
-                    cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_CRC32, Long.toString(newCrc32));
-                    cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_SENT_FOR_UPLOAD, 0);
-                }
-            }
+        try {
+            contentResolver.applyBatch(MainApp.getAuthority(), operations);
+        } catch (OperationApplicationException | RemoteException e) {
+            Log_OC.e(TAG, "Failed to store filesystem data for synced folder " + syncedFolder.getLocalPath(), e);
+            return 0;
+        }
 
+        return changed;
+    }
 
-            int result = contentResolver.update(
-                    ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM,
-                    cv,
-                    ProviderMeta.ProviderTableMeta._ID + "=?",
-                    new String[]{String.valueOf(data.getId())}
-            );
+    /**
+     * @return time of the last completed scan of the synced folder, 0 if it was never scanned completely
+     */
+    public long getScanMark(SyncedFolder syncedFolder) {
+        String value = new ArbitraryDataProvider(contentResolver).getValue(FilesSyncHelper.GLOBAL,
+                                                                          getScanMarkKey(syncedFolder.getId()));
+        if (value.isEmpty()) {
+            return 0;
+        }
 
-            if (result == 0) {
-                Log_OC.v(TAG, "Failed to update filesystem data with local path: " + localPath);
-            }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
         }
     }
 
-    private FileSystemDataSet getFilesystemDataSet(String localPathParam, SyncedFolder syncedFolder) {
+    public void storeScanMark(SyncedFolder syncedFolder, long timestamp) {
+        new ArbitraryDataProvider(contentResolver).storeOrUpdateKeyValue(FilesSyncHelper.GLOBAL,
+                                                                         getScanMarkKey(syncedFolder.getId()),
+                                                                         timestamp);
+    }
+
+    /**
+     * Forces the next scan of the synced folder to visit all files, e.g. after its local path changed.
+     */
+    public void resetScanMark(long syncedFolderId) {
+        new ArbitraryDataProvider(contentResolver).deleteKeyForAccount(FilesSyncHelper.GLOBAL,
+                                                                       getScanMarkKey(syncedFolderId));
+    }
 
-        Cursor cursor = contentResolver.query(
-                ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM,
-                null,
-                ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH + " = ? and " +
-                        ProviderMeta.ProviderTableMeta.FILESYSTEM_SYNCED_FOLDER_ID + " = ?",
-                new String[]{localPathParam, Long.toString(syncedFolder.getId())},
-                null
-        );
+    private static String getScanMarkKey(long syncedFolderId) {
+        return SCAN_MARK_KEY_PREFIX + syncedFolderId;
+    }
 
-        FileSystemDataSet dataSet = null;
-        if (cursor != null) {
-            if (cursor.moveToFirst()) {
-                int id = cursor.getInt(cursor.getColumnIndexOrThrow(ProviderMeta.ProviderTableMeta._ID));
-                String localPath = cursor.getString(cursor.getColumnIndexOrThrow(
-                        ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH));
-                long modifiedAt = cursor.getLong(cursor.getColumnIndexOrThrow(
-                        ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_MODIFIED));
-                boolean isFolder = false;
-                if (cursor.getInt(cursor.getColumnIndexOrThrow(
-                        ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_IS_FOLDER)) != 0) {
-                    isFolder = true;
-                }
-                long foundAt = cursor.getLong(cursor.getColumnIndexOrThrow(ProviderMeta.
-                        ProviderTableMeta.FILESYSTEM_FILE_FOUND_RECENTLY));
+    private Map<String, FileSystemDataSet> getFilesystemDataSets(List<FileSystemDataSet> files,
+                                                                 SyncedFolder syncedFolder) {
+        Map<String, FileSystemDataSet> dataSets = new HashMap<>(files.size());
+        String syncedFolderId = Long.toString(syncedFolder.getId());
+
+        for (int start = 0; start < files.size(); start += MAX_SELECTION_ARGS) {
+            List<FileSystemDataSet> chunk = files.subList(start, Math.min(start + MAX_SELECTION_ARGS, files.size()));
+            String[] selectionArgs = new String[chunk.size() + 1];
+            selectionArgs[0] = syncedFolderId;
+            for (int i = 0; i < chunk.size(); i++) {
+                selectionArgs[i + 1] = chunk.get(i).getLocalPath();
+            }
 
-                boolean isSentForUpload = false;
-                if (cursor.getInt(cursor.getColumnIndexOrThrow(
-                        ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_SENT_FOR_UPLOAD)) != 0) {
-                    isSentForUpload = true;
-                }
+            Cursor cursor = contentResolver.query(
+                    ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM,
+                    null,
+                    ProviderMeta.ProviderTableMeta.FILESYSTEM_SYNCED_FOLDER_ID + " = ? and " +
+                            ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH + " IN (" +
+                            TextUtils.join(",", Collections.nCopies(chunk.size(), "?")) + ")",
+                    selectionArgs,
+                    null
+            );
 
-                String crc32 = cursor.getString(cursor.getColumnIndexOrThrow(ProviderMeta.ProviderTableMeta.FILESYSTEM_CRC32));
+            if (cursor == null) {
+                Log_OC.e(TAG, "DB error restoring filesystem data.");
+                continue;
+            }
 
-                if (id == -1) {
-                    Log_OC.e(TAG, "Arbitrary value could not be created from cursor");
-                } else {
-                    dataSet = new FileSystemDataSet(id, localPath, modifiedAt, isFolder, isSentForUpload, foundAt,
-                            syncedFolder.getId(), crc32);
-                }
+            int idIndex = cursor.getColumnIndexOrThrow(ProviderMeta.ProviderTableMeta._ID);
+            int localPathIndex = cursor.getColumnIndexOrThrow(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH);
+            int modifiedIndex = cursor.getColumnIndexOrThrow(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_MODIFIED);
+            int isFolderIndex = cursor.getColumnIndexOrThrow(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_IS_FOLDER);
+            int foundAtIndex = cursor.getColumnIndexOrThrow(
+                    ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_FOUND_RECENTLY);
+            int sentForUploadIndex = cursor.getColumnIndexOrThrow(
+                    ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_SENT_FOR_UPLOAD);
+            int crc32Index = cursor.getColumnIndexOrThrow(ProviderMeta.ProviderTableMeta.FILESYSTEM_CRC32);
+            int crc32AlgorithmIndex = cursor.getColumnIndexOrThrow(
+                    ProviderMeta.ProviderTableMeta.FILESYSTEM_CRC32_ALGORITHM);
+
+            while (cursor.moveToNext()) {
+                String localPath = cursor.getString(localPathIndex);
+                dataSets.put(localPath, new FileSystemDataSet(cursor.getInt(idIndex),
+                                                              localPath,
+                                                              cursor.getLong(modifiedIndex),
+                                                              cursor.getInt(isFolderIndex) != 0,
+                                                              cursor.getInt(sentForUploadIndex) != 0,
+                                                              cursor.getLong(foundAtIndex),
+                                                              syncedFolder.getId(),
+                                                              cursor.getString(crc32Index),
+                                                              cursor.getString(crc32AlgorithmIndex)));
             }
             cursor.close();
-        } else {
-            Log_OC.e(TAG, "DB error restoring arbitrary values.");
         }
 
-        return dataSet;
+        return dataSets;
     }
 
-    private long getFileChecksum(String filepath) {
-
-        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(filepath))){
-            CRC32 crc = new CRC32();
-            int cnt;
-            while ((cnt = inputStream.read()) != -1) {
-                crc.update(cnt);
+    /**
+     * Puts a new checksum and resets the upload flag if the file content differs from the stored checksum. The
+     * comparison uses the algorithm the stored checksum was computed with, so that checksums written by older
+     * versions stay comparable.
+     */
+    private void putChecksumIfContentChanged(ContentValues cv, String localPath, FileSystemDataSet data) {
+        FileChecksumAlgorithm algorithm = FileChecksumAlgorithm.forSize(new File(localPath).length(), sampleLargeFiles);
+        long crc32;
+
+        if (data.getCrc32() == null) {
+            crc32 = algorithm.checksum(localPath);
+        } else {
+            FileChecksumAlgorithm storedAlgorithm = FileChecksumAlgorithm.fromId(data.getCrc32Algorithm());
+            long storedAlgorithmCrc32 = storedAlgorithm.checksum(localPath);
+            if (storedAlgorithmCrc32 == -1 || data.getCrc32().equals(Long.toString(storedAlgorithmCrc32))) {
+                return;
             }
-
-            return crc.getValue();
-
-        } catch (IOException e) {
-            return -1;
+            crc32 = storedAlgorithm == algorithm ? storedAlgorithmCrc32 : algorithm.checksum(localPath);
         }
+
+        cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_CRC32, Long.toString(crc32));
+        cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_CRC32_ALGORITHM, algorithm.getId());
+        cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_SENT_FOR_UPLOAD, 0);
     }
 }
@@ -0,0 +1,86 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.datamodel;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the media folders of one media type in a single sweep over all media rows: number of files, newest file
+ * paths and absolute path of every bucket.
+ *
+ * Rows have to be added newest first, so that the first paths of a bucket are its newest ones.
+ */
+final class MediaFolderAggregator {
+
+    private final MediaFolderType type;
+    private final int itemLimit;
+    private final Map<String, MediaFolder> folders = new LinkedHashMap<>();
+
+    /**
+     * @param type      type of the media folders
+     * @param itemLimit maximum number of file paths kept per media folder
+     */
+    MediaFolderAggregator(MediaFolderType type, int itemLimit) {
+        this.type = type;
+        this.itemLimit = itemLimit;
+    }
+
+    void add(String bucketId, String bucketName, String filePath) {
+        MediaFolder folder = folders.get(bucketId);
+        if (folder == null) {
+            folder = new MediaFolder();
+            folder.type = type;
+            folder.folderName = bucketName;
+            folders.put(bucketId, folder);
+        }
+
+        folder.numberOfFiles++;
+
+        if (isValidFilePath(filePath)) {
+            if (folder.absolutePath == null) {
+                folder.absolutePath = filePath.substring(0, filePath.lastIndexOf('/'));
+            }
+            if (folder.filePaths.size() < itemLimit) {
+                folder.filePaths.add(filePath);
+            }
+        }
+    }
+
+    /**
+     * @param excludedPath media folders within this path are skipped, like the ones of the app itself
+     * @return media folders with a known absolute path
+     */
+    List<MediaFolder> getFolders(String excludedPath) {
+        List<MediaFolder> result = new ArrayList<>(folders.size());
+        for (MediaFolder folder : folders.values()) {
+            if (folder.absolutePath != null && !folder.absolutePath.startsWith(excludedPath)) {
+                result.add(folder);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isValidFilePath(String filePath) {
+        return filePath != null && filePath.lastIndexOf('/') > 0;
+    }
+}
@@ -22,15 +22,15 @@
 package com.owncloud.android.datamodel;
 
 import android.content.ContentResolver;
+import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Build;
 import android.provider.MediaStore;
 import android.util.Log;
 
 import com.owncloud.android.MainApp;
 import com.owncloud.android.utils.PermissionUtil;
-import com.owncloud.android.utils.theme.ThemeButtonUtils;
-import com.owncloud.android.utils.theme.ThemeColorUtils;
 import com.owncloud.android.utils.theme.ThemeSnackbarUtils;
 
 import java.io.File;
@@ -41,25 +41,40 @@ import java.util.Map;
 
 import javax.annotation.Nullable;
 
+import androidx.annotation.VisibleForTesting;
 import androidx.appcompat.app.AppCompatActivity;
 
 /**
  * Media queries to gain access to media lists for the device.
+ *
+ * Media folders are aggregated in a single query per media type and cached as long as the media store is
+ * unchanged. On devices before Android 11, the media store has no generation, so folders are queried every time.
  */
 public final class MediaProvider {
     private static final String TAG = MediaProvider.class.getSimpleName();
 
     // fixed query parameters
     private static final Uri IMAGES_MEDIA_URI = android.provider.MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
-    private static final String[] FILE_PROJECTION = new String[]{MediaStore.MediaColumns.DATA};
-    private static final String IMAGES_FILE_SELECTION = MediaStore.Images.Media.BUCKET_ID + "=";
-    private static final String[] IMAGES_FOLDER_PROJECTION = {MediaStore.Images.Media.BUCKET_ID,
-        MediaStore.Images.Media.BUCKET_DISPLAY_NAME};
-    private static final String IMAGES_FOLDER_SORT_COLUMN = MediaStore.Images.Media.BUCKET_DISPLAY_NAME;
-    private static final String IMAGES_SORT_DIRECTION = ContentResolverHelper.SORT_DIRECTION_ASCENDING;
+    private static final String[] IMAGES_PROJECTION = {MediaStore.Images.Media.BUCKET_ID,
+        MediaStore.Images.Media.BUCKET_DISPLAY_NAME, MediaStore.MediaColumns.DATA};
+    private static final String IMAGES_SORT_COLUMN = MediaStore.Images.Media.DATE_TAKEN;
+
+    private static final Uri VIDEOS_MEDIA_URI = MediaStore.Video.Media.EXTERNAL_CONTENT_URI;
+    private static final String[] VIDEOS_PROJECTION = {MediaStore.Video.Media.BUCKET_ID,
+        MediaStore.Video.Media.BUCKET_DISPLAY_NAME, MediaStore.MediaColumns.DATA};
+    private static final String VIDEOS_SORT_COLUMN = MediaStore.Video.Media.DATE_TAKEN;
+
+    private static final Map<String, CachedMediaFolders> CACHE = new HashMap<>();
 
-    private static final String[] VIDEOS_FOLDER_PROJECTION = {MediaStore.Video.Media.BUCKET_ID,
-        MediaStore.Video.Media.BUCKET_DISPLAY_NAME};
+    private static final class CachedMediaFolders {
+        private final String generation;
+        private final List<MediaFolder> folders;
+
+        private CachedMediaFolders(String generation, List<MediaFolder> folders) {
+            this.generation = generation;
+            this.folders = folders;
+        }
+    }
 
     private MediaProvider() {
         // utility class -> private constructor
@@ -80,107 +95,11 @@ public final class MediaProvider {
         // check permissions
         checkPermissions(activity, themeSnackbarUtils);
 
-        // query media/image folders
-        Cursor cursorFolders = null;
         if (activity != null && PermissionUtil.checkExternalStoragePermission(activity.getApplicationContext())
             || getWithoutActivity) {
-            cursorFolders = ContentResolverHelper.queryResolver(contentResolver, IMAGES_MEDIA_URI,
-                                                                IMAGES_FOLDER_PROJECTION, null, null,
-                                                                IMAGES_FOLDER_SORT_COLUMN, IMAGES_SORT_DIRECTION, null);
-        }
-
-        List<MediaFolder> mediaFolders = new ArrayList<>();
-        String dataPath = MainApp.getStoragePath() + File.separator + MainApp.getDataFolder();
-
-        if (cursorFolders != null) {
-            Cursor cursorImages;
-
-            Map<String, String> uniqueFolders = new HashMap<>();
-
-            // since sdk 29 we have to manually distinct on bucket id
-            while (cursorFolders.moveToNext()) {
-                uniqueFolders.put(cursorFolders.getString(
-                    cursorFolders.getColumnIndexOrThrow(MediaStore.Images.Media.BUCKET_ID)),
-                                  cursorFolders.getString(
-                                      cursorFolders.getColumnIndexOrThrow(MediaStore.Images.Media.BUCKET_DISPLAY_NAME))
-                );
-            }
-            cursorFolders.close();
-
-            for (Map.Entry<String, String> folder : uniqueFolders.entrySet()) {
-                MediaFolder mediaFolder = new MediaFolder();
-
-                mediaFolder.type = MediaFolderType.IMAGE;
-                mediaFolder.folderName = folder.getValue();
-                mediaFolder.filePaths = new ArrayList<>();
-
-                // query images
-                cursorImages = ContentResolverHelper.queryResolver(contentResolver,
-                                                                   IMAGES_MEDIA_URI,
-                                                                   FILE_PROJECTION,
-                                                                   IMAGES_FILE_SELECTION + folder.getKey(),
-                                                                   null,
-                                                                   MediaStore.Images.Media.DATE_TAKEN,
-                                                                   ContentResolverHelper.SORT_DIRECTION_DESCENDING,
-                                                                   itemLimit);
-                Log.d(TAG, "Reading images for " + mediaFolder.folderName);
-
-                if (cursorImages != null) {
-                    String filePath;
-                    int imageCount = 0;
-                    while (cursorImages.moveToNext() && imageCount < itemLimit) {
-                        filePath = cursorImages.getString(cursorImages.getColumnIndexOrThrow(
-                            MediaStore.MediaColumns.DATA));
-
-                        // check if valid path and file exists
-                        if (isValidAndExistingFilePath(filePath)) {
-                            mediaFolder.filePaths.add(filePath);
-                            mediaFolder.absolutePath = filePath.substring(0, filePath.lastIndexOf('/'));
-                        }
-                        // ensure we don't go over the limit due to faulty android implementations
-                        imageCount++;
-                    }
-                    cursorImages.close();
-
-                    // only do further work if folder is not within the Nextcloud app itself
-                    if (isFolderOutsideOfAppPath(dataPath, mediaFolder)) {
-
-                        // count images
-                        Cursor count = contentResolver.query(
-                            IMAGES_MEDIA_URI,
-                            FILE_PROJECTION,
-                            IMAGES_FILE_SELECTION + folder.getKey(),
-                            null,
-                            null);
-
-                        if (count != null) {
-                            mediaFolder.numberOfFiles = count.getCount();
-                            count.close();
-                        }
-
-                        mediaFolders.add(mediaFolder);
-                    }
-                }
-            }
-        }
-
-        return mediaFolders;
-    }
-
-    private static boolean isFolderOutsideOfAppPath(String dataPath, MediaFolder mediaFolder) {
-        return mediaFolder.absolutePath != null && !mediaFolder.absolutePath.startsWith(dataPath);
-    }
-
-    private static boolean isValidAndExistingFilePath(String filePath) {
-        return filePath != null && filePath.lastIndexOf('/') > 0 && new File(filePath).exists();
-    }
-
-    private static void checkPermissions(@Nullable AppCompatActivity activity,
-                                         ThemeSnackbarUtils themeSnackbarUtils) {
-        if (activity != null &&
-            !PermissionUtil.checkExternalStoragePermission(activity.getApplicationContext())) {
-            PermissionUtil.requestExternalStoragePermission(activity, themeSnackbarUtils, true);
+            return getMediaFolders(contentResolver, MediaFolderType.IMAGE, itemLimit);
         }
+        return new ArrayList<>();
     }
 
     public static List<MediaFolder> getVideoFolders(ContentResolver contentResolver,
@@ -191,89 +110,108 @@ public final class MediaProvider {
         // check permissions
         checkPermissions(activity, themeSnackbarUtils);
 
-        // query media/image folders
-        Cursor cursorFolders = null;
         if ((activity != null && PermissionUtil.checkExternalStoragePermission(activity.getApplicationContext()))
             || getWithoutActivity) {
-            cursorFolders = contentResolver.query(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, VIDEOS_FOLDER_PROJECTION,
-                                                  null, null, null);
+            return getMediaFolders(contentResolver, MediaFolderType.VIDEO, itemLimit);
         }
+        return new ArrayList<>();
+    }
 
-        List<MediaFolder> mediaFolders = new ArrayList<>();
-        String dataPath = MainApp.getStoragePath() + File.separator + MainApp.getDataFolder();
-
-        if (cursorFolders != null) {
-            Cursor cursorVideos;
+    private static List<MediaFolder> getMediaFolders(ContentResolver contentResolver,
+                                                     MediaFolderType type,
+                                                     int itemLimit) {
+        String key = type + ":" + itemLimit;
+        String generation = getMediaStoreGeneration(MainApp.getAppContext());
+
+        if (generation != null) {
+            synchronized (CACHE) {
+                CachedMediaFolders cached = CACHE.get(key);
+                if (cached != null && cached.generation.equals(generation)) {
+                    return new ArrayList<>(cached.folders);
+                }
+            }
+        }
 
-            Map<String, String> uniqueFolders = new HashMap<>();
+        List<MediaFolder> folders = queryMediaFolders(contentResolver, type, itemLimit);
 
-            // since sdk 29 we have to manually distinct on bucket id
-            while (cursorFolders.moveToNext()) {
-                uniqueFolders.put(cursorFolders.getString(
-                    cursorFolders.getColumnIndexOrThrow(MediaStore.Video.Media.BUCKET_ID)),
-                                  cursorFolders.getString(
-                                      cursorFolders.getColumnIndexOrThrow(MediaStore.Video.Media.BUCKET_DISPLAY_NAME))
-                );
+        if (generation != null) {
+            synchronized (CACHE) {
+                CACHE.put(key, new CachedMediaFolders(generation, folders));
             }
-            cursorFolders.close();
-
-            for (Map.Entry<String, String> folder : uniqueFolders.entrySet()) {
-                MediaFolder mediaFolder = new MediaFolder();
-                mediaFolder.type = MediaFolderType.VIDEO;
-                mediaFolder.folderName = folder.getValue();
-                mediaFolder.filePaths = new ArrayList<>();
+        }
+        return new ArrayList<>(folders);
+    }
 
-                // query videos
-                cursorVideos = ContentResolverHelper.queryResolver(contentResolver,
-                                                                   MediaStore.Video.Media.EXTERNAL_CONTENT_URI,
-                                                                   FILE_PROJECTION,
-                                                                   MediaStore.Video.Media.BUCKET_ID + "=" + folder.getKey(),
-                                                                   null,
-                                                                   MediaStore.Video.Media.DATE_TAKEN,
-                                                                   ContentResolverHelper.SORT_DIRECTION_DESCENDING,
-                                                                   itemLimit);
+    /**
+     * Reads all media rows of the given type once, newest first, and aggregates them per bucket.
+     */
+    @VisibleForTesting
+    static List<MediaFolder> queryMediaFolders(ContentResolver contentResolver, MediaFolderType type, int itemLimit) {
+        boolean images = type == MediaFolderType.IMAGE;
+        MediaFolderAggregator aggregator = new MediaFolderAggregator(type, itemLimit);
+        String dataPath = MainApp.getStoragePath() + File.separator + MainApp.getDataFolder();
 
-                Log.d(TAG, "Reading videos for " + mediaFolder.folderName);
+        long start = System.currentTimeMillis();
+        Cursor cursor = ContentResolverHelper.queryResolver(contentResolver,
+                                                            images ? IMAGES_MEDIA_URI : VIDEOS_MEDIA_URI,
+                                                            images ? IMAGES_PROJECTION : VIDEOS_PROJECTION,
+                                                            null,
+                                                            null,
+                                                            images ? IMAGES_SORT_COLUMN : VIDEOS_SORT_COLUMN,
+                                                            ContentResolverHelper.SORT_DIRECTION_DESCENDING,
+                                                            null);
+        if (cursor == null) {
+            return new ArrayList<>();
+        }
 
-                if (cursorVideos != null) {
-                    String filePath;
-                    int videoCount = 0;
-                    while (cursorVideos.moveToNext() && videoCount < itemLimit) {
-                        filePath = cursorVideos.getString(cursorVideos.getColumnIndexOrThrow(
-                            MediaStore.MediaColumns.DATA));
+        try {
+            // bucket columns of images and videos have the same names
+            int bucketIdIndex = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.BUCKET_ID);
+            int bucketNameIndex = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.BUCKET_DISPLAY_NAME);
+            int dataIndex = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DATA);
 
-                        if (filePath != null) {
-                            mediaFolder.filePaths.add(filePath);
-                            mediaFolder.absolutePath = filePath.substring(0, filePath.lastIndexOf('/'));
-                        }
-                        // ensure we don't go over the limit due to faulty android implementations
-                        videoCount++;
-                    }
-                    cursorVideos.close();
+            while (cursor.moveToNext()) {
+                aggregator.add(cursor.getString(bucketIdIndex),
+                               cursor.getString(bucketNameIndex),
+                               cursor.getString(dataIndex));
+            }
+            Log.d(TAG, "Read " + cursor.getCount() + " " + type + " rows in "
+                + (System.currentTimeMillis() - start) + " ms");
+        } finally {
+            cursor.close();
+        }
 
-                    // only do further work if folder is not within the Nextcloud app itself
-                    if (isFolderOutsideOfAppPath(dataPath, mediaFolder)) {
+        return aggregator.getFolders(dataPath);
+    }
 
-                        // count images
-                        Cursor count = contentResolver.query(
-                            MediaStore.Video.Media.EXTERNAL_CONTENT_URI,
-                            FILE_PROJECTION,
-                            MediaStore.Video.Media.BUCKET_ID + "=" + folder.getKey(),
-                            null,
-                            null);
+    /**
+     * @return generations of all external volumes or null, if the media store has no generation
+     */
+    @Nullable
+    private static String getMediaStoreGeneration(@Nullable Context context) {
+        if (context == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.R) {
+            return null;
+        }
 
-                        if (count != null) {
-                            mediaFolder.numberOfFiles = count.getCount();
-                            count.close();
-                        }
+        StringBuilder generation = new StringBuilder();
+        for (String volume : MediaStore.getExternalVolumeNames(context)) {
+            generation.append(volume).append(':').append(MediaStore.getGeneration(context, volume)).append(';');
+        }
+        return generation.toString();
+    }
 
-                        mediaFolders.add(mediaFolder);
-                    }
-                }
-            }
-            cursorFolders.close();
+    @VisibleForTesting
+    static void clearCache() {
+        synchronized (CACHE) {
+            CACHE.clear();
         }
+    }
 
-        return mediaFolders;
+    private static void checkPermissions(@Nullable AppCompatActivity activity,
+                                         ThemeSnackbarUtils themeSnackbarUtils) {
+        if (activity != null &&
+            !PermissionUtil.checkExternalStoragePermission(activity.getApplicationContext())) {
+            PermissionUtil.requestExternalStoragePermission(activity, themeSnackbarUtils, true);
+        }
     }
 }
@@ -0,0 +1,217 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel;
+
+import android.database.Cursor;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.owncloud.android.db.ProviderMeta.ProviderTableMeta;
+import com.owncloud.android.lib.common.network.WebdavEntry;
+import com.owncloud.android.lib.resources.files.model.FileLockType;
+import com.owncloud.android.lib.resources.shares.ShareeUser;
+import com.owncloud.android.utils.FileStorageUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Maps rows of a files table cursor to {@link OCFile} instances.
+ *
+ * Column indexes are resolved once per cursor instead of once per row and column, and the {@link Gson} instance used
+ * for sharees is shared between all mappers.
+ */
+class OCFileCursorMapper {
+
+    static final Gson GSON = new Gson();
+
+    private static final String EMPTY_SHAREES = "[]";
+
+    private static final WebdavEntry.MountType[] MOUNT_TYPES = WebdavEntry.MountType.values();
+
+    private final Cursor cursor;
+    private final String accountName;
+    private final boolean probeLocalFile;
+
+    private final int pathIndex;
+    private final int pathDecryptedIndex;
+    private final int idIndex;
+    private final int parentIndex;
+    private final int contentTypeIndex;
+    private final int storagePathIndex;
+    private final int contentLengthIndex;
+    private final int creationIndex;
+    private final int modifiedIndex;
+    private final int modifiedAtLastSyncForDataIndex;
+    private final int lastSyncDateIndex;
+    private final int lastSyncDateForDataIndex;
+    private final int etagIndex;
+    private final int etagOnServerIndex;
+    private final int sharedViaLinkIndex;
+    private final int sharedWithShareeIndex;
+    private final int permissionsIndex;
+    private final int remoteIdIndex;
+    private final int updateThumbnailIndex;
+    private final int isDownloadingIndex;
+    private final int etagInConflictIndex;
+    private final int favoriteIndex;
+    private final int isEncryptedIndex;
+    private final int mountTypeIndex;
+    private final int hasPreviewIndex;
+    private final int unreadCommentsCountIndex;
+    private final int ownerIdIndex;
+    private final int ownerDisplayNameIndex;
+    private final int noteIndex;
+    private final int richWorkspaceIndex;
+    private final int lockedIndex;
+    private final int lockTypeIndex;
+    private final int lockOwnerIndex;
+    private final int lockOwnerDisplayNameIndex;
+    private final int lockOwnerEditorIndex;
+    private final int lockTimestampIndex;
+    private final int lockTimeoutIndex;
+    private final int lockTokenIndex;
+    private final int shareesIndex;
+
+    /**
+     * @param cursor         cursor over the files table, containing all file columns
+     * @param accountName    account owning the files, used to find local copies
+     * @param probeLocalFile if true, files without storage path are looked up in the default save path on disk
+     */
+    OCFileCursorMapper(Cursor cursor, String accountName, boolean probeLocalFile) {
+        this.cursor = cursor;
+        this.accountName = accountName;
+        this.probeLocalFile = probeLocalFile;
+
+        pathIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_PATH);
+        pathDecryptedIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_PATH_DECRYPTED);
+        idIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta._ID);
+        parentIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_PARENT);
+        contentTypeIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_CONTENT_TYPE);
+        storagePathIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_STORAGE_PATH);
+        contentLengthIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_CONTENT_LENGTH);
+        creationIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_CREATION);
+        modifiedIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_MODIFIED);
+        modifiedAtLastSyncForDataIndex =
+            cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_MODIFIED_AT_LAST_SYNC_FOR_DATA);
+        lastSyncDateIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LAST_SYNC_DATE);
+        lastSyncDateForDataIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LAST_SYNC_DATE_FOR_DATA);
+        etagIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_ETAG);
+        etagOnServerIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_ETAG_ON_SERVER);
+        sharedViaLinkIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_SHARED_VIA_LINK);
+        sharedWithShareeIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_SHARED_WITH_SHAREE);
+        permissionsIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_PERMISSIONS);
+        remoteIdIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_REMOTE_ID);
+        updateThumbnailIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_UPDATE_THUMBNAIL);
+        isDownloadingIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_IS_DOWNLOADING);
+        etagInConflictIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_ETAG_IN_CONFLICT);
+        favoriteIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_FAVORITE);
+        isEncryptedIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_IS_ENCRYPTED);
+        mountTypeIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_MOUNT_TYPE);
+        hasPreviewIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_HAS_PREVIEW);
+        unreadCommentsCountIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_UNREAD_COMMENTS_COUNT);
+        ownerIdIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_OWNER_ID);
+        ownerDisplayNameIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_OWNER_DISPLAY_NAME);
+        noteIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_NOTE);
+        richWorkspaceIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_RICH_WORKSPACE);
+        lockedIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCKED);
+        lockTypeIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_TYPE);
+        lockOwnerIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_OWNER);
+        lockOwnerDisplayNameIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_OWNER_DISPLAY_NAME);
+        lockOwnerEditorIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_OWNER_EDITOR);
+        lockTimestampIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_TIMESTAMP);
+        lockTimeoutIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_TIMEOUT);
+        lockTokenIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_TOKEN);
+        shareesIndex = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_SHAREES);
+    }
+
+    /**
+     * @return file built from the row the cursor currently points to
+     */
+    OCFile map() {
+        OCFile ocFile = new OCFile(cursor.getString(pathIndex));
+        ocFile.setDecryptedRemotePath(cursor.getString(pathDecryptedIndex));
+        ocFile.setFileId(cursor.getLong(idIndex));
+        ocFile.setParentId(cursor.getLong(parentIndex));
+        ocFile.setMimeType(cursor.getString(contentTypeIndex));
+        ocFile.setStoragePath(cursor.getString(storagePathIndex));
+        if (ocFile.getStoragePath() == null && probeLocalFile) {
+            // try to find existing file and bind it with current account;
+            // with the current update of SynchronizeFolderOperation, this won't be
+            // necessary anymore after a full synchronization of the account
+            File file = new File(FileStorageUtils.getDefaultSavePathFor(accountName, ocFile));
+            if (file.exists()) {
+                ocFile.setStoragePath(file.getAbsolutePath());
+                ocFile.setLastSyncDateForData(file.lastModified());
+            }
+        }
+        ocFile.setFileLength(cursor.getLong(contentLengthIndex));
+        ocFile.setCreationTimestamp(cursor.getLong(creationIndex));
+        ocFile.setModificationTimestamp(cursor.getLong(modifiedIndex));
+        ocFile.setModificationTimestampAtLastSyncForData(cursor.getLong(modifiedAtLastSyncForDataIndex));
+        ocFile.setLastSyncDateForProperties(cursor.getLong(lastSyncDateIndex));
+        ocFile.setLastSyncDateForData(cursor.getLong(lastSyncDateForDataIndex));
+        ocFile.setEtag(cursor.getString(etagIndex));
+        ocFile.setEtagOnServer(cursor.getString(etagOnServerIndex));
+        ocFile.setSharedViaLink(cursor.getInt(sharedViaLinkIndex) == 1);
+        ocFile.setSharedWithSharee(cursor.getInt(sharedWithShareeIndex) == 1);
+        ocFile.setPermissions(cursor.getString(permissionsIndex));
+        ocFile.setRemoteId(cursor.getString(remoteIdIndex));
+        ocFile.setUpdateThumbnailNeeded(cursor.getInt(updateThumbnailIndex) == 1);
+        ocFile.setDownloading(cursor.getInt(isDownloadingIndex) == 1);
+        ocFile.setEtagInConflict(cursor.getString(etagInConflictIndex));
+        ocFile.setFavorite(cursor.getInt(favoriteIndex) == 1);
+        ocFile.setEncrypted(cursor.getInt(isEncryptedIndex) == 1);
+        ocFile.setMountType(MOUNT_TYPES[cursor.getInt(mountTypeIndex)]);
+        ocFile.setPreviewAvailable(cursor.getInt(hasPreviewIndex) == 1);
+        ocFile.setUnreadCommentsCount(cursor.getInt(unreadCommentsCountIndex));
+        ocFile.setOwnerId(cursor.getString(ownerIdIndex));
+        ocFile.setOwnerDisplayName(cursor.getString(ownerDisplayNameIndex));
+        ocFile.setNote(cursor.getString(noteIndex));
+        ocFile.setRichWorkspace(cursor.getString(richWorkspaceIndex));
+        ocFile.setLocked(cursor.getInt(lockedIndex) == 1);
+        final int lockTypeInt = cursor.getInt(lockTypeIndex);
+        ocFile.setLockType(lockTypeInt != -1 ? FileLockType.fromValue(lockTypeInt) : null);
+        ocFile.setLockOwnerId(cursor.getString(lockOwnerIndex));
+        ocFile.setLockOwnerDisplayName(cursor.getString(lockOwnerDisplayNameIndex));
+        ocFile.setLockOwnerEditor(cursor.getString(lockOwnerEditorIndex));
+        ocFile.setLockTimestamp(cursor.getInt(lockTimestampIndex));
+        ocFile.setLockTimeout(cursor.getInt(lockTimeoutIndex));
+        ocFile.setLockToken(cursor.getString(lockTokenIndex));
+
+        String sharees = cursor.getString(shareesIndex);
+
+        if (sharees == null || FileDataStorageManager.NULL_STRING.equals(sharees) || sharees.isEmpty() ||
+            EMPTY_SHAREES.equals(sharees)) {
+            ocFile.setSharees(new ArrayList<>());
+        } else {
+            try {
+                ShareeUser[] shareesArray = GSON.fromJson(sharees, ShareeUser[].class);
+
+                ocFile.setSharees(new ArrayList<>(Arrays.asList(shareesArray)));
+            } catch (JsonSyntaxException e) {
+                // ignore saved value due to api change
+                ocFile.setSharees(new ArrayList<>());
+            }
+        }
+
+        return ocFile;
+    }
+}
@@ -298,6 +298,7 @@ public class SyncedFolderProvider extends Observable {
      * delete record of synchronized folder with the given id.
      */
     public int deleteSyncedFolder(long id) {
+        new FilesystemDataProvider(mContentResolver).resetScanMark(id);
         return mContentResolver.delete(
                 ProviderMeta.ProviderTableMeta.CONTENT_URI_SYNCED_FOLDERS,
                 ProviderMeta.ProviderTableMeta._ID + " = ?",
@@ -316,6 +317,9 @@ public class SyncedFolderProvider extends Observable {
 
         ContentValues cv = createContentValuesFromSyncedFolder(syncedFolder);
 
+        // path, type or enabled state may have changed, so the next scan has to visit all files again
+        new FilesystemDataProvider(mContentResolver).resetScanMark(syncedFolder.getId());
+
         return mContentResolver.update(
                 ProviderMeta.ProviderTableMeta.CONTENT_URI_SYNCED_FOLDERS,
                 cv,
@@ -0,0 +1,269 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.datamodel;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.widget.ImageView;
+
+import com.owncloud.android.lib.common.utils.Log_OC;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Loads thumbnails for image views on a bounded pool of worker threads.
+ *
+ * The most recently requested thumbnails are loaded first, as after scrolling these are the visible ones. A thumbnail
+ * requested by several views is loaded only once, and requests of views that are recycled or show another file are
+ * dropped if not started yet.
+ *
+ * Methods have to be called on the main thread, where thumbnails are delivered as well.
+ */
+public class ThumbnailLoader {
+
+    private static final String TAG = ThumbnailLoader.class.getSimpleName();
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
+    public interface Callback {
+        /**
+         * Called on the main thread, if the view still waits for the thumbnail
+         *
+         * @param bitmap loaded thumbnail, null if loading failed
+         */
+        void onLoaded(@Nullable Bitmap bitmap);
+    }
+
+    private static class Target {
+        private final Object owner;
+        private final Callback callback;
+
+        private Target(Object owner, Callback callback) {
+            this.owner = owner;
+            this.callback = callback;
+        }
+    }
+
+    private class Request implements Runnable, Comparable<Request> {
+        private final String key;
+        private final Callable<Bitmap> load;
+        private final Map<ImageView, Target> targets = new HashMap<>();
+        private volatile long sequence;
+
+        private Request(String key, Callable<Bitmap> load) {
+            this.key = key;
+            this.load = load;
+        }
+
+        @Override
+        public void run() {
+            Bitmap bitmap = null;
+            try {
+                bitmap = load.call();
+            } catch (Exception e) {
+                Log_OC.e(TAG, "Loading thumbnail " + key + " failed", e);
+            }
+            loaded.incrementAndGet();
+
+            final Bitmap result = bitmap;
+            mainThread.execute(() -> deliver(this, result));
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            // latest request first
+            return Long.compare(other.sequence, sequence);
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final Executor mainThread;
+    private final Map<String, Request> requests = new HashMap<>();
+    private final Map<ImageView, Request> views = new WeakHashMap<>();
+    private long sequence;
+
+    private final AtomicInteger requested = new AtomicInteger();
+    private final AtomicInteger joined = new AtomicInteger();
+    private final AtomicInteger dropped = new AtomicInteger();
+    private final AtomicInteger loaded = new AtomicInteger();
+
+    public ThumbnailLoader(int threads) {
+        this(threads, new Handler(Looper.getMainLooper())::post);
+    }
+
+    public ThumbnailLoader(int threads, Executor mainThread) {
+        this.mainThread = mainThread;
+        executor = new ThreadPoolExecutor(threads,
+                                          threads,
+                                          KEEP_ALIVE_SECONDS,
+                                          TimeUnit.SECONDS,
+                                          new PriorityBlockingQueue<>(),
+                                          runnable -> new Thread(() -> {
+                                              Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                              runnable.run();
+                                          }, TAG));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Loads a thumbnail for the view, replacing any request of the view for another thumbnail
+     *
+     * @param key   thumbnail key, views asking for the same key share a single load
+     * @param owner owner of the request, see {@link #cancelAll(Object)}
+     * @param load  loads the thumbnail on a worker thread, unless another view already asked for the key
+     */
+    public void load(@NonNull String key,
+                     @NonNull ImageView imageView,
+                     @NonNull Object owner,
+                     @NonNull Callable<Bitmap> load,
+                     @NonNull Callback callback) {
+        requested.incrementAndGet();
+        Target target = new Target(owner, callback);
+
+        Request current = views.get(imageView);
+        if (current != null) {
+            if (current.key.equals(key)) {
+                current.targets.put(imageView, target);
+                prioritize(current);
+                return;
+            }
+            removeTarget(current, imageView);
+        }
+
+        Request request = requests.get(key);
+        if (request == null) {
+            request = new Request(key, load);
+            request.sequence = ++sequence;
+            requests.put(key, request);
+            executor.execute(request);
+        } else {
+            joined.incrementAndGet();
+            prioritize(request);
+        }
+        request.targets.put(imageView, target);
+        views.put(imageView, request);
+    }
+
+    /**
+     * @return true if the view waits for the given thumbnail
+     */
+    public boolean isLoading(@NonNull ImageView imageView, @NonNull String key) {
+        Request request = views.get(imageView);
+        return request != null && request.key.equals(key);
+    }
+
+    /**
+     * Cancels the request of the view, e.g. when the view is recycled
+     */
+    public void cancel(@NonNull ImageView imageView) {
+        Request request = views.remove(imageView);
+        if (request != null) {
+            removeTarget(request, imageView);
+        }
+    }
+
+    /**
+     * Cancels all requests of the owner
+     */
+    public void cancelAll(@NonNull Object owner) {
+        List<ImageView> imageViews = new ArrayList<>();
+        for (Map.Entry<ImageView, Request> entry : views.entrySet()) {
+            Target target = entry.getValue().targets.get(entry.getKey());
+            if (target != null && target.owner == owner) {
+                imageViews.add(entry.getKey());
+            }
+        }
+        for (ImageView imageView : imageViews) {
+            cancel(imageView);
+        }
+    }
+
+    private void prioritize(Request request) {
+        // only waiting requests can be moved to the front
+        if (executor.remove(request)) {
+            request.sequence = ++sequence;
+            executor.execute(request);
+        }
+    }
+
+    private void removeTarget(Request request, ImageView imageView) {
+        request.targets.remove(imageView);
+        // a running request is kept, so that views asking for it again do not load it twice
+        if (request.targets.isEmpty() && executor.remove(request)) {
+            requests.remove(request.key);
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void deliver(Request request, @Nullable Bitmap bitmap) {
+        if (requests.get(request.key) == request) {
+            requests.remove(request.key);
+        }
+        List<Map.Entry<ImageView, Target>> targets = new ArrayList<>(request.targets.entrySet());
+        request.targets.clear();
+        for (Map.Entry<ImageView, Target> target : targets) {
+            views.remove(target.getKey());
+            target.getValue().callback.onLoaded(bitmap);
+        }
+    }
+
+    public int getRequestedCount() {
+        return requested.get();
+    }
+
+    public int getJoinedCount() {
+        return joined.get();
+    }
+
+    public int getDroppedCount() {
+        return dropped.get();
+    }
+
+    public int getLoadedCount() {
+        return loaded.get();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                             "requested: %d, joined: %d, dropped: %d, loaded: %d, waiting: %d",
+                             getRequestedCount(),
+                             getJoinedCount(),
+                             getDroppedCount(),
+                             getLoadedCount(),
+                             executor.getQueue().size());
+    }
+}
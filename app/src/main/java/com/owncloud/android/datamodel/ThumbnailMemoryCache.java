@@ -0,0 +1,147 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import java.util.Locale;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Memory cache of decoded thumbnails in front of the {@link com.owncloud.android.ui.adapter.DiskLruImageCache},
+ * using the same keys. Its size is measured in KB of bitmap memory.
+ *
+ * Evicted bitmaps are left to the garbage collector and never reused for decoding, as they may still be shown.
+ */
+public class ThumbnailMemoryCache {
+
+    /**
+     * Share of the memory class of the app used by the cache
+     */
+    private static final int MEMORY_CLASS_DIVIDER = 8;
+    private static final int KB = 1024;
+
+    private final LruCache<String, Bitmap> cache;
+
+    public ThumbnailMemoryCache(int maxSizeKb) {
+        cache = new LruCache<String, Bitmap>(maxSizeKb) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return sizeInKb(bitmap);
+            }
+        };
+    }
+
+    /**
+     * @return cache size in KB for the memory class of the device
+     */
+    public static int getDefaultMaxSizeKb(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        return activityManager.getMemoryClass() * KB / MEMORY_CLASS_DIVIDER;
+    }
+
+    private static int sizeInKb(Bitmap bitmap) {
+        return Math.max(1, bitmap.getAllocationByteCount() / KB);
+    }
+
+    @Nullable
+    public Bitmap get(@Nullable String key) {
+        if (key == null) {
+            return null;
+        }
+        Bitmap bitmap = cache.get(key);
+        if (bitmap != null && bitmap.isRecycled()) {
+            cache.remove(key);
+            return null;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Bitmaps taking more than a quarter of the cache are not stored, as they would push out most thumbnails.
+     */
+    public void put(@Nullable String key, @Nullable Bitmap bitmap) {
+        if (key == null || bitmap == null || bitmap.isRecycled() || sizeInKb(bitmap) > cache.maxSize() / 4) {
+            return;
+        }
+        cache.put(key, bitmap);
+    }
+
+    public void remove(@NonNull String key) {
+        cache.remove(key);
+    }
+
+    public void evictAll() {
+        cache.evictAll();
+    }
+
+    /**
+     * Releases memory as requested by {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            cache.trimToSize(cache.size() / 2);
+        }
+    }
+
+    public int getHitCount() {
+        return cache.hitCount();
+    }
+
+    public int getMissCount() {
+        return cache.missCount();
+    }
+
+    public int getEvictionCount() {
+        return cache.evictionCount();
+    }
+
+    /**
+     * @return used size in KB
+     */
+    public int getSizeKb() {
+        return cache.size();
+    }
+
+    public int getMaxSizeKb() {
+        return cache.maxSize();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        int requests = getHitCount() + getMissCount();
+        return String.format(Locale.US,
+                             "size: %d / %d KB, hits: %d, misses: %d, hit rate: %d%%, evictions: %d",
+                             getSizeKb(),
+                             getMaxSizeKb(),
+                             getHitCount(),
+                             getMissCount(),
+                             requests == 0 ? 0 : getHitCount() * 100 / requests,
+                             getEvictionCount());
+    }
+}
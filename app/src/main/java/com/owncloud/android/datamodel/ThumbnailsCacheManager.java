@@ -80,6 +80,7 @@ import java.util.List;
 import java.util.Locale;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.content.res.ResourcesCompat;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
@@ -108,6 +109,8 @@ public final class ThumbnailsCacheManager {
     private static final CompressFormat mCompressFormat = CompressFormat.JPEG;
     private static final int mCompressQuality = 70;
     private static OwnCloudClient mClient;
+    private static final int LOADER_THREADS = 4;
+    private static ThumbnailLoader mThumbnailLoader;
 
     public static final Bitmap mDefaultImg = BitmapFactory.decodeResource(MainApp.getAppContext().getResources(),
             R.drawable.file_image);
@@ -207,6 +210,8 @@ public final class ThumbnailsCacheManager {
     }
 
     public static void addBitmapToCache(String key, Bitmap bitmap) {
+        getMemoryCache().put(key, bitmap);
+
         synchronized (mThumbnailsDiskCacheLock) {
             if (mThumbnailCache != null) {
                 mThumbnailCache.put(key, bitmap);
@@ -218,7 +223,16 @@ public final class ThumbnailsCacheManager {
         return mThumbnailCache.containsKey(key);
     }
 
+    /**
+     * @return bitmap from the memory cache if it is at least as large as requested, otherwise the bitmap from the
+     * disk cache scaled down to about the requested size
+     */
     public static Bitmap getScaledBitmapFromDiskCache(String key, int width, int height) {
+        Bitmap bitmap = getMemoryCache().get(key);
+        if (bitmap != null && (bitmap.getWidth() >= width || bitmap.getHeight() >= height)) {
+            return bitmap;
+        }
+
         synchronized (mThumbnailsDiskCacheLock) {
             // Wait while disk cache is started from background thread
             while (mThumbnailCacheStarting) {
@@ -235,7 +249,15 @@ public final class ThumbnailsCacheManager {
         return null;
     }
 
+    /**
+     * @return bitmap from the memory cache, or decoded from the disk cache and added to the memory cache
+     */
     public static Bitmap getBitmapFromDiskCache(String key) {
+        Bitmap bitmap = getMemoryCache().get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
         synchronized (mThumbnailsDiskCacheLock) {
             // Wait while disk cache is started from background thread
             while (mThumbnailCacheStarting) {
@@ -246,10 +268,65 @@ public final class ThumbnailsCacheManager {
                 }
             }
             if (mThumbnailCache != null) {
-                return mThumbnailCache.getBitmap(key);
+                bitmap = mThumbnailCache.getBitmap(key);
             }
         }
-        return null;
+
+        getMemoryCache().put(key, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Releases memory of decoded thumbnails, see {@link android.content.ComponentCallbacks2#onTrimMemory(int)}, and
+     * flushes the disk cache, as the process may be killed soon.
+     */
+    public static void onTrimMemory(int level) {
+        getMemoryCache().onTrimMemory(level);
+        flushDiskCache();
+    }
+
+    /**
+     * Flushes the journal of the disk cache in background, after thumbnails added so far are written
+     */
+    public static void flushDiskCache() {
+        synchronized (mThumbnailsDiskCacheLock) {
+            if (mThumbnailCache != null) {
+                mThumbnailCache.flush();
+            }
+        }
+    }
+
+    /**
+     * @return statistics of the memory cache, for the engineering test mode
+     */
+    public static ThumbnailMemoryCache getMemoryCache() {
+        return MemoryCacheHolder.INSTANCE;
+    }
+
+    /**
+     * Creates the memory cache on first use, as its size depends on the app context
+     */
+    private static final class MemoryCacheHolder {
+        private static final ThumbnailMemoryCache INSTANCE =
+            new ThumbnailMemoryCache(ThumbnailMemoryCache.getDefaultMaxSizeKb(MainApp.getAppContext()));
+    }
+
+    /**
+     * @return statistics of the disk cache, for the engineering test mode; null if it is not opened
+     */
+    @Nullable
+    public static DiskLruImageCache getDiskCache() {
+        return mThumbnailCache;
+    }
+
+    /**
+     * @return loader shared by all lists, so that a thumbnail shown in several places is loaded only once
+     */
+    public static synchronized ThumbnailLoader getThumbnailLoader() {
+        if (mThumbnailLoader == null) {
+            mThumbnailLoader = new ThumbnailLoader(LOADER_THREADS);
+        }
+        return mThumbnailLoader;
     }
 
     public static class ResizedImageGenerationTask extends AsyncTask<Object, Void, Bitmap> {
@@ -305,6 +382,20 @@ public final class ThumbnailsCacheManager {
             return thumbnail;
         }
 
+        /**
+         * Generates the resized image on the calling thread, for loading it with {@link ThumbnailLoader}
+         */
+        public Bitmap generate(OCFile file) {
+            return doInBackground(file);
+        }
+
+        /**
+         * Shows the generated image, has to be called on the main thread
+         */
+        public void onGenerated(Bitmap bitmap) {
+            onPostExecute(bitmap);
+        }
+
         private Bitmap doResizedImageInBackground() {
             Bitmap thumbnail;
 
@@ -541,6 +632,13 @@ public final class ThumbnailsCacheManager {
             return thumbnail;
         }
 
+        /**
+         * Generates the thumbnail on the calling thread, for loading it with {@link ThumbnailLoader}
+         */
+        public Bitmap generate(ThumbnailGenerationTaskObject object) {
+            return doInBackground(object);
+        }
+
         protected void onPostExecute(Bitmap bitmap) {
             if (bitmap != null && mImageViewReference != null) {
                 final ImageView imageView = mImageViewReference.get();
@@ -297,6 +297,30 @@ public class UploadsStorageManager extends Observable {
         return result;
     }
 
+    /**
+     * Stores the progress of a chunked upload, so that a retry can continue after the last chunk acknowledged by the
+     * server instead of sending the whole file again. Observers are not notified, as this happens for every chunk.
+     *
+     * @param uploadId   id of the upload
+     * @param transferId id of the server side transfer, null to forget a finished or invalid transfer
+     * @param offset     number of bytes acknowledged by the server
+     */
+    public void updateChunkedUploadProgress(long uploadId, @Nullable String transferId, long offset) {
+        ContentValues cv = new ContentValues();
+        cv.put(ProviderTableMeta.UPLOADS_CHUNKED_TRANSFER_ID, transferId);
+        cv.put(ProviderTableMeta.UPLOADS_CHUNKED_OFFSET, offset);
+
+        int result = getDB().update(ProviderTableMeta.CONTENT_URI_UPLOADS,
+                                    cv,
+                                    ProviderTableMeta._ID + "=?",
+                                    new String[]{String.valueOf(uploadId)}
+        );
+
+        if (result != SINGLE_RESULT) {
+            Log_OC.e(TAG, "Failed to store chunked upload progress of upload " + uploadId);
+        }
+    }
+
     public OCUpload[] getAllStoredUploads() {
         return getUploads(null, (String[]) null);
     }
@@ -312,8 +336,12 @@ public class UploadsStorageManager extends Observable {
             "_id ASC");
 
         if (cursor != null) {
-            if (cursor.moveToFirst()) {
-                result = createOCUploadFromCursor(cursor);
+            try {
+                if (cursor.moveToFirst()) {
+                    result = createOCUploadFromCursor(cursor);
+                }
+            } finally {
+                cursor.close();
             }
         }
         Log_OC.d(TAG, "Retrieve job " + result + " for id " + id);
@@ -421,6 +449,9 @@ public class UploadsStorageManager extends Observable {
             upload.setWhileChargingOnly(c.getInt(c.getColumnIndexOrThrow(ProviderTableMeta.UPLOADS_IS_WHILE_CHARGING_ONLY))
                     == 1);
             upload.setFolderUnlockToken(c.getString(c.getColumnIndexOrThrow(ProviderTableMeta.UPLOADS_FOLDER_UNLOCK_TOKEN)));
+            upload.setChunkedUploadTransferId(
+                c.getString(c.getColumnIndexOrThrow(ProviderTableMeta.UPLOADS_CHUNKED_TRANSFER_ID)));
+            upload.setChunkedUploadOffset(c.getLong(c.getColumnIndexOrThrow(ProviderTableMeta.UPLOADS_CHUNKED_OFFSET)));
         }
         return upload;
     }
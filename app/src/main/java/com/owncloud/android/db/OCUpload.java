@@ -121,6 +121,16 @@ public class OCUpload implements Parcelable {
      */
     private String folderUnlockToken;
 
+    /**
+     * Id of the server side transfer of a chunked upload, null if no chunked upload was started
+     */
+    private String chunkedUploadTransferId;
+
+    /**
+     * Number of bytes of a chunked upload acknowledged by the server
+     */
+    private long chunkedUploadOffset;
+
     /**
      * temporary values, used for sorting
      */
@@ -180,6 +190,8 @@ public class OCUpload implements Parcelable {
         useWifiOnly = true;
         whileChargingOnly = false;
         folderUnlockToken = "";
+        chunkedUploadTransferId = null;
+        chunkedUploadOffset = 0;
     }
 
     public void setDataFixed(FileUploader.FileUploaderBinder binder) {
@@ -291,6 +303,8 @@ public class OCUpload implements Parcelable {
         useWifiOnly = source.readInt() == 1;
         whileChargingOnly = source.readInt() == 1;
         folderUnlockToken = source.readString();
+        chunkedUploadTransferId = source.readString();
+        chunkedUploadOffset = source.readLong();
     }
 
     @Override
@@ -335,6 +349,8 @@ public class OCUpload implements Parcelable {
         dest.writeInt(useWifiOnly ? 1 : 0);
         dest.writeInt(whileChargingOnly ? 1 : 0);
         dest.writeString(folderUnlockToken);
+        dest.writeString(chunkedUploadTransferId);
+        dest.writeLong(chunkedUploadOffset);
     }
 
     public long getUploadId() {
@@ -397,6 +413,15 @@ public class OCUpload implements Parcelable {
         return this.folderUnlockToken;
     }
 
+    @Nullable
+    public String getChunkedUploadTransferId() {
+        return this.chunkedUploadTransferId;
+    }
+
+    public long getChunkedUploadOffset() {
+        return this.chunkedUploadOffset;
+    }
+
     public void setUploadId(long uploadId) {
         this.uploadId = uploadId;
     }
@@ -444,4 +469,12 @@ public class OCUpload implements Parcelable {
     public void setFolderUnlockToken(String folderUnlockToken) {
         this.folderUnlockToken = folderUnlockToken;
     }
+
+    public void setChunkedUploadTransferId(@Nullable String chunkedUploadTransferId) {
+        this.chunkedUploadTransferId = chunkedUploadTransferId;
+    }
+
+    public void setChunkedUploadOffset(long chunkedUploadOffset) {
+        this.chunkedUploadOffset = chunkedUploadOffset;
+    }
 }
@@ -35,7 +35,7 @@ import java.util.List;
  */
 public class ProviderMeta {
     public static final String DB_NAME = "filelist";
-    public static final int DB_VERSION = 63;
+    public static final int DB_VERSION = 67;
 
     private ProviderMeta() {
         // No instance
@@ -53,6 +53,7 @@ public class ProviderMeta {
         public static final String FILESYSTEM_TABLE_NAME = "filesystem";
         public static final String EDITORS_TABLE_NAME = "editors";
         public static final String CREATORS_TABLE_NAME = "creators";
+        public static final String FILE_SEARCH_TABLE_NAME = "filelist_search";
 
         private static final String CONTENT_PREFIX = "content://";
 
@@ -62,6 +63,8 @@ public class ProviderMeta {
                 + MainApp.getAuthority() + "/file");
         public static final Uri CONTENT_URI_DIR = Uri.parse(CONTENT_PREFIX
                 + MainApp.getAuthority() + "/dir");
+        public static final Uri CONTENT_URI_FILE_SEARCH = Uri.parse(CONTENT_PREFIX
+                + MainApp.getAuthority() + "/file_search");
         public static final Uri CONTENT_URI_SHARE = Uri.parse(CONTENT_PREFIX
                 + MainApp.getAuthority() + "/shares");
         public static final Uri CONTENT_URI_CAPABILITIES = Uri.parse(CONTENT_PREFIX
@@ -78,6 +81,9 @@ public class ProviderMeta {
         public static final Uri CONTENT_URI_FILESYSTEM = Uri.parse(CONTENT_PREFIX
                 + MainApp.getAuthority() + "/filesystem");
 
+        // optional query parameter of query uris, maximum count of returned rows
+        public static final String QUERY_PARAMETER_LIMIT = "limit";
+
 
         public static final String CONTENT_TYPE = "vnd.android.cursor.dir/vnd.owncloud.file";
         public static final String CONTENT_TYPE_ITEM = "vnd.android.cursor.item/vnd.owncloud.file";
@@ -172,6 +178,18 @@ public class ProviderMeta {
             FILE_LOCK_TOKEN));
         public static final String FILE_DEFAULT_SORT_ORDER = FILE_NAME + " collate nocase asc";
 
+        // Indexes of files table
+        public static final String FILE_PARENT_INDEX = "filelist_parent_index";
+        public static final String FILE_PATH_INDEX = "filelist_path_index";
+        public static final String FILE_PATH_DECRYPTED_INDEX = "filelist_path_decrypted_index";
+        public static final String FILE_REMOTE_ID_INDEX = "filelist_remote_id_index";
+        public static final String FILE_STORAGE_PATH_INDEX = "filelist_media_path_index";
+        public static final String FILE_GALLERY_INDEX = "filelist_gallery_index";
+
+        // Columns of full text search table of files, docid is the _id of filelist
+        public static final String FILE_SEARCH_NAME = "search_name";
+        public static final String FILE_SEARCH_PATH = "search_path";
+
         // Columns of ocshares table
         public static final String OCSHARES_FILE_SOURCE = "file_source";
         public static final String OCSHARES_ITEM_SOURCE = "item_source";
@@ -266,9 +284,12 @@ public class ProviderMeta {
         public static final String UPLOADS_LAST_RESULT = "last_result";
         public static final String UPLOADS_CREATED_BY = "created_by";
         public static final String UPLOADS_DEFAULT_SORT_ORDER = ProviderTableMeta._ID + " collate nocase desc";
+        public static final String UPLOADS_STATUS_INDEX = "list_of_uploads_status_index";
         public static final String UPLOADS_IS_WHILE_CHARGING_ONLY = "is_while_charging_only";
         public static final String UPLOADS_IS_WIFI_ONLY = "is_wifi_only";
         public static final String UPLOADS_FOLDER_UNLOCK_TOKEN = "folder_unlock_token";
+        public static final String UPLOADS_CHUNKED_TRANSFER_ID = "chunked_transfer_id";
+        public static final String UPLOADS_CHUNKED_OFFSET = "chunked_offset";
 
         // Columns of synced folder table
         public static final String SYNCED_FOLDER_LOCAL_PATH = "local_path";
@@ -311,6 +332,8 @@ public class ProviderMeta {
         public static final String FILESYSTEM_FILE_SENT_FOR_UPLOAD = "upload_triggered";
         public static final String FILESYSTEM_SYNCED_FOLDER_ID = "syncedfolder_id";
         public static final String FILESYSTEM_CRC32 = "crc32";
+        public static final String FILESYSTEM_CRC32_ALGORITHM = "crc32_algorithm";
+        public static final String FILESYSTEM_LOCAL_PATH_INDEX = "filesystem_local_path_index";
 
         private ProviderTableMeta() {
             // No instance
@@ -36,14 +36,11 @@ import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
+import android.content.res.Resources;
 import android.graphics.BitmapFactory;
 import android.os.Binder;
 import android.os.Build;
-import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.IBinder;
-import android.os.Looper;
-import android.os.Message;
 import android.os.Parcelable;
 import android.os.Process;
 import android.util.Pair;
@@ -78,6 +75,7 @@ import com.owncloud.android.ui.activity.ConflictsResolveActivity;
 import com.owncloud.android.ui.activity.UploadListActivity;
 import com.owncloud.android.ui.notifications.NotificationUtils;
 import com.owncloud.android.utils.ErrorMessageAdapter;
+import com.owncloud.android.utils.FileStorageUtils;
 import com.owncloud.android.utils.theme.ThemeColorUtils;
 
 import java.io.File;
@@ -86,6 +84,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -106,9 +105,10 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
  *
  * Every file passed to this service is uploaded. No filtering is performed. However, Intent keys (e.g., KEY_WIFI_ONLY)
  * are obeyed.
+ *
+ * Several files are uploaded at the same time, see {@link UploadScheduler} for the limits.
  */
-public class FileUploader extends Service
-    implements OnDatatransferProgressListener, OnAccountsUpdateListener, UploadFileOperation.OnRenameListener {
+public class FileUploader extends Service implements OnAccountsUpdateListener {
 
     private static final String TAG = FileUploader.class.getSimpleName();
 
@@ -189,12 +189,13 @@ public class FileUploader extends Service
 
 
     private Notification mNotification;
-    private Looper mServiceLooper;
-    private ServiceHandler mServiceHandler;
+    private UploadScheduler mUploadScheduler;
     private IBinder mBinder;
-    private OwnCloudClient mUploadClient;
-    private Account mCurrentAccount;
-    private FileDataStorageManager mStorageManager;
+
+    /**
+     * Start id of the last command which submitted uploads, the service is stopped with it once all uploads are done.
+     */
+    private volatile int mLastStartId;
 
     @Inject UserAccountManager accountManager;
     @Inject UploadsStorageManager mUploadsStorageManager;
@@ -206,20 +207,23 @@ public class FileUploader extends Service
     private IndexedForest<UploadFileOperation> mPendingUploads = new IndexedForest<>();
 
     /**
-     * {@link UploadFileOperation} object of ongoing upload. Can be null. Note: There can only be one concurrent
-     * upload!
+     * Ongoing uploads, indexed by the key of their entry in {@link #mPendingUploads}.
      */
-    private UploadFileOperation mCurrentUpload;
+    private final Map<String, UploadFileOperation> mActiveUploads = new ConcurrentHashMap<>();
+
+    /**
+     * Transferred and total bytes of the uploads shown in the progress notification.
+     */
+    private final Map<UploadFileOperation, long[]> mProgress = new ConcurrentHashMap<>();
 
     private NotificationManager mNotificationManager;
     private NotificationCompat.Builder mNotificationBuilder;
     private int mLastPercent;
 
 
-    @Override
-    public void onRenameUpload() {
-        mUploadsStorageManager.updateDatabaseUploadStart(mCurrentUpload);
-        sendBroadcastUploadStarted(mCurrentUpload);
+    private void onRenameUpload(UploadFileOperation upload) {
+        mUploadsStorageManager.updateDatabaseUploadStart(upload);
+        sendBroadcastUploadStarted(upload);
     }
 
     /**
@@ -231,10 +235,17 @@ public class FileUploader extends Service
         AndroidInjection.inject(this);
         Log_OC.d(TAG, "Creating service");
         mNotificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
-        HandlerThread thread = new HandlerThread("FileUploaderThread", Process.THREAD_PRIORITY_BACKGROUND);
-        thread.start();
-        mServiceLooper = thread.getLooper();
-        mServiceHandler = new ServiceHandler(mServiceLooper, this);
+        Resources resources = getResources();
+        mUploadScheduler = new UploadScheduler(
+            resources.getInteger(R.integer.upload_max_parallel),
+            resources.getInteger(R.integer.upload_max_parallel_per_account),
+            resources.getInteger(R.integer.upload_max_parallel_per_server),
+            runnable -> new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "FileUploaderThread"),
+            this::onUploadsFinished
+        );
         mBinder = new FileUploaderBinder();
 
         NotificationCompat.Builder builder = new NotificationCompat.Builder(this).setContentTitle(
@@ -276,15 +287,15 @@ public class FileUploader extends Service
     public void onDestroy() {
         Log_OC.v(TAG, "Destroying service");
         mBinder = null;
-        mServiceHandler = null;
-        mServiceLooper.quit();
-        mServiceLooper = null;
+        mUploadScheduler.shutdown();
         if (mNotificationManager != null) {
             mNotificationManager.cancel(FOREGROUND_SERVICE_ID);
         }
         // remove AccountsUpdatedListener
         AccountManager am = AccountManager.get(getApplicationContext());
         am.removeOnAccountsUpdatedListener(this);
+        // thumbnails of uploaded images are written behind
+        ThumbnailsCacheManager.flushDiskCache();
         super.onDestroy();
     }
 
@@ -345,15 +356,79 @@ public class FileUploader extends Service
         }
 
         if (requestedUploads.size() > 0) {
-            Message msg = mServiceHandler.obtainMessage();
-            msg.arg1 = startId;
-            msg.obj = requestedUploads;
-            mServiceHandler.sendMessage(msg);
+            String server = user.getServer().getUri().getAuthority();
+            FileDataStorageManager storageManager = new FileDataStorageManager(user, getContentResolver());
+            Map<String, Boolean> encryptedFolders = new ConcurrentHashMap<>();
+            for (String requestedUpload : requestedUploads) {
+                // resolved by the worker, as it queries the database
+                mUploadScheduler.submit(user.getAccountName(),
+                                        server,
+                                        () -> getExclusiveFolder(requestedUpload, storageManager, encryptedFolders),
+                                        () -> uploadFile(requestedUpload));
+            }
+            // only after submitting, so that onUploadsFinished cannot stop the service with these uploads pending
+            mLastStartId = startId;
             sendBroadcastUploadsAdded();
         }
         return Service.START_NOT_STICKY;
     }
 
+    /**
+     * Uploads into an end-to-end encrypted folder lock the folder and rewrite its metadata, so they have to run one
+     * after the other.
+     *
+     * @param encryptedFolders encryption status by remote parent path, shared by uploads submitted together and
+     *                         accessed from several worker threads
+     * @return key of the encrypted parent folder of the upload, null if it can run in parallel to other uploads
+     */
+    @Nullable
+    private String getExclusiveFolder(String uploadKey,
+                                      FileDataStorageManager storageManager,
+                                      Map<String, Boolean> encryptedFolders) {
+        UploadFileOperation upload = mPendingUploads.get(uploadKey);
+        if (upload == null) {
+            return null;
+        }
+        String parentPath = new File(upload.getRemotePath()).getParent();
+        if (parentPath == null) {
+            return null;
+        }
+        if (!parentPath.endsWith(OCFile.PATH_SEPARATOR)) {
+            parentPath = parentPath + OCFile.PATH_SEPARATOR;
+        }
+
+        Boolean encrypted = encryptedFolders.get(parentPath);
+        if (encrypted == null) {
+            // a parent folder created by the upload is encrypted if its nearest existing ancestor is
+            String path = parentPath;
+            OCFile folder = storageManager.getFileByDecryptedRemotePath(path);
+            while (folder == null && !OCFile.ROOT_PATH.equals(path)) {
+                path = new File(path).getParent();
+                if (!path.endsWith(OCFile.PATH_SEPARATOR)) {
+                    path = path + OCFile.PATH_SEPARATOR;
+                }
+                folder = storageManager.getFileByDecryptedRemotePath(path);
+            }
+            encrypted = folder != null && FileStorageUtils.checkEncryptionStatus(folder, storageManager);
+            encryptedFolders.put(parentPath, encrypted);
+        }
+        return encrypted ? upload.getUser().getAccountName() + parentPath : null;
+    }
+
+    /**
+     * Stops the service once all uploads are done. Stopping with the last start id does nothing if the service was
+     * started again in the meantime.
+     */
+    private void onUploadsFinished() {
+        int startId = mLastStartId;
+        if (mUploadScheduler.isIdle()) {
+            Log_OC.d(TAG, "Stopping command after id " + startId);
+            mNotificationManager.cancel(FOREGROUND_SERVICE_ID);
+            stopForeground(true);
+            stopSelf(startId);
+        }
+    }
+
     /**
      * Gather and start new uploads.
      *
@@ -501,10 +576,7 @@ public class FileUploader extends Service
         if (isCreateRemoteFolder) {
             newUpload.setRemoteFolderToBeCreated();
         }
-        newUpload.addDataTransferProgressListener(this);
-        newUpload.addDataTransferProgressListener((FileUploaderBinder) mBinder);
-
-        newUpload.addRenameUploadListener(this);
+        addListeners(newUpload);
 
         Pair<String, String> putResult = mPendingUploads.putIfAbsent(
             user.getAccountName(),
@@ -548,10 +620,7 @@ public class FileUploader extends Service
             new FileDataStorageManager(user, getContentResolver())
         );
 
-        newUpload.addDataTransferProgressListener(this);
-        newUpload.addDataTransferProgressListener((FileUploaderBinder) mBinder);
-
-        newUpload.addRenameUploadListener(this);
+        addListeners(newUpload);
 
         Pair<String, String> putResult = mPendingUploads.putIfAbsent(
             user.getAccountName(),
@@ -568,6 +637,19 @@ public class FileUploader extends Service
         }
     }
 
+    private void addListeners(UploadFileOperation upload) {
+        upload.addDataTransferProgressListener(
+            (progressRate, totalTransferredSoFar, totalToTransfer, fileName) -> {
+                onTransferProgress(upload, totalTransferredSoFar, totalToTransfer, fileName);
+                ((FileUploaderBinder) mBinder).onTransferProgress(upload,
+                                                                  progressRate,
+                                                                  totalTransferredSoFar,
+                                                                  totalToTransfer,
+                                                                  fileName);
+            });
+        upload.addRenameUploadListener(() -> onRenameUpload(upload));
+    }
+
     /**
      * Provides a binder object that clients can use to perform operations on the queue of uploads, excepting the
      * addition of new files.
@@ -590,99 +672,90 @@ public class FileUploader extends Service
 
     @Override
     public void onAccountsUpdated(Account[] accounts) {
-        // Review current upload, and cancel it if its account doesn't exist
-        if (mCurrentUpload != null && !accountManager.exists(mCurrentUpload.getUser().toPlatformAccount())) {
-            mCurrentUpload.cancel(ResultCode.ACCOUNT_NOT_FOUND);
+        // Review current uploads, and cancel them if their account doesn't exist
+        for (UploadFileOperation upload : mActiveUploads.values()) {
+            if (!accountManager.exists(upload.getUser().toPlatformAccount())) {
+                upload.cancel(ResultCode.ACCOUNT_NOT_FOUND);
+            }
         }
         // The rest of uploads are cancelled when they try to start
     }
 
     /**
-     * Core upload method: sends the file(s) to upload
+     * Core upload method: sends the file(s) to upload. Called concurrently from the threads of the
+     * {@link UploadScheduler}.
      *
      * @param uploadKey Key to access the upload to perform, contained in mPendingUploads
      */
     public void uploadFile(String uploadKey) {
-        mCurrentUpload = mPendingUploads.get(uploadKey);
+        UploadFileOperation upload = mPendingUploads.get(uploadKey);
 
-        if (mCurrentUpload != null) {
+        if (upload != null) {
             /// Check account existence
-            if (!accountManager.exists(mCurrentUpload.getUser().toPlatformAccount())) {
-                Log_OC.w(TAG, "Account " + mCurrentUpload.getUser().getAccountName() +
+            if (!accountManager.exists(upload.getUser().toPlatformAccount())) {
+                Log_OC.w(TAG, "Account " + upload.getUser().getAccountName() +
                     " does not exist anymore -> cancelling all its uploads");
-                cancelPendingUploads(mCurrentUpload.getUser().getAccountName());
+                cancelPendingUploads(upload.getUser().getAccountName());
                 return;
             }
 
+            mActiveUploads.put(uploadKey, upload);
+
             /// OK, let's upload
-            mUploadsStorageManager.updateDatabaseUploadStart(mCurrentUpload);
+            mUploadsStorageManager.updateDatabaseUploadStart(upload);
 
-            notifyUploadStart(mCurrentUpload);
+            notifyUploadStart(upload);
 
-            sendBroadcastUploadStarted(mCurrentUpload);
+            sendBroadcastUploadStarted(upload);
 
             RemoteOperationResult uploadResult = null;
+            User user = upload.getUser();
+            Account account = user.toPlatformAccount();
 
             try {
                 /// prepare client object to send the request to the ownCloud server
-                if (mCurrentAccount == null || !mCurrentAccount.equals(mCurrentUpload.getUser().toPlatformAccount())) {
-                    mCurrentAccount = mCurrentUpload.getUser().toPlatformAccount();
-                    mStorageManager = new FileDataStorageManager(getCurrentUser().get(), getContentResolver());
-                }   // else, reuse storage manager from previous operation
                 // always get client from client manager, to get fresh credentials in case of update
-                OwnCloudAccount ocAccount = new OwnCloudAccount(mCurrentAccount, this);
-                mUploadClient = OwnCloudClientManagerFactory.getDefaultSingleton().getClientFor(ocAccount, this);
-                uploadResult = mCurrentUpload.execute(mUploadClient);
+                OwnCloudAccount ocAccount = new OwnCloudAccount(account, this);
+                OwnCloudClient uploadClient = OwnCloudClientManagerFactory.getDefaultSingleton()
+                    .getClientFor(ocAccount, this);
+                uploadResult = upload.execute(uploadClient);
             } catch (Exception e) {
                 Log_OC.e(TAG, "Error uploading", e);
                 uploadResult = new RemoteOperationResult(e);
             } finally {
                 Pair<UploadFileOperation, String> removeResult;
-                if (mCurrentUpload.wasRenamed()) {
+                if (upload.wasRenamed()) {
                     removeResult = mPendingUploads.removePayload(
-                        mCurrentAccount.name,
-                        mCurrentUpload.getOldFile().getRemotePath()
+                        account.name,
+                        upload.getOldFile().getRemotePath()
                     );
-                    // TODO: grant that name is also updated for mCurrentUpload.getOCUploadId
+                    // TODO: grant that name is also updated for upload.getOCUploadId
 
                 } else {
-                    removeResult = mPendingUploads.removePayload(mCurrentAccount.name,
-                                                                 mCurrentUpload.getDecryptedRemotePath());
+                    removeResult = mPendingUploads.removePayload(account.name,
+                                                                 upload.getDecryptedRemotePath());
                 }
 
-                mUploadsStorageManager.updateDatabaseUploadResult(uploadResult, mCurrentUpload);
+                mActiveUploads.remove(uploadKey);
+                mProgress.remove(upload);
+
+                mUploadsStorageManager.updateDatabaseUploadResult(uploadResult, upload);
 
                 /// notify result
-                notifyUploadResult(mCurrentUpload, uploadResult);
+                notifyUploadResult(upload, uploadResult);
 
-                sendBroadcastUploadFinished(mCurrentUpload, uploadResult, removeResult.second);
+                sendBroadcastUploadFinished(upload, uploadResult, removeResult.second);
             }
 
             // generate new Thumbnail
-            Optional<User> user = getCurrentUser();
-            if (user.isPresent()) {
-                final ThumbnailsCacheManager.ThumbnailGenerationTask task =
-                    new ThumbnailsCacheManager.ThumbnailGenerationTask(mStorageManager, user.get());
+            final ThumbnailsCacheManager.ThumbnailGenerationTask task =
+                new ThumbnailsCacheManager.ThumbnailGenerationTask(
+                    new FileDataStorageManager(user, getContentResolver()), user);
 
-                File file = new File(mCurrentUpload.getOriginalStoragePath());
-                String remoteId = mCurrentUpload.getFile().getRemoteId();
+            File file = new File(upload.getOriginalStoragePath());
+            String remoteId = upload.getFile().getRemoteId();
 
-                task.execute(new ThumbnailsCacheManager.ThumbnailGenerationTaskObject(file, remoteId));
-            }
-        }
-    }
-
-    /**
-     * Convert current account to user. This is a temporary workaround until
-     * service is migrated to new user model.
-     *
-     * @return Optional {@link User}
-     */
-    private Optional<User> getCurrentUser() {
-        if (mCurrentAccount == null) {
-            return Optional.empty();
-        } else {
-            return accountManager.getUser(mCurrentAccount.name);
+            task.execute(new ThumbnailsCacheManager.ThumbnailGenerationTaskObject(file, remoteId));
         }
     }
 
@@ -691,7 +764,12 @@ public class FileUploader extends Service
      *
      * @param upload Upload operation starting.
      */
-    private void notifyUploadStart(UploadFileOperation upload) {
+    private synchronized void notifyUploadStart(UploadFileOperation upload) {
+        if (!mProgress.isEmpty()) {
+            // progress of the new upload is added to the notification of the ongoing ones
+            return;
+        }
+
         // / create status notification with a progress bar
         mLastPercent = 0;
         mNotificationBuilder = NotificationUtils.newNotificationBuilder(this, themeColorUtils);
@@ -732,20 +810,38 @@ public class FileUploader extends Service
     }
 
     /**
-     * Callback method to update the progress bar in the status notification
+     * Callback method to update the progress bar in the status notification, aggregating the progress of all ongoing
+     * uploads.
      */
-    @Override
-    public void onTransferProgress(
-        long progressRate,
+    private synchronized void onTransferProgress(
+        UploadFileOperation upload,
         long totalTransferredSoFar,
         long totalToTransfer,
         String filePath
     ) {
-        int percent = (int) (100.0 * ((double) totalTransferredSoFar) / ((double) totalToTransfer));
-        if (percent != mLastPercent) {
+        mProgress.put(upload, new long[]{totalTransferredSoFar, totalToTransfer});
+
+        long transferred = 0;
+        long total = 0;
+        for (long[] progress : mProgress.values()) {
+            transferred += progress[0];
+            total += progress[1];
+        }
+
+        int percent = (int) (100.0 * ((double) transferred) / ((double) total));
+        if (percent != mLastPercent && mNotificationBuilder != null) {
             mNotificationBuilder.setProgress(100, percent, false);
-            String fileName = filePath.substring(filePath.lastIndexOf(FileUtils.PATH_SEPARATOR) + 1);
-            String text = String.format(getString(R.string.uploader_upload_in_progress_content), percent, fileName);
+            String text;
+            if (mProgress.size() > 1) {
+                int uploads = mProgress.size();
+                text = getResources().getQuantityString(R.plurals.uploader_upload_in_progress_content_multiple,
+                                                        uploads,
+                                                        percent,
+                                                        uploads);
+            } else {
+                String fileName = filePath.substring(filePath.lastIndexOf(FileUtils.PATH_SEPARATOR) + 1);
+                text = String.format(getString(R.string.uploader_upload_in_progress_content), percent, fileName);
+            }
             mNotificationBuilder.setContentText(text);
             if (mNotificationManager == null) {
                 mNotificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
@@ -762,7 +858,7 @@ public class FileUploader extends Service
      * @param upload       Finished upload operation
      */
     @SuppressFBWarnings("DMI")
-    private void notifyUploadResult(UploadFileOperation upload, RemoteOperationResult uploadResult) {
+    private synchronized void notifyUploadResult(UploadFileOperation upload, RemoteOperationResult uploadResult) {
         Log_OC.d(TAG, "NotifyUploadResult with resultCode: " + uploadResult.getCode());
         // cancelled operation or success -> silent removal of progress notification
         if (mNotificationManager == null) {
@@ -780,6 +876,14 @@ public class FileUploader extends Service
 
             int tickerId = R.string.uploader_upload_failed_ticker;
 
+            // own builder, the progress notification may still be in use by other uploads
+            NotificationCompat.Builder notificationBuilder = NotificationUtils.newNotificationBuilder(this,
+                                                                                                     themeColorUtils);
+            notificationBuilder.setSmallIcon(R.drawable.notification_icon);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                notificationBuilder.setChannelId(NotificationUtils.NOTIFICATION_CHANNEL_UPLOAD);
+            }
+
             String content;
 
             // check credentials error
@@ -790,7 +894,7 @@ public class FileUploader extends Service
                 tickerId = R.string.uploader_upload_failed_sync_conflict_error;
             }
 
-            mNotificationBuilder
+            notificationBuilder
                 .setTicker(getString(tickerId))
                 .setContentTitle(getString(tickerId))
                 .setAutoCancel(true)
@@ -813,7 +917,7 @@ public class FileUploader extends Service
                 updateAccountCredentials.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
                 updateAccountCredentials.addFlags(Intent.FLAG_ACTIVITY_EXCLUDE_FROM_RECENTS);
                 updateAccountCredentials.addFlags(Intent.FLAG_FROM_BACKGROUND);
-                mNotificationBuilder.setContentIntent(PendingIntent.getActivity(
+                notificationBuilder.setContentIntent(PendingIntent.getActivity(
                     this,
                     (int) System.currentTimeMillis(),
                     updateAccountCredentials,
@@ -834,16 +938,16 @@ public class FileUploader extends Service
                                                              this);
                 }
 
-                mNotificationBuilder.setContentIntent(PendingIntent.getActivity(this,
+                notificationBuilder.setContentIntent(PendingIntent.getActivity(this,
                                                                                 (int) System.currentTimeMillis(),
                                                                                 intent,
                                                                                 PendingIntent.FLAG_IMMUTABLE)
                                                      );
             }
 
-            mNotificationBuilder.setContentText(content);
+            notificationBuilder.setContentText(content);
             if (!uploadResult.isSuccess()) {
-                mNotificationManager.notify((new SecureRandom()).nextInt(), mNotificationBuilder.build());
+                mNotificationManager.notify((new SecureRandom()).nextInt(), notificationBuilder.build());
             }
         }
     }
@@ -1128,7 +1232,7 @@ public class FileUploader extends Service
      *
      * It provides by itself the available operations.
      */
-    public class FileUploaderBinder extends Binder implements OnDatatransferProgressListener {
+    public class FileUploaderBinder extends Binder {
 
         /**
          * Map of listeners that will be reported about progress of uploads from a {@link FileUploaderBinder} instance
@@ -1164,40 +1268,49 @@ public class FileUploader extends Service
         private void cancel(String accountName, String remotePath, @Nullable ResultCode resultCode) {
             Pair<UploadFileOperation, String> removeResult = mPendingUploads.remove(accountName, remotePath);
             UploadFileOperation upload = removeResult.first;
-            if (upload == null && mCurrentUpload != null && mCurrentAccount != null &&
-                mCurrentUpload.getRemotePath().startsWith(remotePath) && accountName.equals(mCurrentAccount.name)) {
-
-                upload = mCurrentUpload;
-            }
 
             if (upload != null) {
-                upload.cancel(resultCode);
-                // need to update now table in mUploadsStorageManager,
-                // since the operation will not get to be run by FileUploader#uploadFile
-                if (resultCode != null) {
-                    mUploadsStorageManager.updateDatabaseUploadResult(new RemoteOperationResult(resultCode), upload);
-                    notifyUploadResult(upload, new RemoteOperationResult(resultCode));
-                } else {
-                    mUploadsStorageManager.removeUpload(accountName, remotePath);
+                cancel(upload, accountName, remotePath, resultCode);
+            } else {
+                for (UploadFileOperation activeUpload : mActiveUploads.values()) {
+                    if (activeUpload.getUser().nameEquals(accountName) &&
+                        activeUpload.getRemotePath().startsWith(remotePath)) {
+                        cancel(activeUpload, accountName, activeUpload.getRemotePath(), resultCode);
+                    }
                 }
             }
         }
 
+        private void cancel(UploadFileOperation upload,
+                            String accountName,
+                            String remotePath,
+                            @Nullable ResultCode resultCode) {
+            upload.cancel(resultCode);
+            // need to update now table in mUploadsStorageManager,
+            // since the operation will not get to be run by FileUploader#uploadFile
+            if (resultCode != null) {
+                mUploadsStorageManager.updateDatabaseUploadResult(new RemoteOperationResult(resultCode), upload);
+                notifyUploadResult(upload, new RemoteOperationResult(resultCode));
+            } else {
+                mUploadsStorageManager.removeUpload(accountName, remotePath);
+            }
+        }
+
         /**
          * Cancels all the uploads for a user, both running and pending.
          *
          * @param user Nextcloud user
          */
         public void cancel(User user) {
-            if (mCurrentUpload != null && mCurrentUpload.getUser().nameEquals(user)) {
-                mCurrentUpload.cancel(ResultCode.CANCELLED);
-            }
+            cancel(user.getAccountName());
             cancelPendingUploads(user.getAccountName());
         }
 
         public void cancel(String accountName) {
-            if (mCurrentUpload != null && mCurrentUpload.getUser().nameEquals(accountName)) {
-                mCurrentUpload.cancel(ResultCode.CANCELLED);
+            for (UploadFileOperation upload : mActiveUploads.values()) {
+                if (upload.getUser().nameEquals(accountName)) {
+                    upload.cancel(ResultCode.CANCELLED);
+                }
             }
         }
 
@@ -1226,11 +1339,17 @@ public class FileUploader extends Service
         }
 
         public boolean isUploadingNow(OCUpload upload) {
-            return upload != null &&
-                mCurrentAccount != null &&
-                mCurrentUpload != null &&
-                upload.getAccountName().equals(mCurrentAccount.name) &&
-                upload.getRemotePath().equals(mCurrentUpload.getRemotePath());
+            if (upload == null) {
+                return false;
+            }
+
+            for (UploadFileOperation activeUpload : mActiveUploads.values()) {
+                if (activeUpload.getUser().nameEquals(upload.getAccountName()) &&
+                    upload.getRemotePath().equals(activeUpload.getRemotePath())) {
+                    return true;
+                }
+            }
+            return false;
         }
 
         /**
@@ -1313,14 +1432,14 @@ public class FileUploader extends Service
             }
         }
 
-        @Override
-        public void onTransferProgress(
+        private void onTransferProgress(
+            UploadFileOperation upload,
             long progressRate,
             long totalTransferredSoFar,
             long totalToTransfer,
             String fileName
         ) {
-            String key = buildRemoteName(mCurrentUpload.getUser().getAccountName(), mCurrentUpload.getFile().getRemotePath());
+            String key = buildRemoteName(upload.getUser().getAccountName(), upload.getFile().getRemotePath());
             OnDatatransferProgressListener boundListener = mBoundListeners.get(key);
 
             if (boundListener != null) {
@@ -1331,18 +1450,18 @@ public class FileUploader extends Service
             if (context != null) {
                 ResultCode cancelReason = null;
                 Connectivity connectivity = connectivityService.getConnectivity();
-                if (mCurrentUpload.isWifiRequired() && !connectivity.isWifi()) {
+                if (upload.isWifiRequired() && !connectivity.isWifi()) {
                     cancelReason = ResultCode.DELAYED_FOR_WIFI;
-                } else if (mCurrentUpload.isChargingRequired() && !powerManagementService.getBattery().isCharging()) {
+                } else if (upload.isChargingRequired() && !powerManagementService.getBattery().isCharging()) {
                     cancelReason = ResultCode.DELAYED_FOR_CHARGING;
-                } else if (!mCurrentUpload.isIgnoringPowerSaveMode() && powerManagementService.isPowerSavingEnabled()) {
+                } else if (!upload.isIgnoringPowerSaveMode() && powerManagementService.isPowerSavingEnabled()) {
                     cancelReason = ResultCode.DELAYED_IN_POWER_SAVE_MODE;
                 }
 
                 if (cancelReason != null) {
                     cancel(
-                        mCurrentUpload.getUser().getAccountName(),
-                        mCurrentUpload.getFile().getRemotePath(),
+                        upload.getUser().getAccountName(),
+                        upload.getFile().getRemotePath(),
                         cancelReason
                     );
                 }
@@ -1363,39 +1482,4 @@ public class FileUploader extends Service
             return accountName + remotePath;
         }
     }
-
-
-    /**
-     * Upload worker. Performs the pending uploads in the order they were requested.
-     *
-     * Created with the Looper of a new thread, started in {@link FileUploader#onCreate()}.
-     */
-    private static class ServiceHandler extends Handler {
-        // don't make it a final class, and don't remove the static ; lint will
-        // warn about a possible memory leak
-        private FileUploader mService;
-
-        public ServiceHandler(Looper looper, FileUploader service) {
-            super(looper);
-            if (service == null) {
-                throw new IllegalArgumentException("Received invalid NULL in parameter 'service'");
-            }
-            mService = service;
-        }
-
-        @Override
-        public void handleMessage(Message msg) {
-            @SuppressWarnings("unchecked")
-            List<String> requestedUploads = (List<String>) msg.obj;
-            if (msg.obj != null) {
-                for (String requestedUpload : requestedUploads) {
-                    mService.uploadFile(requestedUpload);
-                }
-            }
-            Log_OC.d(TAG, "Stopping command after id " + msg.arg1);
-            mService.mNotificationManager.cancel(FOREGROUND_SERVICE_ID);
-            mService.stopForeground(true);
-            mService.stopSelf(msg.arg1);
-        }
-    }
 }
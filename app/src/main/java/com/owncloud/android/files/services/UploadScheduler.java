@@ -0,0 +1,265 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.files.services;
+
+import com.owncloud.android.lib.common.utils.Log_OC;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Runs uploads in a fixed number of slots, limiting additionally how many uploads of the same account and of the same
+ * server run at the same time. Uploads with the same exclusive folder never run at the same time, as needed for
+ * end-to-end encrypted folders, which are locked and get their metadata rewritten by every upload. The exclusive
+ * folder is resolved on the worker thread, as that may need database access; an upload whose folder turns out to be
+ * busy gives back its slot and waits.
+ *
+ * Uploads start in the order they were submitted, except that uploads whose account or server has no free slot, or
+ * whose exclusive folder is busy, are passed over until one of the blocking uploads finishes.
+ */
+public class UploadScheduler {
+
+    private static final String TAG = UploadScheduler.class.getSimpleName();
+
+    public interface OnIdleListener {
+        /**
+         * Called from a worker thread once the last running upload finished and none is waiting.
+         */
+        void onIdle();
+    }
+
+    public interface ExclusiveFolderResolver {
+        /**
+         * Called from a worker thread before the upload starts.
+         *
+         * @return key of a folder whose uploads have to run one after the other, null if the upload can run in
+         * parallel with any other upload
+         */
+        @Nullable
+        String resolve();
+    }
+
+    private final int maxParallel;
+    private final int maxPerAccount;
+    private final int maxPerServer;
+    private final OnIdleListener onIdleListener;
+    private final ExecutorService executor;
+
+    private final ArrayDeque<Job> waiting = new ArrayDeque<>();
+    private final Map<String, Integer> runningPerAccount = new HashMap<>();
+    private final Map<String, Integer> runningPerServer = new HashMap<>();
+    private final Set<String> busyFolders = new HashSet<>();
+    private int running;
+    private boolean shutdown;
+
+    /**
+     * @param maxParallel    maximum number of uploads running at the same time
+     * @param maxPerAccount  maximum number of uploads of the same account running at the same time
+     * @param maxPerServer   maximum number of uploads to the same server running at the same time
+     * @param threadFactory  factory for the worker threads
+     * @param onIdleListener notified whenever all submitted uploads are done
+     */
+    public UploadScheduler(int maxParallel,
+                           int maxPerAccount,
+                           int maxPerServer,
+                           @NonNull ThreadFactory threadFactory,
+                           @NonNull OnIdleListener onIdleListener) {
+        if (maxParallel < 1 || maxPerAccount < 1 || maxPerServer < 1) {
+            throw new IllegalArgumentException("Upload limits must be at least 1");
+        }
+        this.maxParallel = maxParallel;
+        this.maxPerAccount = maxPerAccount;
+        this.maxPerServer = maxPerServer;
+        this.onIdleListener = onIdleListener;
+        this.executor = Executors.newFixedThreadPool(maxParallel, threadFactory);
+    }
+
+    /**
+     * Queues an upload; it is started as soon as a slot for its account and server is free.
+     */
+    public void submit(@NonNull String accountName, @NonNull String server, @NonNull Runnable upload) {
+        submit(accountName, server, null, upload);
+    }
+
+    /**
+     * Queues an upload; it is started as soon as a slot for its account and server is free and no other upload into
+     * the same exclusive folder is running.
+     *
+     * @param exclusiveFolderResolver finds the exclusive folder of the upload, null if the upload can run in parallel
+     *                                with any other upload
+     */
+    public synchronized void submit(@NonNull String accountName,
+                                    @NonNull String server,
+                                    @Nullable ExclusiveFolderResolver exclusiveFolderResolver,
+                                    @NonNull Runnable upload) {
+        if (shutdown) {
+            Log_OC.w(TAG, "Upload submitted after shutdown, ignoring it");
+            return;
+        }
+        waiting.add(new Job(accountName, server, exclusiveFolderResolver, upload));
+        dispatch();
+    }
+
+    public synchronized boolean isIdle() {
+        return running == 0 && waiting.isEmpty();
+    }
+
+    /**
+     * Drops waiting uploads. Running uploads are not interrupted, but no further upload is started.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        waiting.clear();
+        executor.shutdown();
+    }
+
+    private void dispatch() {
+        Iterator<Job> iterator = waiting.iterator();
+        while (running < maxParallel && iterator.hasNext()) {
+            Job job = iterator.next();
+            if (count(runningPerAccount, job.accountName) < maxPerAccount &&
+                count(runningPerServer, job.server) < maxPerServer &&
+                (job.exclusiveFolder == null || !busyFolders.contains(job.exclusiveFolder))) {
+                iterator.remove();
+                running++;
+                if (job.exclusiveFolder != null) {
+                    busyFolders.add(job.exclusiveFolder);
+                }
+                runningPerAccount.put(job.accountName, count(runningPerAccount, job.accountName) + 1);
+                runningPerServer.put(job.server, count(runningPerServer, job.server) + 1);
+                executor.execute(job);
+            }
+        }
+    }
+
+    /**
+     * Marks the resolved exclusive folder of a started upload as busy. If another upload into that folder is running,
+     * the slot is given back and the upload waits again.
+     *
+     * @return true if the upload can run now
+     */
+    private synchronized boolean claimFolder(Job job, @Nullable String exclusiveFolder) {
+        job.exclusiveFolder = exclusiveFolder;
+        if (exclusiveFolder == null || busyFolders.add(exclusiveFolder)) {
+            return true;
+        }
+
+        running--;
+        decrement(runningPerAccount, job.accountName);
+        decrement(runningPerServer, job.server);
+        if (!shutdown) {
+            waiting.addFirst(job);
+            dispatch();
+        }
+        return false;
+    }
+
+    private void finished(Job job) {
+        boolean idle;
+        synchronized (this) {
+            running--;
+            decrement(runningPerAccount, job.accountName);
+            decrement(runningPerServer, job.server);
+            if (job.exclusiveFolder != null) {
+                busyFolders.remove(job.exclusiveFolder);
+            }
+            if (!shutdown) {
+                dispatch();
+            }
+            idle = running == 0 && waiting.isEmpty();
+        }
+
+        if (idle) {
+            onIdleListener.onIdle();
+        }
+    }
+
+    private static int count(Map<String, Integer> counts, String key) {
+        Integer count = counts.get(key);
+        return count == null ? 0 : count;
+    }
+
+    private static void decrement(Map<String, Integer> counts, String key) {
+        int count = count(counts, key) - 1;
+        if (count > 0) {
+            counts.put(key, count);
+        } else {
+            counts.remove(key);
+        }
+    }
+
+    private class Job implements Runnable {
+        private final String accountName;
+        private final String server;
+        private final Runnable upload;
+        /**
+         * set before the upload runs, accessed only while holding the scheduler lock
+         */
+        @Nullable private String exclusiveFolder;
+        /**
+         * dropped once resolved
+         */
+        @Nullable private ExclusiveFolderResolver exclusiveFolderResolver;
+
+        Job(String accountName,
+            String server,
+            @Nullable ExclusiveFolderResolver exclusiveFolderResolver,
+            Runnable upload) {
+            this.accountName = accountName;
+            this.server = server;
+            this.exclusiveFolderResolver = exclusiveFolderResolver;
+            this.upload = upload;
+        }
+
+        @Override
+        public void run() {
+            if (exclusiveFolderResolver != null) {
+                String folder;
+                try {
+                    folder = exclusiveFolderResolver.resolve();
+                } catch (RuntimeException e) {
+                    Log_OC.e(TAG, "Unexpected error resolving exclusive folder", e);
+                    folder = null;
+                }
+                exclusiveFolderResolver = null;
+                if (!claimFolder(this, folder)) {
+                    return;
+                }
+            }
+
+            try {
+                upload.run();
+            } catch (RuntimeException e) {
+                Log_OC.e(TAG, "Unexpected error during upload", e);
+            } finally {
+                finished(this);
+            }
+        }
+    }
+}
@@ -41,7 +41,7 @@ import com.owncloud.android.utils.FileExportUtils;
 import com.owncloud.android.utils.FileStorageUtils;
 
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
@@ -52,6 +52,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public class DownloadFileOperation extends RemoteOperation {
     private static final String TAG = DownloadFileOperation.class.getSimpleName();
+    private static final String DECRYPTED_SUFFIX = ".decrypted";
 
     private User user;
     private OCFile file;
@@ -197,12 +198,14 @@ public class DownloadFileOperation extends RemoteOperation {
 
                 OCFile parent = fileDataStorageManager.getFileByPath(file.getParentRemotePath());
 
+                // cached metadata of the parent may be older than the file
                 DecryptedFolderMetadata metadata = EncryptionUtils.downloadFolderMetadata(parent,
+                                                                                          file.getEncryptedFileName(),
                                                                                           client,
                                                                                           context,
                                                                                           user);
 
-                if (metadata == null) {
+                if (metadata == null || metadata.getFiles().get(file.getEncryptedFileName()) == null) {
                     return new RemoteOperationResult(RemoteOperationResult.ResultCode.METADATA_NOT_FOUND);
                 }
                 byte[] key = EncryptionUtils.decodeStringToBase64Bytes(metadata.getFiles()
@@ -213,12 +216,13 @@ public class DownloadFileOperation extends RemoteOperation {
                         .get(file.getEncryptedFileName()).getAuthenticationTag());
 
                 try {
-                    byte[] decryptedBytes = EncryptionUtils.decryptFile(tmpFile, key, iv, authenticationTag);
+                    File decryptedFile = new File(tmpFile.getAbsolutePath() + DECRYPTED_SUFFIX);
+                    EncryptionUtils.decryptFile(tmpFile, decryptedFile, key, iv, authenticationTag);
 
-                    try (FileOutputStream fileOutputStream = new FileOutputStream(tmpFile)) {
-                        fileOutputStream.write(decryptedBytes);
+                    if (!decryptedFile.renameTo(tmpFile)) {
+                        return new RemoteOperationResult(RemoteOperationResult.ResultCode.LOCAL_STORAGE_NOT_MOVED);
                     }
-                } catch (Exception e) {
+                } catch (IOException | SecurityException e) {
                     return new RemoteOperationResult(e);
                 }
             }
@@ -515,7 +515,7 @@ public class RefreshFolderOperation extends RemoteOperation {
 
             // update file name for encrypted files
             if (metadata != null) {
-                updateFileNameForEncryptedFile(mStorageManager, metadata, updatedFile);
+                updateFileNameForEncryptedFile(metadata, updatedFile, mLocalFolder);
             }
 
             // we parse content, so either the folder itself or its direct parent (which we check) must be encrypted
@@ -553,12 +553,20 @@ public class RefreshFolderOperation extends RemoteOperation {
     public static void updateFileNameForEncryptedFile(FileDataStorageManager storageManager,
                                                       @NonNull DecryptedFolderMetadata metadata,
                                                       OCFile updatedFile) {
+        updateFileNameForEncryptedFile(metadata, updatedFile, storageManager.getFileById(updatedFile.getParentId()));
+    }
+
+    /**
+     * @param parentFile parent folder of updatedFile, saves a database query per file when updating a whole folder
+     */
+    public static void updateFileNameForEncryptedFile(@NonNull DecryptedFolderMetadata metadata,
+                                                      OCFile updatedFile,
+                                                      OCFile parentFile) {
         try {
             String decryptedFileName = metadata.getFiles().get(updatedFile.getFileName()).getEncrypted()
                 .getFilename();
             String mimetype = metadata.getFiles().get(updatedFile.getFileName()).getEncrypted().getMimetype();
 
-            OCFile parentFile = storageManager.getFileById(updatedFile.getParentId());
             String decryptedRemotePath = parentFile.getDecryptedRemotePath() + decryptedFileName;
 
             if (updatedFile.isFolder()) {
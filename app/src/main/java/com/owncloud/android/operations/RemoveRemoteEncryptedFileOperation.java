@@ -144,6 +144,7 @@ public class RemoveRemoteEncryptedFileOperation extends RemoteOperation {
             String serializedFolderMetadata = EncryptionUtils.serializeJSON(encryptedFolderMetadata);
 
             // upload metadata
+            EncryptionUtils.removeCachedFolderMetadata(parentId);
             RemoteOperationResult uploadMetadataOperationResult =
                 new UpdateMetadataRemoteOperation(parentId,
                                                   serializedFolderMetadata, token).execute(client);
@@ -0,0 +1,503 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.operations;
+
+import android.net.Uri;
+import android.text.TextUtils;
+
+import com.owncloud.android.lib.common.OwnCloudClient;
+import com.owncloud.android.lib.common.network.OnDatatransferProgressListener;
+import com.owncloud.android.lib.common.network.WebdavUtils;
+import com.owncloud.android.lib.common.operations.OperationCancelledException;
+import com.owncloud.android.lib.common.operations.RemoteOperationResult;
+import com.owncloud.android.lib.common.operations.RemoteOperationResult.ResultCode;
+import com.owncloud.android.lib.common.utils.Log_OC;
+import com.owncloud.android.lib.resources.files.UploadFileRemoteOperation;
+
+import org.apache.commons.httpclient.DefaultHttpMethodRetryHandler;
+import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.PutMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.httpclient.params.HttpMethodParams;
+import org.apache.jackrabbit.webdav.DavConstants;
+import org.apache.jackrabbit.webdav.MultiStatusResponse;
+import org.apache.jackrabbit.webdav.client.methods.DeleteMethod;
+import org.apache.jackrabbit.webdav.client.methods.MkColMethod;
+import org.apache.jackrabbit.webdav.client.methods.MoveMethod;
+import org.apache.jackrabbit.webdav.client.methods.PropFindMethod;
+import org.apache.jackrabbit.webdav.property.DavProperty;
+import org.apache.jackrabbit.webdav.property.DavPropertyName;
+import org.apache.jackrabbit.webdav.property.DavPropertyNameSet;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Chunked upload to the uploads endpoint of the server which can be continued after the process was killed or the
+ * connection was lost.
+ *
+ * Chunks are uploaded to a transfer folder named after {@link #createTransferId(String, long, String)}, each one
+ * named after its byte range. After every chunk acknowledged by the server, {@link OnChunkUploadedListener} is
+ * notified, so that the caller can persist the progress. When resuming, the chunks found on the server are verified
+ * by their size and the upload continues after the last chunk of the contiguous verified range.
+ */
+public class ResumableChunkedUploadOperation extends UploadFileRemoteOperation {
+
+    private static final String TAG = ResumableChunkedUploadOperation.class.getSimpleName();
+
+    private static final String ASSEMBLED_FILE_NAME = ".file";
+    private static final String TOTAL_LENGTH_HEADER = "OC-Total-Length";
+    private static final String MTIME_HEADER = "X-OC-Mtime";
+    private static final String CTIME_HEADER = "X-OC-Ctime";
+    private static final String IF_MATCH_HEADER = "If-Match";
+    private static final Pattern CHUNK_NAME_PATTERN = Pattern.compile("^(\\d+)-(\\d+)$");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Assembling the chunks of a large file can take the server a long time
+     */
+    private static final int ASSEMBLY_READ_TIMEOUT = 10 * 60 * 1000;
+    private static final int ASSEMBLY_CONNECTION_TIMEOUT = 5 * 1000;
+
+    public interface OnChunkUploadedListener {
+        /**
+         * Called after the server acknowledged a chunk.
+         *
+         * @param transferId id of the server side transfer
+         * @param offset     number of bytes of the file stored on the server
+         */
+        void onChunkUploaded(@NonNull String transferId, long offset);
+    }
+
+    private final String mLocalPath;
+    private final String mRemotePath;
+    private final String mMimeType;
+    private final String mRequiredEtag;
+    private final String mLastModificationTimestamp;
+    private final Long mCreationTimestamp;
+    private final long mFileSize;
+    private final long mChunkSize;
+    private final String mTransferId;
+    private final long mStoredOffset;
+    private final boolean mDisableRetries;
+    private final OnChunkUploadedListener mOnChunkUploadedListener;
+
+    private final Set<OnDatatransferProgressListener> mDataTransferListeners = new HashSet<>();
+    private final AtomicBoolean mCancellationRequested = new AtomicBoolean(false);
+    private ResultCode mCancellationReason;
+    private HttpMethodBase mCurrentMethod;
+
+    /**
+     * @param storedTransferId transfer id persisted by a previous attempt, null if there was none
+     * @param storedOffset     number of bytes acknowledged in the previous attempt
+     * @param disableRetries   true to not let the network library repeat failed requests
+     */
+    public ResumableChunkedUploadOperation(String localPath,
+                                           String remotePath,
+                                           String mimeType,
+                                           String requiredEtag,
+                                           String lastModificationTimestamp,
+                                           Long creationTimestamp,
+                                           long fileSize,
+                                           long chunkSize,
+                                           @Nullable String storedTransferId,
+                                           long storedOffset,
+                                           boolean disableRetries,
+                                           @NonNull OnChunkUploadedListener onChunkUploadedListener) {
+        super(localPath,
+              remotePath,
+              mimeType,
+              requiredEtag,
+              lastModificationTimestamp,
+              creationTimestamp,
+              disableRetries);
+        mLocalPath = localPath;
+        mRemotePath = remotePath;
+        mMimeType = mimeType;
+        mRequiredEtag = requiredEtag;
+        mLastModificationTimestamp = lastModificationTimestamp;
+        mCreationTimestamp = creationTimestamp;
+        mFileSize = fileSize;
+        mChunkSize = chunkSize;
+        mTransferId = createTransferId(remotePath, fileSize, lastModificationTimestamp);
+        // progress of a transfer of another remote path or of an older version of the file can not be reused
+        mStoredOffset = mTransferId.equals(storedTransferId) ? storedOffset : 0;
+        mDisableRetries = disableRetries;
+        mOnChunkUploadedListener = onChunkUploadedListener;
+    }
+
+    /**
+     * @return id of the server side transfer, changing whenever the file is modified
+     */
+    @NonNull
+    public static String createTransferId(String remotePath, long fileSize, String lastModificationTimestamp) {
+        String key = remotePath + ":" + fileSize + ":" + lastModificationTimestamp;
+        return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    @NonNull
+    public String getTransferId() {
+        return mTransferId;
+    }
+
+    /**
+     * Chunk names are zero padded, as the server assembles the chunks in the order of their names.
+     *
+     * @param start offset of the first byte of the chunk
+     * @param end   offset of the last byte of the chunk
+     */
+    @VisibleForTesting
+    static String chunkName(long start, long end) {
+        return String.format(Locale.US, "%015d-%015d", start, end);
+    }
+
+    /**
+     * @param remoteChunks names and sizes of the chunks found in the transfer folder
+     * @param fileSize     size of the file to upload
+     * @return names of the chunks covering the file without gap from its start, in order; chunks with a size not
+     * matching their name end the range
+     */
+    @VisibleForTesting
+    @NonNull
+    static List<String> findResumableChunks(@NonNull Map<String, Long> remoteChunks, long fileSize) {
+        Map<Long, String> chunksByStart = new HashMap<>();
+        for (Map.Entry<String, Long> chunk : remoteChunks.entrySet()) {
+            Matcher matcher = CHUNK_NAME_PATTERN.matcher(chunk.getKey());
+            if (matcher.matches()) {
+                long start = Long.parseLong(matcher.group(1));
+                long end = Long.parseLong(matcher.group(2));
+                if (end >= start && end < fileSize && chunk.getValue() != null &&
+                    chunk.getValue() == end - start + 1) {
+                    chunksByStart.put(start, chunk.getKey());
+                }
+            }
+        }
+
+        List<String> resumableChunks = new ArrayList<>();
+        long offset = 0;
+        String name;
+        while ((name = chunksByStart.get(offset)) != null) {
+            resumableChunks.add(name);
+            Matcher matcher = CHUNK_NAME_PATTERN.matcher(name);
+            if (!matcher.matches()) {
+                break;
+            }
+            offset = Long.parseLong(matcher.group(2)) + 1;
+        }
+        return resumableChunks;
+    }
+
+    private static long endOf(List<String> chunks) {
+        if (chunks.isEmpty()) {
+            return 0;
+        }
+        Matcher matcher = CHUNK_NAME_PATTERN.matcher(chunks.get(chunks.size() - 1));
+        return matcher.matches() ? Long.parseLong(matcher.group(2)) + 1 : 0;
+    }
+
+    @Override
+    public void addDataTransferProgressListener(OnDatatransferProgressListener listener) {
+        synchronized (mDataTransferListeners) {
+            mDataTransferListeners.add(listener);
+        }
+    }
+
+    @Override
+    public void removeDataTransferProgressListener(OnDatatransferProgressListener listener) {
+        synchronized (mDataTransferListeners) {
+            mDataTransferListeners.remove(listener);
+        }
+    }
+
+    @Override
+    public void cancel(ResultCode cancellationReason) {
+        synchronized (mCancellationRequested) {
+            mCancellationRequested.set(true);
+            if (cancellationReason != null) {
+                mCancellationReason = cancellationReason;
+            }
+            if (mCurrentMethod != null) {
+                mCurrentMethod.abort();
+            }
+        }
+        super.cancel(cancellationReason);
+    }
+
+    @Override
+    protected RemoteOperationResult run(OwnCloudClient client) {
+        String transferFolderUri = client.getUploadUri() + "/" + Uri.encode(client.getUserId()) + "/" + mTransferId;
+
+        try {
+            long offset = prepareTransferFolder(client, transferFolderUri);
+            if (offset < 0) {
+                return new RemoteOperationResult(ResultCode.UNKNOWN_ERROR);
+            }
+            if (offset > 0) {
+                Log_OC.d(TAG, "Resuming upload of " + mRemotePath + " at " + offset + " of " + mFileSize + " bytes");
+            }
+
+            while (offset < mFileSize) {
+                if (mCancellationRequested.get()) {
+                    return cancelledResult();
+                }
+
+                long length = Math.min(mChunkSize, mFileSize - offset);
+                PutMethod putMethod = new PutMethod(transferFolderUri + "/" + chunkName(offset, offset + length - 1));
+                putMethod.setRequestEntity(new ChunkRequestEntity(offset, length));
+
+                RemoteOperationResult chunkResult = execute(client, putMethod, HttpStatus.SC_CREATED,
+                                                            HttpStatus.SC_NO_CONTENT);
+                if (!chunkResult.isSuccess()) {
+                    return mCancellationRequested.get() ? cancelledResult() : chunkResult;
+                }
+
+                offset += length;
+                mOnChunkUploadedListener.onChunkUploaded(mTransferId, offset);
+            }
+
+            if (mCancellationRequested.get()) {
+                return cancelledResult();
+            }
+
+            return assemble(client, transferFolderUri);
+        } catch (Exception e) {
+            if (mCancellationRequested.get()) {
+                return cancelledResult();
+            }
+            Log_OC.e(TAG, "Chunked upload of " + mRemotePath + " failed", e);
+            return new RemoteOperationResult(e);
+        }
+    }
+
+    /**
+     * Makes sure the transfer folder exists and only contains chunks which can be reused.
+     *
+     * @return offset to continue the upload at, -1 if the transfer folder could not be created
+     */
+    private long prepareTransferFolder(OwnCloudClient client, String transferFolderUri) throws IOException {
+        Map<String, Long> remoteChunks = mStoredOffset > 0 ? readRemoteChunks(client, transferFolderUri) : null;
+
+        if (remoteChunks == null) {
+            // nothing to resume, chunks left by an earlier attempt may have a different size
+            execute(client, new DeleteMethod(transferFolderUri), HttpStatus.SC_NO_CONTENT, HttpStatus.SC_NOT_FOUND);
+            RemoteOperationResult result = execute(client, new MkColMethod(transferFolderUri), HttpStatus.SC_CREATED);
+            return result.isSuccess() ? 0 : -1;
+        }
+
+        List<String> resumableChunks = findResumableChunks(remoteChunks, mFileSize);
+        for (String name : remoteChunks.keySet()) {
+            if (!resumableChunks.contains(name)) {
+                execute(client, new DeleteMethod(transferFolderUri + "/" + name), HttpStatus.SC_NO_CONTENT);
+            }
+        }
+
+        long offset = endOf(resumableChunks);
+        if (offset < mStoredOffset) {
+            Log_OC.w(TAG, "Server kept " + offset + " of " + mStoredOffset + " acknowledged bytes of " + mRemotePath);
+        }
+        return offset;
+    }
+
+    /**
+     * @return names and sizes of the chunks in the transfer folder, null if the folder does not exist
+     */
+    @Nullable
+    private Map<String, Long> readRemoteChunks(OwnCloudClient client, String transferFolderUri) throws IOException {
+        DavPropertyNameSet properties = new DavPropertyNameSet();
+        properties.add(DavPropertyName.GETCONTENTLENGTH);
+        PropFindMethod propFindMethod = new PropFindMethod(transferFolderUri, properties, DavConstants.DEPTH_1);
+        applyRetryPolicy(propFindMethod);
+
+        try {
+            int status = client.executeMethod(propFindMethod);
+            if (status != HttpStatus.SC_MULTI_STATUS) {
+                client.exhaustResponse(propFindMethod.getResponseBodyAsStream());
+                return null;
+            }
+
+            Map<String, Long> chunks = new HashMap<>();
+            for (MultiStatusResponse response : propFindMethod.getResponseBodyAsMultiStatus().getResponses()) {
+                String href = response.getHref();
+                if (href.endsWith("/")) {
+                    // the transfer folder itself
+                    continue;
+                }
+                String name = href.substring(href.lastIndexOf('/') + 1);
+                DavProperty<?> length = response.getProperties(HttpStatus.SC_OK).get(DavPropertyName.GETCONTENTLENGTH);
+                try {
+                    chunks.put(name, length == null ? null : Long.parseLong(length.getValue().toString()));
+                } catch (NumberFormatException e) {
+                    chunks.put(name, null);
+                }
+            }
+            return chunks;
+        } catch (Exception e) {
+            Log_OC.e(TAG, "Reading chunks of " + transferFolderUri + " failed", e);
+            return null;
+        } finally {
+            propFindMethod.releaseConnection();
+        }
+    }
+
+    private RemoteOperationResult assemble(OwnCloudClient client, String transferFolderUri) throws IOException {
+        String destinationUri = client.getDavUri() + "/files/" + Uri.encode(client.getUserId()) +
+            WebdavUtils.encodePath(mRemotePath);
+        MoveMethod moveMethod = new MoveMethod(transferFolderUri + "/" + ASSEMBLED_FILE_NAME, destinationUri, true);
+        moveMethod.addRequestHeader(TOTAL_LENGTH_HEADER, String.valueOf(mFileSize));
+        moveMethod.addRequestHeader(MTIME_HEADER, mLastModificationTimestamp);
+        if (mCreationTimestamp != null && mCreationTimestamp > 0) {
+            moveMethod.addRequestHeader(CTIME_HEADER, String.valueOf(mCreationTimestamp));
+        }
+        if (!TextUtils.isEmpty(mRequiredEtag)) {
+            moveMethod.addRequestHeader(IF_MATCH_HEADER, "\"" + mRequiredEtag + "\"");
+        }
+
+        applyRetryPolicy(moveMethod);
+
+        synchronized (mCancellationRequested) {
+            mCurrentMethod = moveMethod;
+        }
+        try {
+            int status = client.executeMethod(moveMethod, ASSEMBLY_READ_TIMEOUT, ASSEMBLY_CONNECTION_TIMEOUT);
+            boolean success = status == HttpStatus.SC_CREATED || status == HttpStatus.SC_NO_CONTENT;
+            RemoteOperationResult result = new RemoteOperationResult(success, moveMethod);
+            client.exhaustResponse(moveMethod.getResponseBodyAsStream());
+            return result;
+        } finally {
+            synchronized (mCancellationRequested) {
+                mCurrentMethod = null;
+            }
+            moveMethod.releaseConnection();
+        }
+    }
+
+    private RemoteOperationResult execute(OwnCloudClient client, HttpMethodBase method, int... successStatus)
+        throws IOException {
+        synchronized (mCancellationRequested) {
+            if (mCancellationRequested.get()) {
+                return cancelledResult();
+            }
+            mCurrentMethod = method;
+        }
+        applyRetryPolicy(method);
+        try {
+            int status = client.executeMethod(method);
+            boolean success = false;
+            for (int expected : successStatus) {
+                success |= status == expected;
+            }
+            RemoteOperationResult result = new RemoteOperationResult(success, method);
+            client.exhaustResponse(method.getResponseBodyAsStream());
+            return result;
+        } finally {
+            synchronized (mCancellationRequested) {
+                mCurrentMethod = null;
+            }
+            method.releaseConnection();
+        }
+    }
+
+    private void applyRetryPolicy(HttpMethodBase method) {
+        if (mDisableRetries) {
+            method.getParams().setParameter(HttpMethodParams.RETRY_HANDLER,
+                                            new DefaultHttpMethodRetryHandler(0, false));
+        }
+    }
+
+    private RemoteOperationResult cancelledResult() {
+        if (mCancellationReason != null) {
+            return new RemoteOperationResult(mCancellationReason);
+        }
+        return new RemoteOperationResult(new OperationCancelledException());
+    }
+
+    /**
+     * Sends a byte range of the local file, reporting the progress of the whole file.
+     */
+    private class ChunkRequestEntity implements RequestEntity {
+        private final long offset;
+        private final long length;
+
+        ChunkRequestEntity(long offset, long length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public void writeRequest(OutputStream out) throws IOException {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = length;
+
+            try (RandomAccessFile file = new RandomAccessFile(mLocalPath, "r")) {
+                file.seek(offset);
+                while (remaining > 0) {
+                    int read = file.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read == -1) {
+                        throw new EOFException(mLocalPath + " shrank during upload");
+                    }
+                    out.write(buffer, 0, read);
+                    remaining -= read;
+
+                    long transferred = offset + length - remaining;
+                    List<OnDatatransferProgressListener> listeners;
+                    synchronized (mDataTransferListeners) {
+                        listeners = new ArrayList<>(mDataTransferListeners);
+                    }
+                    for (OnDatatransferProgressListener listener : listeners) {
+                        listener.onTransferProgress(read, transferred, mFileSize, mLocalPath);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public long getContentLength() {
+            return length;
+        }
+
+        @Override
+        public String getContentType() {
+            return mMimeType;
+        }
+    }
+}
@@ -280,6 +280,9 @@ public class SynchronizeFolderOperation extends SyncOperation {
         // update richWorkspace
         mLocalFolder.setRichWorkspace(remoteFolder.getRichWorkspace());
 
+        // update eTag, metadata is cached by it
+        mLocalFolder.setEtag(remoteFolder.getEtag());
+
         DecryptedFolderMetadata metadata = RefreshFolderOperation.getDecryptedFolderMetadata(encryptedAncestor,
                                                                                              mLocalFolder,
                                                                                              getClient(),
@@ -323,7 +326,7 @@ public class SynchronizeFolderOperation extends SyncOperation {
 
             // update file name for encrypted files
             if (metadata != null) {
-                RefreshFolderOperation.updateFileNameForEncryptedFile(storageManager, metadata, updatedFile);
+                RefreshFolderOperation.updateFileNameForEncryptedFile(metadata, updatedFile, mLocalFolder);
             }
 
             // we parse content, so either the folder itself or its direct parent (which we check) must be encrypted
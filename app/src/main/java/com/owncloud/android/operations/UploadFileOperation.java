@@ -97,6 +97,11 @@ public class UploadFileOperation extends SyncOperation {
 
     private static final String TAG = UploadFileOperation.class.getSimpleName();
 
+    /**
+     * Uploads run in parallel, so uploads into the same new folder must not create it at the same time
+     */
+    private static final Object FOLDER_CREATION_LOCK = new Object();
+
     public static final int CREATED_BY_USER = 0;
     public static final int CREATED_AS_INSTANT_PICTURE = 1;
     public static final int CREATED_AS_INSTANT_VIDEO = 2;
@@ -404,14 +409,21 @@ public class UploadFileOperation extends SyncOperation {
 
         // in case of a fresh upload with subfolder, where parent does not exist yet
         if (parent == null && (mFolderUnlockToken == null || mFolderUnlockToken.isEmpty())) {
-            // try to create folder
-            RemoteOperationResult result = grantFolderExistence(remoteParentPath, client);
+            synchronized (FOLDER_CREATION_LOCK) {
+                // another upload may have created it meanwhile
+                parent = getStorageManager().getFileByPath(remoteParentPath);
 
-            if (!result.isSuccess()) {
-                return result;
-            }
+                if (parent == null) {
+                    // try to create folder
+                    RemoteOperationResult result = grantFolderExistence(remoteParentPath, client);
 
-            parent = getStorageManager().getFileByPath(remoteParentPath);
+                    if (!result.isSuccess()) {
+                        return result;
+                    }
+
+                    parent = getStorageManager().getFileByPath(remoteParentPath);
+                }
+            }
 
             if (parent == null) {
                 return new RemoteOperationResult(false, "Parent folder not found", HttpStatus.SC_NOT_FOUND);
@@ -520,8 +532,6 @@ public class UploadFileOperation extends SyncOperation {
             // IV, always generate new one
             byte[] iv = EncryptionUtils.randomBytes(EncryptionUtils.ivLength);
 
-            EncryptionUtils.EncryptedFile encryptedFile = EncryptionUtils.encryptFile(mFile, key, iv);
-
             // new random file name, check if it exists in metadata
             String encryptedFileName = UUID.randomUUID().toString().replaceAll("-", "");
 
@@ -530,9 +540,10 @@ public class UploadFileOperation extends SyncOperation {
             }
 
             File encryptedTempFile = File.createTempFile("encFile", encryptedFileName);
-            FileOutputStream fileOutputStream = new FileOutputStream(encryptedTempFile);
-            fileOutputStream.write(encryptedFile.encryptedBytes);
-            fileOutputStream.close();
+            String authenticationTag = EncryptionUtils.encryptFile(new File(mFile.getStoragePath()),
+                                                                   encryptedTempFile,
+                                                                   key,
+                                                                   iv);
 
             /***** E2E *****/
 
@@ -630,7 +641,7 @@ public class UploadFileOperation extends SyncOperation {
 
                 decryptedFile.setEncrypted(data);
                 decryptedFile.setInitializationVector(EncryptionUtils.encodeBytesToBase64String(iv));
-                decryptedFile.setAuthenticationTag(encryptedFile.authenticationTag);
+                decryptedFile.setAuthenticationTag(authenticationTag);
 
                 metadata.getFiles().put(encryptedFileName, decryptedFile);
 
@@ -810,26 +821,33 @@ public class UploadFileOperation extends SyncOperation {
                 size = new File(mFile.getStoragePath()).length();
             }
 
-            for (OCUpload ocUpload : uploadsStorageManager.getAllStoredUploads()) {
-                if (ocUpload.getUploadId() == getOCUploadId()) {
-                    ocUpload.setFileSize(size);
-                    uploadsStorageManager.updateUpload(ocUpload);
-                    break;
-                }
+            OCUpload ocUpload = uploadsStorageManager.getUploadById(getOCUploadId());
+            if (ocUpload != null) {
+                ocUpload.setFileSize(size);
+                uploadsStorageManager.updateUpload(ocUpload);
             }
 
             // perform the upload
             if (size > ChunkedFileUploadRemoteOperation.CHUNK_SIZE_MOBILE) {
                 boolean onWifiConnection = connectivityService.getConnectivity().isWifi();
-
-                mUploadOperation = new ChunkedFileUploadRemoteOperation(mFile.getStoragePath(),
-                                                                        mFile.getRemotePath(),
-                                                                        mFile.getMimeType(),
-                                                                        mFile.getEtagInConflict(),
-                                                                        lastModifiedTimestamp,
-                                                                        creationTimestamp,
-                                                                        onWifiConnection,
-                                                                        mDisableRetries);
+                long chunkSize = onWifiConnection ? ChunkedFileUploadRemoteOperation.CHUNK_SIZE_WIFI :
+                    ChunkedFileUploadRemoteOperation.CHUNK_SIZE_MOBILE;
+
+                // continue after the chunks acknowledged in an earlier attempt
+                mUploadOperation = new ResumableChunkedUploadOperation(
+                    mFile.getStoragePath(),
+                    mFile.getRemotePath(),
+                    mFile.getMimeType(),
+                    mFile.getEtagInConflict(),
+                    lastModifiedTimestamp,
+                    creationTimestamp,
+                    size,
+                    chunkSize,
+                    ocUpload != null ? ocUpload.getChunkedUploadTransferId() : null,
+                    ocUpload != null ? ocUpload.getChunkedUploadOffset() : 0,
+                    mDisableRetries,
+                    (transferId, offset) ->
+                        uploadsStorageManager.updateChunkedUploadProgress(getOCUploadId(), transferId, offset));
             } else {
                 mUploadOperation = new UploadFileRemoteOperation(mFile.getStoragePath(),
                                                                  mFile.getRemotePath(),
@@ -851,6 +869,11 @@ public class UploadFileOperation extends SyncOperation {
             if (result.isSuccess() && mUploadOperation != null) {
                 result = mUploadOperation.execute(client);
 
+                if (result.isSuccess() && mUploadOperation instanceof ResumableChunkedUploadOperation) {
+                    // the server removes the transfer once the file is assembled
+                    uploadsStorageManager.updateChunkedUploadProgress(getOCUploadId(), null, 0);
+                }
+
                 /// move local temporal file or original file to its corresponding
                 // location in the Nextcloud local folder
                 if (!result.isSuccess() && result.getHttpCode() == HttpStatus.SC_PRECONDITION_FAILED) {
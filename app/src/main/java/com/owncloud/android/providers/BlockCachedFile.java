@@ -0,0 +1,157 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.providers;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.BitSet;
+
+/**
+ * Random access to a remote file, fetching only the blocks being read.
+ *
+ * Fetched blocks are kept in a local cache file having the size of the remote file, so once all blocks are read,
+ * the cache file is a complete copy of the remote file. Missing blocks following a read block are fetched with it,
+ * up to a limit, so that sequential reads need few requests.
+ */
+class BlockCachedFile implements Closeable {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Provides byte ranges of the remote file
+     */
+    interface Source {
+        /**
+         * @param start first byte
+         * @param end   last byte, inclusive
+         * @return stream of the requested bytes, closed by the caller
+         */
+        InputStream open(long start, long end) throws IOException;
+    }
+
+    private final Source source;
+    private final long length;
+    private final File cacheFile;
+    private final int blockSize;
+    private final int maxBlocksPerFetch;
+    private final int blockCount;
+    private final BitSet fetchedBlocks;
+    private final RandomAccessFile cache;
+    private final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+
+    BlockCachedFile(Source source, long length, File cacheFile, int blockSize, int maxBlocksPerFetch)
+        throws IOException {
+        if (blockSize <= 0 || maxBlocksPerFetch <= 0) {
+            throw new IllegalArgumentException("Block size and blocks per fetch must be positive");
+        }
+        this.source = source;
+        this.length = length;
+        this.cacheFile = cacheFile;
+        this.blockSize = blockSize;
+        this.maxBlocksPerFetch = maxBlocksPerFetch;
+        this.blockCount = (int) ((length + blockSize - 1) / blockSize);
+        this.fetchedBlocks = new BitSet(blockCount);
+        this.cache = new RandomAccessFile(cacheFile, "rw");
+        cache.setLength(length);
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public File getCacheFile() {
+        return cacheFile;
+    }
+
+    /**
+     * Reads bytes, fetching missing blocks first.
+     *
+     * @return number of bytes read, 0 at the end of the file
+     */
+    public synchronized int read(long offset, byte[] data, int size) throws IOException {
+        if (offset < 0 || size < 0) {
+            throw new IllegalArgumentException("Negative offset or size");
+        }
+        if (offset >= length || size == 0) {
+            return 0;
+        }
+        int count = (int) Math.min(size, length - offset);
+        int lastBlock = blockOf(offset + count - 1);
+        for (int block = blockOf(offset); block <= lastBlock; block++) {
+            if (!fetchedBlocks.get(block)) {
+                fetch(block);
+            }
+        }
+        cache.seek(offset);
+        cache.readFully(data, 0, count);
+        return count;
+    }
+
+    public synchronized boolean isComplete() {
+        return fetchedBlocks.cardinality() == blockCount;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        cache.close();
+    }
+
+    private int blockOf(long position) {
+        return (int) (position / blockSize);
+    }
+
+    private long blockEnd(int block) {
+        return Math.min((long) (block + 1) * blockSize, length);
+    }
+
+    private void fetch(int firstBlock) throws IOException {
+        int lastBlock = firstBlock;
+        while (lastBlock + 1 < blockCount &&
+            lastBlock + 1 - firstBlock < maxBlocksPerFetch &&
+            !fetchedBlocks.get(lastBlock + 1)) {
+            lastBlock++;
+        }
+
+        long position = (long) firstBlock * blockSize;
+        long end = blockEnd(lastBlock);
+        int block = firstBlock;
+        try (InputStream inputStream = source.open(position, end - 1)) {
+            cache.seek(position);
+            while (position < end) {
+                int read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, end - position));
+                if (read < 0) {
+                    throw new EOFException("Remote file ended at " + position + ", expected " + end);
+                }
+                cache.write(buffer, 0, read);
+                position += read;
+
+                // blocks are marked as soon as they are complete, so that they are kept if the fetch fails later
+                while (block <= lastBlock && blockEnd(block) <= position) {
+                    fetchedBlocks.set(block);
+                    block++;
+                }
+            }
+        }
+    }
+}
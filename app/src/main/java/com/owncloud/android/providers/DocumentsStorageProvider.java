@@ -81,19 +81,20 @@ import org.nextcloud.providers.cursors.RootCursor;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.inject.Inject;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import dagger.android.AndroidInjection;
 
@@ -109,6 +110,9 @@ public class DocumentsStorageProvider extends DocumentsProvider {
 
     private static final long CACHE_EXPIRATION = TimeUnit.MILLISECONDS.convert(1, TimeUnit.MINUTES);
 
+    private static final int STREAMING_BLOCK_SIZE = 256 * 1024;
+    private static final int STREAMING_BLOCKS_PER_FETCH = 4;
+
     @Inject
     UserAccountManager accountManager;
 
@@ -117,7 +121,7 @@ public class DocumentsStorageProvider extends DocumentsProvider {
     private static final int DOCUMENTID_PARTS = 2;
     private final Map<String, FileDataStorageManager> rootIdToStorageManager = new HashMap<>();
 
-    private final Executor executor = Executors.newCachedThreadPool();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
 
     @Override
     public Cursor queryRoots(String[] projection) {
@@ -211,6 +215,13 @@ public class DocumentsStorageProvider extends DocumentsProvider {
                 // TODO show a conflict notification with a pending intent that shows a ConflictResolveDialog
                 Log_OC.w(TAG, "Conflict found!");
             } else {
+                if (accessMode == MODE_READ_ONLY && !ocFile.isEncrypted()) {
+                    ParcelFileDescriptor streamingDescriptor = openStreaming(document, ocFile);
+                    if (streamingDescriptor != null) {
+                        return streamingDescriptor;
+                    }
+                }
+
                 // dirty threading workaround for client apps which call openDocument on the main thread, thus causing
                 // a NetworkOnMainThreadException
                 final AtomicBoolean downloadResult = new AtomicBoolean(false);
@@ -297,26 +308,135 @@ public class DocumentsStorageProvider extends DocumentsProvider {
         }
     }
 
+    /**
+     * Opens a read only descriptor fetching blocks of the document while they are read, so that the caller does not
+     * have to wait for the whole download. Once all blocks were read, the file is stored as local copy.
+     *
+     * @return null if the document cannot be streamed, e.g. if the server does not support range requests
+     */
+    @Nullable
+    private ParcelFileDescriptor openStreaming(Document document, OCFile ocFile) {
+        Context context = getNonNullContext();
+        File tmpFolder = new File(FileStorageUtils.getTemporalPath(document.getUser().getAccountName()));
+
+        // network is not allowed on the main thread, which some client apps call openDocument on
+        Future<ParcelFileDescriptor> descriptor = executor.submit(() -> {
+            OwnCloudClient client = document.getClient();
+            if (client == null) {
+                throw new IOException("No client for " + document.getUser().getAccountName());
+            }
+            RemoteFileRangeSource source = new RemoteFileRangeSource(client, ocFile.getRemotePath());
+            source.probe();
+
+            if (!tmpFolder.exists() && !tmpFolder.mkdirs()) {
+                throw new IOException("Unable to create " + tmpFolder);
+            }
+            File cacheFile = File.createTempFile("streaming", null, tmpFolder);
+            BlockCachedFile file = new BlockCachedFile(source,
+                                                       source.getLength(),
+                                                       cacheFile,
+                                                       STREAMING_BLOCK_SIZE,
+                                                       STREAMING_BLOCKS_PER_FETCH);
+            StreamingFileDescriptor.OnReleased onReleased =
+                released -> onStreamingReleased(document, ocFile, source, released);
+            try {
+                return StreamingFileDescriptor.open(context, file, onReleased);
+            } catch (IOException e) {
+                file.close();
+                if (!cacheFile.delete()) {
+                    Log_OC.e(TAG, "Deletion of " + cacheFile.getAbsolutePath() + " failed!");
+                }
+                throw e;
+            }
+        });
+
+        try {
+            return descriptor.get();
+        } catch (ExecutionException e) {
+            Log_OC.w(TAG, "Streaming " + ocFile.getFileName() + " failed, downloading it: " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    /**
+     * Stores a completely read streamed file as local copy, or drops the blocks read so far.
+     */
+    private void onStreamingReleased(Document document,
+                                     OCFile ocFile,
+                                     RemoteFileRangeSource source,
+                                     BlockCachedFile file) {
+        File cacheFile = file.getCacheFile();
+        try {
+            file.close();
+        } catch (IOException e) {
+            Log_OC.e(TAG, "Closing " + cacheFile.getAbsolutePath() + " failed", e);
+        }
+
+        if (file.isComplete()) {
+            String savePath = new DownloadFileOperation(document.getUser(), ocFile, getNonNullContext()).getSavePath();
+            File localFile = new File(savePath);
+            File parent = localFile.getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                Log_OC.e(TAG, "Unable to create parent folder " + parent.getAbsolutePath());
+            }
+            if (cacheFile.renameTo(localFile)) {
+                long modificationTimestamp = source.getLastModified() > 0 ? source.getLastModified() :
+                    ocFile.getModificationTimestamp();
+                localFile.setLastModified(modificationTimestamp);
+                saveDownloadedFile(document.getStorageManager(),
+                                   ocFile,
+                                   savePath,
+                                   source.getEtag() != null ? source.getEtag() : ocFile.getEtag(),
+                                   modificationTimestamp,
+                                   ocFile.getMimeType(),
+                                   ocFile.getRemoteId());
+                return;
+            }
+            Log_OC.e(TAG, "Moving streamed file to " + savePath + " failed");
+        }
+
+        if (!cacheFile.delete()) {
+            Log_OC.e(TAG, "Deletion of " + cacheFile.getAbsolutePath() + " failed!");
+        }
+    }
+
     /**
      * Updates the OC File after a successful download.
      *
      * TODO unify with code from {@link FileDownloader} and {@link DownloadTask}.
      */
     private void saveDownloadedFile(FileDataStorageManager storageManager, DownloadFileOperation dfo, OCFile file) {
+        saveDownloadedFile(storageManager,
+                           file,
+                           dfo.getSavePath(),
+                           dfo.getEtag(),
+                           dfo.getModificationTimestamp(),
+                           dfo.getMimeType(),
+                           dfo.getFile().getRemoteId());
+    }
+
+    private void saveDownloadedFile(FileDataStorageManager storageManager,
+                                    OCFile file,
+                                    String savePath,
+                                    String etag,
+                                    long modificationTimestamp,
+                                    String mimeType,
+                                    String remoteId) {
         long syncDate = System.currentTimeMillis();
         file.setLastSyncDateForProperties(syncDate);
         file.setLastSyncDateForData(syncDate);
         file.setUpdateThumbnailNeeded(true);
-        file.setModificationTimestamp(dfo.getModificationTimestamp());
-        file.setModificationTimestampAtLastSyncForData(dfo.getModificationTimestamp());
-        file.setEtag(dfo.getEtag());
-        file.setMimeType(dfo.getMimeType());
-        String savePath = dfo.getSavePath();
+        file.setModificationTimestamp(modificationTimestamp);
+        file.setModificationTimestampAtLastSyncForData(modificationTimestamp);
+        file.setEtag(etag);
+        file.setMimeType(mimeType);
         file.setStoragePath(savePath);
         file.setFileLength(new File(savePath).length());
-        file.setRemoteId(dfo.getFile().getRemoteId());
+        file.setRemoteId(remoteId);
         storageManager.saveFile(file);
-        if (MimeTypeUtil.isMedia(dfo.getMimeType())) {
+        if (MimeTypeUtil.isMedia(mimeType)) {
             FileDataStorageManager.triggerMediaScan(file.getStoragePath(), file);
         }
         storageManager.saveConflict(file, null);
@@ -467,8 +587,10 @@ public class DocumentsStorageProvider extends DocumentsProvider {
             return result;
         }
 
-        for (Document d : findFiles(new Document(storageManager, ROOT_PATH), query)) {
-            result.addFile(d);
+        for (OCFile file : storageManager.searchFiles(query, false)) {
+            if (!file.isFolder()) {
+                result.addFile(new Document(storageManager, file));
+            }
         }
 
         return result;
@@ -700,19 +822,6 @@ public class DocumentsStorageProvider extends DocumentsProvider {
         }
     }
 
-    private List<Document> findFiles(Document root, String query) {
-        FileDataStorageManager storageManager = root.getStorageManager();
-        List<Document> result = new ArrayList<>();
-        for (OCFile f : storageManager.getFolderContent(root.getFile(), false)) {
-            if (f.isFolder()) {
-                result.addAll(findFiles(new Document(storageManager, f), query));
-            } else if (f.getFileName().contains(query)) {
-                result.add(new Document(storageManager, f));
-            }
-        }
-        return result;
-    }
-
     private Uri toNotifyUri(Document document) {
         return DocumentsContract.buildDocumentUri(
             getContext().getString(R.string.document_provider_authority),
@@ -89,6 +89,7 @@ public class FileContentProvider extends ContentProvider {
     private static final int ARBITRARY_DATA = 9;
     private static final int VIRTUAL = 10;
     private static final int FILESYSTEM = 11;
+    private static final int FILE_SEARCH = 12;
     private static final String TAG = FileContentProvider.class.getSimpleName();
     // todo avoid string concatenation and use string formatting instead later.
     private static final String ERROR = "ERROR ";
@@ -488,6 +489,7 @@ public class FileContentProvider extends ContentProvider {
         mUriMatcher.addURI(authority, "arbitrary_data", ARBITRARY_DATA);
         mUriMatcher.addURI(authority, "virtual", VIRTUAL);
         mUriMatcher.addURI(authority, "filesystem", FILESYSTEM);
+        mUriMatcher.addURI(authority, "file_search", FILE_SEARCH);
 
         return true;
     }
@@ -565,6 +567,16 @@ public class FileContentProvider extends ContentProvider {
             case FILESYSTEM:
                 sqlQuery.setTables(ProviderTableMeta.FILESYSTEM_TABLE_NAME);
                 break;
+            case FILE_SEARCH:
+                // selection has to contain the MATCH on the search table, rows are the matching files
+                sqlQuery.setTables(ProviderTableMeta.FILE_TABLE_NAME
+                                       + " JOIN " + ProviderTableMeta.FILE_SEARCH_TABLE_NAME
+                                       + " ON " + ProviderTableMeta.FILE_TABLE_NAME + "." + ProviderTableMeta._ID
+                                       + " = " + ProviderTableMeta.FILE_SEARCH_TABLE_NAME + ".docid");
+                if (projectionArray == null) {
+                    projectionArray = new String[]{ProviderTableMeta.FILE_TABLE_NAME + ".*"};
+                }
+                break;
             default:
                 throw new IllegalArgumentException("Unknown uri id: " + uri);
         }
@@ -631,8 +643,11 @@ public class FileContentProvider extends ContentProvider {
             selection = "(?)";
         }
 
+        String limit = uri.getQueryParameter(ProviderTableMeta.QUERY_PARAMETER_LIMIT);
+        VerificationUtils.verifyLimit(limit);
+
         sqlQuery.setStrict(true);
-        Cursor c = sqlQuery.query(db, projectionArray, selection, selectionArgs, null, null, order);
+        Cursor c = sqlQuery.query(db, projectionArray, selection, selectionArgs, null, null, order, limit);
         c.setNotificationUri(mContext.getContentResolver(), uri);
         return c;
     }
@@ -765,6 +780,50 @@ public class FileContentProvider extends ContentProvider {
         );
     }
 
+    /**
+     * Creates the full text search table over file names and decrypted paths, filled from and kept in sync with the
+     * files table by triggers, so that every insert, update and delete of files updates the search index as well.
+     *
+     * FTS4 is used as FTS5 and its trigram tokenizer are not available in the SQLite versions shipped by Android.
+     *
+     * @param db Database where the files table is included.
+     */
+    private void createFileSearchTable(SQLiteDatabase db) {
+        final String table = ProviderTableMeta.FILE_SEARCH_TABLE_NAME;
+        final String searchedPath = "COALESCE(new." + ProviderTableMeta.FILE_PATH_DECRYPTED
+            + ", new." + ProviderTableMeta.FILE_PATH + ")";
+
+        db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + table + " USING fts4("
+                       + ProviderTableMeta.FILE_SEARCH_NAME + ", "
+                       + ProviderTableMeta.FILE_SEARCH_PATH + ", "
+                       + "tokenize=unicode61);");
+
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + table + "_insert AFTER INSERT ON "
+                       + ProviderTableMeta.FILE_TABLE_NAME + " BEGIN "
+                       + "INSERT INTO " + table + "(docid, " + ProviderTableMeta.FILE_SEARCH_NAME + ", "
+                       + ProviderTableMeta.FILE_SEARCH_PATH + ") VALUES (new." + ProviderTableMeta._ID + ", new."
+                       + ProviderTableMeta.FILE_NAME + ", " + searchedPath + "); END;");
+
+        // only changes of searched columns, syncs mostly update etags and dates
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + table + "_update AFTER UPDATE OF "
+                       + ProviderTableMeta.FILE_NAME + ", " + ProviderTableMeta.FILE_PATH + ", "
+                       + ProviderTableMeta.FILE_PATH_DECRYPTED + " ON " + ProviderTableMeta.FILE_TABLE_NAME
+                       + " BEGIN UPDATE " + table + " SET " + ProviderTableMeta.FILE_SEARCH_NAME + " = new."
+                       + ProviderTableMeta.FILE_NAME + ", " + ProviderTableMeta.FILE_SEARCH_PATH + " = " + searchedPath
+                       + " WHERE docid = old." + ProviderTableMeta._ID + "; END;");
+
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + table + "_delete AFTER DELETE ON "
+                       + ProviderTableMeta.FILE_TABLE_NAME + " BEGIN "
+                       + "DELETE FROM " + table + " WHERE docid = old." + ProviderTableMeta._ID + "; END;");
+
+        // index already existing files
+        db.execSQL("INSERT INTO " + table + "(docid, " + ProviderTableMeta.FILE_SEARCH_NAME + ", "
+                       + ProviderTableMeta.FILE_SEARCH_PATH + ") SELECT " + ProviderTableMeta._ID + ", "
+                       + ProviderTableMeta.FILE_NAME + ", COALESCE(" + ProviderTableMeta.FILE_PATH_DECRYPTED + ", "
+                       + ProviderTableMeta.FILE_PATH + ") FROM " + ProviderTableMeta.FILE_TABLE_NAME
+                       + " WHERE " + ProviderTableMeta._ID + " NOT IN (SELECT docid FROM " + table + ");");
+    }
+
     private void createOCSharesTable(SQLiteDatabase db) {
         db.execSQL("CREATE TABLE " + ProviderTableMeta.OCSHARES_TABLE_NAME + "("
                        + ProviderTableMeta._ID + " INTEGER PRIMARY KEY, "
@@ -858,7 +917,9 @@ public class FileContentProvider extends ContentProvider {
                        + ProviderTableMeta.UPLOADS_IS_WHILE_CHARGING_ONLY + INTEGER  // boolean
                        + ProviderTableMeta.UPLOADS_IS_WIFI_ONLY + INTEGER // boolean
                        + ProviderTableMeta.UPLOADS_CREATED_BY + INTEGER    // Upload createdBy
-                       + ProviderTableMeta.UPLOADS_FOLDER_UNLOCK_TOKEN + " TEXT );");
+                       + ProviderTableMeta.UPLOADS_FOLDER_UNLOCK_TOKEN + TEXT
+                       + ProviderTableMeta.UPLOADS_CHUNKED_TRANSFER_ID + TEXT
+                       + ProviderTableMeta.UPLOADS_CHUNKED_OFFSET + " INTEGER );");
 
         /* before:
         // PRIMARY KEY should always imply NOT NULL. Unfortunately, due to a
@@ -927,10 +988,46 @@ public class FileContentProvider extends ContentProvider {
                        + ProviderTableMeta.FILESYSTEM_FILE_SENT_FOR_UPLOAD + " INTEGER, "
                        + ProviderTableMeta.FILESYSTEM_SYNCED_FOLDER_ID + " STRING, "
                        + ProviderTableMeta.FILESYSTEM_CRC32 + " STRING, "
+                       + ProviderTableMeta.FILESYSTEM_CRC32_ALGORITHM + " TEXT, "
                        + ProviderTableMeta.FILESYSTEM_FILE_MODIFIED + " LONG );"
         );
     }
 
+    /**
+     * Creates the secondary indexes used by the hot queries on files, filesystem and uploads tables.
+     *
+     * @param db Database where the tables are included.
+     */
+    private void createIndexes(SQLiteDatabase db) {
+        // folder listings and recursive deletes
+        createIndex(db, ProviderTableMeta.FILE_TABLE_NAME, ProviderTableMeta.FILE_PARENT_INDEX,
+                    ProviderTableMeta.FILE_PARENT);
+        // lookups done through getFileCursorForValue, always scoped to an account
+        createIndex(db, ProviderTableMeta.FILE_TABLE_NAME, ProviderTableMeta.FILE_PATH_INDEX,
+                    ProviderTableMeta.FILE_PATH, ProviderTableMeta.FILE_ACCOUNT_OWNER);
+        createIndex(db, ProviderTableMeta.FILE_TABLE_NAME, ProviderTableMeta.FILE_PATH_DECRYPTED_INDEX,
+                    ProviderTableMeta.FILE_PATH_DECRYPTED, ProviderTableMeta.FILE_ACCOUNT_OWNER);
+        createIndex(db, ProviderTableMeta.FILE_TABLE_NAME, ProviderTableMeta.FILE_REMOTE_ID_INDEX,
+                    ProviderTableMeta.FILE_REMOTE_ID, ProviderTableMeta.FILE_ACCOUNT_OWNER);
+        createIndex(db, ProviderTableMeta.FILE_TABLE_NAME, ProviderTableMeta.FILE_STORAGE_PATH_INDEX,
+                    ProviderTableMeta.FILE_STORAGE_PATH, ProviderTableMeta.FILE_ACCOUNT_OWNER);
+        // gallery: content type is matched with OR'ed LIKEs, which can not use an index, so range on modified
+        createIndex(db, ProviderTableMeta.FILE_TABLE_NAME, ProviderTableMeta.FILE_GALLERY_INDEX,
+                    ProviderTableMeta.FILE_ACCOUNT_OWNER, ProviderTableMeta.FILE_MODIFIED,
+                    ProviderTableMeta.FILE_CONTENT_TYPE);
+
+        createIndex(db, ProviderTableMeta.FILESYSTEM_TABLE_NAME, ProviderTableMeta.FILESYSTEM_LOCAL_PATH_INDEX,
+                    ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH, ProviderTableMeta.FILESYSTEM_SYNCED_FOLDER_ID);
+
+        createIndex(db, ProviderTableMeta.UPLOADS_TABLE_NAME, ProviderTableMeta.UPLOADS_STATUS_INDEX,
+                    ProviderTableMeta.UPLOADS_STATUS, ProviderTableMeta.UPLOADS_ACCOUNT_NAME);
+    }
+
+    private void createIndex(SQLiteDatabase db, String table, String indexName, String... columns) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + indexName + " ON " + table
+                       + "(" + TextUtils.join(", ", columns) + ");");
+    }
+
     /**
      * Version 10 of database does not modify its scheme. It coincides with the upgrade of the
      * ownCloud account names structure to include in it the path to the server instance. Updating
@@ -1061,6 +1158,7 @@ public class FileContentProvider extends ContentProvider {
             case ARBITRARY_DATA:
             case VIRTUAL:
             case FILESYSTEM:
+            case FILE_SEARCH:
                 String callingPackage = mContext.getPackageManager().getNameForUid(Binder.getCallingUid());
                 return callingPackage == null || !callingPackage.equals(mContext.getPackageName());
 
@@ -1109,6 +1207,19 @@ public class FileContentProvider extends ContentProvider {
             return args;
         }
 
+        public static void verifyLimit(@Nullable String limit) {
+            if (limit == null) {
+                return;
+            }
+            try {
+                if (Integer.parseInt(limit) < 0) {
+                    throw new IllegalArgumentException("Invalid limit " + limit);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid limit " + limit, e);
+            }
+        }
+
         public static void verifySortOrder(@Nullable String sortOrder) {
             if (sortOrder == null) {
                 return;
@@ -1182,6 +1293,7 @@ public class FileContentProvider extends ContentProvider {
             // files table
             Log_OC.i(SQL, "Entering in onCreate");
             createFilesTable(db);
+            createFileSearchTable(db);
 
             // Create OCShares table
             createOCSharesTable(db);
@@ -1206,6 +1318,9 @@ public class FileContentProvider extends ContentProvider {
 
             // Create filesystem table
             createFileSystemTable(db);
+
+            // Create indexes
+            createIndexes(db);
         }
 
         @Override
@@ -2499,6 +2614,74 @@ public class FileContentProvider extends ContentProvider {
             if (!upgraded) {
                 Log_OC.i(SQL, String.format(Locale.ENGLISH, UPGRADE_VERSION_MSG, oldVersion, newVersion));
             }
+
+            if (oldVersion < 64 && newVersion >= 64) {
+                Log_OC.i(SQL, "Entering in the #64 add indexes for files, filesystem and uploads");
+                db.beginTransaction();
+                try {
+                    createIndexes(db);
+
+                    upgraded = true;
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+
+            if (oldVersion < 65 && newVersion >= 65) {
+                Log_OC.i(SQL, "Entering in the #65 add checksum algorithm to filesystem table");
+                db.beginTransaction();
+                try {
+                    // existing checksums without algorithm are full CRC32
+                    if (!checkIfColumnExists(db, ProviderTableMeta.FILESYSTEM_TABLE_NAME,
+                                             ProviderTableMeta.FILESYSTEM_CRC32_ALGORITHM)) {
+                        db.execSQL(ALTER_TABLE + ProviderTableMeta.FILESYSTEM_TABLE_NAME +
+                                       ADD_COLUMN + ProviderTableMeta.FILESYSTEM_CRC32_ALGORITHM + " TEXT ");
+                    }
+
+                    upgraded = true;
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+
+            if (oldVersion < 66 && newVersion >= 66) {
+                Log_OC.i(SQL, "Entering in the #66 add chunked upload progress to uploads table");
+                db.beginTransaction();
+                try {
+                    // upgrades from versions before 54 recreate the uploads table with the current schema
+                    if (!checkIfColumnExists(db, ProviderTableMeta.UPLOADS_TABLE_NAME,
+                                             ProviderTableMeta.UPLOADS_CHUNKED_TRANSFER_ID)) {
+                        db.execSQL(ALTER_TABLE + ProviderTableMeta.UPLOADS_TABLE_NAME +
+                                       ADD_COLUMN + ProviderTableMeta.UPLOADS_CHUNKED_TRANSFER_ID + " TEXT ");
+                        db.execSQL(ALTER_TABLE + ProviderTableMeta.UPLOADS_TABLE_NAME +
+                                       ADD_COLUMN + ProviderTableMeta.UPLOADS_CHUNKED_OFFSET + " INTEGER DEFAULT 0");
+                    }
+
+                    upgraded = true;
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+
+            if (oldVersion < 67 && newVersion >= 67) {
+                Log_OC.i(SQL, "Entering in the #67 add full text search table of files");
+                db.beginTransaction();
+                try {
+                    createFileSearchTable(db);
+
+                    upgraded = true;
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+
+            if (!upgraded) {
+                Log_OC.i(SQL, String.format(Locale.ENGLISH, UPGRADE_VERSION_MSG, oldVersion, newVersion));
+            }
         }
     }
 }
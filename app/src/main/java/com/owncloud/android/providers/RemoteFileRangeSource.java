@@ -0,0 +1,155 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.providers;
+
+import com.owncloud.android.lib.common.OwnCloudClient;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.util.DateParseException;
+import org.apache.commons.httpclient.util.DateUtil;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads byte ranges of a file with HTTP range requests.
+ *
+ * Once the file was probed, ranges are requested only if the file still has the same ETag,
+ * so that blocks of different versions are not mixed. Weak ETags never match in If-Match,
+ * so ranges of files with a weak ETag are requested without that check.
+ */
+class RemoteFileRangeSource implements BlockCachedFile.Source {
+
+    private static final String RANGE_HEADER = "Range";
+    private static final String IF_MATCH_HEADER = "If-Match";
+    private static final String CONTENT_RANGE_HEADER = "Content-Range";
+    private static final String ETAG_HEADER = "ETag";
+    private static final String WEAK_ETAG_PREFIX = "W/";
+    private static final String LAST_MODIFIED_HEADER = "Last-Modified";
+
+    private final OwnCloudClient client;
+    private final String uri;
+    private long length = -1;
+    /**
+     * ETag header value as returned by the server, including quotes and a possible weak prefix
+     */
+    private String entityTag;
+    private long lastModified;
+
+    RemoteFileRangeSource(OwnCloudClient client, String remotePath) {
+        this.client = client;
+        this.uri = client.getFilesDavUri(remotePath);
+    }
+
+    /**
+     * Requests the first byte to find out length, ETag and modification time of the file.
+     *
+     * @throws IOException if the request failed or the server does not support range requests
+     */
+    void probe() throws IOException {
+        GetMethod get = execute(0, 0);
+        try {
+            Header contentRange = get.getResponseHeader(CONTENT_RANGE_HEADER);
+            // bytes 0-0/1234
+            String value = contentRange != null ? contentRange.getValue() : "";
+            int separator = value.lastIndexOf('/');
+            try {
+                length = Long.parseLong(value.substring(separator + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Unknown length of " + uri + ": " + value, e);
+            }
+
+            Header etagHeader = get.getResponseHeader(ETAG_HEADER);
+            entityTag = etagHeader != null ? etagHeader.getValue().trim() : null;
+
+            Header lastModifiedHeader = get.getResponseHeader(LAST_MODIFIED_HEADER);
+            if (lastModifiedHeader != null) {
+                try {
+                    lastModified = DateUtil.parseDate(lastModifiedHeader.getValue()).getTime();
+                } catch (DateParseException e) {
+                    lastModified = 0;
+                }
+            }
+        } finally {
+            get.releaseConnection();
+        }
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * @return ETag without quotes, as stored for files
+     */
+    String getEtag() {
+        return entityTag != null ? entityTag.replace("\"", "") : null;
+    }
+
+    /**
+     * @return modification time in milliseconds, 0 if unknown
+     */
+    long getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public InputStream open(long start, long end) throws IOException {
+        GetMethod get = execute(start, end);
+        InputStream body = get.getResponseBodyAsStream();
+        if (body == null) {
+            get.releaseConnection();
+            throw new IOException("No content for range " + start + "-" + end + " of " + uri);
+        }
+        return new FilterInputStream(body) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    get.releaseConnection();
+                }
+            }
+        };
+    }
+
+    private GetMethod execute(long start, long end) throws IOException {
+        GetMethod get = new GetMethod(uri);
+        get.addRequestHeader(RANGE_HEADER, "bytes=" + start + "-" + end);
+        if (entityTag != null && !entityTag.startsWith(WEAK_ETAG_PREFIX)) {
+            get.addRequestHeader(IF_MATCH_HEADER, entityTag);
+        }
+        int status;
+        try {
+            status = client.executeMethod(get);
+        } catch (IOException e) {
+            get.releaseConnection();
+            throw e;
+        }
+        if (status != HttpStatus.SC_PARTIAL_CONTENT) {
+            get.releaseConnection();
+            throw new IOException("Range request for " + uri + " failed with status " + status);
+        }
+        return get;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.providers;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.ParcelFileDescriptor;
+import android.os.ProxyFileDescriptorCallback;
+import android.os.storage.StorageManager;
+import android.system.ErrnoException;
+import android.system.OsConstants;
+
+import com.owncloud.android.lib.common.utils.Log_OC;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import androidx.annotation.RequiresApi;
+
+/**
+ * Creates read only file descriptors for a {@link BlockCachedFile}, so that other apps can start reading a
+ * remote file before it is downloaded completely.
+ *
+ * Since API 26, the descriptor is a seekable proxy reading the blocks requested by the other app. On older
+ * versions, the file is written sequentially into a pipe.
+ */
+final class StreamingFileDescriptor {
+
+    private static final String TAG = StreamingFileDescriptor.class.getSimpleName();
+    private static final String THREAD_NAME = "Document streaming";
+    private static final int PIPE_BUFFER_SIZE = 64 * 1024;
+
+    interface OnReleased {
+        /**
+         * Called on a background thread once the descriptor was closed by the reader or the transfer failed
+         */
+        void onReleased(BlockCachedFile file);
+    }
+
+    private StreamingFileDescriptor() {
+        // utility class
+    }
+
+    static ParcelFileDescriptor open(Context context, BlockCachedFile file, OnReleased onReleased)
+        throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            return openProxy(context, file, onReleased);
+        } else {
+            return openPipe(file, onReleased);
+        }
+    }
+
+    @RequiresApi(Build.VERSION_CODES.O)
+    private static ParcelFileDescriptor openProxy(Context context, BlockCachedFile file, OnReleased onReleased)
+        throws IOException {
+        HandlerThread thread = new HandlerThread(THREAD_NAME);
+        thread.start();
+        StorageManager storageManager = context.getSystemService(StorageManager.class);
+        try {
+            return storageManager.openProxyFileDescriptor(ParcelFileDescriptor.MODE_READ_ONLY,
+                                                          new ProxyCallback(file, thread, onReleased),
+                                                          new Handler(thread.getLooper()));
+        } catch (IOException e) {
+            thread.quitSafely();
+            throw e;
+        }
+    }
+
+    private static ParcelFileDescriptor openPipe(BlockCachedFile file, OnReleased onReleased) throws IOException {
+        ParcelFileDescriptor[] pipe = ParcelFileDescriptor.createReliablePipe();
+        new Thread(() -> transfer(file, pipe[1], onReleased), THREAD_NAME).start();
+        return pipe[0];
+    }
+
+    private static void transfer(BlockCachedFile file, ParcelFileDescriptor writeSide, OnReleased onReleased) {
+        byte[] buffer = new byte[PIPE_BUFFER_SIZE];
+        OutputStream outputStream = new FileOutputStream(writeSide.getFileDescriptor());
+        try {
+            long offset = 0;
+            int read;
+            while ((read = file.read(offset, buffer, buffer.length)) > 0) {
+                outputStream.write(buffer, 0, read);
+                offset += read;
+            }
+            writeSide.close();
+        } catch (IOException e) {
+            Log_OC.e(TAG, "Streaming failed: " + e.getMessage());
+            try {
+                writeSide.closeWithError(e.getMessage());
+            } catch (IOException closeException) {
+                Log_OC.e(TAG, "Closing pipe failed: " + closeException.getMessage());
+            }
+        } finally {
+            onReleased.onReleased(file);
+        }
+    }
+
+    @RequiresApi(Build.VERSION_CODES.O)
+    private static final class ProxyCallback extends ProxyFileDescriptorCallback {
+        private final BlockCachedFile file;
+        private final HandlerThread thread;
+        private final OnReleased onReleased;
+
+        ProxyCallback(BlockCachedFile file, HandlerThread thread, OnReleased onReleased) {
+            this.file = file;
+            this.thread = thread;
+            this.onReleased = onReleased;
+        }
+
+        @Override
+        public long onGetSize() {
+            return file.getLength();
+        }
+
+        @Override
+        public int onRead(long offset, int size, byte[] data) throws ErrnoException {
+            try {
+                return file.read(offset, data, size);
+            } catch (IOException e) {
+                Log_OC.e(TAG, "Streaming failed: " + e.getMessage());
+                throw new ErrnoException("onRead", OsConstants.EIO);
+            }
+        }
+
+        @Override
+        public void onRelease() {
+            try {
+                onReleased.onReleased(file);
+            } finally {
+                thread.quitSafely();
+            }
+        }
+    }
+}
@@ -25,6 +25,7 @@ import android.os.IBinder;
 
 import com.nextcloud.android.sso.InputStreamBinder;
 import com.nextcloud.client.account.UserAccountManager;
+import com.nextcloud.client.core.Clock;
 
 import javax.inject.Inject;
 
@@ -34,6 +35,7 @@ public class AccountManagerService extends Service {
 
     private InputStreamBinder mBinder;
     @Inject UserAccountManager accountManager;
+    @Inject Clock clock;
 
     @Override
     public void onCreate() {
@@ -44,7 +46,7 @@ public class AccountManagerService extends Service {
     @Override
     public IBinder onBind(Intent intent) {
         if(mBinder == null) {
-            mBinder = new InputStreamBinder(getApplicationContext(), accountManager);
+            mBinder = new InputStreamBinder(getApplicationContext(), accountManager, clock);
         }
         return mBinder;
     }
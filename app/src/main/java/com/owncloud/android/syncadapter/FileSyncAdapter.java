@@ -58,6 +58,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.PluralsRes;
 import androidx.core.app.NotificationCompat;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
@@ -77,6 +79,9 @@ public class FileSyncAdapter extends AbstractOwnCloudSyncAdapter {
      * the synchronization operation */
     private static final int MAX_FAILED_RESULTS = 3;
 
+    /** Maximum number of folders refreshed in parallel during a full synchronization */
+    private static final int MAX_PARALLEL_FOLDER_SYNCS = 4;
+
 
     public static final String EVENT_FULL_SYNC_START = FileSyncAdapter.class.getName() +
             ".EVENT_FULL_SYNC_START";
@@ -95,7 +100,10 @@ public class FileSyncAdapter extends AbstractOwnCloudSyncAdapter {
     private long mCurrentSyncTime;
 
     /** Flag made 'true' when a request to cancel the synchronization is received */
-    private boolean mCancellation;
+    private volatile boolean mCancellation;
+
+    /** Guards the results collected from the folders synchronized in parallel */
+    private final Object mResultsLock = new Object();
 
     /** Counter for failed operations in the synchronization process */
     private int mFailedResultsCounter;
@@ -195,7 +203,7 @@ public class FileSyncAdapter extends AbstractOwnCloudSyncAdapter {
             updateOCVersion();
             mCurrentSyncTime = System.currentTimeMillis();
             if (!mCancellation) {
-                synchronizeFolder(getStorageManager().getFileByPath(OCFile.ROOT_PATH));
+                synchronizeFolders(getStorageManager().getFileByPath(OCFile.ROOT_PATH));
 
             } else {
                 Log_OC.d(TAG, "Leaving synchronization before synchronizing the root folder " +
@@ -235,7 +243,7 @@ public class FileSyncAdapter extends AbstractOwnCloudSyncAdapter {
      * locally saved.
      *
      * See {@link #onPerformSync(Account, Bundle, String, ContentProviderClient, SyncResult)}
-     * and {@link #synchronizeFolder(OCFile)}.
+     * and {@link #synchronizeFolders(OCFile)}.
      */
     @Override
     public void onSyncCanceled() {
@@ -257,21 +265,58 @@ public class FileSyncAdapter extends AbstractOwnCloudSyncAdapter {
     }
 
 
+    /**
+     * Synchronizes the whole tree below the given folder, refreshing up to {@link #MAX_PARALLEL_FOLDER_SYNCS}
+     * folders in parallel. Folders whose etag changed on the server are refreshed first.
+     *
+     * @param root Folder to start the synchronization with.
+     */
+    private void synchronizeFolders(OCFile root) {
+        FolderCrawler<OCFile> crawler = new FolderCrawler<>(MAX_PARALLEL_FOLDER_SYNCS, () -> mCancellation);
+
+        try {
+            crawler.crawl(root, new FolderCrawler.Visitor<OCFile>() {
+                @Override
+                public List<OCFile> visit(@NonNull OCFile folder) {
+                    return synchronizeFolder(folder);
+                }
+
+                @Override
+                public boolean hasPriority(@NonNull OCFile folder) {
+                    return folder.getEtag() == null || !folder.getEtag().equals(folder.getEtagOnServer());
+                }
+            });
+        } catch (InterruptedException e) {
+            Log_OC.d(TAG, "Synchronization interrupted");
+            Thread.currentThread().interrupt();
+        }
+
+        if (mCancellation) {
+            Log_OC.d(TAG, "Leaving synchronization before finishing due to cancellation request");
+        }
+    }
+
     /**
      *  Synchronizes the list of files contained in a folder identified with its remote path.
      *
      *  Fetches the list and properties of the files contained in the given folder, including their
      *  properties, and updates the local database with them.
      *
-     *  Enters in the child folders to synchronize their contents also, following a recursive
-     *  depth first strategy.
+     *  May be called concurrently for different folders.
+     *
+     *  No consideration of etag for the returned child folders, because it MUST walk down anyway, in case that
+     *  kept-in-sync files have local changes.
      *
      *  @param folder                   Folder to synchronize.
+     *  @return                         Child folders to synchronize next, null if none.
      */
-    private void synchronizeFolder(OCFile folder) {
+    @Nullable
+    private List<OCFile> synchronizeFolder(OCFile folder) {
 
-        if (mFailedResultsCounter > MAX_FAILED_RESULTS || isFinisher(mLastFailedResult)) {
-            return;
+        synchronized (mResultsLock) {
+            if (mFailedResultsCounter > MAX_FAILED_RESULTS || isFinisher(mLastFailedResult)) {
+                return null;
+            }
         }
 
         // folder synchronization
@@ -287,41 +332,49 @@ public class FileSyncAdapter extends AbstractOwnCloudSyncAdapter {
         // synchronized folder -> notice to UI - ALWAYS, although !result.isSuccess
         sendLocalBroadcast(EVENT_FULL_SYNC_FOLDER_CONTENTS_SYNCED, folder.getRemotePath(), result);
 
-        // check the result of synchronizing the folder
-        if (result.isSuccess() || result.getCode() == ResultCode.SYNC_CONFLICT) {
-
-            if (result.getCode() == ResultCode.SYNC_CONFLICT) {
-                mConflictsFound += synchFolderOp.getConflictsFound();
-                mFailsInFavouritesFound += synchFolderOp.getFailsInKeptInSyncFound();
-            }
-            if (synchFolderOp.getForgottenLocalFiles().size() > 0) {
-                mForgottenLocalFiles.putAll(synchFolderOp.getForgottenLocalFiles());
-            }
-            if (result.isSuccess()) {
-                // synchronize children folders
-                List<OCFile> children = synchFolderOp.getChildren();
-                // beware of the 'hidden' recursion here!
-                syncChildren(children);
-            }
-
-        } else if (result.getCode() != ResultCode.FILE_NOT_FOUND) {
-            // in failures, the statistics for the global result are updated
-            if (ResultCode.UNAUTHORIZED == result.getCode()) {
-                mSyncResult.stats.numAuthExceptions++;
-
-            } else if (result.getException() instanceof DavException) {
-                mSyncResult.stats.numParseExceptions++;
-
-            } else if (result.getException() instanceof IOException) {
-                mSyncResult.stats.numIoExceptions++;
-            }
-            mFailedResultsCounter++;
-            mLastFailedResult = result;
-
-        } // else, ResultCode.FILE_NOT_FOUND is ignored, remote folder was
-          // removed from other thread or other client during the synchronization,
-          // before this thread fetched its contents
+        List<OCFile> childFolders = null;
+
+        synchronized (mResultsLock) {
+            // check the result of synchronizing the folder
+            if (result.isSuccess() || result.getCode() == ResultCode.SYNC_CONFLICT) {
+
+                if (result.getCode() == ResultCode.SYNC_CONFLICT) {
+                    mConflictsFound += synchFolderOp.getConflictsFound();
+                    mFailsInFavouritesFound += synchFolderOp.getFailsInKeptInSyncFound();
+                }
+                if (synchFolderOp.getForgottenLocalFiles().size() > 0) {
+                    mForgottenLocalFiles.putAll(synchFolderOp.getForgottenLocalFiles());
+                }
+                if (result.isSuccess()) {
+                    // synchronize children folders
+                    childFolders = new ArrayList<>();
+                    for (OCFile child : synchFolderOp.getChildren()) {
+                        if (child.isFolder()) {
+                            childFolders.add(child);
+                        }
+                    }
+                }
+
+            } else if (result.getCode() != ResultCode.FILE_NOT_FOUND) {
+                // in failures, the statistics for the global result are updated
+                if (ResultCode.UNAUTHORIZED == result.getCode()) {
+                    mSyncResult.stats.numAuthExceptions++;
+
+                } else if (result.getException() instanceof DavException) {
+                    mSyncResult.stats.numParseExceptions++;
+
+                } else if (result.getException() instanceof IOException) {
+                    mSyncResult.stats.numIoExceptions++;
+                }
+                mFailedResultsCounter++;
+                mLastFailedResult = result;
+
+            } // else, ResultCode.FILE_NOT_FOUND is ignored, remote folder was
+              // removed from other thread or other client during the synchronization,
+              // before this thread fetched its contents
+        }
 
+        return childFolders;
     }
 
     /**
@@ -343,32 +396,6 @@ public class FileSyncAdapter extends AbstractOwnCloudSyncAdapter {
         return false;
     }
 
-    /**
-     * Triggers the synchronization of any folder contained in the list of received files.
-     *
-     * No consideration of etag here because it MUST walk down anyway, in case that kept-in-sync files
-     * have local changes.
-     *
-     * @param files         Files to recursively synchronize.
-     */
-    private void syncChildren(List<OCFile> files) {
-        int i;
-        OCFile newFile;
-        for (i=0; i < files.size() && !mCancellation; i++) {
-            newFile = files.get(i);
-            if (newFile.isFolder()) {
-                synchronizeFolder(newFile);
-            }
-        }
-
-        if (mCancellation && i <files.size()) {
-            Log_OC.d(TAG,
-                     "Leaving synchronization before synchronizing " + files.get(i).getRemotePath() +
-                            " due to cancellation request");
-        }
-    }
-
-
     /**
      * Sends a message to any application component interested in the progress of the
      * synchronization.
@@ -0,0 +1,168 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.syncadapter;
+
+import com.owncloud.android.lib.common.utils.Log_OC;
+
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Walks a folder tree with a bounded number of folders being visited in parallel.
+ *
+ * Folders are taken from a shared priority queue: folders reported as changed are visited before unchanged ones,
+ * otherwise folders are visited in the order they were discovered. Crawling stops when the tree is exhausted or
+ * the cancellation check returns true; folders still queued at that point are dropped.
+ *
+ * @param <T> folder type
+ */
+public class FolderCrawler<T> {
+
+    private static final String TAG = FolderCrawler.class.getSimpleName();
+
+    public interface Visitor<T> {
+        /**
+         * Visits a folder. Called concurrently from worker threads.
+         *
+         * @param folder folder to visit
+         * @return sub folders to crawl next, null or empty if none
+         */
+        @Nullable
+        List<T> visit(@NonNull T folder);
+
+        /**
+         * @return true if the folder is known to be changed and should be visited first
+         */
+        boolean hasPriority(@NonNull T folder);
+    }
+
+    public interface Cancellation {
+        boolean isCancelled();
+    }
+
+    private final int concurrency;
+    private final Cancellation cancellation;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Object lock = new Object();
+    private int pending;
+
+    /**
+     * @param concurrency  maximum number of folders visited at the same time
+     * @param cancellation checked before each folder is visited
+     */
+    public FolderCrawler(int concurrency, @NonNull Cancellation cancellation) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1");
+        }
+        this.concurrency = concurrency;
+        this.cancellation = cancellation;
+    }
+
+    /**
+     * Crawls the tree below root, including root itself. Blocks until all folders are visited or crawling is
+     * cancelled.
+     */
+    public void crawl(@NonNull T root, @NonNull Visitor<T> visitor) throws InterruptedException {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(concurrency,
+                                                             concurrency,
+                                                             0,
+                                                             TimeUnit.MILLISECONDS,
+                                                             new PriorityBlockingQueue<>());
+        try {
+            synchronized (lock) {
+                pending = 0;
+            }
+            submit(executor, root, visitor);
+
+            synchronized (lock) {
+                while (pending > 0) {
+                    lock.wait();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void submit(ThreadPoolExecutor executor, T folder, Visitor<T> visitor) {
+        synchronized (lock) {
+            pending++;
+        }
+        executor.execute(new Task(executor, folder, visitor, visitor.hasPriority(folder), sequence.getAndIncrement()));
+    }
+
+    private void finished() {
+        synchronized (lock) {
+            pending--;
+            if (pending == 0) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private class Task implements Runnable, Comparable<Task> {
+        private final ThreadPoolExecutor executor;
+        private final T folder;
+        private final Visitor<T> visitor;
+        private final boolean priority;
+        private final long order;
+
+        Task(ThreadPoolExecutor executor, T folder, Visitor<T> visitor, boolean priority, long order) {
+            this.executor = executor;
+            this.folder = folder;
+            this.visitor = visitor;
+            this.priority = priority;
+            this.order = order;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (cancellation.isCancelled()) {
+                    return;
+                }
+
+                List<T> children = visitor.visit(folder);
+                if (children != null && !cancellation.isCancelled()) {
+                    for (T child : children) {
+                        submit(executor, child, visitor);
+                    }
+                }
+            } catch (RuntimeException e) {
+                Log_OC.e(TAG, "Error while visiting folder", e);
+            } finally {
+                finished();
+            }
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (priority != other.priority) {
+                return priority ? -1 : 1;
+            }
+            return Long.compare(order, other.order);
+        }
+    }
+}
@@ -113,6 +113,7 @@ public class SettingsActivity extends ThemedPreferenceActivity
 
     public final static String PREFERENCE_USE_FINGERPRINT = "use_fingerprint";
     public static final String PREFERENCE_SHOW_MEDIA_SCAN_NOTIFICATIONS = "show_media_scan_notifications";
+    private static final String PREFERENCE_AUTO_UPLOAD_SAMPLED_CHECKSUM = "auto_upload_sampled_checksum";
 
     private static final int ACTION_REQUEST_PASSCODE = 5;
     private static final int ACTION_CONFIRM_PASSCODE = 6;
@@ -632,6 +633,14 @@ public class SettingsActivity extends ThemedPreferenceActivity
                 return true;
             });
 
+            final SwitchPreference pSampledChecksum =
+                (SwitchPreference) findPreference(PREFERENCE_AUTO_UPLOAD_SAMPLED_CHECKSUM);
+            pSampledChecksum.setChecked(preferences.isAutoUploadSampledChecksumEnabled());
+            pSampledChecksum.setOnPreferenceClickListener(preference -> {
+                preferences.setAutoUploadSampledChecksumEnabled(pSampledChecksum.isChecked());
+                return true;
+            });
+
             Preference pSyncedFolder = findPreference("synced_folders_configure_folders");
             if (pSyncedFolder != null) {
                 if (getResources().getBoolean(R.bool.syncedFolder_light)) {
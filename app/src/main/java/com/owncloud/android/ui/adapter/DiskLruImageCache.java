@@ -24,19 +24,39 @@ package com.owncloud.android.ui.adapter;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.CompressFormat;
 import android.graphics.BitmapFactory;
+import android.os.Process;
 
 import com.jakewharton.disklrucache.DiskLruCache;
 import com.owncloud.android.BuildConfig;
 import com.owncloud.android.lib.common.utils.Log_OC;
 import com.owncloud.android.utils.BitmapUtils;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Disk cache of compressed images.
+ *
+ * Images are written behind: {@link #put(String, Bitmap)} only queues the bitmap, which is compressed and written
+ * on a low priority thread. Until then it is served from the queue. Repeated puts of a key before it is written
+ * replace the queued bitmap, so that it is written once. The journal is flushed once per batch of writes instead of
+ * once per image.
+ */
 public class DiskLruImageCache {
 
     private DiskLruCache mDiskCache;
@@ -46,14 +66,45 @@ public class DiskLruImageCache {
     private static final int VALUE_COUNT = 1;
     private static final int IO_BUFFER_SIZE = 8 * 1024;
     private static final String CACHE_TEST_DISK = "cache_test_DISK_";
+    private static final int MAX_WRITES_PER_FLUSH = 32;
 
     private static final String TAG = DiskLruImageCache.class.getSimpleName();
 
+    private final Executor writeExecutor;
+    private final Object writeLock = new Object();
+    /** bitmaps to be written by valid key, guarded by itself */
+    private final Map<String, Bitmap> pendingWrites = new LinkedHashMap<>();
+    private boolean writeScheduled;
+    private final AtomicLong putCount = new AtomicLong();
+    private final AtomicLong writeCount = new AtomicLong();
+    private final AtomicLong journalFlushCount = new AtomicLong();
+
     public DiskLruImageCache(File diskCacheDir, int diskCacheSize, CompressFormat compressFormat, int quality)
         throws IOException {
+        this(diskCacheDir, diskCacheSize, compressFormat, quality, createWriteExecutor());
+    }
+
+    @VisibleForTesting
+    DiskLruImageCache(File diskCacheDir,
+                      int diskCacheSize,
+                      CompressFormat compressFormat,
+                      int quality,
+                      Executor writeExecutor) throws IOException {
         mDiskCache = DiskLruCache.open(diskCacheDir, CACHE_VERSION, VALUE_COUNT, diskCacheSize);
         mCompressFormat = compressFormat;
         mCompressQuality = quality;
+        this.writeExecutor = writeExecutor;
+    }
+
+    private static Executor createWriteExecutor() {
+        return Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND + Process.THREAD_PRIORITY_LESS_FAVORABLE);
+                runnable.run();
+            }, TAG);
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     private boolean writeBitmapToFile(Bitmap bitmap, DiskLruCache.Editor editor) throws IOException {
@@ -68,10 +119,68 @@ public class DiskLruImageCache {
         }
     }
 
+    /**
+     * Queues the bitmap to be written in background. The bitmap must not be changed afterwards.
+     */
     public void put(String key, Bitmap data) {
+        String validKey = convertToValidKey(key);
+        putCount.incrementAndGet();
+
+        synchronized (pendingWrites) {
+            pendingWrites.put(validKey, data);
+            if (writeScheduled) {
+                return;
+            }
+            writeScheduled = true;
+        }
+        writeExecutor.execute(this::writePendingBitmaps);
+    }
+
+    /**
+     * Writes queued bitmaps until the queue is empty, flushing the journal after every batch.
+     */
+    private void writePendingBitmaps() {
+        int unflushedWrites = 0;
+        while (true) {
+            synchronized (writeLock) {
+                String validKey;
+                Bitmap bitmap;
+                synchronized (pendingWrites) {
+                    Iterator<Map.Entry<String, Bitmap>> iterator = pendingWrites.entrySet().iterator();
+                    if (!iterator.hasNext()) {
+                        writeScheduled = false;
+                        break;
+                    }
+                    Map.Entry<String, Bitmap> next = iterator.next();
+                    validKey = next.getKey();
+                    bitmap = next.getValue();
+                }
 
+                // stays queued while it is written, so that it can still be read
+                write(validKey, bitmap);
+                writeCount.incrementAndGet();
+
+                synchronized (pendingWrites) {
+                    // a bitmap put meanwhile is written again
+                    if (pendingWrites.get(validKey) == bitmap) {
+                        pendingWrites.remove(validKey);
+                    }
+                }
+            }
+
+            if (++unflushedWrites == MAX_WRITES_PER_FLUSH) {
+                flushJournal();
+                unflushedWrites = 0;
+            }
+        }
+
+        if (unflushedWrites > 0) {
+            flushJournal();
+        }
+    }
+
+    private void write(String validKey, Bitmap data) {
         DiskLruCache.Editor editor = null;
-        String validKey = convertToValidKey(key);
         try {
             editor = mDiskCache.edit(validKey);
             if (editor == null) {
@@ -79,7 +188,6 @@ public class DiskLruImageCache {
             }
 
             if (writeBitmapToFile(data, editor)) {
-                mDiskCache.flush();
                 editor.commit();
                 if (BuildConfig.DEBUG) {
                     Log_OC.d(CACHE_TEST_DISK, "image put on disk cache " + validKey);
@@ -90,7 +198,8 @@ public class DiskLruImageCache {
                     Log_OC.d(CACHE_TEST_DISK, "ERROR on: image put on disk cache " + validKey);
                 }
             }
-        } catch (IOException e) {
+        } catch (IOException | IllegalStateException e) {
+            // cache is closed after clearing it
             if (BuildConfig.DEBUG) {
                 Log_OC.d(CACHE_TEST_DISK, "ERROR on: image put on disk cache " + validKey);
             }
@@ -98,47 +207,23 @@ public class DiskLruImageCache {
                 if (editor != null) {
                     editor.abort();
                 }
-            } catch (IOException ex) {
+            } catch (IOException | IllegalStateException ex) {
                 Log_OC.d(TAG, "Error aborting editor", ex);
             }
         }
     }
 
     public Bitmap getScaledBitmap(String key, int width, int height) {
-        Bitmap bitmap = null;
         String validKey = convertToValidKey(key);
+        Bitmap bitmap = getPendingBitmap(validKey);
+        if (bitmap != null) {
+            return bitmap;
+        }
 
-        try (DiskLruCache.Snapshot snapshot = mDiskCache.get(validKey)) {
-            if (snapshot == null) {
-                return null;
-            }
-
-            InputStream inputStream = snapshot.getInputStream(0);
-            if (inputStream != null) {
-                // First decode with inJustDecodeBounds=true to check dimensions
-                final BitmapFactory.Options options = new BitmapFactory.Options();
-                try (BufferedInputStream buffIn = new BufferedInputStream(inputStream, IO_BUFFER_SIZE)) {
-                    options.inScaled = true;
-                    options.inPurgeable = true;
-                    options.inPreferQualityOverSpeed = false;
-                    options.inMutable = false;
-                    options.inJustDecodeBounds = true;
-
-                    BitmapFactory.decodeStream(buffIn, null, options);
-                }
-
-                try (DiskLruCache.Snapshot snapshot2 = mDiskCache.get(validKey)) {
-                    inputStream = snapshot2.getInputStream(0);
-
-                    try (BufferedInputStream buffIn = new BufferedInputStream(inputStream, IO_BUFFER_SIZE)) {
-                        // Calculate inSampleSize
-                        options.inSampleSize = BitmapUtils.calculateSampleFactor(options, width, height);
-
-                        // Decode bitmap with inSampleSize set
-                        options.inJustDecodeBounds = false;
-                        bitmap = BitmapFactory.decodeStream(buffIn, null, options);
-                    }
-                }
+        try {
+            byte[] data = readData(validKey);
+            if (data != null) {
+                bitmap = decode(data, width, height);
             }
         } catch (Exception e) {
             Log_OC.e(TAG, e.getMessage(), e);
@@ -152,42 +237,19 @@ public class DiskLruImageCache {
     }
 
     public Bitmap getBitmap(String key) {
-        Bitmap bitmap = null;
-        DiskLruCache.Snapshot snapshot = null;
-        InputStream in = null;
-        BufferedInputStream buffIn = null;
         String validKey = convertToValidKey(key);
+        Bitmap bitmap = getPendingBitmap(validKey);
+        if (bitmap != null) {
+            return bitmap;
+        }
 
         try {
-            snapshot = mDiskCache.get(validKey);
-            if (snapshot == null) {
-                return null;
-            }
-            in = snapshot.getInputStream(0);
-            if (in != null) {
-                buffIn = new BufferedInputStream(in, IO_BUFFER_SIZE);
-                bitmap = BitmapFactory.decodeStream(buffIn);
+            byte[] data = readData(validKey);
+            if (data != null) {
+                bitmap = decode(data, 0, 0);
             }
         } catch (IOException e) {
             Log_OC.e(TAG, e.getMessage(), e);
-        } finally {
-            if (snapshot != null) {
-                snapshot.close();
-            }
-            if (buffIn != null) {
-                try {
-                    buffIn.close();
-                } catch (IOException e) {
-                    Log_OC.e(TAG, e.getMessage(), e);
-                }
-            }
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    Log_OC.e(TAG, e.getMessage(), e);
-                }
-            }
         }
 
         if (BuildConfig.DEBUG) {
@@ -197,11 +259,56 @@ public class DiskLruImageCache {
         return bitmap;
     }
 
+    /**
+     * Reads the compressed image once, so that bounds and pixels can be decoded without opening the entry twice.
+     *
+     * @return content of the entry, null if there is none
+     */
+    @Nullable
+    private byte[] readData(String validKey) throws IOException {
+        try (DiskLruCache.Snapshot snapshot = mDiskCache.get(validKey)) {
+            if (snapshot == null) {
+                return null;
+            }
+
+            try (InputStream inputStream = snapshot.getInputStream(0)) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(IO_BUFFER_SIZE);
+                byte[] buffer = new byte[IO_BUFFER_SIZE];
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                return out.toByteArray();
+            }
+        }
+    }
+
+    /**
+     * @param width  requested width, 0 to decode in full size
+     * @param height requested height, 0 to decode in full size
+     */
+    private Bitmap decode(byte[] data, int width, int height) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = true;
+
+        if (width > 0 && height > 0) {
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = BitmapUtils.calculateSampleFactor(options, width, height);
+        }
+
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
     public boolean containsKey(String key) {
 
         boolean contained = false;
         DiskLruCache.Snapshot snapshot = null;
         String validKey = convertToValidKey(key);
+        if (getPendingBitmap(validKey) != null) {
+            return true;
+        }
         try {
             snapshot = mDiskCache.get(validKey);
             contained = snapshot != null;
@@ -221,10 +328,63 @@ public class DiskLruImageCache {
         if (BuildConfig.DEBUG) {
             Log_OC.d(CACHE_TEST_DISK, "disk cache CLEARED");
         }
+        synchronized (writeLock) {
+            synchronized (pendingWrites) {
+                pendingWrites.clear();
+            }
+            try {
+                mDiskCache.delete();
+            } catch (IOException e) {
+                Log_OC.d(TAG, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Flushes the journal in background, after the bitmaps queued so far are written.
+     */
+    public void flush() {
+        writeExecutor.execute(this::flushJournal);
+    }
+
+    private void flushJournal() {
         try {
-            mDiskCache.delete();
-        } catch (IOException e) {
-            Log_OC.d(TAG, e.getMessage(), e);
+            mDiskCache.flush();
+            journalFlushCount.incrementAndGet();
+        } catch (IOException | IllegalStateException e) {
+            // cache is closed after clearing it
+            Log_OC.d(TAG, "Error flushing journal", e);
+        }
+    }
+
+    @Nullable
+    private Bitmap getPendingBitmap(String validKey) {
+        synchronized (pendingWrites) {
+            return pendingWrites.get(validKey);
+        }
+    }
+
+    /**
+     * @return number of bitmaps put into the cache
+     */
+    public long getPutCount() {
+        return putCount.get();
+    }
+
+    /**
+     * @return number of bitmaps written to disk, lower than {@link #getPutCount()} if repeated puts were merged
+     */
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    public long getJournalFlushCount() {
+        return journalFlushCount.get();
+    }
+
+    public int getPendingCount() {
+        synchronized (pendingWrites) {
+            return pendingWrites.size();
         }
     }
 
@@ -243,11 +403,27 @@ public class DiskLruImageCache {
      */
     public void removeKey(String key) {
         String validKey = convertToValidKey(key);
-        try {
-            mDiskCache.remove(validKey);
-            Log_OC.d(TAG, "removeKey from cache: " + validKey);
-        } catch (IOException e) {
-            Log_OC.d(TAG, e.getMessage(), e);
+        synchronized (writeLock) {
+            synchronized (pendingWrites) {
+                pendingWrites.remove(validKey);
+            }
+            try {
+                mDiskCache.remove(validKey);
+                Log_OC.d(TAG, "removeKey from cache: " + validKey);
+            } catch (IOException e) {
+                Log_OC.d(TAG, e.getMessage(), e);
+            }
         }
     }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                             "puts: %d, written: %d, pending: %d, journal flushes: %d",
+                             getPutCount(),
+                             getWriteCount(),
+                             getPendingCount(),
+                             getJournalFlushCount());
+    }
 }
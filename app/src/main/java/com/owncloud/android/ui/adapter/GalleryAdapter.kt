@@ -47,13 +47,13 @@ import com.owncloud.android.ui.fragment.SearchType
 import com.owncloud.android.ui.interfaces.OCFileListFragmentInterface
 import com.owncloud.android.utils.DisplayUtils
 import com.owncloud.android.utils.FileSortOrder
-import com.owncloud.android.utils.FileStorageUtils
-import com.owncloud.android.utils.MimeTypeUtil
 import com.owncloud.android.utils.theme.ThemeColorUtils
 import com.owncloud.android.utils.theme.ThemeDrawableUtils
 import me.zhanghai.android.fastscroll.PopupTextProvider
 import java.util.Calendar
 import java.util.Date
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
 
 @Suppress("LongParameterList")
 class GalleryAdapter(
@@ -68,6 +68,12 @@ class GalleryAdapter(
     var files: List<GalleryItems> = mutableListOf()
     private val ocFileListDelegate: OCFileListDelegate
     private var storageManager: FileDataStorageManager
+    private var shownRemotePath: String? = null
+    private var shownMediaState: GalleryFragmentBottomSheetDialog.MediaState? = null
+    private var hasMorePages = false
+    private var loadingPage = false
+    private var generation = 0
+    private val mainHandler = Handler(Looper.getMainLooper())
 
     init {
         storageManager = transferServiceGetter.storageManager
@@ -124,6 +130,13 @@ class GalleryAdapter(
         }
     }
 
+    override fun onViewRecycled(holder: SectionedViewHolder) {
+        super.onViewRecycled(holder)
+        if (holder is GalleryItemViewHolder) {
+            ocFileListDelegate.cancelThumbnail(holder)
+        }
+    }
+
     override fun getItemCount(section: Int): Int {
         return files[section].files.size
     }
@@ -161,58 +174,116 @@ class GalleryAdapter(
         TODO("Not yet implemented")
     }
 
+    /**
+     * Shows the newest stored media files, as many as shown before but at least one page
+     */
     @SuppressLint("NotifyDataSetChanged")
     fun showAllGalleryItems(
         remotePath: String,
         mediaState: GalleryFragmentBottomSheetDialog.MediaState,
         photoFragment: GalleryFragment
     ) {
+        val shownCount = if (remotePath == shownRemotePath && mediaState == shownMediaState) getFilesCount() else 0
+        val limit = maxOf(PAGE_SIZE, shownCount)
+        val items = loadPage(remotePath, mediaState, null, limit)
+
+        shownRemotePath = remotePath
+        shownMediaState = mediaState
+        hasMorePages = items.size == limit
 
-        val items = storageManager.allGalleryItems
+        if (items.isEmpty()) {
+            photoFragment.setEmptyListMessage(SearchType.GALLERY_SEARCH)
+        }
 
-        val filteredList = items.filter { it != null && it.remotePath.startsWith(remotePath) }
+        files = appendToSections(emptyList(), items)
+        generation++
+        loadingPage = false
 
-        setMediaFilter(
-            filteredList,
-            mediaState,
-            photoFragment
-        )
+        mainHandler.post { notifyDataSetChanged() }
     }
 
-    // Set Image/Video List According to Selection of Hide/Show Image/Video
-    @SuppressLint("NotifyDataSetChanged")
-    private fun setMediaFilter(
-        items: List<OCFile>,
-        mediaState: GalleryFragmentBottomSheetDialog.MediaState,
-        photoFragment: GalleryFragment
-    ) {
+    /**
+     * Loads the next page of stored media files in the background and appends it on the main thread. Must be called
+     * on the main thread.
+     *
+     * @param onNoMoreItems called on the main thread if the page turned out to be empty
+     * @return false if all stored files are shown already
+     */
+    fun showNextGalleryPage(onNoMoreItems: Runnable): Boolean {
+        val remotePath = shownRemotePath
+        val mediaState = shownMediaState
+        val lastFile = files.lastOrNull()?.files?.lastOrNull()
+        if (!hasMorePages || remotePath == null || mediaState == null || lastFile == null) {
+            return false
+        }
+        if (loadingPage) {
+            return true
+        }
 
-        val finalSortedList: List<OCFile> = when (mediaState) {
-            GalleryFragmentBottomSheetDialog.MediaState.MEDIA_STATE_PHOTOS_ONLY -> {
-                items.filter { MimeTypeUtil.isImage(it.mimeType) }.distinct()
-            }
-            GalleryFragmentBottomSheetDialog.MediaState.MEDIA_STATE_VIDEOS_ONLY -> {
-                items.filter { MimeTypeUtil.isVideo(it.mimeType) }.distinct()
-            }
-            else -> items
+        loadingPage = true
+        val pageGeneration = generation
+        pageLoader.execute {
+            val items = loadPage(remotePath, mediaState, lastFile, PAGE_SIZE)
+            mainHandler.post { onPageLoaded(pageGeneration, items, onNoMoreItems) }
         }
+        return true
+    }
 
-        if (finalSortedList.isEmpty()) {
-            photoFragment.setEmptyListMessage(SearchType.GALLERY_SEARCH)
+    @SuppressLint("NotifyDataSetChanged")
+    private fun onPageLoaded(pageGeneration: Int, items: List<OCFile>, onNoMoreItems: Runnable) {
+        if (pageGeneration != generation) {
+            // shown files were replaced while loading
+            return
         }
 
-        files = finalSortedList
-            .groupBy { firstOfMonth(it.modificationTimestamp) }
-            .map { GalleryItems(it.key, FileStorageUtils.sortOcFolderDescDateModifiedWithoutFavoritesFirst(it.value)) }
-            .sortedBy { it.date }.reversed()
+        loadingPage = false
+        hasMorePages = items.size == PAGE_SIZE
+        if (items.isEmpty()) {
+            onNoMoreItems.run()
+            return
+        }
+
+        files = appendToSections(files, items)
+        notifyDataSetChanged()
+    }
 
-        Handler(Looper.getMainLooper()).post { notifyDataSetChanged() }
+    private fun loadPage(
+        remotePath: String,
+        mediaState: GalleryFragmentBottomSheetDialog.MediaState,
+        after: OCFile?,
+        limit: Int
+    ): List<OCFile> {
+        val images = mediaState != GalleryFragmentBottomSheetDialog.MediaState.MEDIA_STATE_VIDEOS_ONLY
+        val videos = mediaState != GalleryFragmentBottomSheetDialog.MediaState.MEDIA_STATE_PHOTOS_ONLY
+        return storageManager.getGalleryItemsPage(remotePath, images, videos, after, limit)
+    }
+
+    /**
+     * Groups files, sorted newest first, by month and appends them to the sections
+     */
+    private fun appendToSections(sections: List<GalleryItems>, items: List<OCFile>): List<GalleryItems> {
+        val newSections = items
+            .groupBy { firstOfMonth(it.modificationTimestamp) }
+            .map { GalleryItems(it.key, it.value) }
+
+        val lastSection = sections.lastOrNull()
+        val firstNewSection = newSections.firstOrNull()
+        return if (lastSection != null && firstNewSection != null && lastSection.date == firstNewSection.date) {
+            sections.dropLast(1) +
+                GalleryItems(lastSection.date, lastSection.files + firstNewSection.files) +
+                newSections.drop(1)
+        } else {
+            sections + newSections
+        }
     }
 
     @SuppressLint("NotifyDataSetChanged")
     fun clear() {
         files = emptyList()
-        Handler(Looper.getMainLooper()).post { notifyDataSetChanged() }
+        hasMorePages = false
+        generation++
+        loadingPage = false
+        mainHandler.post { notifyDataSetChanged() }
     }
 
     private fun firstOfMonth(timestamp: Long): Long {
@@ -306,4 +377,13 @@ class GalleryAdapter(
     fun addFiles(items: List<GalleryItems>) {
         files = items
     }
+
+    companion object {
+        const val PAGE_SIZE = 300
+
+        /**
+         * single thread, so that pages are appended in the order they were requested
+         */
+        private val pageLoader: ExecutorService by lazy { Executors.newSingleThreadExecutor() }
+    }
 }
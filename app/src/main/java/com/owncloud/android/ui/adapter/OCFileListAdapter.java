@@ -43,6 +43,7 @@ import android.widget.ImageView;
 
 import com.elyeproj.loaderviewlibrary.LoaderImageView;
 import com.nextcloud.client.account.User;
+import com.nextcloud.client.core.AsyncRunner;
 import com.nextcloud.client.preferences.AppPreferences;
 import com.owncloud.android.MainApp;
 import com.owncloud.android.R;
@@ -72,6 +73,7 @@ import com.owncloud.android.ui.fragment.SearchType;
 import com.owncloud.android.ui.interfaces.OCFileListFragmentInterface;
 import com.owncloud.android.ui.preview.PreviewTextFragment;
 import com.owncloud.android.utils.DisplayUtils;
+import com.owncloud.android.utils.EncryptionUtils;
 import com.owncloud.android.utils.FileSortOrder;
 import com.owncloud.android.utils.FileStorageUtils;
 import com.owncloud.android.utils.MimeTypeUtil;
@@ -86,6 +88,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
@@ -93,6 +96,8 @@ import java.util.Set;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import me.zhanghai.android.fastscroll.PopupTextProvider;
@@ -126,6 +131,11 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
     private static final int VIEWTYPE_IMAGE = 2;
     private static final int VIEWTYPE_HEADER = 3;
 
+    /**
+     * Rebinds an item showing the same file, e.g. to update its sync state, without animating the change
+     */
+    private static final Object PAYLOAD_REFRESH = new Object();
+
     private boolean onlyOnDevice;
     private final OCFileListDelegate ocFileListDelegate;
     private FileSortOrder sortOrder;
@@ -135,6 +145,7 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
     private final ThemeDrawableUtils themeDrawableUtils;
     private final ThemeAvatarUtils themeAvatarUtils;
     private SearchType searchType;
+    private final OCFileListLoader loader;
 
     public OCFileListAdapter(
         Activity activity,
@@ -146,7 +157,8 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
         boolean gridView,
         ThemeColorUtils themeColorUtils,
         ThemeDrawableUtils themeDrawableUtils,
-        ThemeAvatarUtils themeAvatarUtils
+        ThemeAvatarUtils themeAvatarUtils,
+        AsyncRunner asyncRunner
                             ) {
         this.ocFileListFragmentInterface = ocFileListFragmentInterface;
         this.activity = activity;
@@ -185,6 +197,8 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
                                                     themeColorUtils,
                                                     themeDrawableUtils);
 
+        loader = new OCFileListLoader(asyncRunner, () -> mFiles);
+
         // initialise thumbnails cache on background thread
         new ThumbnailsCacheManager.InitDiskCacheTask().execute();
     }
@@ -358,6 +372,14 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
         }
     }
 
+    @Override
+    public void onViewRecycled(@NonNull RecyclerView.ViewHolder holder) {
+        super.onViewRecycled(holder);
+        if (holder instanceof ListGridImageViewHolder) {
+            ocFileListDelegate.cancelThumbnail((ListGridImageViewHolder) holder);
+        }
+    }
+
     @Override
     @SuppressFBWarnings("ITC_INHERITANCE_TYPE_CHECKING")
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
@@ -605,19 +627,32 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
         }
     }
 
+    @Override
+    public void swapDirectory(
+        @NonNull User account,
+        @NonNull OCFile directory,
+        @NonNull FileDataStorageManager updatedStorageManager,
+        boolean onlyOnDevice, @NonNull String limitToMimeType
+                             ) {
+        swapDirectory(account, directory, updatedStorageManager, onlyOnDevice, limitToMimeType, null);
+    }
+
     /**
-     * Change the adapted directory for a new one
+     * Change the adapted directory for a new one. Its content is loaded, filtered and sorted in background and shown
+     * once ready; content of directories swapped in before and still being loaded is not shown anymore.
      *
      * @param directory             New folder to adapt. Can be NULL, meaning "no content to adapt".
      * @param updatedStorageManager Optional updated storage manager; used to replace
      * @param limitToMimeType       show only files of this mimeType
+     * @param onSwapped             called once the content of the new directory is shown
      */
-    @SuppressLint("NotifyDataSetChanged")
     public void swapDirectory(
         @NonNull User account,
         @NonNull OCFile directory,
         @NonNull FileDataStorageManager updatedStorageManager,
-        boolean onlyOnDevice, @NonNull String limitToMimeType
+        boolean onlyOnDevice,
+        @NonNull String limitToMimeType,
+        @Nullable Runnable onSwapped
                              ) {
         this.onlyOnDevice = onlyOnDevice;
 
@@ -626,29 +661,97 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
             ocFileListDelegate.setShowShareAvatar(CapabilityUtils.getCapability(account, activity).getVersion().isShareesOnDavSupported());
             this.user = account;
         }
-        if (mStorageManager != null) {
-            mFiles = mStorageManager.getFolderContent(directory, onlyOnDevice);
 
-            if (!preferences.isShowHiddenFilesEnabled()) {
-                mFiles = filterHiddenFiles(mFiles);
+        final FileDataStorageManager storageManager = mStorageManager;
+        final boolean showHiddenFiles = preferences.isShowHiddenFilesEnabled();
+        final FileSortOrder newSortOrder = preferences.getSortOrderByFolder(directory);
+
+        loader.load(currentFiles -> {
+            List<OCFile> files = storageManager.getFolderContent(directory, onlyOnDevice);
+
+            if (!showHiddenFiles) {
+                files = filterHiddenFiles(files);
             }
             if (!limitToMimeType.isEmpty()) {
-                mFiles = filterByMimeType(mFiles, limitToMimeType);
+                files = filterByMimeType(files, limitToMimeType);
             }
-            sortOrder = preferences.getSortOrderByFolder(directory);
-            mFiles = sortOrder.sortCloudFiles(mFiles);
-            mFilesAll.clear();
-            mFilesAll.addAll(mFiles);
+            return newSortOrder.sortCloudFiles(files);
+        }, (files, diff) -> {
+            sortOrder = newSortOrder;
+            searchType = null;
+            publish(files, diff, directory);
+
+            if (onSwapped != null) {
+                onSwapped.run();
+            }
+        });
+    }
 
+    /**
+     * Shows loaded files, notifying only the changes if they are known
+     *
+     * @param directory directory of the files, null if they are not the content of a directory
+     */
+    @SuppressLint("NotifyDataSetChanged")
+    private void publish(List<OCFile> files, @Nullable DiffUtil.DiffResult diff, @Nullable OCFile directory) {
+        boolean refresh = directory != null && directory.equals(currentDirectory);
+        boolean showedHeader = shouldShowHeader();
+        if (directory != null) {
             currentDirectory = directory;
+        }
+
+        mFiles = new ArrayList<>(files);
+        mFilesAll.clear();
+        mFilesAll.addAll(mFiles);
+
+        if (diff == null || showedHeader != shouldShowHeader()) {
+            notifyDataSetChanged();
+            return;
+        }
+
+        int offset = showedHeader ? 1 : 0;
+        diff.dispatchUpdatesTo(new OffsetListUpdateCallback(offset));
+
+        if (refresh) {
+            // sync state of files is not part of the diff
+            notifyItemRangeChanged(0, getItemCount(), PAYLOAD_REFRESH);
         } else {
-            mFiles.clear();
-            mFilesAll.clear();
+            if (showedHeader) {
+                notifyItemChanged(0);
+            }
+            notifyItemChanged(getItemCount() - 1); // footer
         }
+    }
 
-        searchType = null;
+    /**
+     * Moves the changes of the files behind the header
+     */
+    private class OffsetListUpdateCallback implements ListUpdateCallback {
+        private final int offset;
 
-        notifyDataSetChanged();
+        OffsetListUpdateCallback(int offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            notifyItemRangeInserted(position + offset, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            notifyItemRangeRemoved(position + offset, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            notifyItemMoved(fromPosition + offset, toPosition + offset);
+        }
+
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            notifyItemRangeChanged(position + offset, count, payload);
+        }
     }
 
     public void setData(List<Object> objects,
@@ -669,7 +772,6 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
         }
 
         if (clear) {
-            mFiles.clear();
             resetLastTimestamp();
             preferences.setPhotoSearchTimestamp(0);
 
@@ -691,34 +793,48 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
             }
         }
 
+        List<OCFile> parsedFiles = new ArrayList<>();
+
         // early exit
         if (objects.size() > 0 && mStorageManager != null) {
             if (searchType == SearchType.SHARED_FILTER) {
-                parseShares(objects);
+                parsedFiles = parseShares(objects);
             } else {
                 if (searchType != SearchType.GALLERY_SEARCH) {
-                    parseVirtuals(objects, searchType);
+                    parsedFiles = parseVirtuals(objects, searchType);
                 }
             }
         }
 
-        if (searchType == SearchType.GALLERY_SEARCH ||
-            searchType == SearchType.RECENTLY_MODIFIED_SEARCH) {
-            mFiles = FileStorageUtils.sortOcFolderDescDateModifiedWithoutFavoritesFirst(mFiles);
-        } else if (searchType != SearchType.SHARED_FILTER) {
-            sortOrder = preferences.getSortOrderByFolder(folder);
-            mFiles = sortOrder.sortCloudFiles(mFiles);
-        }
+        final List<OCFile> newFiles = parsedFiles;
+        final FileSortOrder newSortOrder = searchType == SearchType.GALLERY_SEARCH ||
+            searchType == SearchType.RECENTLY_MODIFIED_SEARCH ||
+            searchType == SearchType.SHARED_FILTER ? null : preferences.getSortOrderByFolder(folder);
 
-        this.searchType = searchType;
-
-        mFilesAll.clear();
-        mFilesAll.addAll(mFiles);
+        new Handler(Looper.getMainLooper()).post(() -> loader.load(currentFiles -> {
+            List<OCFile> files = new ArrayList<>();
+            if (!clear) {
+                files.addAll(currentFiles);
+            }
+            files.addAll(newFiles);
 
-        new Handler(Looper.getMainLooper()).post(this::notifyDataSetChanged);
+            if (searchType == SearchType.GALLERY_SEARCH ||
+                searchType == SearchType.RECENTLY_MODIFIED_SEARCH) {
+                return FileStorageUtils.sortOcFolderDescDateModifiedWithoutFavoritesFirst(files);
+            } else if (newSortOrder != null) {
+                return newSortOrder.sortCloudFiles(files);
+            }
+            return files;
+        }, (files, diff) -> {
+            if (newSortOrder != null) {
+                sortOrder = newSortOrder;
+            }
+            this.searchType = searchType;
+            publish(files, diff, null);
+        }));
     }
 
-    private void parseShares(List<Object> objects) {
+    private List<OCFile> parseShares(List<Object> objects) {
         List<OCShare> shares = new ArrayList<>();
 
         for (Object shareObject : objects) {
@@ -730,11 +846,12 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
         }
 
         List<OCFile> files = OCShareToOCFileConverter.buildOCFilesFromShares(shares);
-        mFiles.addAll(files);
         mStorageManager.saveShares(shares);
+        return files;
     }
 
-    private void parseVirtuals(List<Object> objects, SearchType searchType) {
+    private List<OCFile> parseVirtuals(List<Object> objects, SearchType searchType) {
+        List<OCFile> files = new ArrayList<>();
         VirtualFolderType type;
         boolean onlyMedia = false;
 
@@ -772,19 +889,20 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
 
                 OCFile parentFolder = mStorageManager.getFileById(ocFile.getParentId());
                 if (parentFolder != null && (ocFile.isEncrypted() || parentFolder.isEncrypted())) {
-                    DecryptedFolderMetadata metadata = RefreshFolderOperation.getDecryptedFolderMetadata(
-                        true,
+                    // etag of the parent folder in the database may be outdated, so is metadata cached for it
+                    DecryptedFolderMetadata metadata = EncryptionUtils.downloadFolderMetadata(
                         parentFolder,
+                        ocFile.getFileName(),
                         OwnCloudClientFactory.createOwnCloudClient(user.toPlatformAccount(), activity),
-                        user,
-                        activity);
+                        activity,
+                        user);
 
                     if (metadata == null) {
                         throw new IllegalStateException("metadata is null!");
                     }
 
                     // update ocFile
-                    RefreshFolderOperation.updateFileNameForEncryptedFile(mStorageManager, metadata, ocFile);
+                    RefreshFolderOperation.updateFileNameForEncryptedFile(metadata, ocFile, parentFolder);
                     ocFile = mStorageManager.saveFileWithParent(ocFile, activity);
                 }
 
@@ -804,7 +922,7 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
                 }
 
                 if (!onlyMedia || MimeTypeUtil.isImage(ocFile) || MimeTypeUtil.isVideo(ocFile)) {
-                    mFiles.add(ocFile);
+                    files.add(ocFile);
                 }
 
                 ContentValues cv = new ContentValues();
@@ -825,28 +943,27 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
 
         preferences.setPhotoSearchTimestamp(System.currentTimeMillis());
         mStorageManager.saveVirtuals(contentValues);
+        return files;
     }
 
     public void showVirtuals(VirtualFolderType type, boolean onlyImages, FileDataStorageManager storageManager) {
-        mFiles = storageManager.getVirtualFolderContent(type, onlyImages);
-
-        if (VirtualFolderType.GALLERY == type) {
-            mFiles = FileStorageUtils.sortOcFolderDescDateModifiedWithoutFavoritesFirst(mFiles);
-        }
+        new Handler(Looper.getMainLooper()).post(() -> loader.load(currentFiles -> {
+            List<OCFile> files = storageManager.getVirtualFolderContent(type, onlyImages);
 
-        mFilesAll.clear();
-        mFilesAll.addAll(mFiles);
-
-        new Handler(Looper.getMainLooper()).post(this::notifyDataSetChanged);
+            if (VirtualFolderType.GALLERY == type) {
+                files = FileStorageUtils.sortOcFolderDescDateModifiedWithoutFavoritesFirst(files);
+            }
+            return files;
+        }, (files, diff) -> publish(files, diff, null)));
     }
 
 
     public void setSortOrder(@Nullable OCFile folder, FileSortOrder sortOrder) {
         preferences.setSortOrder(folder, sortOrder);
-        mFiles = sortOrder.sortCloudFiles(mFiles);
-        notifyDataSetChanged();
-
-        this.sortOrder = sortOrder;
+        loader.load(currentFiles -> sortOrder.sortCloudFiles(new ArrayList<>(currentFiles)), (files, diff) -> {
+            this.sortOrder = sortOrder;
+            publish(files, diff, null);
+        });
     }
 
     public Set<OCFile> getCheckedItems() {
@@ -907,9 +1024,10 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
      */
     private List<OCFile> filterHiddenFiles(List<OCFile> files) {
         List<OCFile> ret = new ArrayList<>();
+        Set<OCFile> added = new HashSet<>();
 
         for (OCFile file : files) {
-            if (!file.isHidden() && !ret.contains(file)) {
+            if (!file.isHidden() && added.add(file)) {
                 ret.add(file);
             }
         }
@@ -28,8 +28,7 @@ import com.nextcloud.client.preferences.AppPreferences
 import com.owncloud.android.R
 import com.owncloud.android.datamodel.FileDataStorageManager
 import com.owncloud.android.datamodel.OCFile
-import com.owncloud.android.datamodel.ThumbnailsCacheManager.ThumbnailGenerationTask
-import com.owncloud.android.lib.common.utils.Log_OC
+import com.owncloud.android.datamodel.ThumbnailsCacheManager
 import com.owncloud.android.ui.activity.ComponentsGetter
 import com.owncloud.android.ui.fragment.SearchType
 import com.owncloud.android.ui.interfaces.OCFileListFragmentInterface
@@ -55,7 +54,6 @@ class OCFileListDelegate(
     private val checkedFiles: MutableSet<OCFile> = HashSet()
     private var highlightedItem: OCFile? = null
     var isMultiSelect = false
-    private val asyncTasks: MutableList<ThumbnailGenerationTask> = ArrayList()
     fun setHighlightedItem(highlightedItem: OCFile?) {
         this.highlightedItem = highlightedItem
     }
@@ -101,7 +99,7 @@ class OCFileListDelegate(
             gridViewHolder.thumbnail,
             user,
             storageManager,
-            asyncTasks,
+            this,
             gridView,
             context,
             gridViewHolder.shimmerThumbnail,
@@ -243,21 +241,17 @@ class OCFileListDelegate(
     }
 
     fun cancelAllPendingTasks() {
-        for (task in asyncTasks) {
-            task.cancel(true)
-            if (task.getMethod != null) {
-                Log_OC.d(TAG, "cancel: abort get method directly")
-                task.getMethod.abort()
-            }
-        }
-        asyncTasks.clear()
+        ThumbnailsCacheManager.getThumbnailLoader().cancelAll(this)
     }
 
-    fun setShowShareAvatar(bool: Boolean) {
-        showShareAvatar = bool
+    /**
+     * Drops the pending thumbnail of a recycled view, so that visible thumbnails are loaded first
+     */
+    fun cancelThumbnail(gridViewHolder: ListGridImageViewHolder) {
+        ThumbnailsCacheManager.getThumbnailLoader().cancel(gridViewHolder.thumbnail)
     }
 
-    companion object {
-        private val TAG = OCFileListDelegate::class.java.simpleName
+    fun setShowShareAvatar(bool: Boolean) {
+        showShareAvatar = bool
     }
 }
@@ -0,0 +1,153 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.ui.adapter
+
+import androidx.recyclerview.widget.DiffUtil
+import com.nextcloud.client.core.AsyncRunner
+import com.nextcloud.client.core.Cancellable
+import com.owncloud.android.datamodel.OCFile
+import com.owncloud.android.lib.common.utils.Log_OC
+
+/**
+ * Loads, filters and sorts the files shown by [OCFileListAdapter] in background and computes the changes to the
+ * shown files with [DiffUtil], so that the adapter can publish minimal updates instead of reloading the whole list.
+ *
+ * Only the result of the latest request is delivered: a new request, like navigating to another folder, cancels
+ * the running one. Methods have to be called on the main thread, where results are delivered as well.
+ *
+ * @param currentFiles files shown by the adapter, changes are computed against them
+ */
+class OCFileListLoader(
+    private val asyncRunner: AsyncRunner,
+    private val currentFiles: () -> List<OCFile>
+) {
+
+    companion object {
+        private val TAG = OCFileListLoader::class.java.simpleName
+    }
+
+    fun interface Load {
+        /**
+         * Called on a background thread
+         *
+         * @param currentFiles copy of the files shown when the request started
+         */
+        fun load(currentFiles: List<OCFile>): List<OCFile>
+    }
+
+    fun interface OnLoaded {
+        /**
+         * @param files loaded files
+         * @param diff changes from the shown files to [files], null if the shown files were changed by someone else
+         * meanwhile, so that all files have to be reloaded
+         */
+        fun onLoaded(files: List<OCFile>, diff: DiffUtil.DiffResult?)
+    }
+
+    private class Result(val files: List<OCFile>, val diff: DiffUtil.DiffResult)
+
+    private var task: Cancellable? = null
+    private var generation = 0
+
+    val isLoading: Boolean
+        get() = task != null
+
+    fun load(load: Load, onLoaded: OnLoaded) {
+        cancel()
+
+        val requestGeneration = generation
+        val snapshot = ArrayList(currentFiles())
+        val start = System.currentTimeMillis()
+        task = asyncRunner.postQuickTask(
+            task = {
+                val files = load.load(snapshot)
+                Result(files, DiffUtil.calculateDiff(DiffCallback(snapshot, files)))
+            },
+            onResult = { result ->
+                // a result may have been posted to the main thread before the task was cancelled
+                if (requestGeneration == generation) {
+                    task = null
+                    Log_OC.d(TAG, "Loaded ${result.files.size} files in ${System.currentTimeMillis() - start} ms")
+                    val diff = if (hasSameItems(snapshot, currentFiles())) result.diff else null
+                    onLoaded.onLoaded(result.files, diff)
+                }
+            },
+            onError = { error ->
+                if (requestGeneration == generation) {
+                    task = null
+                    Log_OC.e(TAG, "Loading files failed", error)
+                }
+            }
+        )
+    }
+
+    /**
+     * Cancels the running request, its result is not delivered anymore
+     */
+    fun cancel() {
+        generation++
+        task?.cancel()
+        task = null
+    }
+
+    private fun hasSameItems(snapshot: List<OCFile>, files: List<OCFile>): Boolean {
+        if (snapshot.size != files.size) {
+            return false
+        }
+        for (i in snapshot.indices) {
+            if (snapshot[i] !== files[i]) {
+                return false
+            }
+        }
+        return true
+    }
+
+    private class DiffCallback(private val oldFiles: List<OCFile>, private val newFiles: List<OCFile>) :
+        DiffUtil.Callback() {
+
+        override fun getOldListSize(): Int = oldFiles.size
+
+        override fun getNewListSize(): Int = newFiles.size
+
+        override fun areItemsTheSame(oldItemPosition: Int, newItemPosition: Int): Boolean {
+            val oldFile = oldFiles[oldItemPosition]
+            val newFile = newFiles[newItemPosition]
+            return oldFile.fileId == newFile.fileId && oldFile.remotePath == newFile.remotePath
+        }
+
+        @Suppress("ComplexMethod")
+        override fun areContentsTheSame(oldItemPosition: Int, newItemPosition: Int): Boolean {
+            val oldFile = oldFiles[oldItemPosition]
+            val newFile = newFiles[newItemPosition]
+            return oldFile.fileName == newFile.fileName &&
+                oldFile.etag == newFile.etag &&
+                oldFile.fileLength == newFile.fileLength &&
+                oldFile.modificationTimestamp == newFile.modificationTimestamp &&
+                oldFile.storagePath == newFile.storagePath &&
+                oldFile.isFavorite == newFile.isFavorite &&
+                oldFile.isSharedViaLink == newFile.isSharedViaLink &&
+                oldFile.isSharedWithSharee == newFile.isSharedWithSharee &&
+                oldFile.isEncrypted == newFile.isEncrypted &&
+                oldFile.isLocked == newFile.isLocked &&
+                oldFile.isPreviewAvailable == newFile.isPreviewAvailable &&
+                oldFile.unreadCommentsCount == newFile.unreadCommentsCount &&
+                oldFile.etagInConflict == newFile.etagInConflict
+        }
+    }
+}
@@ -165,20 +165,11 @@ public class GallerySearchTask extends AsyncTask<Void, Void, GallerySearchTask.R
             }
         }
 
-        // add new files
-        for (OCFile file : filesToAdd) {
-            storageManager.saveFile(file);
-        }
-
-        // update existing files
-        for (OCFile file : filesToUpdate) {
-            storageManager.saveFile(file);
-        }
-
-        // existing files to remove
-        for (OCFile file : localFilesMap.values()) {
-            storageManager.removeFile(file, true, true);
-        }
+        // add new files, update existing ones and remove those not on the server anymore in one transaction
+        List<OCFile> filesToSave = new ArrayList<>(filesToAdd.size() + filesToUpdate.size());
+        filesToSave.addAll(filesToAdd);
+        filesToSave.addAll(filesToUpdate);
+        storageManager.saveGalleryItems(filesToSave, localFilesMap.values());
 
         Log_OC.d(this, "Gallery search result:" +
             " new: " + filesToAdd.size() +
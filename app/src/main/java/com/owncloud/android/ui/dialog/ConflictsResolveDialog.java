@@ -36,7 +36,6 @@ import com.owncloud.android.databinding.ConflictResolveDialogBinding;
 import com.owncloud.android.datamodel.FileDataStorageManager;
 import com.owncloud.android.datamodel.OCFile;
 import com.owncloud.android.datamodel.ThumbnailsCacheManager;
-import com.owncloud.android.lib.common.utils.Log_OC;
 import com.owncloud.android.ui.adapter.LocalFileListAdapter;
 import com.owncloud.android.utils.DisplayUtils;
 import com.owncloud.android.utils.theme.ThemeButtonUtils;
@@ -45,8 +44,6 @@ import com.owncloud.android.utils.theme.ThemeColorUtils;
 import com.owncloud.android.utils.theme.ThemeDrawableUtils;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
 
 import javax.inject.Inject;
 
@@ -70,7 +67,6 @@ public class ConflictsResolveDialog extends DialogFragment implements Injectable
     private File newFile;
     public OnConflictDecisionMadeListener listener;
     private User user;
-    private final List<ThumbnailsCacheManager.ThumbnailGenerationTask> asyncTasks = new ArrayList<>();
     private Button positiveButton;
     @Inject ThemeColorUtils themeColorUtils;
     @Inject ThemeDrawableUtils themeDrawableUtils;
@@ -215,7 +211,7 @@ public class ConflictsResolveDialog extends DialogFragment implements Injectable
                                   user,
                                   new FileDataStorageManager(user,
                                                              requireContext().getContentResolver()),
-                                  asyncTasks,
+                                  this,
                                   false,
                                   getContext(),
                                   null,
@@ -267,16 +263,6 @@ public class ConflictsResolveDialog extends DialogFragment implements Injectable
     public void onStop() {
         super.onStop();
 
-        for (ThumbnailsCacheManager.ThumbnailGenerationTask task : asyncTasks) {
-            if (task != null) {
-                task.cancel(true);
-                if (task.getGetMethod() != null) {
-                    Log_OC.d(this, "cancel: abort get method directly");
-                    task.getGetMethod().abort();
-                }
-            }
-        }
-
-        asyncTasks.clear();
+        ThumbnailsCacheManager.getThumbnailLoader().cancelAll(this);
     }
 }
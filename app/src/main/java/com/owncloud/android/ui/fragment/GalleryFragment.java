@@ -307,31 +307,44 @@ public class GalleryFragment extends OCFileListFragment implements GalleryFragme
             GridLayoutManager gridLayoutManager = (GridLayoutManager) recyclerView.getLayoutManager();
 
             // scroll down
-            if (dy > 0 && !photoSearchQueryRunning) {
+            if (dy > 0) {
                 int visibleItemCount = gridLayoutManager.getChildCount();
                 int totalItemCount = gridLayoutManager.getItemCount();
                 int lastVisibleItem = gridLayoutManager.findLastCompletelyVisibleItemPosition();
 
                 if ((totalItemCount - visibleItemCount) <= (lastVisibleItem + MAX_ITEMS_PER_ROW)
                     && (totalItemCount - visibleItemCount) > 0) {
-                    // Almost reached the end, continue to load new photos
-                    OCFile lastFile = mAdapter.getItem(lastVisibleItem - 1);
-
-                    if (lastFile == null) {
-                        return;
+                    // Almost reached the end, first show more of the stored photos
+                    if (!mAdapter.showNextGalleryPage(() -> searchOlderPhotos(lastVisibleItem))) {
+                        searchOlderPhotos(lastVisibleItem);
                     }
-
-                    daySpan = 30;
-                    endDate = lastFile.getModificationTimestamp() / 1000;
-                    startDate = endDate - (daySpan * 24 * 60 * 60);
-
-                    photoSearchQueryRunning = true;
-                    runGallerySearchTask();
                 }
             }
         }
     }
 
+    /**
+     * Continues to load new photos from the server, older than the last visible one
+     */
+    private void searchOlderPhotos(int lastVisibleItem) {
+        if (photoSearchQueryRunning || !isAdded()) {
+            return;
+        }
+
+        OCFile lastFile = mAdapter.getItem(lastVisibleItem - 1);
+
+        if (lastFile == null) {
+            return;
+        }
+
+        daySpan = 30;
+        endDate = lastFile.getModificationTimestamp() / 1000;
+        startDate = endDate - (daySpan * 24 * 60 * 60);
+
+        photoSearchQueryRunning = true;
+        runGallerySearchTask();
+    }
+
     @Override
     public void updateMediaContent(GalleryFragmentBottomSheetDialog.MediaState mediaState) {
             showAllGalleryItems();
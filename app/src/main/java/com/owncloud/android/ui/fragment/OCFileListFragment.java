@@ -53,6 +53,7 @@ import com.nextcloud.android.lib.resources.files.ToggleFileLockRemoteOperation;
 import com.nextcloud.android.lib.richWorkspace.RichWorkspaceDirectEditingRemoteOperation;
 import com.nextcloud.client.account.User;
 import com.nextcloud.client.account.UserAccountManager;
+import com.nextcloud.client.core.AsyncRunner;
 import com.nextcloud.client.device.DeviceInfo;
 import com.nextcloud.client.di.Injectable;
 import com.nextcloud.client.jobs.BackgroundJobManager;
@@ -224,6 +225,7 @@ public class OCFileListFragment extends ExtendedListFragment implements
     private FloatingActionButton mFabMain;
 
     @Inject DeviceInfo deviceInfo;
+    @Inject AsyncRunner asyncRunner;
 
     protected enum MenuItemAddRemove {
         DO_NOTHING,
@@ -429,7 +431,8 @@ public class OCFileListFragment extends ExtendedListFragment implements
             isGridViewPreferred(mFile),
             themeColorUtils,
             themeDrawableUtils,
-            themeAvatarUtils
+            themeAvatarUtils,
+            asyncRunner
         );
 
         setRecyclerViewAdapter(mAdapter);
@@ -889,13 +892,11 @@ public class OCFileListFragment extends ExtendedListFragment implements
             }   // exit is granted because storageManager.getFileByPath("/") never returns null
             mFile = parentDir;
 
-            listDirectory(mFile, MainApp.isOnlyOnDevice(), false);
+            // restore index and top position once the parent is shown
+            listDirectory(mFile, null, MainApp.isOnlyOnDevice(), false, this::restoreIndexAndTopPosition);
 
             onRefresh(false);
 
-            // restore index and top position
-            restoreIndexAndTopPosition();
-
         }   // else - should never happen now
 
         return moveCount;
@@ -1284,6 +1285,18 @@ public class OCFileListFragment extends ExtendedListFragment implements
      * @param directory File to be listed
      */
     public void listDirectory(OCFile directory, OCFile file, boolean onlyOnDevice, boolean fromSearch) {
+        listDirectory(directory, file, onlyOnDevice, fromSearch, null);
+    }
+
+    /**
+     * @param onListed called once the directory is shown instead of scrolling to the top, if not null and no file
+     *                 is given
+     */
+    private void listDirectory(OCFile directory,
+                               OCFile file,
+                               boolean onlyOnDevice,
+                               boolean fromSearch,
+                               @Nullable Runnable onListed) {
         if (!searchFragment) {
             FileDataStorageManager storageManager = mContainerActivity.getStorageManager();
             if (storageManager != null) {
@@ -1325,28 +1338,37 @@ public class OCFileListFragment extends ExtendedListFragment implements
                     });
                 }
 
+                OCFile previousDirectory = mFile;
+                boolean directoryChanged = previousDirectory == null || !previousDirectory.equals(directory);
+
+                // content is loaded in background, scroll once it is shown
                 mAdapter.swapDirectory(
                     accountManager.getUser(),
                     directory,
                     storageManager,
                     onlyOnDevice,
-                    mLimitToMimeType
+                    mLimitToMimeType,
+                    () -> {
+                        if (getRecyclerView() == null) {
+                            return;
+                        }
+                        if (file != null) {
+                            mAdapter.setHighlightedItem(file);
+                            int position = mAdapter.getItemPosition(file);
+                            if (position != -1) {
+                                getRecyclerView().scrollToPosition(position);
+                            }
+                        } else if (onListed != null) {
+                            onListed.run();
+                        } else if (directoryChanged) {
+                            getRecyclerView().scrollToPosition(0);
+                        }
+                    }
                 );
 
-                OCFile previousDirectory = mFile;
                 mFile = directory;
 
                 updateLayout();
-
-                if (file != null) {
-                    mAdapter.setHighlightedItem(file);
-                    int position = mAdapter.getItemPosition(file);
-                    if (position != -1) {
-                        getRecyclerView().scrollToPosition(position);
-                    }
-                } else if (previousDirectory == null || !previousDirectory.equals(directory)) {
-                    getRecyclerView().scrollToPosition(0);
-                }
             }
         }
     }
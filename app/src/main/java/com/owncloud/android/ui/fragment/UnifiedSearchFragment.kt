@@ -264,7 +264,7 @@ class UnifiedSearchFragment : Fragment(), Injectable, UnifiedSearchListInterface
     }
 
     override fun onQueryTextChange(newText: String?): Boolean {
-        // noop
+        vm.onQueryTextChanged(newText.orEmpty())
         return true
     }
 }
@@ -112,6 +112,10 @@ public class PreviewImageFragment extends FileFragment implements Injectable {
 
     private Boolean showResizedImage;
 
+    /**
+     * Image decoded from the local file, recycled on destroy. Bitmaps of {@link ThumbnailsCacheManager} are shared
+     * with its memory cache and must not be recycled.
+     */
     private Bitmap bitmap;
 
     private static final String TAG = PreviewImageFragment.class.getSimpleName();
@@ -244,7 +248,6 @@ public class PreviewImageFragment extends FileFragment implements Injectable {
                 binding.shimmer.setVisibility(View.VISIBLE);
                 binding.shimmerThumbnail.setImageBitmap(thumbnail);
                 binding.image.setVisibility(View.GONE);
-                bitmap = thumbnail;
             } else {
                 thumbnail = ThumbnailsCacheManager.mDefaultImg;
             }
@@ -258,8 +261,6 @@ public class PreviewImageFragment extends FileFragment implements Injectable {
                     binding.emptyListView.setVisibility(View.GONE);
                     binding.emptyListProgress.setVisibility(View.GONE);
                     binding.image.setBackgroundColor(getResources().getColor(R.color.background_color_inverse));
-
-                    bitmap = resizedImage;
                 } else {
                     // generate new resized image
                     if (ThumbnailsCacheManager.cancelPotentialThumbnailWork(getFile(), binding.image) &&
@@ -283,7 +284,12 @@ public class PreviewImageFragment extends FileFragment implements Injectable {
                                 task
                             );
                         binding.image.setImageDrawable(asyncDrawable);
-                        task.execute(getFile());
+                        ThumbnailsCacheManager.getThumbnailLoader().load(
+                            ThumbnailsCacheManager.PREFIX_RESIZED_IMAGE + getFile().getRemoteId(),
+                            binding.image,
+                            this,
+                            () -> task.generate(getFile()),
+                            task::onGenerated);
                     }
                 }
             } else {
@@ -441,6 +447,7 @@ public class PreviewImageFragment extends FileFragment implements Injectable {
     @SuppressFBWarnings("Dm")
     @Override
     public void onDestroy() {
+        ThumbnailsCacheManager.getThumbnailLoader().cancelAll(this);
         if (bitmap != null) {
             bitmap.recycle();
             // putting this in onStop() is just the same; the fragment is always destroyed by
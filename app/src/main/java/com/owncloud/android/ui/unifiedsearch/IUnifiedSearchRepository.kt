@@ -22,18 +22,22 @@
 
 package com.owncloud.android.ui.unifiedsearch
 
+import com.nextcloud.client.core.Cancellable
 import com.owncloud.android.lib.common.SearchResult
 
 data class UnifiedSearchResult(val provider: ProviderID, val success: Boolean, val result: SearchResult)
 
 @Suppress("LongParameterList")
 interface IUnifiedSearchRepository {
+    /**
+     * @return cancelling the query drops its pending requests and results
+     */
     fun queryAll(
         query: String,
         onResult: (UnifiedSearchResult) -> Unit,
         onError: (Throwable) -> Unit,
         onFinished: (Boolean) -> Unit
-    )
+    ): Cancellable
 
     fun queryProvider(
         query: String,
@@ -42,5 +46,5 @@ interface IUnifiedSearchRepository {
         onResult: (UnifiedSearchResult) -> Unit,
         onError: (Throwable) -> Unit,
         onFinished: (Boolean) -> Unit
-    )
+    ): Cancellable
 }
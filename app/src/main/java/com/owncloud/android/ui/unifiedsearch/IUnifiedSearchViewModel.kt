@@ -17,4 +17,5 @@ interface IUnifiedSearchViewModel {
     fun loadMore(provider: ProviderID)
     fun openResult(result: SearchResultEntry)
     fun setQuery(query: String)
+    fun onQueryTextChanged(query: String)
 }
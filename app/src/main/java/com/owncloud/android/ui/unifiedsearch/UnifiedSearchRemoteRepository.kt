@@ -22,69 +22,108 @@
 package com.owncloud.android.ui.unifiedsearch
 
 import com.nextcloud.client.account.CurrentAccountProvider
+import com.nextcloud.client.account.User
 import com.nextcloud.client.core.AsyncRunner
+import com.nextcloud.client.core.Cancellable
 import com.nextcloud.client.network.ClientFactory
 import com.nextcloud.common.NextcloudClient
 import com.owncloud.android.lib.common.SearchProviders
 import com.owncloud.android.lib.common.utils.Log_OC
-import kotlinx.coroutines.CoroutineScope
-import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.launch
 
+/**
+ * Queries the search providers of the server.
+ *
+ * Results of single providers are cached, so that repeated queries are answered without requests. Methods have to
+ * be called on the main thread, where results are delivered as well.
+ */
 class UnifiedSearchRemoteRepository(
     private val clientFactory: ClientFactory,
     private val currentAccountProvider: CurrentAccountProvider,
-    private val asyncRunner: AsyncRunner
+    private val asyncRunner: AsyncRunner,
+    private val cache: UnifiedSearchResultCache = UnifiedSearchResultCache()
 ) : IUnifiedSearchRepository {
 
-    private var providers: SearchProviders? = null
+    /**
+     * Tasks of a single query, cancelling it drops all requests not started yet and all pending results
+     */
+    private class QueryTasks : Cancellable {
+        private val tasks = mutableListOf<Cancellable>()
+        var isCancelled = false
+            private set
+
+        fun add(task: Cancellable) {
+            if (isCancelled) {
+                task.cancel()
+            } else {
+                tasks.add(task)
+            }
+        }
 
-    private fun runAsyncWithNcClient(callback: (client: NextcloudClient) -> Unit) =
-        CoroutineScope(Dispatchers.IO).launch {
-            val client = clientFactory.createNextcloudClient(currentAccountProvider.user)
-            callback(client)
+        override fun cancel() {
+            isCancelled = true
+            tasks.forEach { it.cancel() }
+            tasks.clear()
         }
+    }
+
+    private val providers = mutableMapOf<String, SearchProviders>()
+    private val clients = mutableMapOf<String, NextcloudClient>()
+
+    private fun getClient(user: User): NextcloudClient = synchronized(clients) {
+        clients.getOrPut(user.accountName) { clientFactory.createNextcloudClient(user) }
+    }
 
     override fun queryAll(
         query: String,
         onResult: (UnifiedSearchResult) -> Unit,
         onError: (Throwable) -> Unit,
         onFinished: (Boolean) -> Unit
-    ) {
+    ): Cancellable {
         Log_OC.d(this, "queryAll")
+        val user = currentAccountProvider.user
+        val tasks = QueryTasks()
         fetchProviders(
+            user,
+            tasks,
             onResult = { result ->
                 val providerIds = result.providers.map { it.id }
                 var openRequests = providerIds.size
                 var anyError = false
-                runAsyncWithNcClient { client ->
-                    providerIds
-                        .forEach { provider ->
-                            val task = SearchOnProviderTask(query, provider, client)
-                            asyncRunner.postQuickTask(
-                                task = task,
-                                onResult = {
-                                    openRequests--
-                                    anyError = anyError || !it.success
-                                    onResult(UnifiedSearchResult(provider, it.success, it.searchResult))
-                                    if (openRequests == 0) {
-                                        onFinished(!anyError)
-                                    }
-                                },
-                                onError = {
-                                    openRequests--
-                                    anyError = true
-                                    onError(it)
-                                    if (openRequests == 0) {
-                                        onFinished(!anyError)
-                                    }
-                                }
-                            )
+                if (providerIds.isEmpty()) {
+                    onFinished(true)
+                }
+                providerIds.forEach { provider ->
+                    search(
+                        user,
+                        query,
+                        provider,
+                        null,
+                        tasks,
+                        onResult = {
+                            openRequests--
+                            anyError = anyError || !it.success
+                            onResult(it)
+                            if (openRequests == 0) {
+                                onFinished(!anyError)
+                            }
+                        },
+                        onError = {
+                            openRequests--
+                            anyError = true
+                            onError(it)
+                            if (openRequests == 0) {
+                                onFinished(!anyError)
+                            }
                         }
+                    )
                 }
             },
-            onError = onError
+            onError = {
+                onError(it)
+                onFinished(false)
+            }
         )
+        return tasks
     }
 
     override fun queryProvider(
@@ -94,37 +133,94 @@ class UnifiedSearchRemoteRepository(
         onResult: (UnifiedSearchResult) -> Unit,
         onError: (Throwable) -> Unit,
         onFinished: (Boolean) -> Unit
-    ) {
+    ): Cancellable {
         Log_OC.d(
             this,
             "queryProvider() called with: query = $query, provider = $provider, cursor = $cursor"
         )
-        runAsyncWithNcClient { client ->
-            val task = SearchOnProviderTask(query, provider, client, cursor)
+        val tasks = QueryTasks()
+        search(
+            currentAccountProvider.user,
+            query,
+            provider,
+            cursor,
+            tasks,
+            onResult = {
+                onResult(it)
+                onFinished(it.success)
+            },
+            onError = onError
+        )
+        return tasks
+    }
+
+    @Suppress("LongParameterList")
+    private fun search(
+        user: User,
+        query: String,
+        provider: ProviderID,
+        cursor: Int?,
+        tasks: QueryTasks,
+        onResult: (UnifiedSearchResult) -> Unit,
+        onError: (Throwable) -> Unit
+    ) {
+        val key = UnifiedSearchResultCache.Key(user.accountName, provider, query, cursor)
+        val cachedResult = cache.get(key)
+        if (cachedResult != null) {
+            onResult(UnifiedSearchResult(provider, true, cachedResult))
+            return
+        }
+
+        tasks.add(
             asyncRunner.postQuickTask(
-                task,
+                task = { SearchOnProviderTask(query, provider, getClient(user), cursor).invoke() },
                 onResult = {
-                    onResult(UnifiedSearchResult(provider, it.success, it.searchResult))
-                    onFinished(it.success)
+                    if (it.success) {
+                        cache.put(key, it.searchResult)
+                    }
+                    // a result may have been posted to the main thread before the query was cancelled
+                    if (!tasks.isCancelled) {
+                        onResult(UnifiedSearchResult(provider, it.success, it.searchResult))
+                    }
                 },
-                onError
+                onError = {
+                    if (!tasks.isCancelled) {
+                        onError(it)
+                    }
+                }
             )
-        }
+        )
     }
 
-    fun fetchProviders(onResult: (SearchProviders) -> Unit, onError: (Throwable) -> Unit) {
+    private fun fetchProviders(
+        user: User,
+        tasks: QueryTasks,
+        onResult: (SearchProviders) -> Unit,
+        onError: (Throwable) -> Unit
+    ) {
         Log_OC.d(this, "fetchProviders")
-        if (this.providers != null) {
-            onResult(this.providers!!)
+        val cachedProviders = providers[user.accountName]
+        if (cachedProviders != null) {
+            onResult(cachedProviders)
         } else {
-            runAsyncWithNcClient { client ->
-                val task = GetSearchProvidersTask(client)
+            tasks.add(
                 asyncRunner.postQuickTask(
-                    task,
-                    onResult = { onResult(it.providers) },
-                    onError = onError
+                    task = { GetSearchProvidersTask(getClient(user)).invoke() },
+                    onResult = {
+                        if (it.success) {
+                            providers[user.accountName] = it.providers
+                        }
+                        if (!tasks.isCancelled) {
+                            onResult(it.providers)
+                        }
+                    },
+                    onError = {
+                        if (!tasks.isCancelled) {
+                            onError(it)
+                        }
+                    }
                 )
-            }
+            )
         }
     }
 }
@@ -0,0 +1,68 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.ui.unifiedsearch
+
+import com.owncloud.android.lib.common.SearchResult
+
+/**
+ * Bounded LRU of results of single search providers, so that repeating a query, like when correcting a typo, does
+ * not hit every provider again. Results expire after [maxAgeMillis], as they may change on the server.
+ */
+class UnifiedSearchResultCache(
+    private val maxEntries: Int = MAX_ENTRIES,
+    private val maxAgeMillis: Long = MAX_AGE_MILLIS,
+    private val currentTimeMillis: () -> Long = System::currentTimeMillis
+) {
+
+    companion object {
+        private const val MAX_ENTRIES = 200
+        private const val MAX_AGE_MILLIS = 5 * 60 * 1000L
+    }
+
+    data class Key(val accountName: String, val provider: ProviderID, val term: String, val cursor: Int?)
+
+    private class Entry(val result: SearchResult, val time: Long)
+
+    private val entries = object : LinkedHashMap<Key, Entry>(maxEntries, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Key, Entry>): Boolean = size > maxEntries
+    }
+
+    @Synchronized
+    fun get(key: Key): SearchResult? {
+        val entry = entries[key] ?: return null
+        if (currentTimeMillis() - entry.time > maxAgeMillis) {
+            entries.remove(key)
+            return null
+        }
+        return entry.result
+    }
+
+    @Synchronized
+    fun put(key: Key, result: SearchResult) {
+        entries[key] = Entry(result, currentTimeMillis())
+    }
+
+    @Synchronized
+    fun clear() {
+        entries.clear()
+    }
+
+    val size: Int
+        @Synchronized get() = entries.size
+}
@@ -26,8 +26,10 @@ import android.net.Uri
 import androidx.annotation.VisibleForTesting
 import androidx.lifecycle.AndroidViewModel
 import androidx.lifecycle.MutableLiveData
+import androidx.lifecycle.viewModelScope
 import com.nextcloud.client.account.CurrentAccountProvider
 import com.nextcloud.client.core.AsyncRunner
+import com.nextcloud.client.core.Cancellable
 import com.nextcloud.client.network.ClientFactory
 import com.nextcloud.client.network.ConnectivityService
 import com.owncloud.android.R
@@ -37,6 +39,9 @@ import com.owncloud.android.lib.common.SearchResult
 import com.owncloud.android.lib.common.SearchResultEntry
 import com.owncloud.android.lib.common.utils.Log_OC
 import com.owncloud.android.ui.asynctasks.GetRemoteFileTask
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
 import javax.inject.Inject
 
 @Suppress("LongParameterList")
@@ -45,6 +50,7 @@ class UnifiedSearchViewModel(application: Application) : AndroidViewModel(applic
         private const val TAG = "UnifiedSearchViewModel"
         private const val DEFAULT_LIMIT = 5
         private const val FILES_PROVIDER_ID = "files"
+        private const val TYPING_DELAY_MS = 300L
     }
 
     private data class UnifiedSearchMetadata(
@@ -77,6 +83,8 @@ class UnifiedSearchViewModel(application: Application) : AndroidViewModel(applic
     private lateinit var repository: IUnifiedSearchRepository
     private var loadingStarted: Boolean = false
     private var results: MutableMap<ProviderID, UnifiedSearchMetadata> = mutableMapOf()
+    private var searchTask: Cancellable? = null
+    private var typingJob: Job? = null
 
     override val isLoading = MutableLiveData(false)
     override val searchResults = MutableLiveData<List<UnifiedSearchSection>>(mutableListOf())
@@ -116,17 +124,48 @@ class UnifiedSearchViewModel(application: Application) : AndroidViewModel(applic
     }
 
     /**
-     * Clears data and queries all available providers
+     * Clears data and queries all available providers, a running query is cancelled
      */
     override fun initialQuery() {
+        typingJob?.cancel()
         doWithConnectivityCheck {
+            searchTask?.cancel()
+            searchTask = null
             results = mutableMapOf()
             searchResults.value = mutableListOf()
             val queryTerm = query.value.orEmpty()
 
-            if (isLoading.value != true && queryTerm.isNotBlank()) {
+            if (queryTerm.isNotBlank()) {
                 isLoading.value = true
-                repository.queryAll(queryTerm, this::onSearchResult, this::onError, this::onSearchFinished)
+                searchTask = repository.queryAll(
+                    queryTerm,
+                    this::onSearchResult,
+                    this::onError,
+                    this::onSearchFinished
+                )
+            } else if (isLoading.value == true) {
+                isLoading.value = false
+            }
+        }
+    }
+
+    /**
+     * Queries all providers once the user stopped typing, so that only the last of quickly typed queries is sent
+     */
+    override fun onQueryTextChanged(query: String) {
+        typingJob?.cancel()
+        typingJob = null
+
+        // a query cancelled by typing keeps loading until the next query starts
+        val searchCancelled = isLoading.value == true && searchTask == null
+        if (query != this.query.value || searchCancelled) {
+            // results of the current query are not needed anymore
+            searchTask?.cancel()
+            searchTask = null
+            typingJob = viewModelScope.launch {
+                delay(TYPING_DELAY_MS)
+                setQuery(query)
+                initialQuery()
             }
         }
     }
@@ -138,7 +177,7 @@ class UnifiedSearchViewModel(application: Application) : AndroidViewModel(applic
             if (isLoading.value != true && queryTerm.isNotBlank()) {
                 results[provider]?.nextCursor()?.let { cursor ->
                     isLoading.value = true
-                    repository.queryProvider(
+                    searchTask = repository.queryProvider(
                         queryTerm,
                         provider,
                         cursor,
@@ -246,6 +285,7 @@ class UnifiedSearchViewModel(application: Application) : AndroidViewModel(applic
 
     private fun onSearchFinished(success: Boolean) {
         Log_OC.d(TAG, "onSearchFinished: success: $success")
+        searchTask = null
         isLoading.value = false
         if (!success) {
             error.value = resources.getString(R.string.search_error)
@@ -270,6 +310,11 @@ class UnifiedSearchViewModel(application: Application) : AndroidViewModel(applic
         this.query.value = query
     }
 
+    override fun onCleared() {
+        super.onCleared()
+        searchTask?.cancel()
+    }
+
     @VisibleForTesting
     fun setConnectivityService(connectivityService: ConnectivityService) {
         this.connectivityService = connectivityService
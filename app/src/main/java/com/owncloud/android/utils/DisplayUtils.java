@@ -35,10 +35,10 @@ import android.content.Intent;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Point;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.PictureDrawable;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.text.Spannable;
 import android.text.SpannableStringBuilder;
 import android.text.TextUtils;
@@ -71,6 +71,7 @@ import com.owncloud.android.R;
 import com.owncloud.android.datamodel.ArbitraryDataProvider;
 import com.owncloud.android.datamodel.FileDataStorageManager;
 import com.owncloud.android.datamodel.OCFile;
+import com.owncloud.android.datamodel.ThumbnailLoader;
 import com.owncloud.android.datamodel.ThumbnailsCacheManager;
 import com.owncloud.android.lib.common.OwnCloudAccount;
 import com.owncloud.android.lib.common.utils.Log_OC;
@@ -100,7 +101,6 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
@@ -847,13 +847,19 @@ public final class DisplayUtils {
                                     ImageView thumbnailView,
                                     User user,
                                     FileDataStorageManager storageManager,
-                                    List<ThumbnailsCacheManager.ThumbnailGenerationTask> asyncTasks,
+                                    Object requestOwner,
                                     boolean gridView,
                                     Context context,
                                     LoaderImageView shimmerThumbnail,
                                     AppPreferences preferences,
                                     ThemeColorUtils themeColorUtils,
                                     ThemeDrawableUtils themeDrawableUtils) {
+        // the view may have been showing another file
+        ThumbnailLoader loader = ThumbnailsCacheManager.getThumbnailLoader();
+        if (file.getRemoteId() == null || !loader.isLoading(thumbnailView, file.getRemoteId())) {
+            loader.cancel(thumbnailView);
+        }
+
         if (file.isFolder()) {
             stopShimmer(shimmerThumbnail, thumbnailView);
             thumbnailView.setImageDrawable(MimeTypeUtil
@@ -887,67 +893,56 @@ public final class DisplayUtils {
                     }
                 } else {
                     // generate new thumbnail
-                    if (ThumbnailsCacheManager.cancelPotentialThumbnailWork(file, thumbnailView)) {
-                        for (ThumbnailsCacheManager.ThumbnailGenerationTask task : asyncTasks) {
-                            if (file.getRemoteId() != null && task.getImageKey() != null &&
-                                file.getRemoteId().equals(task.getImageKey())) {
-                                return;
+                    if (loader.isLoading(thumbnailView, file.getRemoteId())) {
+                        return;
+                    }
+                    try {
+                        final ThumbnailsCacheManager.ThumbnailGenerationTask task =
+                            new ThumbnailsCacheManager.ThumbnailGenerationTask(storageManager, user);
+                        if (thumbnail == null) {
+                            Drawable drawable = MimeTypeUtil.getFileTypeIcon(file.getMimeType(),
+                                                                             file.getFileName(),
+                                                                             user,
+                                                                             context,
+                                                                             themeColorUtils,
+                                                                             themeDrawableUtils);
+                            if (drawable == null) {
+                                drawable = ResourcesCompat.getDrawable(context.getResources(),
+                                                                       R.drawable.file_image,
+                                                                       null);
                             }
+                            int px = ThumbnailsCacheManager.getThumbnailDimension();
+                            thumbnail = BitmapUtils.drawableToBitmap(drawable, px, px);
                         }
-                        try {
-                            final ThumbnailsCacheManager.ThumbnailGenerationTask task =
-                                new ThumbnailsCacheManager.ThumbnailGenerationTask(thumbnailView,
-                                                                                   storageManager,
-                                                                                   user,
-                                                                                   asyncTasks,
-                                                                                   gridView,
-                                                                                   file.getRemoteId());
-                            if (thumbnail == null) {
-                                Drawable drawable = MimeTypeUtil.getFileTypeIcon(file.getMimeType(),
-                                                                                 file.getFileName(),
-                                                                                 user,
-                                                                                 context,
-                                                                                 themeColorUtils,
-                                                                                 themeDrawableUtils);
-                                if (drawable == null) {
-                                    drawable = ResourcesCompat.getDrawable(context.getResources(),
-                                                                           R.drawable.file_image,
-                                                                           null);
-                                }
-                                int px = ThumbnailsCacheManager.getThumbnailDimension();
-                                thumbnail = BitmapUtils.drawableToBitmap(drawable, px, px);
-                            }
-                            final ThumbnailsCacheManager.AsyncThumbnailDrawable asyncDrawable =
-                                new ThumbnailsCacheManager.AsyncThumbnailDrawable(context.getResources(),
-                                                                                  thumbnail, task);
-
-                            if (shimmerThumbnail != null && shimmerThumbnail.getVisibility() == View.GONE) {
-                                if (gridView) {
-                                    configShimmerGridImageSize(shimmerThumbnail, preferences.getGridColumns());
-                                }
-                                startShimmer(shimmerThumbnail, thumbnailView);
-                            }
 
-                            task.setListener(new ThumbnailsCacheManager.ThumbnailGenerationTask.Listener() {
-                                @Override
-                                public void onSuccess() {
-                                    stopShimmer(shimmerThumbnail, thumbnailView);
-                                }
-
-                                @Override
-                                public void onError() {
-                                    stopShimmer(shimmerThumbnail, thumbnailView);
-                                }
-                            });
-
-                            thumbnailView.setImageDrawable(asyncDrawable);
-                            asyncTasks.add(task);
-                            task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR,
-                                                   new ThumbnailsCacheManager.ThumbnailGenerationTaskObject(file,
-                                                                                                            file.getRemoteId()));
-                        } catch (IllegalArgumentException e) {
-                            Log_OC.d(TAG, "ThumbnailGenerationTask : " + e.getMessage());
+                        if (shimmerThumbnail != null && shimmerThumbnail.getVisibility() == View.GONE) {
+                            if (gridView) {
+                                configShimmerGridImageSize(shimmerThumbnail, preferences.getGridColumns());
+                            }
+                            startShimmer(shimmerThumbnail, thumbnailView);
                         }
+
+                        thumbnailView.setImageDrawable(new BitmapDrawable(context.getResources(), thumbnail));
+                        loader.load(file.getRemoteId(),
+                                    thumbnailView,
+                                    requestOwner,
+                                    () -> task.generate(
+                                        new ThumbnailsCacheManager.ThumbnailGenerationTaskObject(file,
+                                                                                                 file.getRemoteId())),
+                                    bitmap -> {
+                                        stopShimmer(shimmerThumbnail, thumbnailView);
+                                        if (bitmap != null &&
+                                            String.valueOf(thumbnailView.getTag())
+                                                .equals(String.valueOf(file.getFileId()))) {
+                                            if (gridView) {
+                                                BitmapUtils.setRoundedBitmapForGridMode(bitmap, thumbnailView);
+                                            } else {
+                                                BitmapUtils.setRoundedBitmap(bitmap, thumbnailView);
+                                            }
+                                        }
+                                    });
+                    } catch (IllegalArgumentException e) {
+                        Log_OC.d(TAG, "ThumbnailGenerationTask : " + e.getMessage());
                     }
                 }
 
@@ -32,6 +32,7 @@ import com.google.gson.reflect.TypeToken;
 import com.nextcloud.client.account.User;
 import com.owncloud.android.datamodel.ArbitraryDataProvider;
 import com.owncloud.android.datamodel.DecryptedFolderMetadata;
+import com.owncloud.android.datamodel.DecryptedFolderMetadataCache;
 import com.owncloud.android.datamodel.EncryptedFolderMetadata;
 import com.owncloud.android.datamodel.OCFile;
 import com.owncloud.android.lib.common.OwnCloudClient;
@@ -45,13 +46,21 @@ import com.owncloud.android.lib.resources.e2ee.UpdateMetadataRemoteOperation;
 import com.owncloud.android.operations.UploadException;
 
 import org.apache.commons.httpclient.HttpStatus;
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.modes.GCMBlockCipher;
+import org.bouncycastle.crypto.params.AEADParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidAlgorithmParameterException;
@@ -73,6 +82,7 @@ import java.security.spec.KeySpec;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -114,6 +124,16 @@ public final class EncryptionUtils {
     private static final String AES = "AES";
     private static final String RSA_CIPHER = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
     private static final String RSA = "RSA";
+    private static final int AUTHENTICATION_TAG_LENGTH = 128 / 8;
+    private static final int CIPHER_BUFFER_SIZE = 64 * 1024;
+    private static final String FOLDER_METADATA_CACHE_DIR = "e2e_metadata";
+
+    private static DecryptedFolderMetadataCache folderMetadataCache;
+
+    /**
+     * parsed private keys by their encoded form, parsing is needed for every asymmetric decryption otherwise
+     */
+    private static final Map<String, PrivateKey> privateKeys = Collections.synchronizedMap(new HashMap<>());
 
     private EncryptionUtils() {
         // utility class -> private constructor
@@ -189,6 +209,9 @@ public final class EncryptionUtils {
         DecryptedFolderMetadata decryptedFolderMetadata = new DecryptedFolderMetadata(
                 encryptedFolderMetadata.getMetadata(), files);
 
+        // all files usually share the same metadata key, so decrypt each key only once
+        Map<Integer, byte[]> decryptedMetadataKeys = new HashMap<>();
+
         for (Map.Entry<String, EncryptedFolderMetadata.EncryptedFile> entry : encryptedFolderMetadata
                 .getFiles().entrySet()) {
             String key = entry.getKey();
@@ -199,9 +222,13 @@ public final class EncryptionUtils {
             decryptedFile.setMetadataKey(encryptedFile.getMetadataKey());
             decryptedFile.setAuthenticationTag(encryptedFile.getAuthenticationTag());
 
-            byte[] decryptedMetadataKey = EncryptionUtils.decodeStringToBase64Bytes(
+            byte[] decryptedMetadataKey = decryptedMetadataKeys.get(encryptedFile.getMetadataKey());
+            if (decryptedMetadataKey == null) {
+                decryptedMetadataKey = EncryptionUtils.decodeStringToBase64Bytes(
                     EncryptionUtils.decryptStringAsymmetric(decryptedFolderMetadata.getMetadata()
                             .getMetadataKeys().get(encryptedFile.getMetadataKey()), privateKey));
+                decryptedMetadataKeys.put(encryptedFile.getMetadataKey(), decryptedMetadataKey);
+            }
 
             // decrypt
             String dataJson = EncryptionUtils.decryptStringSymmetric(encryptedFile.getEncrypted(), decryptedMetadataKey);
@@ -218,33 +245,116 @@ public final class EncryptionUtils {
     /**
      * Download metadata for folder and decrypt it
      *
+     * Metadata is cached by the etag of the folder, so that it is downloaded and decrypted again only if the folder
+     * changed. The returned metadata may be shared and must not be modified.
+     *
      * @return decrypted metadata or null
      */
     public static @Nullable
     DecryptedFolderMetadata downloadFolderMetadata(OCFile folder, OwnCloudClient client,
                                                    Context context, User user) {
-        RemoteOperationResult getMetadataOperationResult = new GetMetadataRemoteOperation(folder.getLocalId())
-            .execute(client);
+        String localId = folder.getLocalId();
+        String etag = folder.getEtag();
+        DecryptedFolderMetadataCache cache = null;
+        String serializedEncryptedMetadata = null;
+
+        if (localId != null && !TextUtils.isEmpty(etag)) {
+            cache = getFolderMetadataCache(context);
+            DecryptedFolderMetadata metadata = cache.get(localId, etag);
+            if (metadata != null) {
+                return metadata;
+            }
+            serializedEncryptedMetadata = cache.getEncrypted(localId, etag);
+        }
 
-        if (!getMetadataOperationResult.isSuccess()) {
-            return null;
+        boolean downloaded = false;
+        if (serializedEncryptedMetadata == null) {
+            RemoteOperationResult getMetadataOperationResult = new GetMetadataRemoteOperation(localId)
+                .execute(client);
+
+            if (!getMetadataOperationResult.isSuccess()) {
+                return null;
+            }
+            serializedEncryptedMetadata = (String) getMetadataOperationResult.getData().get(0);
+            downloaded = true;
         }
 
         // decrypt metadata
         ArbitraryDataProvider arbitraryDataProvider = new ArbitraryDataProvider(context.getContentResolver());
-        String serializedEncryptedMetadata = (String) getMetadataOperationResult.getData().get(0);
         String privateKey = arbitraryDataProvider.getValue(user.getAccountName(), EncryptionUtils.PRIVATE_KEY);
 
         EncryptedFolderMetadata encryptedFolderMetadata = EncryptionUtils.deserializeJSON(
                 serializedEncryptedMetadata, new TypeToken<EncryptedFolderMetadata>() {
                 });
 
+        DecryptedFolderMetadata metadata;
         try {
-            return EncryptionUtils.decryptFolderMetaData(encryptedFolderMetadata, privateKey);
+            metadata = EncryptionUtils.decryptFolderMetaData(encryptedFolderMetadata, privateKey);
         } catch (Exception e) {
             Log_OC.e(TAG, e.getMessage());
+            if (cache != null) {
+                cache.remove(localId);
+            }
             return null;
         }
+
+        // only cache metadata that could be decrypted
+        if (cache != null) {
+            if (downloaded) {
+                cache.putEncrypted(localId, etag, serializedEncryptedMetadata);
+            }
+            cache.put(localId, etag, metadata);
+        }
+        return metadata;
+    }
+
+    /**
+     * Like {@link #downloadFolderMetadata(OCFile, OwnCloudClient, Context, User)}, but downloads the metadata again if
+     * the cached one does not know the file. The etag of the folder in the database may be outdated, in which case
+     * the metadata cached for it does not contain files added since.
+     *
+     * @param encryptedFileName encrypted name of a file in the folder
+     * @return decrypted metadata or null
+     */
+    public static @Nullable
+    DecryptedFolderMetadata downloadFolderMetadata(OCFile folder,
+                                                   String encryptedFileName,
+                                                   OwnCloudClient client,
+                                                   Context context,
+                                                   User user) {
+        DecryptedFolderMetadata metadata = downloadFolderMetadata(folder, client, context, user);
+
+        if (metadata == null || metadata.getFiles().get(encryptedFileName) == null) {
+            removeCachedFolderMetadata(folder.getLocalId());
+            metadata = downloadFolderMetadata(folder, client, context, user);
+        }
+        return metadata;
+    }
+
+    public static synchronized DecryptedFolderMetadataCache getFolderMetadataCache(Context context) {
+        if (folderMetadataCache == null) {
+            folderMetadataCache = new DecryptedFolderMetadataCache(
+                new File(context.getApplicationContext().getCacheDir(), FOLDER_METADATA_CACHE_DIR));
+        }
+        return folderMetadataCache;
+    }
+
+    /**
+     * Removes cached metadata of the folder after it was changed
+     */
+    public static synchronized void removeCachedFolderMetadata(String localId) {
+        if (folderMetadataCache != null && localId != null) {
+            folderMetadataCache.remove(localId);
+        }
+    }
+
+    /**
+     * Drops parsed private keys and all cached folder metadata, e.g. when an account and its end-to-end keys are
+     * removed, so that neither stays in memory or on disk afterwards
+     */
+    public static synchronized void clearCachedKeysAndMetadata(Context context) {
+        privateKeys.clear();
+        getFolderMetadataCache(context).clear();
     }
 
     /*
@@ -356,6 +466,111 @@ public final class EncryptionUtils {
         return cipher.doFinal(fileBytes);
     }
 
+    /**
+     * Encrypts a file chunk-wise into a target file, so memory usage does not depend on file size. Output is byte
+     * identical to {@link #encryptFile(File, byte[], byte[])}: cipher text followed by the authentication tag.
+     *
+     * The GCM implementation of the platform provider buffers all input until the end, so the streaming
+     * {@link GCMBlockCipher} of Bouncy Castle is used instead.
+     *
+     * @param file               file do crypt
+     * @param targetFile         file the encrypted content is written to
+     * @param encryptionKeyBytes key, either from metadata or {@link EncryptionUtils#generateKey()}
+     * @param iv                 initialization vector, either from metadata or {@link EncryptionUtils#randomBytes(int)}
+     * @return base64 encoded authenticationTag
+     */
+    public static String encryptFile(File file, File targetFile, byte[] encryptionKeyBytes, byte[] iv)
+        throws IOException {
+
+        GCMBlockCipher cipher = createStreamingCipher(true, encryptionKeyBytes, iv);
+
+        try (InputStream inputStream = new FileInputStream(file);
+             OutputStream outputStream = new FileOutputStream(targetFile)) {
+            processStream(cipher, inputStream, outputStream);
+        } catch (InvalidCipherTextException e) {
+            throw new IOException("Encryption of " + file.getAbsolutePath() + " failed", e);
+        }
+
+        return encodeBytesToBase64String(cipher.getMac());
+    }
+
+    /**
+     * Decrypts a file chunk-wise into a target file. The authentication tag is checked before decrypting and the
+     * cipher verifies it again when finishing; on failure the target file is deleted.
+     *
+     * @param file               encrypted file
+     * @param targetFile         file the decrypted content is written to
+     * @param encryptionKeyBytes key from metadata
+     * @param iv                 initialization vector from metadata
+     * @param authenticationTag  authenticationTag from metadata
+     */
+    public static void decryptFile(File file,
+                                   File targetFile,
+                                   byte[] encryptionKeyBytes,
+                                   byte[] iv,
+                                   byte[] authenticationTag)
+        throws IOException {
+
+        GCMBlockCipher cipher = createStreamingCipher(false, encryptionKeyBytes, iv);
+
+        // check authentication tag
+        byte[] extractedAuthenticationTag = new byte[AUTHENTICATION_TAG_LENGTH];
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            if (randomAccessFile.length() < AUTHENTICATION_TAG_LENGTH) {
+                throw new SecurityException("Tag not correct");
+            }
+            randomAccessFile.seek(randomAccessFile.length() - AUTHENTICATION_TAG_LENGTH);
+            randomAccessFile.readFully(extractedAuthenticationTag);
+        }
+
+        if (!Arrays.equals(extractedAuthenticationTag, authenticationTag)) {
+            throw new SecurityException("Tag not correct");
+        }
+
+        boolean success = false;
+        try (InputStream inputStream = new FileInputStream(file);
+             OutputStream outputStream = new FileOutputStream(targetFile)) {
+            processStream(cipher, inputStream, outputStream);
+            success = true;
+        } catch (InvalidCipherTextException e) {
+            throw new SecurityException("Tag not correct", e);
+        } finally {
+            if (!success && !targetFile.delete()) {
+                Log_OC.e(TAG, "Could not delete partially decrypted file " + targetFile.getAbsolutePath());
+            }
+        }
+    }
+
+    private static GCMBlockCipher createStreamingCipher(boolean forEncryption, byte[] encryptionKeyBytes, byte[] iv) {
+        GCMBlockCipher cipher = new GCMBlockCipher(new AESEngine());
+        cipher.init(forEncryption,
+                    new AEADParameters(new KeyParameter(encryptionKeyBytes), AUTHENTICATION_TAG_LENGTH * 8, iv));
+        return cipher;
+    }
+
+    /**
+     * Runs the whole input through the cipher. Only the buffers and, when decrypting, the last block and the tag
+     * are held in memory.
+     */
+    private static void processStream(GCMBlockCipher cipher, InputStream inputStream, OutputStream outputStream)
+        throws IOException, InvalidCipherTextException {
+        byte[] buffer = new byte[CIPHER_BUFFER_SIZE];
+        byte[] output = new byte[0];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            // includes input buffered by the cipher, e.g. the possible tag when decrypting
+            if (output.length < cipher.getUpdateOutputSize(read)) {
+                output = new byte[cipher.getUpdateOutputSize(read)];
+            }
+            int length = cipher.processBytes(buffer, 0, read, output, 0);
+            outputStream.write(output, 0, length);
+        }
+
+        byte[] finalOutput = new byte[cipher.getOutputSize(0)];
+        int length = cipher.doFinal(finalOutput, 0);
+        outputStream.write(finalOutput, 0, length);
+    }
+
     public static class EncryptedFile {
         public byte[] encryptedBytes;
         public String authenticationTag;
@@ -428,10 +643,14 @@ public final class EncryptionUtils {
 
         Cipher cipher = Cipher.getInstance(RSA_CIPHER);
 
-        byte[] privateKeyBytes = decodeStringToBase64Bytes(privateKeyString);
-        PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec(privateKeyBytes);
-        KeyFactory kf = KeyFactory.getInstance(RSA);
-        PrivateKey privateKey = kf.generatePrivate(keySpec);
+        PrivateKey privateKey = privateKeys.get(privateKeyString);
+        if (privateKey == null) {
+            byte[] privateKeyBytes = decodeStringToBase64Bytes(privateKeyString);
+            PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec(privateKeyBytes);
+            KeyFactory kf = KeyFactory.getInstance(RSA);
+            privateKey = kf.generatePrivate(keySpec);
+            privateKeys.put(privateKeyString, privateKey);
+        }
 
         cipher.init(Cipher.DECRYPT_MODE, privateKey);
 
@@ -825,6 +1044,8 @@ public final class EncryptionUtils {
                                       String token,
                                       OwnCloudClient client,
                                       boolean metadataExists) throws UploadException {
+        removeCachedFolderMetadata(parentFile.getLocalId());
+
         RemoteOperationResult uploadMetadataOperationResult;
         if (metadataExists) {
             // update metadata
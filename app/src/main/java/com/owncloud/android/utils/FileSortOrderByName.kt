@@ -55,14 +55,17 @@ class FileSortOrderByName internal constructor(name: String?, ascending: Boolean
     }
 
     private fun <T : ServerFileInterface> sortServerFiles(files: MutableList<T>): MutableList<T> {
-        files.sortWith { o1: ServerFileInterface, o2: ServerFileInterface ->
-            when {
-                o1.isFolder && o2.isFolder -> sortMultiplier * AlphanumComparator.compare(o1, o2)
-                o1.isFolder -> -1
-                o2.isFolder -> 1
-                else -> sortMultiplier * AlphanumComparator.compare(o1, o2)
+        // every name is split into chunks and collated only once, instead of on every comparison
+        val sortKeys = AlphanumComparator.SortKeyFactory()
+        files.map { Keyed(it, it.isFolder, sortKeys.create(it.fileName)) }
+            .sortedWith { o1, o2 ->
+                when {
+                    o1.isFolder && !o2.isFolder -> -1
+                    !o1.isFolder && o2.isFolder -> 1
+                    else -> sortMultiplier * o1.key.compareTo(o2.key)
+                }
             }
-        }
+            .forEachIndexed { index, keyed -> files[index] = keyed.file }
         return files
     }
 
@@ -72,18 +75,27 @@ class FileSortOrderByName internal constructor(name: String?, ascending: Boolean
      * @param files files to sort
      */
     override fun sortLocalFiles(files: MutableList<File>): List<File> {
-        files.sortWith { o1: File, o2: File ->
-            when {
-                o1.isDirectory && o2.isDirectory -> sortMultiplier * o1.path.lowercase(Locale.getDefault())
-                    .compareTo(o2.path.lowercase(Locale.getDefault()))
-                o1.isDirectory -> -1
-                o2.isDirectory -> 1
-                else -> sortMultiplier * AlphanumComparator.compare(
-                    o1.path.lowercase(Locale.getDefault()),
-                    o2.path.lowercase(Locale.getDefault())
-                )
-            }
+        val sortKeys = AlphanumComparator.SortKeyFactory()
+        files.map {
+            val path = it.path.lowercase(Locale.getDefault())
+            Keyed(it, it.isDirectory, sortKeys.create(path), path)
         }
+            .sortedWith { o1, o2 ->
+                when {
+                    o1.isFolder && o2.isFolder -> sortMultiplier * o1.path.compareTo(o2.path)
+                    o1.isFolder -> -1
+                    o2.isFolder -> 1
+                    else -> sortMultiplier * o1.key.compareTo(o2.key)
+                }
+            }
+            .forEachIndexed { index, keyed -> files[index] = keyed.file }
         return files
     }
+
+    private class Keyed<T>(
+        val file: T,
+        val isFolder: Boolean,
+        val key: AlphanumComparator.SortKey,
+        val path: String = ""
+    )
 }
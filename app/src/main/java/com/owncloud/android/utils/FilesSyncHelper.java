@@ -39,6 +39,7 @@ import com.nextcloud.client.jobs.BackgroundJobManager;
 import com.nextcloud.client.network.ConnectivityService;
 import com.nextcloud.client.preferences.AppPreferences;
 import com.owncloud.android.MainApp;
+import com.owncloud.android.datamodel.FileSystemDataSet;
 import com.owncloud.android.datamodel.FilesystemDataProvider;
 import com.owncloud.android.datamodel.MediaFolderType;
 import com.owncloud.android.datamodel.SyncedFolder;
@@ -57,6 +58,10 @@ import org.lukhnos.nnio.file.attribute.BasicFileAttributes;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 
 import static com.owncloud.android.datamodel.OCFile.PATH_SEPARATOR;
 
@@ -70,82 +75,154 @@ public final class FilesSyncHelper {
 
     public static final int ContentSyncJobId = 315;
 
+    private static final int INDEX_BATCH_SIZE = 500;
+
+    /**
+     * Some file systems, e.g. FAT, store modification times with a precision of two seconds only
+     */
+    private static final long SCAN_MARK_TOLERANCE_MS = 2000;
+
     private FilesSyncHelper() {
         // utility class -> private constructor
     }
 
-    private static void insertAllDBEntriesForSyncedFolder(SyncedFolder syncedFolder) {
+    private static IndexingResult insertAllDBEntriesForSyncedFolder(SyncedFolder syncedFolder,
+                                                                    Clock clock,
+                                                                    boolean sampleLargeFiles) {
         final Context context = MainApp.getAppContext();
         final ContentResolver contentResolver = context.getContentResolver();
 
         final long enabledTimestampMs = syncedFolder.getEnabledTimestampMs();
+        final IndexingResult result = new IndexingResult();
 
         if (syncedFolder.isEnabled() && (syncedFolder.isExisting() || enabledTimestampMs >= 0)) {
+            final FilesystemDataProvider filesystemDataProvider = new FilesystemDataProvider(contentResolver,
+                                                                                             sampleLargeFiles);
+            final IndexBatch batch = new IndexBatch(filesystemDataProvider, syncedFolder, result);
+            final long scanStartMs = clock.getCurrentTime();
+            final long scanMark = filesystemDataProvider.getScanMark(syncedFolder);
+            final long changedSinceMs = scanMark > 0 ? Math.max(0, scanMark - SCAN_MARK_TOLERANCE_MS) : 0;
+
+            boolean complete;
             MediaFolderType mediaType = syncedFolder.getType();
             if (mediaType == MediaFolderType.IMAGE) {
-                FilesSyncHelper.insertContentIntoDB(MediaStore.Images.Media.INTERNAL_CONTENT_URI
-                    , syncedFolder);
-                FilesSyncHelper.insertContentIntoDB(MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
-                                                    syncedFolder);
+                complete = insertContentIntoDB(MediaStore.Images.Media.INTERNAL_CONTENT_URI, changedSinceMs, batch);
+                complete &= insertContentIntoDB(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, changedSinceMs, batch);
             } else if (mediaType == MediaFolderType.VIDEO) {
-                FilesSyncHelper.insertContentIntoDB(MediaStore.Video.Media.INTERNAL_CONTENT_URI,
-                                                    syncedFolder);
-                FilesSyncHelper.insertContentIntoDB(MediaStore.Video.Media.EXTERNAL_CONTENT_URI,
-                                                    syncedFolder);
+                complete = insertContentIntoDB(MediaStore.Video.Media.INTERNAL_CONTENT_URI, changedSinceMs, batch);
+                complete &= insertContentIntoDB(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, changedSinceMs, batch);
             } else {
-                try {
-                    FilesystemDataProvider filesystemDataProvider = new FilesystemDataProvider(contentResolver);
-                    Path path = Paths.get(syncedFolder.getLocalPath());
-
-                    Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
-                        @Override
-                        public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
-                            File file = path.toFile();
-                            if (syncedFolder.isExisting() || attrs.lastModifiedTime().toMillis() >= enabledTimestampMs) {
-                                filesystemDataProvider.storeOrUpdateFileValue(path.toAbsolutePath().toString(),
-                                                                              attrs.lastModifiedTime().toMillis(),
-                                                                              file.isDirectory(), syncedFolder);
-                            }
-
-                            return FileVisitResult.CONTINUE;
-                        }
-
-                        @Override
-                        public FileVisitResult visitFileFailed(Path file, IOException exc) {
-                            return FileVisitResult.CONTINUE;
-                        }
-                    });
-                } catch (IOException e) {
-                    Log_OC.e(TAG, "Something went wrong while indexing files for auto upload", e);
-                }
+                complete = insertFilesIntoDB(changedSinceMs, batch);
             }
+            batch.flush();
+
+            if (complete) {
+                filesystemDataProvider.storeScanMark(syncedFolder, scanStartMs);
+            }
+
+            Log_OC.d(TAG, "Indexed " + syncedFolder.getLocalPath() + (scanMark > 0 ? " incrementally" : " fully") +
+                ": " + result.getScannedFiles() + " files scanned, " + result.getChangedFiles() + " changed in " +
+                (clock.getCurrentTime() - scanStartMs) + " ms");
         }
+
+        return result;
     }
 
-    public static void insertAllDBEntries(AppPreferences preferences,
-                                          Clock clock,
-                                          boolean skipCustom) {
+    /**
+     * Indexes files of all enabled synced folders. Only files changed since the previous complete scan of a folder
+     * are written to the database.
+     *
+     * @return number of files scanned and changed over all synced folders
+     */
+    public static IndexingResult insertAllDBEntries(AppPreferences preferences,
+                                                    Clock clock,
+                                                    boolean skipCustom) {
         final Context context = MainApp.getAppContext();
         final ContentResolver contentResolver = context.getContentResolver();
         SyncedFolderProvider syncedFolderProvider = new SyncedFolderProvider(contentResolver, preferences, clock);
+        IndexingResult result = new IndexingResult();
 
         for (SyncedFolder syncedFolder : syncedFolderProvider.getSyncedFolders()) {
             if (syncedFolder.isEnabled() && (!skipCustom || syncedFolder.getType() != MediaFolderType.CUSTOM)) {
-                insertAllDBEntriesForSyncedFolder(syncedFolder);
+                result.add(insertAllDBEntriesForSyncedFolder(syncedFolder,
+                                                             clock,
+                                                             preferences.isAutoUploadSampledChecksumEnabled()));
             }
         }
+
+        return result;
+    }
+
+    /**
+     * Walks the synced folder. Files are only indexed if they were modified since the last scan or if one of their
+     * ancestor directories was modified. A directory moved or copied in keeps its old modification time, so only its
+     * new parent reveals the change, which then has to apply to the whole subtree.
+     *
+     * @return true if the whole tree could be walked
+     */
+    private static boolean insertFilesIntoDB(long changedSinceMs, IndexBatch batch) {
+        final SyncedFolder syncedFolder = batch.syncedFolder;
+        final long enabledTimestampMs = syncedFolder.getEnabledTimestampMs();
+
+        try {
+            Path path = Paths.get(syncedFolder.getLocalPath());
+
+            Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+                private final Deque<Boolean> changedDirectories = new ArrayDeque<>();
+
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    boolean parentChanged = !changedDirectories.isEmpty() && changedDirectories.peek();
+                    changedDirectories.push(parentChanged || attrs.lastModifiedTime().toMillis() >= changedSinceMs);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                    changedDirectories.pop();
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                    batch.result.scannedFiles++;
+
+                    long modifiedAt = attrs.lastModifiedTime().toMillis();
+                    boolean changed = modifiedAt >= changedSinceMs ||
+                        (!changedDirectories.isEmpty() && changedDirectories.peek());
+
+                    if (changed && (syncedFolder.isExisting() || modifiedAt >= enabledTimestampMs)) {
+                        batch.add(path.toAbsolutePath().toString(), modifiedAt, attrs.isDirectory());
+                    }
+
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            return true;
+        } catch (IOException e) {
+            Log_OC.e(TAG, "Something went wrong while indexing files for auto upload", e);
+            return false;
+        }
     }
 
-    private static void insertContentIntoDB(Uri uri, SyncedFolder syncedFolder) {
+    /**
+     * Queries the media store for files of the synced folder added or modified since the last scan.
+     *
+     * @return true if the media store could be queried
+     */
+    private static boolean insertContentIntoDB(Uri uri, long changedSinceMs, IndexBatch batch) {
         final Context context = MainApp.getAppContext();
-        final ContentResolver contentResolver = context.getContentResolver();
+        final SyncedFolder syncedFolder = batch.syncedFolder;
 
         Cursor cursor;
         int column_index_data;
         int column_index_date_modified;
 
-        final FilesystemDataProvider filesystemDataProvider = new FilesystemDataProvider(contentResolver);
-
         String contentPath;
         boolean isFolder;
 
@@ -159,22 +236,92 @@ public final class FilesSyncHelper {
 
         long enabledTimestampMs = syncedFolder.getEnabledTimestampMs();
 
-        cursor = context.getContentResolver().query(uri, projection, MediaStore.MediaColumns.DATA + " LIKE ?",
-                                                    new String[]{path}, null);
-
-        if (cursor != null) {
-            column_index_data = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DATA);
-            column_index_date_modified = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DATE_MODIFIED);
-            while (cursor.moveToNext()) {
-                contentPath = cursor.getString(column_index_data);
-                isFolder = new File(contentPath).isDirectory();
-                if (syncedFolder.isExisting() || cursor.getLong(column_index_date_modified) >= enabledTimestampMs / 1000.0) {
-                    filesystemDataProvider.storeOrUpdateFileValue(contentPath,
-                                                                  cursor.getLong(column_index_date_modified), isFolder,
-                                                                  syncedFolder);
-                }
+        String selection = MediaStore.MediaColumns.DATA + " LIKE ?";
+        String[] selectionArgs;
+        if (changedSinceMs > 0) {
+            // media store dates are in seconds
+            String changedSince = Long.toString(changedSinceMs / 1000);
+            selection += " AND (" + MediaStore.MediaColumns.DATE_MODIFIED + " >= ? OR " +
+                MediaStore.MediaColumns.DATE_ADDED + " >= ?)";
+            selectionArgs = new String[]{path, changedSince, changedSince};
+        } else {
+            selectionArgs = new String[]{path};
+        }
+
+        cursor = context.getContentResolver().query(uri, projection, selection, selectionArgs, null);
+
+        if (cursor == null) {
+            return false;
+        }
+
+        column_index_data = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DATA);
+        column_index_date_modified = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DATE_MODIFIED);
+        while (cursor.moveToNext()) {
+            batch.result.scannedFiles++;
+            contentPath = cursor.getString(column_index_data);
+            isFolder = new File(contentPath).isDirectory();
+            if (syncedFolder.isExisting() || cursor.getLong(column_index_date_modified) >= enabledTimestampMs / 1000.0) {
+                batch.add(contentPath, cursor.getLong(column_index_date_modified), isFolder);
             }
-            cursor.close();
+        }
+        cursor.close();
+
+        return true;
+    }
+
+    /**
+     * Collects indexed files and writes them in chunks, each in a single transaction.
+     */
+    private static final class IndexBatch {
+        private final FilesystemDataProvider filesystemDataProvider;
+        private final SyncedFolder syncedFolder;
+        private final IndexingResult result;
+        private final List<FileSystemDataSet> files = new ArrayList<>(INDEX_BATCH_SIZE);
+
+        private IndexBatch(FilesystemDataProvider filesystemDataProvider,
+                           SyncedFolder syncedFolder,
+                           IndexingResult result) {
+            this.filesystemDataProvider = filesystemDataProvider;
+            this.syncedFolder = syncedFolder;
+            this.result = result;
+        }
+
+        private void add(String localPath, long modifiedAt, boolean isFolder) {
+            FileSystemDataSet file = new FileSystemDataSet();
+            file.setLocalPath(localPath);
+            file.setModifiedAt(modifiedAt);
+            file.setFolder(isFolder);
+            files.add(file);
+
+            if (files.size() >= INDEX_BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            result.changedFiles += filesystemDataProvider.storeOrUpdateFileValues(files, syncedFolder);
+            files.clear();
+        }
+    }
+
+    /**
+     * Number of files looked at and number of files added or modified during indexing.
+     */
+    public static final class IndexingResult {
+        private int scannedFiles;
+        private int changedFiles;
+
+        public int getScannedFiles() {
+            return scannedFiles;
+        }
+
+        public int getChangedFiles() {
+            return changedFiles;
+        }
+
+        private void add(IndexingResult other) {
+            scannedFiles += other.scannedFiles;
+            changedFiles += other.changedFiles;
         }
     }
 
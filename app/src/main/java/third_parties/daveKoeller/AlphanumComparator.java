@@ -29,8 +29,13 @@ import com.owncloud.android.lib.resources.files.model.ServerFileInterface;
 import java.io.File;
 import java.io.Serializable;
 import java.math.BigInteger;
+import java.text.CollationKey;
 import java.text.Collator;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /*
  * This is an updated version with enhancements made by Daniel Migowski, Andre Bogus, and David Koelle
@@ -194,4 +199,129 @@ public class AlphanumComparator<T> implements Comparator<T>, Serializable {
 
         return s1Length - s2Length;
     }
+
+    /**
+     * Creates sort keys of strings, to sort many strings without chunking and collating them again on every
+     * comparison. Collation keys of equal chunks, like extensions or common prefixes, are shared between the sort keys.
+     *
+     * A factory is meant to be used for one sort only, from a single thread.
+     */
+    public static final class SortKeyFactory {
+        private final Collator collator = Collator.getInstance();
+        private final Map<String, CollationKey> collationKeys = new HashMap<>();
+
+        public SortKey create(String string) {
+            return new SortKey(string, this);
+        }
+
+        CollationKey getCollationKey(String chunk) {
+            CollationKey key = collationKeys.get(chunk);
+            if (key == null) {
+                key = collator.getCollationKey(chunk);
+                collationKeys.put(chunk, key);
+            }
+            return key;
+        }
+    }
+
+    /**
+     * String split into its chunks once. Numeric chunks are kept without leading zeros, so that they compare by
+     * length and digits instead of parsing {@link BigInteger}s, and collation keys are created at most once per chunk.
+     *
+     * Comparing two keys created by the same factory gives the same result as {@link #compare(String, String)}.
+     */
+    public static final class SortKey implements Comparable<SortKey> {
+        private final int length;
+        private final Chunk[] chunks;
+
+        private SortKey(String string, SortKeyFactory factory) {
+            length = string.length();
+
+            List<Chunk> list = new ArrayList<>();
+            int marker = 0;
+            while (marker < length) {
+                String chunk = getChunk(string, length, marker);
+                marker += chunk.length();
+                list.add(new Chunk(chunk, factory));
+            }
+            chunks = list.toArray(new Chunk[0]);
+        }
+
+        @Override
+        public int compareTo(SortKey other) {
+            int count = Math.min(chunks.length, other.chunks.length);
+            for (int i = 0; i < count; i++) {
+                int result = chunks[i].compareTo(other.chunks[i]);
+                if (result != 0) {
+                    return result;
+                }
+            }
+
+            return length - other.length;
+        }
+    }
+
+    private static final class Chunk {
+        private final String text;
+        private final SortKeyFactory factory;
+        private final boolean digits;
+        private final boolean special;
+        private String value;
+        private int zeroCount;
+        private CollationKey collationKey;
+
+        Chunk(String text, SortKeyFactory factory) {
+            this.text = text;
+            this.factory = factory;
+            digits = isDigit(text.charAt(0));
+            special = isSpecialChar(text.charAt(0));
+
+            if (digits) {
+                while (zeroCount < text.length() && text.charAt(zeroCount) == '0') {
+                    zeroCount++;
+                }
+                value = text.substring(zeroCount);
+            }
+        }
+
+        /**
+         * Only needed if compared to a text chunk, so created on first use
+         */
+        private CollationKey getCollationKey() {
+            if (collationKey == null) {
+                collationKey = factory.getCollationKey(text);
+            }
+            return collationKey;
+        }
+
+        int compareTo(Chunk that) {
+            if (digits && that.digits) {
+                // without leading zeros, the longer number is the larger one
+                int result = Integer.compare(value.length(), that.value.length());
+                if (result == 0) {
+                    result = Integer.signum(value.compareTo(that.value));
+                }
+                if (result == 0) {
+                    result = Integer.compare(zeroCount, that.zeroCount);
+                }
+                return result;
+            } else if (special && that.special) {
+                // special chunks consist of a single char
+                char thisChar = text.charAt(0);
+                char thatChar = that.text.charAt(0);
+                if (thisChar == '.' && thatChar != '.') {
+                    return -1;
+                } else if (thatChar == '.' && thisChar != '.') {
+                    return 1;
+                }
+                return thisChar - thatChar;
+            } else if (special) {
+                return -1;
+            } else if (that.special) {
+                return 1;
+            } else {
+                return getCollationKey().compareTo(that.getCollationKey());
+            }
+        }
+    }
 }
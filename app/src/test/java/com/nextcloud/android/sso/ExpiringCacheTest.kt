@@ -0,0 +1,79 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.android.sso
+
+import com.nextcloud.client.core.Clock
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Before
+import org.junit.Test
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.whenever
+
+class ExpiringCacheTest {
+
+    private companion object {
+        const val TIME_TO_LIVE = 1000L
+        const val MAX_SIZE = 2
+    }
+
+    private var now = 0L
+    private lateinit var clock: Clock
+    private lateinit var cache: ExpiringCache<String, String>
+
+    @Before
+    fun setUp() {
+        clock = mock()
+        whenever(clock.millisSinceBoot).thenAnswer { now }
+        cache = ExpiringCache(clock, TIME_TO_LIVE, MAX_SIZE)
+    }
+
+    @Test
+    fun `values expire after time to live`() {
+        cache.put("key", "value")
+
+        now = TIME_TO_LIVE - 1
+        assertEquals("value", cache.get("key"))
+
+        now = TIME_TO_LIVE
+        assertNull(cache.get("key"))
+    }
+
+    @Test
+    fun `least recently used value is evicted`() {
+        cache.put("key1", "value1")
+        cache.put("key2", "value2")
+        cache.get("key1")
+
+        cache.put("key3", "value3")
+
+        assertEquals("value1", cache.get("key1"))
+        assertNull(cache.get("key2"))
+        assertEquals("value3", cache.get("key3"))
+    }
+
+    @Test
+    fun `removed value is not returned`() {
+        cache.put("key", "value")
+
+        cache.remove("key")
+
+        assertNull(cache.get("key"))
+    }
+}
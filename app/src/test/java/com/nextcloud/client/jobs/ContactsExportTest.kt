@@ -0,0 +1,145 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.client.jobs
+
+import ezvcard.Ezvcard
+import ezvcard.VCardVersion
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class ContactsExportTest {
+
+    private companion object {
+        const val CONTACTS = 5000
+    }
+
+    /**
+     * Stand-in for the contacts provider, exporting vCards like Android does in version 2.1
+     */
+    private class FakeContacts : ContactsExport.Source {
+        val versions = LinkedHashMap<String, Int>()
+        val unreadable = mutableSetOf<String>()
+        var readVCards = 0
+
+        override fun getContacts(): List<ContactsExport.Contact> =
+            versions.map { (lookupKey, version) -> ContactsExport.Contact(lookupKey, "1:$version;") }
+
+        override fun getVCard(lookupKey: String): String? {
+            readVCards++
+            if (lookupKey in unreadable) {
+                return null
+            }
+            val vCard = "BEGIN:VCARD\r\nVERSION:2.1\r\nN:Name;$lookupKey;;;\r\nFN:$lookupKey Name\r\n" +
+                "TEL;CELL:+49 123 ${versions[lookupKey]}\r\nEMAIL;HOME:$lookupKey@example.com\r\nEND:VCARD\r\n"
+            return Ezvcard.write(Ezvcard.parse(vCard).all()).version(VCardVersion.V3_0).go()
+        }
+    }
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private lateinit var contacts: FakeContacts
+    private lateinit var cacheFile: File
+
+    private fun export() = ContactsExport(contacts, cacheFile).export()
+
+    @Before
+    fun setUp() {
+        contacts = FakeContacts()
+        repeat(CONTACTS) { contacts.versions["contact$it"] = 1 }
+        cacheFile = File(folder.root, "cache/account.json")
+    }
+
+    @Test
+    fun `unchanged contacts are not read again`() {
+        val first = export()
+        assertEquals(CONTACTS, first.exportedContacts)
+        assertEquals(CONTACTS, contacts.readVCards)
+
+        contacts.readVCards = 0
+        val second = export()
+
+        assertEquals(0, contacts.readVCards)
+        assertEquals(0, second.exportedContacts)
+        assertEquals(CONTACTS, second.reusedContacts)
+        assertEquals(first.vCards, second.vCards)
+        assertEquals(first.hash, second.hash)
+    }
+
+    @Test
+    fun `changed contacts are read again`() {
+        val first = export()
+
+        contacts.versions["contact42"] = 2
+        contacts.readVCards = 0
+        val second = export()
+
+        assertEquals(1, contacts.readVCards)
+        assertEquals(CONTACTS - 1, second.reusedContacts)
+        assertTrue(second.vCards[42].contains("+49 123 2"))
+        assertNotEquals(first.hash, second.hash)
+    }
+
+    @Test
+    fun `added and removed contacts change the hash`() {
+        val first = export()
+
+        contacts.versions.remove("contact1")
+        val removed = export()
+        assertEquals(CONTACTS - 1, removed.vCards.size)
+        assertNotEquals(first.hash, removed.hash)
+
+        contacts.versions["contact1"] = 1
+        contacts.readVCards = 0
+        val added = export()
+        assertEquals(1, contacts.readVCards)
+        assertNotEquals(removed.hash, added.hash)
+    }
+
+    @Test
+    fun `unreadable contacts are read again by next export`() {
+        contacts.unreadable.add("contact7")
+        assertEquals(CONTACTS - 1, export().vCards.size)
+
+        contacts.unreadable.clear()
+        contacts.readVCards = 0
+        val result = export()
+
+        assertEquals(1, contacts.readVCards)
+        assertEquals(CONTACTS, result.vCards.size)
+    }
+
+    @Test
+    fun `broken cache is ignored`() {
+        val first = export()
+        cacheFile.writeText("{broken")
+
+        contacts.readVCards = 0
+        val second = export()
+
+        assertEquals(CONTACTS, contacts.readVCards)
+        assertEquals(first.hash, second.hash)
+    }
+}
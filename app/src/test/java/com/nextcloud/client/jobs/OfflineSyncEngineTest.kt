@@ -0,0 +1,254 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.client.jobs
+
+import com.owncloud.android.datamodel.OCFile
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.IOException
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+class OfflineSyncEngineTest {
+
+    private companion object {
+        const val CONCURRENCY = 4
+        const val FOLDERS_PER_FOLDER = 8
+        const val FOLDER_DEPTH = 3
+        const val FILES_PER_FOLDER = 40
+        const val CHANGED_FILE_RATIO = 20
+    }
+
+    /**
+     * Stand-in for the WebDAV server and the local database: the server tree is a copy of the stored one with its
+     * own etags, requests are counted.
+     */
+    private inner class StandIn : OfflineSyncEngine.Server, OfflineSyncEngine.Storage {
+        val serverEtags = ConcurrentHashMap<String, String>()
+        val stored = ConcurrentHashMap<String, OCFile>()
+        val children = ConcurrentHashMap<String, MutableList<String>>()
+        val requests = AtomicInteger()
+        val synchronized: MutableSet<String> = Collections.synchronizedSet(mutableSetOf())
+        var failingPath: String? = null
+        private var nextId = 0L
+
+        fun addFolder(path: String, parent: String?) {
+            stored[path] = OCFile(path).apply {
+                setFolder()
+                fileId = ++nextId
+                etagOnServer = "e0"
+            }
+            serverEtags[path] = "e0"
+            children[path] = mutableListOf()
+            parent?.let { children.getValue(it).add(path) }
+        }
+
+        fun addFile(path: String, parent: String) {
+            stored[path] = OCFile(path).apply {
+                fileId = ++nextId
+                etag = "e0"
+            }
+            serverEtags[path] = "e0"
+            children.getValue(parent).add(path)
+        }
+
+        /**
+         * Changes a file on the server, which changes the etags of all its parent folders
+         */
+        fun changeOnServer(path: String) {
+            serverEtags[path] = "e1"
+            var parent = path
+            while (parent != OCFile.ROOT_PATH) {
+                parent = parent.substring(0, parent.dropLast(1).lastIndexOf('/') + 1)
+                serverEtags[parent] = "e1"
+            }
+        }
+
+        private fun request() {
+            requests.incrementAndGet()
+        }
+
+        private fun serverFile(path: String): OCFile? = serverEtags[path]?.let { etag ->
+            OCFile(path).apply {
+                if (path.endsWith('/')) setFolder()
+                this.etag = etag
+            }
+        }
+
+        override fun list(remotePath: String): List<OCFile>? {
+            request()
+            if (remotePath == failingPath) {
+                throw IOException("failing")
+            }
+            val folder = serverFile(remotePath) ?: return null
+            return listOf(folder) + children.getValue(remotePath).mapNotNull { serverFile(it) }
+        }
+
+        override fun synchronize(localFile: OCFile, serverFile: OCFile?) {
+            // the download
+            request()
+            synchronized.add(localFile.remotePath)
+        }
+
+        /**
+         * Synchronization as done before: etag check per folder, then a lookup and synchronization per file
+         */
+        fun legacySynchronize(path: String) {
+            request()
+            val folder = stored.getValue(path)
+            val etag = serverEtags.getValue(path)
+            if (etag == folder.etagOnServer) {
+                return
+            }
+            for (child in children.getValue(path)) {
+                if (!child.endsWith('/')) {
+                    request()
+                    if (serverEtags[child] != stored.getValue(child).etag) {
+                        synchronize(stored.getValue(child), serverFile(child))
+                    }
+                }
+            }
+            children.getValue(path).filter { it.endsWith('/') }.forEach { legacySynchronize(it) }
+            folder.etagOnServer = etag
+        }
+
+        override fun getFolder(remotePath: String): OCFile? = stored[remotePath]
+
+        override fun getFolderContent(folder: OCFile): List<OCFile> =
+            children.getValue(folder.remotePath).map { stored.getValue(it) }
+
+        override fun hasLocalContent(folder: OCFile): Boolean = true
+
+        override fun isDownloaded(file: OCFile): Boolean = true
+
+        override fun isChangedLocally(file: OCFile): Boolean = false
+
+        override fun removeFolder(folder: OCFile) {
+            stored.remove(folder.remotePath)
+        }
+
+        override fun saveEtagsOnServer(etagsOnServer: Map<Long, String>) {
+            stored.values.forEach { file -> etagsOnServer[file.fileId]?.let { file.etagOnServer = it } }
+        }
+    }
+
+    private lateinit var standIn: StandIn
+
+    private fun createTree(path: String, depth: Int) {
+        repeat(FILES_PER_FOLDER) {
+            standIn.addFile("${path}file$it.jpg", path)
+        }
+        if (depth < FOLDER_DEPTH) {
+            repeat(FOLDERS_PER_FOLDER) {
+                val folder = "${path}folder$it/"
+                standIn.addFolder(folder, path)
+                createTree(folder, depth + 1)
+            }
+        }
+    }
+
+    private fun sut() = OfflineSyncEngine(CONCURRENCY, standIn, standIn) { false }
+
+    @Before
+    fun setUp() {
+        standIn = StandIn()
+        standIn.addFolder(OCFile.ROOT_PATH, null)
+        createTree(OCFile.ROOT_PATH, 0)
+    }
+
+    @Test
+    fun `unchanged tree costs a single listing`() {
+        val result = sut().synchronize()
+
+        assertTrue(result.complete)
+        assertEquals(1, standIn.requests.get())
+        assertTrue(standIn.synchronized.isEmpty())
+    }
+
+    @Test
+    fun `only changed files are synchronized and only changed folders listed`() {
+        val changed = setOf("/folder1/folder2/file3.jpg", "/folder1/folder2/folder0/file0.jpg", "/file1.jpg")
+        changed.forEach { standIn.changeOnServer(it) }
+
+        val result = sut().synchronize()
+
+        assertTrue(result.complete)
+        assertEquals(changed, standIn.synchronized)
+        // root, folder1, folder1/folder2, folder1/folder2/folder0
+        assertEquals(4, result.listings)
+
+        // etags are stored, so the next run finds nothing to do
+        standIn.requests.set(0)
+        sut().synchronize()
+        assertEquals(1, standIn.requests.get())
+    }
+
+    @Test
+    fun `folders removed on the server are removed`() {
+        standIn.changeOnServer("/folder3/folder0/")
+        standIn.serverEtags.remove("/folder3/folder0/")
+
+        sut().synchronize()
+
+        assertFalse(standIn.stored.containsKey("/folder3/folder0/"))
+    }
+
+    @Test
+    fun `failed run stores no etags`() {
+        standIn.changeOnServer("/folder1/file0.jpg")
+        standIn.changeOnServer("/folder2/file0.jpg")
+        standIn.failingPath = "/folder2/"
+
+        val result = sut().synchronize()
+
+        assertFalse(result.complete)
+        assertEquals("e0", standIn.stored.getValue(OCFile.ROOT_PATH).etagOnServer)
+        assertEquals("e0", standIn.stored.getValue("/folder1/").etagOnServer)
+    }
+
+    @Test
+    fun `changed folders cost one listing each instead of a request per file`() {
+        // a few changed files in every folder
+        standIn.stored.keys.filter { it.endsWith(".jpg") }.sorted().forEachIndexed { i, path ->
+            if (i % CHANGED_FILE_RATIO == 0) {
+                standIn.changeOnServer(path)
+            }
+        }
+        val changedFiles = standIn.stored.keys.count { it.endsWith(".jpg") && standIn.serverEtags[it] == "e1" }
+        val changedFolders = standIn.stored.keys.count { it.endsWith('/') && standIn.serverEtags[it] == "e1" }
+
+        standIn.legacySynchronize(OCFile.ROOT_PATH)
+        val legacyRequests = standIn.requests.getAndSet(0)
+        assertEquals(changedFiles, standIn.synchronized.size)
+
+        // same changes again for the engine
+        standIn.stored.values.forEach { it.etagOnServer = "e0" }
+        standIn.synchronized.clear()
+        val result = sut().synchronize()
+
+        assertTrue(result.complete)
+        assertEquals(changedFiles, standIn.synchronized.size)
+        assertEquals(changedFolders + changedFiles, standIn.requests.get())
+        assertTrue(standIn.requests.get() * 10 < legacyRequests)
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.client.logger
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.atomic.AtomicInteger
+
+class BoundedMpscQueueTest {
+
+    private companion object {
+        const val CAPACITY = 3
+        const val PRODUCERS = 4
+        const val ITEMS_PER_PRODUCER = 100000
+        const val CONCURRENT_CAPACITY = 64
+        const val TIMEOUT_MS = 30000L
+    }
+
+    @Test
+    fun `items are polled in order of offers`() {
+        val sut = BoundedMpscQueue<Int>(CAPACITY)
+
+        assertTrue(sut.isEmpty)
+        assertTrue(sut.offer(1))
+        assertTrue(sut.offer(2))
+        assertFalse(sut.isEmpty)
+
+        assertEquals(1, sut.poll())
+        assertEquals(2, sut.poll())
+        assertNull(sut.poll())
+        assertTrue(sut.isEmpty)
+    }
+
+    @Test
+    fun `offer fails when full and succeeds after poll`() {
+        val sut = BoundedMpscQueue<Int>(CAPACITY)
+        repeat(CAPACITY) { assertTrue(sut.offer(it)) }
+
+        assertFalse(sut.offer(CAPACITY))
+
+        assertEquals(0, sut.poll())
+        assertTrue(sut.offer(CAPACITY))
+        assertEquals(listOf(1, 2, CAPACITY), List(CAPACITY) { sut.poll() })
+    }
+
+    @Test
+    fun `concurrent producers lose no item`() {
+        // GIVEN
+        //      many producers offer into a small queue
+        //      single consumer polls
+        val sut = BoundedMpscQueue<Long>(CONCURRENT_CAPACITY)
+        val rejected = AtomicInteger()
+        val producers = (0 until PRODUCERS).map { producer ->
+            Thread {
+                for (i in 0 until ITEMS_PER_PRODUCER) {
+                    if (!sut.offer(producer.toLong() * ITEMS_PER_PRODUCER + i)) {
+                        rejected.incrementAndGet()
+                    }
+                }
+            }
+        }
+
+        // WHEN
+        //      all producers are done
+        val received = mutableListOf<Long>()
+        producers.forEach { it.start() }
+        val deadline = System.currentTimeMillis() + TIMEOUT_MS
+        while (producers.any { it.isAlive } || !sut.isEmpty) {
+            sut.poll()?.let { received.add(it) } ?: Thread.yield()
+            assertTrue("timeout", System.currentTimeMillis() < deadline)
+        }
+
+        // THEN
+        //      every item is either received exactly once or rejected
+        //      items of a single producer keep their order
+        assertEquals(PRODUCERS * ITEMS_PER_PRODUCER, received.size + rejected.get())
+        assertEquals(received.size, received.toSet().size)
+        received.groupBy { it / ITEMS_PER_PRODUCER }.values.forEach { items ->
+            assertEquals(items.sorted(), items)
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.client.logger
+
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+import java.util.Date
+
+class LogFilesSnapshotTest {
+
+    private companion object {
+        const val FILE_SIZE = 1024L
+        const val THREE_LOG_FILES = 3
+        const val ENTRIES_PER_FILE = 3
+        const val LARGE_FILE_SIZE = 1024L * 1024L
+        const val LARGE_ENTRIES = 40000
+        const val PAGE_SIZE = 50
+    }
+
+    private lateinit var logDir: File
+
+    private fun entry(message: String, tag: String = "tag", timestamp: Long = 0) =
+        LogEntry(Date(timestamp), Level.DEBUG, tag, message)
+
+    private fun writeLogFile(name: String, vararg lines: String) {
+        File(logDir, name).writeText(lines.joinToString("\n"), Charsets.UTF_8)
+    }
+
+    @Before
+    fun setUp() {
+        logDir = Files.createTempDirectory("logger-test-").toFile()
+    }
+
+    @Test
+    fun `entries of all files are read newest first`() {
+        // GIVEN
+        //      multiple log files exist
+        val entries = List(ENTRIES_PER_FILE * 4) { entry("message $it", timestamp = it * 1000L) }
+        val files = listOf("log.txt.2", "log.txt.1", "log.txt.0", "log.txt")
+        files.forEachIndexed { i, name ->
+            val fileEntries = entries.subList(i * ENTRIES_PER_FILE, (i + 1) * ENTRIES_PER_FILE)
+            writeLogFile(name, *fileEntries.map { it.toString() }.toTypedArray())
+        }
+
+        // WHEN
+        //      snapshot is opened
+        val snapshot = FileLogHandler(logDir, "log.txt", FILE_SIZE).openSnapshot(THREE_LOG_FILES)
+
+        // THEN
+        //      all entries are read in reverse order
+        //      log size is reported
+        assertEquals(entries.reversed(), List(snapshot.size) { snapshot[it] })
+        assertEquals(files.sumOf { File(logDir, it).length() }, snapshot.logSize)
+    }
+
+    @Test
+    fun `lines not being log entries are skipped`() {
+        // GIVEN
+        //      log file contains invalid lines
+        writeLogFile(
+            "log.txt",
+            entry("first").toString(),
+            "",
+            "garbage",
+            "1970-01-01 00:00:00;D;tag;message",
+            entry("second").toString()
+        )
+
+        // WHEN
+        //      snapshot is opened
+        val snapshot = FileLogHandler(logDir, "log.txt", FILE_SIZE).openSnapshot()
+
+        // THEN
+        //      only log entries are listed
+        assertEquals(listOf(entry("second"), entry("first")), List(snapshot.size) { snapshot[it] })
+    }
+
+    @Test
+    fun `entries are matched by tag or message ignoring case`() {
+        // GIVEN
+        //      log contains multiline message
+        val entries = listOf(
+            entry("first message", tag = "Upload"),
+            entry("second\nline", tag = "Download"),
+            entry("message with ; separator", tag = "Sync")
+        )
+        writeLogFile("log.txt", *entries.map { it.toString() }.toTypedArray())
+        val snapshot = FileLogHandler(logDir, "log.txt", FILE_SIZE).openSnapshot()
+
+        // WHEN
+        //      entries are matched
+        fun matching(pattern: String) = (0 until snapshot.size).filter { snapshot.matches(it, pattern) }
+
+        // THEN
+        //      tag and decoded message are matched
+        assertEquals(listOf(2), matching("upload"))
+        assertEquals(listOf(1), matching("second\nLINE"))
+        assertEquals(listOf(0), matching("; separator"))
+        assertEquals(listOf(0, 2), matching("MESSAGE"))
+        assertEquals(emptyList<Int>(), matching("tag"))
+    }
+
+    @Test
+    fun `snapshot does not change when logger writes`() {
+        // GIVEN
+        //      snapshot of written log is opened
+        val handler = FileLogHandler(logDir, "log.txt", FILE_SIZE)
+        handler.open()
+        handler.write(entry("first").toString() + "\n")
+        val snapshot = handler.openSnapshot()
+        assertEquals(1, snapshot.size)
+
+        // WHEN
+        //      more entries are written
+        //      logs are rotated and deleted
+        handler.write(entry("second").toString() + "\n")
+        handler.flush()
+        handler.rotateLogs()
+        handler.deleteAll()
+
+        // THEN
+        //      snapshot still reads the first entry
+        assertEquals(1, snapshot.size)
+        assertEquals(entry("first"), snapshot[0])
+        assertEquals(0, handler.openSnapshot().size)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun `open snapshot - negative count is illegal`() {
+        FileLogHandler(logDir, "log.txt", FILE_SIZE).openSnapshot(-1)
+    }
+
+    @Test
+    fun `snapshot of full log files has same entries as loading them`() {
+        // GIVEN
+        //      log files are full
+        val handler = FileLogHandler(logDir, "log.txt", LARGE_FILE_SIZE)
+        handler.open()
+        repeat(LARGE_ENTRIES) {
+            handler.write(entry("message number $it", timestamp = it.toLong()).toString() + "\n")
+        }
+        handler.close()
+
+        // WHEN
+        //      all entries are loaded and parsed
+        //      snapshot is opened and first page is read
+        val entries = handler.loadLogFiles().lines.mapNotNull { LogEntry.parse(it) }
+        val snapshot = handler.openSnapshot()
+        val page = List(PAGE_SIZE) { snapshot[it] }
+
+        // THEN
+        //      same entries are available, newest first
+        assertEquals(entries.size, snapshot.size)
+        assertEquals(entries.takeLast(PAGE_SIZE).reversed(), page)
+    }
+}
@@ -38,6 +38,7 @@ import org.mockito.kotlin.capture
 import org.mockito.kotlin.doAnswer
 import org.mockito.kotlin.inOrder
 import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
 import org.mockito.kotlin.spy
 import org.mockito.kotlin.times
 import org.mockito.kotlin.verify
@@ -57,6 +58,10 @@ class LoggerTest {
         const val EMPTY_LONG = 0L
         const val TIMEOUT = 3000L
         const val MESSAGE_COUNT = 3
+        const val PRODUCERS = 4
+        const val CONCURRENT_MESSAGES = 10000
+        const val CONCURRENT_QUEUE_CAPACITY = 1000
+        const val CONCURRENT_FILE_SIZE = 100L * 1024 * 1024
     }
 
     private lateinit var clock: Clock
@@ -96,7 +101,7 @@ class LoggerTest {
             writerThreadIds.add(Thread.currentThread().id)
             it.callRealMethod()
             latch.countDown()
-        }.whenever(logHandler).close()
+        }.whenever(logHandler).flush()
 
         // GIVEN
         //      logger event loop is running
@@ -128,7 +133,7 @@ class LoggerTest {
         val latch = CountDownLatch(LATCH_INIT)
         doAnswer { it.callRealMethod(); latch.countDown() }.whenever(logHandler).open()
         doAnswer { it.callRealMethod(); latch.countDown() }.whenever(logHandler).write(any())
-        doAnswer { it.callRealMethod(); latch.countDown() }.whenever(logHandler).close()
+        doAnswer { it.callRealMethod(); latch.countDown() }.whenever(logHandler).flush()
 
         // GIVEN
         //      logger event loop is running
@@ -141,10 +146,10 @@ class LoggerTest {
         // THEN
         //      log handler opens log file
         //      log handler writes entry
-        //      log handler closes log file
+        //      log handler flushes log file, but keeps it opened
         //      no lost messages
         val called = latch.await(LATCH_WAIT, TimeUnit.SECONDS)
-        assertTrue("Expected open(), write() and close() calls on bg thread", called)
+        assertTrue("Expected open(), write() and flush() calls on bg thread", called)
         val inOrder = inOrder(logHandler)
         inOrder.verify(logHandler).open()
         inOrder.verify(logHandler).write(
@@ -152,7 +157,9 @@ class LoggerTest {
                 tag in this && message in this
             }
         )
-        inOrder.verify(logHandler).close()
+        inOrder.verify(logHandler).flush()
+        verify(logHandler, never()).close()
+        assertTrue(logHandler.isOpened)
         assertFalse(logger.lostEntries)
     }
 
@@ -210,6 +217,40 @@ class LoggerTest {
         assertTrue("message 3" in logsCaptor.value[2].message)
     }
 
+    @Test
+    fun `logs snapshot is opened in background thread and posted to main thread`() {
+        val latch = CountDownLatch(1)
+        whenever(osHandler.post(any())).thenAnswer {
+            (it.arguments[0] as Runnable).run()
+            true
+        }
+
+        // GIVEN
+        //      logger event loop is running
+        //      messages are logged
+        logger.start()
+        logger.d("tag", "message 1")
+        logger.d("tag", "message 2")
+        logger.d("tag", "message 3")
+
+        // WHEN
+        //      logs snapshot is requested
+        var snapshot: LogsSnapshot? = null
+        logger.open {
+            snapshot = it
+            latch.countDown()
+        }
+        assertTrue("Response not posted", latch.await(LATCH_WAIT, TimeUnit.SECONDS))
+
+        // THEN
+        //      snapshot is opened by the logger thread
+        //      snapshot contains logged messages, newest first
+        verify(logHandler).openSnapshot(any())
+        assertEquals(MESSAGE_COUNT, snapshot?.size)
+        assertEquals("message 3", snapshot?.get(0)?.message)
+        assertEquals("message 1", snapshot?.get(2)?.message)
+    }
+
     @Test
     fun `log level can be decoded from tags`() {
         Level.values().forEach {
@@ -337,4 +378,74 @@ class LoggerTest {
             join(TIMEOUT)
         }
     }
+
+    @Test
+    fun `logging does not block when writer is slow`() {
+        val writing = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        doAnswer {
+            writing.countDown()
+            release.await(LATCH_WAIT, TimeUnit.SECONDS)
+            it.callRealMethod()
+        }.whenever(logHandler).write(any())
+
+        // GIVEN
+        //      logger is running
+        //      log handler is blocked
+        logger.start()
+        logger.d("tag", "first message")
+        assertTrue(writing.await(LATCH_WAIT, TimeUnit.SECONDS))
+
+        // WHEN
+        //      more messages are logged than queue can hold
+        for (i in 0..QUEUE_CAPACITY * 2) {
+            logger.d("tag", "Message $i")
+        }
+
+        // THEN
+        //      logging returned while the handler is still blocked
+        //      overflow is counted
+        assertEquals(1L, release.count)
+        assertTrue(logger.lostEntries)
+        release.countDown()
+    }
+
+    @Test
+    fun `concurrent logging writes or counts every message`() {
+        val tempDir = Files.createTempDirectory("log-concurrent").toFile()
+        val handler = FileLogHandler(tempDir, "log.txt", CONCURRENT_FILE_SIZE)
+        val sut = LoggerImpl(clock, handler, osHandler, CONCURRENT_QUEUE_CAPACITY)
+        whenever(osHandler.post(any())).thenAnswer {
+            (it.arguments[0] as Runnable).run()
+            true
+        }
+
+        // GIVEN
+        //      logger is running
+        sut.start()
+
+        // WHEN
+        //      multiple threads log concurrently
+        val producers = (0 until PRODUCERS).map { producer ->
+            Thread {
+                for (i in 0 until CONCURRENT_MESSAGES) {
+                    sut.d("concurrent", "producer $producer message $i")
+                }
+            }.apply { start() }
+        }
+        producers.forEach { it.join(TIMEOUT * 10) }
+
+        val loaded = CountDownLatch(1)
+        var written = 0
+        sut.load { entries, _ ->
+            written = entries.count { it.tag == "concurrent" }
+            loaded.countDown()
+        }
+        assertTrue(loaded.await(TIMEOUT * 10, TimeUnit.MILLISECONDS))
+
+        // THEN
+        //      every message is either written or counted as lost
+        assertTrue(written > 0)
+        assertTrue(written == PRODUCERS * CONCURRENT_MESSAGES || sut.lostEntries)
+    }
 }
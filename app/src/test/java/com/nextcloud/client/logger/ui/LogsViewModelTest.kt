@@ -26,12 +26,13 @@ import com.nextcloud.client.core.ManualAsyncRunner
 import com.nextcloud.client.logger.Level
 import com.nextcloud.client.logger.LogEntry
 import com.nextcloud.client.logger.LogsRepository
+import com.nextcloud.client.logger.LogsSnapshot
 import com.nextcloud.client.logger.OnLogsLoaded
+import com.nextcloud.client.logger.OnLogsOpened
 import org.junit.Assert.assertEquals
 import org.junit.Assert.assertFalse
 import org.junit.Assert.assertNotNull
 import org.junit.Assert.assertNull
-import org.junit.Assert.assertSame
 import org.junit.Assert.assertTrue
 import org.junit.Before
 import org.junit.Rule
@@ -63,12 +64,24 @@ class LogsViewModelTest {
         const val QUERY_TIME = 4
     }
 
+    class TestLogsSnapshot(private val entries: List<LogEntry>, override val logSize: Long) : LogsSnapshot {
+        val matchedIndices = mutableListOf<Int>()
+
+        override val size: Int get() = entries.size
+        override fun get(index: Int): LogEntry = entries[index]
+        override fun matches(index: Int, pattern: String): Boolean {
+            matchedIndices.add(index)
+            return entries[index].tag.contains(pattern, true) || entries[index].message.contains(pattern, true)
+        }
+    }
+
     class TestLogRepository : LogsRepository {
         var loadRequestCount = 0
-        var onLoadedCallback: OnLogsLoaded? = null
+        var onLoadedCallback: OnLogsOpened? = null
 
         override val lostEntries: Boolean = false
-        override fun load(onLoaded: OnLogsLoaded) { this.onLoadedCallback = onLoaded; loadRequestCount++ }
+        override fun load(onLoaded: OnLogsLoaded) { /* no implementation needed */ }
+        override fun open(onOpened: OnLogsOpened) { this.onLoadedCallback = onOpened; loadRequestCount++ }
         override fun deleteAll() { /* no implementation neeeded */
         }
     }
@@ -136,14 +149,14 @@ class LogsViewModelTest {
 
             // WHEN
             //      logs loading finishes
-            repository.onLoadedCallback?.invoke(TEST_LOG_ENTRIES, TEST_LOG_SIZE_BYTES)
+            repository.onLoadedCallback?.invoke(TestLogsSnapshot(TEST_LOG_ENTRIES, TEST_LOG_SIZE_BYTES))
 
             // THEN
             //      logs are displayed
             //      logs size is displyed
             //      status is displayed
             assertFalse(vm.isLoading.value!!)
-            assertSame(vm.entries.value, TEST_LOG_ENTRIES)
+            assertEquals(TEST_LOG_ENTRIES, vm.entries.value)
             assertNotNull(vm.status.value)
         }
 
@@ -169,10 +182,13 @@ class LogsViewModelTest {
 
     class Filtering : Fixture() {
 
+        private lateinit var snapshot: TestLogsSnapshot
+
         @Before
         fun setUp() {
             vm.load()
-            repository.onLoadedCallback?.invoke(TEST_LOG_ENTRIES, TEST_LOG_SIZE_BYTES)
+            snapshot = TestLogsSnapshot(TEST_LOG_ENTRIES, TEST_LOG_SIZE_BYTES)
+            repository.onLoadedCallback?.invoke(snapshot)
             assertFalse(vm.isLoading.value!!)
             assertEquals(TEST_LOG_ENTRIES.size, vm.entries.value?.size)
         }
@@ -243,5 +259,46 @@ class LogsViewModelTest {
             )
             assertTrue("Status should contain query time in ms", statusArgs[QUERY_TIME] is Long)
         }
+
+        @Test
+        fun `longer pattern is matched against previously filtered entries only`() {
+            // GIVEN
+            //      logs were filtered
+            vm.filter("entry")
+            runner.runAll()
+            vm.filter("entry 2")
+            runner.runAll()
+            assertEquals(listOf(TEST_LOG_ENTRIES[1]), vm.entries.value)
+
+            // WHEN
+            //      pattern is extended
+            snapshot.matchedIndices.clear()
+            vm.filter("entry 23")
+            runner.runAll()
+
+            // THEN
+            //      only entries matching the previous pattern are checked
+            assertEquals(listOf(1), snapshot.matchedIndices)
+            assertEquals(0, vm.entries.value?.size)
+        }
+
+        @Test
+        fun `shorter pattern is matched against all entries`() {
+            // GIVEN
+            //      logs were filtered
+            vm.filter("entry 2")
+            runner.runAll()
+
+            // WHEN
+            //      pattern is shortened
+            snapshot.matchedIndices.clear()
+            vm.filter("entry")
+            runner.runAll()
+
+            // THEN
+            //      all entries are checked
+            assertEquals(listOf(0, 1, 2), snapshot.matchedIndices)
+            assertEquals(TEST_LOG_ENTRIES, vm.entries.value)
+        }
     }
 }
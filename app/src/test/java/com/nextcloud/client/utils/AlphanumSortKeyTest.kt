@@ -0,0 +1,82 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.client.utils
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import third_parties.daveKoeller.AlphanumComparator
+import kotlin.random.Random
+
+class AlphanumSortKeyTest {
+
+    private companion object {
+        const val SEED = 42
+        const val RANDOM_NAMES = 5000
+        const val MAX_LENGTH = 16
+        const val PAIRS = 100000
+
+        // digits with leading zeros, special chars including '.', mixed case, umlauts and CJK
+        const val ALPHABET = "aAbBzZ0019 .-_()[]~äÄöÖüÜéÉ一十七"
+
+        val PREFIXES = listOf("IMG_", "VID_", "Screenshot_", "Document ", "Scan ", "Report-", "Übersicht ", "résumé")
+    }
+
+    private fun randomNames(random: Random, count: Int): List<String> = List(count) {
+        String(CharArray(random.nextInt(MAX_LENGTH)) { ALPHABET[random.nextInt(ALPHABET.length)] })
+    }
+
+    private fun folderNames(random: Random, count: Int): List<String> = List(count) {
+        val prefix = PREFIXES[random.nextInt(PREFIXES.size)]
+        val date = 20200000 + random.nextInt(30000)
+        val suffix = if (random.nextBoolean()) ".jpg" else " (${random.nextInt(20)}).pdf"
+        "$prefix${date}_${random.nextInt(240000)}$suffix"
+    }
+
+    private fun sortByKeys(names: List<String>): List<String> {
+        val sortKeys = AlphanumComparator.SortKeyFactory()
+        return names.map { it to sortKeys.create(it) }.sortedWith { o1, o2 -> o1.second.compareTo(o2.second) }
+            .map { it.first }
+    }
+
+    @Test
+    fun keysCompareLikeComparator() {
+        val random = Random(SEED)
+        val names = randomNames(random, RANDOM_NAMES) + listOf("", "0", "00", "000", "01", "1", "10", ".", "..", "a.")
+        val sortKeys = AlphanumComparator.SortKeyFactory()
+        val keys = names.associateWith { sortKeys.create(it) }
+
+        repeat(PAIRS) {
+            val s1 = names[random.nextInt(names.size)]
+            val s2 = names[random.nextInt(names.size)]
+            assertEquals(
+                "'$s1' <> '$s2'",
+                Integer.signum(AlphanumComparator.compare(s1, s2)),
+                Integer.signum(keys.getValue(s1).compareTo(keys.getValue(s2)))
+            )
+        }
+    }
+
+    @Test
+    fun sortingByKeysGivesSameOrder() {
+        val random = Random(SEED)
+        listOf(randomNames(random, RANDOM_NAMES), folderNames(random, RANDOM_NAMES)).forEach { names ->
+            assertEquals(names.sortedWith(AlphanumComparator()), sortByKeys(names))
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class DecryptedFolderMetadataCacheTest {
+
+    private companion object {
+        const val FOLDER_ID = "00000042ocabcdef"
+        const val ETAG = "5f8a2c1"
+        const val NEW_ETAG = "5f8a2c2"
+        const val ENCRYPTED = "{\"metadata\":{\"metadataKeys\":{\"0\":\"abc\"}},\n\"files\":{}}"
+    }
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private lateinit var dir: File
+    private lateinit var sut: DecryptedFolderMetadataCache
+
+    @Before
+    fun setUp() {
+        dir = File(folder.root, "metadata")
+        sut = DecryptedFolderMetadataCache(dir)
+    }
+
+    @Test
+    fun metadataIsCachedInMemoryByEtag() {
+        val metadata = DecryptedFolderMetadata()
+
+        sut.put(FOLDER_ID, ETAG, metadata)
+
+        assertSame(metadata, sut.get(FOLDER_ID, ETAG))
+        assertNull(sut.get(FOLDER_ID, NEW_ETAG))
+        assertNull(sut.get("other", ETAG))
+        assertEquals(1, sut.memoryHitCount)
+    }
+
+    @Test
+    fun encryptedMetadataSurvivesNewInstance() {
+        sut.putEncrypted(FOLDER_ID, ETAG, ENCRYPTED)
+
+        val reopened = DecryptedFolderMetadataCache(dir)
+
+        assertEquals(ENCRYPTED, reopened.getEncrypted(FOLDER_ID, ETAG))
+        assertNull(reopened.getEncrypted(FOLDER_ID, NEW_ETAG))
+        assertEquals(1, reopened.diskHitCount)
+        assertEquals(1, reopened.missCount)
+    }
+
+    @Test
+    fun newEtagReplacesEncryptedMetadata() {
+        sut.putEncrypted(FOLDER_ID, ETAG, ENCRYPTED)
+        sut.putEncrypted(FOLDER_ID, NEW_ETAG, "new")
+
+        assertNull(sut.getEncrypted(FOLDER_ID, ETAG))
+        assertEquals("new", sut.getEncrypted(FOLDER_ID, NEW_ETAG))
+        assertEquals(1, dir.listFiles()?.size)
+    }
+
+    @Test
+    fun removeDropsBothLayers() {
+        sut.put(FOLDER_ID, ETAG, DecryptedFolderMetadata())
+        sut.putEncrypted(FOLDER_ID, ETAG, ENCRYPTED)
+
+        sut.remove(FOLDER_ID)
+
+        assertNull(sut.get(FOLDER_ID, ETAG))
+        assertNull(sut.getEncrypted(FOLDER_ID, ETAG))
+    }
+
+    @Test
+    fun clearDropsAllFolders() {
+        sut.put(FOLDER_ID, ETAG, DecryptedFolderMetadata())
+        sut.putEncrypted(FOLDER_ID, ETAG, ENCRYPTED)
+        sut.putEncrypted("other", ETAG, ENCRYPTED)
+
+        sut.clear()
+
+        assertNull(sut.get(FOLDER_ID, ETAG))
+        assertNull(sut.getEncrypted(FOLDER_ID, ETAG))
+        assertNull(sut.getEncrypted("other", ETAG))
+        assertEquals(0, dir.listFiles()?.size)
+    }
+
+    @Test
+    fun idIsNoPath() {
+        sut.putEncrypted("../escape", ETAG, ENCRYPTED)
+
+        assertEquals(listOf(dir), folder.root.listFiles()?.toList())
+        assertEquals(ENCRYPTED, sut.getEncrypted("../escape", ETAG))
+    }
+}
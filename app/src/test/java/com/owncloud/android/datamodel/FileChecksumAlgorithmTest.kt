@@ -0,0 +1,122 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.BufferedInputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.RandomAccessFile
+import java.util.Random
+import java.util.zip.CRC32
+
+class FileChecksumAlgorithmTest {
+
+    private companion object {
+        const val MB = 1024L * 1024L
+        const val GB = 1024L * MB
+        const val SEED = 42L
+    }
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private fun randomFile(size: Int): File {
+        val bytes = ByteArray(size)
+        Random(SEED).nextBytes(bytes)
+        return folder.newFile().apply { writeBytes(bytes) }
+    }
+
+    private fun legacyChecksum(file: File): Long {
+        BufferedInputStream(FileInputStream(file)).use { inputStream ->
+            val crc = CRC32()
+            var b: Int
+            while (inputStream.read().also { b = it } != -1) {
+                crc.update(b)
+            }
+            return crc.value
+        }
+    }
+
+    private fun patch(file: File, position: Long) {
+        RandomAccessFile(file, "rw").use {
+            it.seek(position)
+            it.write(it.read() xor 0xff)
+        }
+    }
+
+    @Test
+    fun crc32MatchesLegacyChecksum() {
+        val file = randomFile((3 * FileChecksumAlgorithm.BUFFER_SIZE) + 17)
+        assertEquals(legacyChecksum(file), FileChecksumAlgorithm.CRC32.checksum(file.absolutePath))
+    }
+
+    @Test
+    fun unreadableFile() {
+        assertEquals(-1L, FileChecksumAlgorithm.CRC32.checksum(File(folder.root, "missing").absolutePath))
+        assertEquals(-1L, FileChecksumAlgorithm.SAMPLED_CRC32.checksum(File(folder.root, "missing").absolutePath))
+    }
+
+    @Test
+    fun sampledChecksumDetectsChangesInHeadAndTail() {
+        val size = 8 * MB
+        val file = randomFile(size.toInt())
+        val original = FileChecksumAlgorithm.SAMPLED_CRC32.checksum(file.absolutePath)
+
+        patch(file, 10)
+        val headChanged = FileChecksumAlgorithm.SAMPLED_CRC32.checksum(file.absolutePath)
+        assertNotEquals(original, headChanged)
+
+        patch(file, size - 10)
+        val tailChanged = FileChecksumAlgorithm.SAMPLED_CRC32.checksum(file.absolutePath)
+        assertNotEquals(headChanged, tailChanged)
+
+        // middle is not sampled
+        patch(file, size / 2)
+        assertEquals(tailChanged, FileChecksumAlgorithm.SAMPLED_CRC32.checksum(file.absolutePath))
+
+        RandomAccessFile(file, "rw").use { it.setLength(size + 1) }
+        assertNotEquals(tailChanged, FileChecksumAlgorithm.SAMPLED_CRC32.checksum(file.absolutePath))
+    }
+
+    @Test
+    fun sampledChecksumOfSmallFiles() {
+        val empty = folder.newFile()
+        val small = randomFile(100)
+        assertNotEquals(
+            FileChecksumAlgorithm.SAMPLED_CRC32.checksum(empty.absolutePath),
+            FileChecksumAlgorithm.SAMPLED_CRC32.checksum(small.absolutePath)
+        )
+    }
+
+    @Test
+    fun algorithmSelection() {
+        assertEquals(FileChecksumAlgorithm.CRC32, FileChecksumAlgorithm.forSize(10 * MB, true))
+        assertEquals(FileChecksumAlgorithm.SAMPLED_CRC32, FileChecksumAlgorithm.forSize(GB, true))
+        assertEquals(FileChecksumAlgorithm.CRC32, FileChecksumAlgorithm.forSize(GB, false))
+
+        assertEquals(FileChecksumAlgorithm.CRC32, FileChecksumAlgorithm.fromId(null))
+        assertEquals(FileChecksumAlgorithm.CRC32, FileChecksumAlgorithm.fromId("crc32"))
+        assertEquals(FileChecksumAlgorithm.SAMPLED_CRC32, FileChecksumAlgorithm.fromId("crc32-sampled"))
+    }
+}
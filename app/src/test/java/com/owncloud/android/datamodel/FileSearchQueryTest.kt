@@ -0,0 +1,61 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel
+
+import com.owncloud.android.db.ProviderMeta.ProviderTableMeta
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class FileSearchQueryTest {
+
+    private companion object {
+        const val NAME = ProviderTableMeta.FILE_SEARCH_NAME
+    }
+
+    @Test
+    fun wordsAreSearchedAsPrefixes() {
+        assertEquals("$NAME:report*", FileDataStorageManager.buildFileSearchQuery("Report", false))
+        assertEquals(
+            "$NAME:img* $NAME:2022*",
+            FileDataStorageManager.buildFileSearchQuery("IMG_2022", false)
+        )
+    }
+
+    @Test
+    fun pathSearchHasNoColumnFilter() {
+        assertEquals("photos* 2022*", FileDataStorageManager.buildFileSearchQuery("/Photos/2022/", true))
+    }
+
+    @Test
+    fun operatorsAndSpecialCharactersAreNoSyntax() {
+        assertEquals(
+            "a* or* b* not* c* near* d*",
+            FileDataStorageManager.buildFileSearchQuery("a OR b NOT \"c\" NEAR -d*", true)
+        )
+        assertEquals("über* 東京*", FileDataStorageManager.buildFileSearchQuery("Über (東京)", true))
+    }
+
+    @Test
+    fun queryWithoutWordsMatchesNothing() {
+        assertNull(FileDataStorageManager.buildFileSearchQuery(null, false))
+        assertNull(FileDataStorageManager.buildFileSearchQuery("", false))
+        assertNull(FileDataStorageManager.buildFileSearchQuery(" .-_*\"", false))
+    }
+}
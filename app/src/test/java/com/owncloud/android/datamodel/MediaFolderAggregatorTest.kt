@@ -0,0 +1,80 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class MediaFolderAggregatorTest {
+
+    private companion object {
+        const val ITEM_LIMIT = 2
+        const val EXCLUDED_PATH = "/storage/emulated/0/Android/media/com.nextcloud.client"
+    }
+
+    @Test
+    fun rowsAreAggregatedPerBucket() {
+        val sut = MediaFolderAggregator(MediaFolderType.IMAGE, ITEM_LIMIT)
+
+        // newest first
+        sut.add("1", "Camera", "/sdcard/DCIM/Camera/3.jpg")
+        sut.add("2", "Screenshots", "/sdcard/Pictures/Screenshots/1.png")
+        sut.add("1", "Camera", "/sdcard/DCIM/Camera/2.jpg")
+        sut.add("1", "Camera", "/sdcard/DCIM/Camera/1.jpg")
+
+        val folders = sut.getFolders(EXCLUDED_PATH)
+
+        assertEquals(2, folders.size)
+        val camera = folders[0]
+        assertEquals(MediaFolderType.IMAGE, camera.type)
+        assertEquals("Camera", camera.folderName)
+        assertEquals("/sdcard/DCIM/Camera", camera.absolutePath)
+        assertEquals(3, camera.numberOfFiles)
+        assertEquals(listOf("/sdcard/DCIM/Camera/3.jpg", "/sdcard/DCIM/Camera/2.jpg"), camera.filePaths)
+
+        val screenshots = folders[1]
+        assertEquals("/sdcard/Pictures/Screenshots", screenshots.absolutePath)
+        assertEquals(1, screenshots.numberOfFiles)
+    }
+
+    @Test
+    fun invalidPathsAreCountedButNotListed() {
+        val sut = MediaFolderAggregator(MediaFolderType.VIDEO, ITEM_LIMIT)
+
+        sut.add("1", "Movies", null)
+        sut.add("1", "Movies", "invalid")
+        sut.add("1", "Movies", "/sdcard/Movies/1.mp4")
+
+        val folder = sut.getFolders(EXCLUDED_PATH).single()
+        assertEquals(3, folder.numberOfFiles)
+        assertEquals("/sdcard/Movies", folder.absolutePath)
+        assertEquals(listOf("/sdcard/Movies/1.mp4"), folder.filePaths)
+    }
+
+    @Test
+    fun foldersWithoutPathOrWithinExcludedPathAreSkipped() {
+        val sut = MediaFolderAggregator(MediaFolderType.IMAGE, ITEM_LIMIT)
+
+        sut.add("1", "Unknown", null)
+        sut.add("2", "Nextcloud", "$EXCLUDED_PATH/nextcloud/user@server/1.jpg")
+
+        assertTrue(sut.getFolders(EXCLUDED_PATH).isEmpty())
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.files.services
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class UploadSchedulerTest {
+
+    private companion object {
+        const val LATENCY_MS = 20L
+        const val FILES = 60
+        const val TIMEOUT_S = 30L
+        const val ACCOUNT_1 = "user1@server1"
+        const val ACCOUNT_2 = "user2@server1"
+        const val ACCOUNT_3 = "user3@server2"
+        const val SERVER_1 = "server1"
+        const val SERVER_2 = "server2"
+    }
+
+    /**
+     * Counts uploads running at the same time, overall and per key
+     */
+    private class Tracker {
+        val running = AtomicInteger()
+        val maxRunning = AtomicInteger()
+        val runningPerKey = Collections.synchronizedMap(mutableMapOf<String, Int>())
+        val maxPerKey = Collections.synchronizedMap(mutableMapOf<String, Int>())
+
+        fun upload(vararg keys: String) {
+            maxRunning.accumulateAndGet(running.incrementAndGet()) { a, b -> maxOf(a, b) }
+            synchronized(this) {
+                keys.forEach {
+                    val count = (runningPerKey[it] ?: 0) + 1
+                    runningPerKey[it] = count
+                    maxPerKey[it] = maxOf(maxPerKey[it] ?: 0, count)
+                }
+            }
+            // small file upload, dominated by request latency
+            Thread.sleep(LATENCY_MS)
+            synchronized(this) {
+                keys.forEach { runningPerKey[it] = runningPerKey[it]!! - 1 }
+            }
+            running.decrementAndGet()
+        }
+    }
+
+    private fun scheduler(slots: Int, perAccount: Int, perServer: Int, idle: CountDownLatch) =
+        UploadScheduler(slots, perAccount, perServer, Executors.defaultThreadFactory()) { idle.countDown() }
+
+    @Test
+    fun `uploads run in parallel slots`() {
+        val idle = CountDownLatch(1)
+        val tracker = Tracker()
+        val done = AtomicInteger()
+        val scheduler = scheduler(4, 4, 4, idle)
+
+        repeat(FILES) {
+            scheduler.submit(ACCOUNT_1, SERVER_1) {
+                tracker.upload()
+                done.incrementAndGet()
+            }
+        }
+        assertTrue(idle.await(TIMEOUT_S, TimeUnit.SECONDS))
+        scheduler.shutdown()
+
+        assertEquals(FILES, done.get())
+        assertTrue(tracker.maxRunning.get() in 2..4)
+    }
+
+    @Test
+    fun `limits per account and per server are respected`() {
+        val idle = CountDownLatch(1)
+        val tracker = Tracker()
+        val scheduler = scheduler(4, 2, 3, idle)
+
+        repeat(FILES) {
+            val (account, server) = when (it % 3) {
+                0 -> ACCOUNT_1 to SERVER_1
+                1 -> ACCOUNT_2 to SERVER_1
+                else -> ACCOUNT_3 to SERVER_2
+            }
+            scheduler.submit(account, server) { tracker.upload(account, server) }
+        }
+        assertTrue(idle.await(TIMEOUT_S, TimeUnit.SECONDS))
+        scheduler.shutdown()
+
+        assertTrue(tracker.maxRunning.get() <= 4)
+        listOf(ACCOUNT_1, ACCOUNT_2, ACCOUNT_3).forEach { assertTrue(tracker.maxPerKey[it]!! <= 2) }
+        assertTrue(tracker.maxPerKey[SERVER_1]!! <= 3)
+        assertTrue(scheduler.isIdle)
+    }
+
+    @Test
+    fun `blocked account does not hold back other accounts`() {
+        val idle = CountDownLatch(1)
+        val order = Collections.synchronizedList(mutableListOf<String>())
+        val scheduler = scheduler(2, 1, 2, idle)
+
+        // second upload of account 1 has to wait, upload of account 3 can start right away
+        scheduler.submit(ACCOUNT_1, SERVER_1) { Thread.sleep(LATENCY_MS * 5); order.add("1a") }
+        scheduler.submit(ACCOUNT_1, SERVER_1) { order.add("1b") }
+        scheduler.submit(ACCOUNT_3, SERVER_2) { order.add("3") }
+        assertTrue(idle.await(TIMEOUT_S, TimeUnit.SECONDS))
+        scheduler.shutdown()
+
+        assertEquals(listOf("3", "1a", "1b"), order)
+    }
+
+    @Test
+    fun `uploads into the same exclusive folder run one after the other`() {
+        val idle = CountDownLatch(1)
+        val tracker = Tracker()
+        val scheduler = scheduler(4, 4, 4, idle)
+
+        repeat(FILES) {
+            val folder = if (it % 2 == 0) "$ACCOUNT_1/encrypted/" else null
+            scheduler.submit(ACCOUNT_1, SERVER_1, { folder }) {
+                if (folder != null) tracker.upload(folder) else tracker.upload()
+            }
+        }
+        assertTrue(idle.await(TIMEOUT_S, TimeUnit.SECONDS))
+        scheduler.shutdown()
+
+        assertEquals(1, tracker.maxPerKey["$ACCOUNT_1/encrypted/"])
+        // other uploads still run in parallel
+        assertTrue(tracker.maxRunning.get() > 1)
+    }
+
+    @Test
+    fun `exclusive folder is resolved by the worker`() {
+        val idle = CountDownLatch(1)
+        val resolvingThreads = Collections.synchronizedSet(mutableSetOf<Thread>())
+        val scheduler = scheduler(2, 2, 2, idle)
+
+        repeat(2) {
+            scheduler.submit(ACCOUNT_1, SERVER_1, {
+                resolvingThreads.add(Thread.currentThread())
+                "$ACCOUNT_1/encrypted/"
+            }) {
+                Thread.sleep(LATENCY_MS)
+            }
+        }
+        assertTrue(idle.await(TIMEOUT_S, TimeUnit.SECONDS))
+        scheduler.shutdown()
+
+        assertTrue(resolvingThreads.isNotEmpty())
+        assertFalse(resolvingThreads.contains(Thread.currentThread()))
+        assertTrue(scheduler.isIdle)
+    }
+
+    @Test
+    fun `failing upload frees its slot`() {
+        val idle = CountDownLatch(1)
+        val done = AtomicInteger()
+        val scheduler = scheduler(1, 1, 1, idle)
+
+        val submitted = CountDownLatch(1)
+
+        scheduler.submit(ACCOUNT_1, SERVER_1) {
+            submitted.await()
+            throw IllegalStateException("upload failed")
+        }
+        scheduler.submit(ACCOUNT_1, SERVER_1) { done.incrementAndGet() }
+        submitted.countDown()
+        assertTrue(idle.await(TIMEOUT_S, TimeUnit.SECONDS))
+        scheduler.shutdown()
+
+        assertEquals(1, done.get())
+    }
+}
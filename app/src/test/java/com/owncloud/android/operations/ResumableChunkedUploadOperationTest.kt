@@ -0,0 +1,107 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.operations
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ResumableChunkedUploadOperationTest {
+
+    private companion object {
+        const val CHUNK_SIZE = 10240000L
+        const val FILE_SIZE = 4L * 1024 * 1024 * 1024
+    }
+
+    private fun chunks(fileSize: Long, until: Long): MutableMap<String, Long> {
+        val chunks = mutableMapOf<String, Long>()
+        var offset = 0L
+        while (offset < until) {
+            val length = minOf(CHUNK_SIZE, fileSize - offset)
+            chunks[ResumableChunkedUploadOperation.chunkName(offset, offset + length - 1)] = length
+            offset += length
+        }
+        return chunks
+    }
+
+    private fun end(chunks: List<String>) = chunks.lastOrNull()?.substringAfter('-')?.toLong()?.plus(1) ?: 0L
+
+    @Test
+    fun chunkNamesSortByOffset() {
+        val names = listOf(0L, 9L, 10L, 100L, FILE_SIZE).map { ResumableChunkedUploadOperation.chunkName(it, it) }
+        assertEquals(names, names.sorted())
+    }
+
+    @Test
+    fun interruptedUploadResumesAtLastConfirmedChunk() {
+        val uploaded = chunks(FILE_SIZE, FILE_SIZE * 9 / 10)
+
+        val resumable = ResumableChunkedUploadOperation.findResumableChunks(uploaded, FILE_SIZE)
+
+        assertEquals(uploaded.size, resumable.size)
+        val remaining = FILE_SIZE - end(resumable)
+        assertTrue("$remaining bytes left", remaining <= FILE_SIZE / 10 + CHUNK_SIZE)
+    }
+
+    @Test
+    fun incompleteChunkEndsResumableRange() {
+        val uploaded = chunks(FILE_SIZE, CHUNK_SIZE * 5)
+        val broken = ResumableChunkedUploadOperation.chunkName(2 * CHUNK_SIZE, 3 * CHUNK_SIZE - 1)
+        uploaded[broken] = CHUNK_SIZE / 2
+
+        val resumable = ResumableChunkedUploadOperation.findResumableChunks(uploaded, FILE_SIZE)
+
+        assertEquals(2, resumable.size)
+        assertEquals(2 * CHUNK_SIZE, end(resumable))
+    }
+
+    @Test
+    fun gapEndsResumableRange() {
+        val uploaded = chunks(FILE_SIZE, CHUNK_SIZE * 5)
+        uploaded.remove(ResumableChunkedUploadOperation.chunkName(CHUNK_SIZE, 2 * CHUNK_SIZE - 1))
+
+        val resumable = ResumableChunkedUploadOperation.findResumableChunks(uploaded, FILE_SIZE)
+
+        assertEquals(CHUNK_SIZE, end(resumable))
+    }
+
+    @Test
+    fun foreignAndOversizedChunksAreIgnored() {
+        val uploaded = mutableMapOf(
+            ".file" to 0L,
+            "unrelated" to 10L,
+            ResumableChunkedUploadOperation.chunkName(0, 99) to 100L,
+            ResumableChunkedUploadOperation.chunkName(100, 299) to 200L
+        )
+
+        assertEquals(100L, end(ResumableChunkedUploadOperation.findResumableChunks(uploaded, 200)))
+        assertEquals(0L, end(ResumableChunkedUploadOperation.findResumableChunks(emptyMap(), 200)))
+    }
+
+    @Test
+    fun transferIdChangesWithFile() {
+        val id = ResumableChunkedUploadOperation.createTransferId("/video.mp4", FILE_SIZE, "1650000000")
+
+        assertEquals(id, ResumableChunkedUploadOperation.createTransferId("/video.mp4", FILE_SIZE, "1650000000"))
+        assertNotEquals(id, ResumableChunkedUploadOperation.createTransferId("/video.mp4", FILE_SIZE, "1650000001"))
+        assertNotEquals(id, ResumableChunkedUploadOperation.createTransferId("/video.mp4", FILE_SIZE + 1, "1650000000"))
+        assertNotEquals(id, ResumableChunkedUploadOperation.createTransferId("/other.mp4", FILE_SIZE, "1650000000"))
+    }
+}
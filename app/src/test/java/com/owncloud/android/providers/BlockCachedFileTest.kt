@@ -0,0 +1,164 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.providers
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.File
+import java.io.IOException
+import java.io.InputStream
+import java.nio.file.Files
+import kotlin.random.Random
+
+class BlockCachedFileTest {
+
+    private companion object {
+        const val BLOCK_SIZE = 1024
+        const val BLOCKS_PER_FETCH = 4
+        const val LENGTH = BLOCK_SIZE * 10 + 100
+        const val SEED = 42
+        const val RANDOM_READS = 1000
+        const val MAX_READ_SIZE = 3000
+    }
+
+    /**
+     * Serves ranges of [content] and records them
+     */
+    private class TestSource(private val content: ByteArray) : BlockCachedFile.Source {
+        val requests = mutableListOf<LongRange>()
+        var failAfter = -1
+
+        override fun open(start: Long, end: Long): InputStream {
+            requests.add(start..end)
+            val range = content.copyOfRange(start.toInt(), end.toInt() + 1)
+            if (failAfter < 0) {
+                return ByteArrayInputStream(range)
+            }
+            return object : InputStream() {
+                private var position = 0
+
+                override fun read(): Int {
+                    if (position == failAfter) {
+                        throw IOException("Connection lost")
+                    }
+                    return if (position < range.size) range[position++].toInt() and 0xff else -1
+                }
+            }
+        }
+    }
+
+    private lateinit var content: ByteArray
+    private lateinit var source: TestSource
+    private lateinit var cacheFile: File
+    private lateinit var sut: BlockCachedFile
+
+    @Before
+    fun setUp() {
+        content = Random(SEED).nextBytes(LENGTH)
+        source = TestSource(content)
+        cacheFile = Files.createTempFile("block-cache-", null).toFile()
+        sut = BlockCachedFile(source, LENGTH.toLong(), cacheFile, BLOCK_SIZE, BLOCKS_PER_FETCH)
+    }
+
+    private fun read(offset: Int, size: Int): ByteArray {
+        val data = ByteArray(size)
+        val read = sut.read(offset.toLong(), data, size)
+        return data.copyOf(read)
+    }
+
+    @Test
+    fun readFetchesOnlyBlocksAround() {
+        // read in the middle of block 5 fetches it and the next 3 blocks
+        assertArrayEquals(content.copyOfRange(5 * BLOCK_SIZE + 10, 5 * BLOCK_SIZE + 20), read(5 * BLOCK_SIZE + 10, 10))
+        assertEquals(listOf(5L * BLOCK_SIZE until 9L * BLOCK_SIZE), source.requests)
+
+        // fetch stops before already fetched blocks
+        read(3 * BLOCK_SIZE, 1)
+        assertEquals(3L * BLOCK_SIZE until 5L * BLOCK_SIZE, source.requests.last())
+
+        // last block is shorter
+        assertArrayEquals(content.copyOfRange(LENGTH - 50, LENGTH), read(LENGTH - 50, 100))
+        assertEquals(10L * BLOCK_SIZE until LENGTH.toLong(), source.requests.last())
+        assertFalse(sut.isComplete)
+    }
+
+    @Test
+    fun randomReadsMatchContentAndFetchEveryByteOnce() {
+        val random = Random(SEED)
+        repeat(RANDOM_READS) {
+            val offset = random.nextInt(LENGTH)
+            val size = random.nextInt(MAX_READ_SIZE)
+            val expected = content.copyOfRange(offset, Math.min(offset + size, LENGTH))
+            assertArrayEquals(expected, read(offset, size))
+        }
+
+        val fetched = source.requests.sumOf { it.last - it.first + 1 }
+        assertTrue(fetched <= LENGTH)
+    }
+
+    @Test
+    fun sequentialReadCompletesCacheFile() {
+        var offset = 0
+        while (true) {
+            val data = read(offset, BLOCK_SIZE / 2)
+            if (data.isEmpty()) {
+                break
+            }
+            offset += data.size
+        }
+        sut.close()
+
+        assertEquals(LENGTH, offset)
+        assertTrue(sut.isComplete)
+        val fetchSize = BLOCK_SIZE * BLOCKS_PER_FETCH
+        assertEquals((LENGTH + fetchSize - 1) / fetchSize, source.requests.size)
+        assertArrayEquals(content, cacheFile.readBytes())
+    }
+
+    @Test
+    fun blocksFetchedBeforeFailureAreKept() {
+        // connection is lost within the third block
+        source.failAfter = 2 * BLOCK_SIZE + 10
+        try {
+            read(0, 1)
+        } catch (e: IOException) {
+            // expected
+        }
+
+        // first two blocks are not fetched again
+        source.failAfter = -1
+        source.requests.clear()
+        assertArrayEquals(content.copyOfRange(0, 3 * BLOCK_SIZE), read(0, 3 * BLOCK_SIZE))
+        assertEquals(listOf(2L * BLOCK_SIZE until 6L * BLOCK_SIZE), source.requests)
+    }
+
+    @Test
+    fun emptyFileIsComplete() {
+        val emptyFile = BlockCachedFile(source, 0, cacheFile, BLOCK_SIZE, BLOCKS_PER_FETCH)
+
+        assertTrue(emptyFile.isComplete)
+        assertEquals(0, emptyFile.read(0, ByteArray(1), 1))
+        assertTrue(source.requests.isEmpty())
+    }
+}
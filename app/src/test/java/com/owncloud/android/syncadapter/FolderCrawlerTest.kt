@@ -0,0 +1,92 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.syncadapter
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Collections
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+class FolderCrawlerTest {
+
+    private companion object {
+        const val LATENCY_MS = 10L
+        const val FAN_OUT = 4
+        const val DEPTH = 3
+        const val CONCURRENCY = 4
+    }
+
+    /**
+     * Stand-in for the server: every listing costs a fixed round trip and returns FAN_OUT sub folders
+     * until DEPTH is reached. Folders ending with "0" are reported as changed.
+     */
+    private class FakeServer(private val onVisit: (String) -> Unit = {}) : FolderCrawler.Visitor<String> {
+        val visited: MutableList<String> = Collections.synchronizedList(mutableListOf())
+        val inFlight = AtomicInteger()
+        val maxInFlight = AtomicInteger()
+
+        override fun visit(folder: String): List<String> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet()) { a, b -> maxOf(a, b) }
+            onVisit(folder)
+            Thread.sleep(LATENCY_MS)
+            visited.add(folder)
+            inFlight.decrementAndGet()
+
+            val depth = folder.count { it == '/' } - 1
+            return if (depth < DEPTH) (0 until FAN_OUT).map { "$folder$it/" } else emptyList()
+        }
+
+        override fun hasPriority(folder: String): Boolean = folder.endsWith("0/")
+    }
+
+    private val folderCount = (0..DEPTH).sumOf { Math.pow(FAN_OUT.toDouble(), it.toDouble()).toInt() }
+
+    @Test
+    fun `parallel crawl visits every folder once`() {
+        val server = FakeServer()
+        FolderCrawler<String>(CONCURRENCY) { false }.crawl("/", server)
+
+        assertEquals(folderCount, server.visited.size)
+        assertEquals(folderCount, server.visited.toSet().size)
+        assertTrue(server.maxInFlight.get() in 2..CONCURRENCY)
+    }
+
+    @Test
+    fun `changed folders are visited first`() {
+        val server = FakeServer()
+        FolderCrawler<String>(1) { false }.crawl("/", server)
+
+        // with a single worker, changed children of root are visited before unchanged ones
+        val firstLevel = server.visited.filter { it.count { c -> c == '/' } == 2 }
+        assertEquals("/0/", firstLevel.first())
+        assertTrue(server.visited.indexOf("/0/") < server.visited.indexOf("/1/"))
+    }
+
+    @Test
+    fun `cancellation stops crawling`() {
+        val cancelled = AtomicBoolean(false)
+        val server = FakeServer { if (it == "/1/") cancelled.set(true) }
+
+        FolderCrawler<String>(1) { cancelled.get() }.crawl("/", server)
+
+        assertTrue(server.visited.size < folderCount)
+    }
+}
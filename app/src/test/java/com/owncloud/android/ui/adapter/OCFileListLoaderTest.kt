@@ -0,0 +1,183 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.ui.adapter
+
+import androidx.recyclerview.widget.DiffUtil
+import androidx.recyclerview.widget.ListUpdateCallback
+import com.nextcloud.client.core.ManualAsyncRunner
+import com.owncloud.android.datamodel.OCFile
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+
+class OCFileListLoaderTest {
+
+    private class Result(val files: List<OCFile>, val diff: DiffUtil.DiffResult?)
+
+    /**
+     * Counts the changes a diff would notify
+     */
+    private class Changes : ListUpdateCallback {
+        var inserted = 0
+        var removed = 0
+        var moved = 0
+        var changed = 0
+
+        override fun onInserted(position: Int, count: Int) {
+            inserted += count
+        }
+
+        override fun onRemoved(position: Int, count: Int) {
+            removed += count
+        }
+
+        override fun onMoved(fromPosition: Int, toPosition: Int) {
+            moved++
+        }
+
+        override fun onChanged(position: Int, count: Int, payload: Any?) {
+            changed += count
+        }
+    }
+
+    private lateinit var runner: ManualAsyncRunner
+    private lateinit var shown: MutableList<OCFile>
+    private lateinit var results: MutableList<Result>
+    private lateinit var sut: OCFileListLoader
+
+    private fun file(id: Long, name: String = "file$id.txt") = OCFile("/folder/$name").apply {
+        fileId = id
+        parentId = 1
+    }
+
+    private fun load(files: List<OCFile>) {
+        sut.load({ files }) { loaded, diff ->
+            results.add(Result(loaded, diff))
+            shown = loaded.toMutableList()
+        }
+    }
+
+    @Before
+    fun setUp() {
+        runner = ManualAsyncRunner()
+        shown = mutableListOf()
+        results = mutableListOf()
+        sut = OCFileListLoader(runner) { shown }
+    }
+
+    @Test
+    fun loadsInBackground() {
+        val files = listOf(file(1), file(2))
+
+        load(files)
+
+        assertTrue(sut.isLoading)
+        assertTrue(results.isEmpty())
+        runner.runAll()
+        assertFalse(sut.isLoading)
+        assertEquals(files, results.single().files)
+    }
+
+    @Test
+    fun newerRequestDropsStaleResult() {
+        val folder1 = listOf(file(1), file(2))
+        val folder2 = listOf(file(3))
+
+        load(folder1)
+        load(folder2)
+        runner.runAll()
+
+        assertEquals(folder2, results.single().files)
+    }
+
+    @Test
+    fun diffContainsOnlyChanges() {
+        load((1L..1000L).map { file(it) })
+        runner.runAll()
+
+        // one file deleted, one added, one renamed
+        val refreshed = (2L..1001L).map { if (it == 500L) file(it, "renamed.txt") else file(it) }
+        load(refreshed)
+        runner.runAll()
+
+        val changes = Changes()
+        assertNotNull(results.last().diff)
+        results.last().diff?.dispatchUpdatesTo(changes)
+        // renaming changes the path, so the file is removed and added again
+        assertEquals(2, changes.inserted)
+        assertEquals(2, changes.removed)
+        assertEquals(0, changes.changed)
+    }
+
+    @Test
+    fun changedContentIsNotified() {
+        load(listOf(file(1), file(2)))
+        runner.runAll()
+
+        load(listOf(file(1), file(2).apply { isFavorite = true }))
+        runner.runAll()
+
+        val changes = Changes()
+        results.last().diff?.dispatchUpdatesTo(changes)
+        assertEquals(1, changes.changed)
+        assertEquals(0, changes.inserted + changes.removed + changes.moved)
+    }
+
+    @Test
+    fun filesChangedMeanwhileHaveNoDiff() {
+        load(listOf(file(1), file(2)))
+        runner.runAll()
+
+        load(listOf(file(1), file(2), file(3)))
+        shown.removeAt(0)
+        runner.runAll()
+
+        assertNull(results.last().diff)
+    }
+
+    @Test
+    fun loadGetsCopyOfShownFiles() {
+        load(listOf(file(1)))
+        runner.runAll()
+
+        var current: List<OCFile>? = null
+        sut.load({
+            current = it
+            it
+        }) { _, _ -> }
+        shown.add(file(2))
+        runner.runAll()
+
+        assertEquals(listOf(file(1)), current)
+    }
+
+    @Test
+    fun cancelledResultIsNotDelivered() {
+        load(listOf(file(1)))
+        sut.cancel()
+        runner.runAll()
+
+        assertTrue(results.isEmpty())
+        assertFalse(sut.isLoading)
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.ui.unifiedsearch
+
+import com.owncloud.android.lib.common.SearchResult
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Before
+import org.junit.Test
+
+class UnifiedSearchResultCacheTest {
+
+    private companion object {
+        const val MAX_ENTRIES = 3
+        const val MAX_AGE = 1000L
+    }
+
+    private var now = 0L
+    private lateinit var sut: UnifiedSearchResultCache
+
+    private fun key(term: String, provider: ProviderID = "files", cursor: Int? = null, account: String = "user@nc") =
+        UnifiedSearchResultCache.Key(account, provider, term, cursor)
+
+    @Before
+    fun setUp() {
+        now = 0L
+        sut = UnifiedSearchResultCache(MAX_ENTRIES, MAX_AGE) { now }
+    }
+
+    @Test
+    fun resultsAreCachedByAccountProviderTermAndCursor() {
+        val result = SearchResult("Files", true, emptyList())
+
+        sut.put(key("test"), result)
+
+        assertSame(result, sut.get(key("test")))
+        assertNull(sut.get(key("test", provider = "talk")))
+        assertNull(sut.get(key("test", cursor = 5)))
+        assertNull(sut.get(key("test", account = "other@nc")))
+        assertNull(sut.get(key("tes")))
+    }
+
+    @Test
+    fun leastRecentlyUsedResultIsEvicted() {
+        val results = listOf("a", "b", "c", "d").associateWith { SearchResult() }
+        sut.put(key("a"), results.getValue("a"))
+        sut.put(key("b"), results.getValue("b"))
+        sut.put(key("c"), results.getValue("c"))
+        sut.get(key("a"))
+
+        sut.put(key("d"), results.getValue("d"))
+
+        assertEquals(MAX_ENTRIES, sut.size)
+        assertNull(sut.get(key("b")))
+        listOf("a", "c", "d").forEach { assertSame(it, results.getValue(it), sut.get(key(it))) }
+    }
+
+    @Test
+    fun resultsExpire() {
+        val result = SearchResult()
+        sut.put(key("test"), result)
+
+        now = MAX_AGE
+        assertSame(result, sut.get(key("test")))
+
+        now = MAX_AGE + 1
+        assertNull(sut.get(key("test")))
+        assertEquals(0, sut.size)
+    }
+}